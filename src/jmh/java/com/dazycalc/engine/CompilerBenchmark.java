@@ -0,0 +1,84 @@
+package com.dazycalc.engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 解释执行与字节码编译的对比
+ * 模拟在一个区间上扫描变量x：每次调用依次代入 {@link #POINTS} 个取值，结果按单次求值的平均耗时给出。
+ * tiered 使用默认的编译阈值，测量的是切换到字节码之后的稳定状态
+ * 运行：mvn -P vector test-compile exec:exec -Djmh.benchmarks=CompilerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+    private static final int POINTS = 1024;
+
+    @Param({"x×x+3×x-1", "sin(x)×cos(x)+sqrt(|x|)", "ln(x+1)×x^1.5+arctan(x)÷(1+x²)"})
+    public String expression;
+
+    private final double[] vars = new double[1];
+    private double[] xs;
+    private Evaluator interpreted;
+    private Evaluator compiled;
+    private Evaluator tiered;
+
+    @Setup
+    public void setUp() {
+        xs = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = i * 0.01;
+        }
+        CompiledExpression source = CompiledExpression.compile(expression, "x");
+        Program program = Program.compile(Optimizer.fold(source.getRoot(), AngleMode.RADIAN));
+        interpreted = new InterpretedEvaluator(program, AngleMode.RADIAN);
+        compiled = BytecodeCompiler.compile(program, AngleMode.RADIAN);
+        if (compiled == null) {
+            throw new IllegalStateException("表达式无法编译为字节码: " + expression);
+        }
+        tiered = source.evaluator(AngleMode.RADIAN);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double interpreted() {
+        return sweep(interpreted);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double compiled() {
+        return sweep(compiled);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double tiered() {
+        return sweep(tiered);
+    }
+
+    private double sweep(Evaluator evaluator) {
+        double sum = 0;
+        for (double x : xs) {
+            vars[0] = x;
+            sum += evaluator.eval(vars);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,178 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 双倍精度运算内核与双精度、十进制高精度的对比
+ * 每次调用对 {@link #POINTS} 组随机操作数执行同一个运算，结果按单次运算的平均耗时给出；
+ * 十进制高精度使用32位有效数字，与双倍精度的约31位相当
+ * 运行：mvn -P vector test-compile exec:exec -Djmh.benchmarks=DoubleDoubleBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoubleDoubleBenchmark {
+    private static final int POINTS = 256;
+    private static final MathContext DECIMAL_CONTEXT = new MathContext(32);
+
+    @Param({"+", "-", "×", "÷", "^", "sqrt", "sin", "cos", "tan", "ln", "log10"})
+    public String operation;
+
+    private double[] xs;
+    private double[] ys;
+    private DoubleDouble[] ddXs;
+    private DoubleDouble[] ddYs;
+    private BigDecimal[] decimalXs;
+    private BigDecimal[] decimalYs;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(14);
+        xs = new double[POINTS];
+        ys = new double[POINTS];
+        ddXs = new DoubleDouble[POINTS];
+        ddYs = new DoubleDouble[POINTS];
+        decimalXs = new BigDecimal[POINTS];
+        decimalYs = new BigDecimal[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            // 取 (0.5, 2.5) 内的值，所有运算都在定义域内
+            xs[i] = 0.5 + random.nextDouble() * 2;
+            ys[i] = 0.5 + random.nextDouble() * 2;
+            ddXs[i] = DoubleDouble.valueOf(xs[i]);
+            ddYs[i] = DoubleDouble.valueOf(ys[i]);
+            decimalXs[i] = new BigDecimal(xs[i]).round(DECIMAL_CONTEXT);
+            decimalYs[i] = new BigDecimal(ys[i]).round(DECIMAL_CONTEXT);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void doublePrecision(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; i++) {
+            blackhole.consume(apply(xs[i], ys[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void doubleDouble(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; i++) {
+            blackhole.consume(apply(ddXs[i], ddYs[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void decimal(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; i++) {
+            blackhole.consume(apply(decimalXs[i], decimalYs[i]));
+        }
+    }
+
+    private double apply(double x, double y) {
+        switch (operation) {
+            case "+":
+                return x + y;
+            case "-":
+                return x - y;
+            case "×":
+                return x * y;
+            case "÷":
+                return x / y;
+            case "^":
+                return Math.pow(x, y);
+            case "sqrt":
+                return Math.sqrt(x);
+            case "sin":
+                return Math.sin(x);
+            case "cos":
+                return Math.cos(x);
+            case "tan":
+                return Math.tan(x);
+            case "ln":
+                return Math.log(x);
+            case "log10":
+                return Math.log10(x);
+            default:
+                throw new IllegalArgumentException(operation);
+        }
+    }
+
+    private DoubleDouble apply(DoubleDouble x, DoubleDouble y) {
+        switch (operation) {
+            case "+":
+                return x.add(y);
+            case "-":
+                return x.subtract(y);
+            case "×":
+                return x.multiply(y);
+            case "÷":
+                return x.divide(y);
+            case "^":
+                return DoubleDouble.pow(x, y);
+            case "sqrt":
+                return DoubleDouble.sqrt(x);
+            case "sin":
+                return DoubleDouble.sin(x, AngleMode.RADIAN);
+            case "cos":
+                return DoubleDouble.cos(x, AngleMode.RADIAN);
+            case "tan":
+                return DoubleDouble.tan(x, AngleMode.RADIAN);
+            case "ln":
+                return DoubleDouble.ln(x);
+            case "log10":
+                return DoubleDouble.log10(x);
+            default:
+                throw new IllegalArgumentException(operation);
+        }
+    }
+
+    private BigDecimal apply(BigDecimal x, BigDecimal y) {
+        switch (operation) {
+            case "+":
+                return x.add(y, DECIMAL_CONTEXT);
+            case "-":
+                return x.subtract(y, DECIMAL_CONTEXT);
+            case "×":
+                return x.multiply(y, DECIMAL_CONTEXT);
+            case "÷":
+                return x.divide(y, DECIMAL_CONTEXT);
+            case "^":
+                return DecimalMath.pow(x, y, DECIMAL_CONTEXT);
+            case "sqrt":
+                return DecimalMath.sqrt(x, DECIMAL_CONTEXT);
+            case "sin":
+                return DecimalMath.sin(x, AngleMode.RADIAN, DECIMAL_CONTEXT);
+            case "cos":
+                return DecimalMath.cos(x, AngleMode.RADIAN, DECIMAL_CONTEXT);
+            case "tan":
+                return DecimalMath.tan(x, AngleMode.RADIAN, DECIMAL_CONTEXT);
+            case "ln":
+                return DecimalMath.ln(x, DECIMAL_CONTEXT);
+            case "log10":
+                return DecimalMath.log10(x, DECIMAL_CONTEXT);
+            default:
+                throw new IllegalArgumentException(operation);
+        }
+    }
+}
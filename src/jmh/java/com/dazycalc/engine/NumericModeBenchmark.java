@@ -0,0 +1,57 @@
+package com.dazycalc.engine;
+
+import java.math.MathContext;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 各数值模式的求值吞吐量对比
+ * 表达式预先编译，只测量 {@link ExpressionEvaluator#evaluateNumber(CompiledExpression, EvaluationContext)} 的计算部分。
+ * 2.5×4-0.75 的双精度结果精确，自动模式走双精度；其余表达式在自动模式下按十进制高精度计算
+ * 双精度模式的结果同样按上下文精度舍入（{@link EvaluationContext#round(double)}），这部分开销计入其中
+ * 运行：mvn -P vector test-compile exec:exec -Djmh.benchmarks=NumericModeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericModeBenchmark {
+
+    @Param({"DOUBLE", "DECIMAL", "HYBRID"})
+    public NumericMode mode;
+
+    @Param({"16", "34", "100"})
+    public int precision;
+
+    @Param({"2.5×4-0.75", "0.1+0.2×3", "1÷3+2÷7", "sqrt(2)×π+ln(10)"})
+    public String expression;
+
+    private final ExpressionEvaluator evaluator = new ExpressionEvaluator();
+    private CompiledExpression compiled;
+    private EvaluationContext context;
+
+    @Setup
+    public void setUp() {
+        compiled = CompiledExpression.compile(expression);
+        context = EvaluationContext.of(AngleMode.RADIAN).withNumericMode(mode)
+                .withMathContext(new MathContext(precision));
+    }
+
+    @Benchmark
+    public Number evaluate() {
+        return evaluator.evaluateNumber(compiled, context);
+    }
+}
@@ -0,0 +1,72 @@
+package com.dazycalc.engine;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 批量求值的标量与向量实现对比
+ * 两种实现都在当前线程中计算整批输入，不经过fork/join拆分，只比较单核吞吐量。
+ * 运行：mvn -P vector test-compile exec:exec -Djmh.benchmarks=VectorBatchBenchmark，结果按每批的平均耗时给出
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorBatchBenchmark {
+
+    @Param({"16", "256", "4096", "65536", "1048576", "10485760"})
+    public int size;
+
+    @Param({"x×y+x÷3-y²", "sin(x)×cos(y)+sqrt(|x×y|)", "ln(x+1)×x^1.5+arctan(y)"})
+    public String expression;
+
+    private double[][] inputs;
+    private double[] out;
+    private BatchEvaluator scalar;
+    private BatchEvaluator vector;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(24);
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        for (int i = 0; i < size; i++) {
+            xs[i] = random.nextDouble() * 100;
+            ys[i] = random.nextDouble() * 200 - 100;
+        }
+        inputs = new double[][] {xs, ys};
+        out = new double[size];
+        CompiledExpression compiled = CompiledExpression.compile(expression, "x", "y");
+        scalar = BatchTask.scalar(compiled.evaluator(AngleMode.RADIAN));
+        vector = VectorEvaluator.compile(Program.compile(Optimizer.fold(compiled.getRoot(), AngleMode.RADIAN)), AngleMode.RADIAN);
+        if (vector == null) {
+            throw new IllegalStateException("向量化实现不可用，需要以 vector 配置编译并加载 jdk.incubator.vector 模块");
+        }
+    }
+
+    @Benchmark
+    public double[] scalar() {
+        scalar.evaluate(inputs, out, 0, size);
+        return out;
+    }
+
+    @Benchmark
+    public double[] vector() {
+        vector.evaluate(inputs, out, 0, size);
+        return out;
+    }
+}
@@ -13,9 +13,13 @@ import javax.swing.SwingUtilities;
 
 /**
  * 计算器应用程序入口类
+ * 以 --batch 参数启动时不创建界面，按行批量计算表达式（见 {@link BatchCommand}）
  */
 public class App {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(BatchCommand.run(args));
+        }
         // 在EDT线程中启动应用
         SwingUtilities.invokeLater(() -> {
             // 强制设置为小米主题
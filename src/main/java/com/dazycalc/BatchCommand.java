@@ -0,0 +1,232 @@
+package com.dazycalc;
+
+import com.dazycalc.engine.EvaluationContext;
+import com.dazycalc.engine.ExpressionEvaluator;
+import com.dazycalc.model.NumberFormatter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 无界面的批量计算模式：{@code App --batch 输入文件 [--out 输出文件]}
+ * 输入文件每行一个表达式（UTF-8），按输入顺序每行输出一个结果，出错的行输出“错误: 原因”，空行输出空行；
+ * 结果超出范围等错误与计算器界面报告的相同（见 {@link ExpressionEvaluator#requireFinite(Number)}）；
+ * 不指定输出文件时写到标准输出。整个过程不加载AWT和Swing。
+ *
+ * 输入文件分块做只读内存映射，每块从末尾往前找到最后一个换行符，使块内只有完整的行，
+ * 行边界直接在映射的内存上扫描，文件内容不会整体读入堆内存。各块在公共fork/join线程池中并行计算，
+ * 结果在工作线程中编码为UTF-8，主线程按块的顺序写入输出通道；同时计算的块数有上限，
+ * 占用的内存与输入文件的大小无关。
+ */
+public final class BatchCommand {
+    // 每块映射的字节数，块内没有换行符（一行超过这个长度）时加倍重新映射
+    private static final int CHUNK_SIZE = 4 << 20;
+    // 每个工作线程平均分到的在途块数，多于一个才能在等待写出时不让线程空闲
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    private static final EvaluationContext CONTEXT = EvaluationContext.DEFAULT;
+
+    private BatchCommand() {
+    }
+
+    /**
+     * 按命令行参数执行批量计算
+     * @param args 命令行参数，第一个是 --batch
+     * @return 进程退出码：0 全部成功，1 有计算出错的行，2 参数错误或读写失败
+     */
+    public static int run(String[] args) {
+        Path input = null;
+        Path output = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--out") && i + 1 < args.length && output == null) {
+                output = Paths.get(args[++i]);
+            } else if (!args[i].startsWith("--") && input == null) {
+                input = Paths.get(args[i]);
+            } else {
+                return usage("无法识别的参数: " + args[i]);
+            }
+        }
+        if (input == null) {
+            return usage("缺少输入文件");
+        }
+
+        long startTime = System.nanoTime();
+        Summary summary;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             WritableByteChannel out = output == null ? Channels.newChannel(System.out)
+                     : FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE)) {
+            summary = process(in, out);
+        } catch (IOException e) {
+            System.err.println("读写文件失败: " + e.getMessage());
+            return 2;
+        } catch (CompletionException e) {
+            // 工作线程读取映射的输入时出错，如文件在计算过程中被截短
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.err.println("读写文件失败: " + (cause.getMessage() != null ? cause.getMessage() : cause));
+            return 2;
+        }
+        System.err.printf("共 %d 行，出错 %d 行，用时 %.3f 秒%n",
+                summary.lines, summary.errors, (System.nanoTime() - startTime) / 1e9);
+        return summary.errors == 0 ? 0 : 1;
+    }
+
+    private static int usage(String message) {
+        System.err.println(message);
+        System.err.println("用法: App --batch 输入文件 [--out 输出文件]");
+        return 2;
+    }
+
+    /**
+     * 逐块映射输入文件并计算，按顺序写出结果
+     */
+    private static Summary process(FileChannel in, WritableByteChannel out) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int window = Math.max(2, pool.getParallelism() * CHUNKS_PER_THREAD);
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+        ArrayDeque<CompletableFuture<Chunk>> pending = new ArrayDeque<>();
+        Summary summary = new Summary();
+        long size = in.size();
+        long position = skipByteOrderMark(in, size);
+
+        while (position < size || !pending.isEmpty()) {
+            while (position < size && pending.size() < window) {
+                ByteBuffer chunk = mapChunk(in, position, size);
+                position += chunk.limit();
+                pending.add(CompletableFuture.supplyAsync(() -> evaluate(chunk, evaluator), pool));
+            }
+            Chunk done = pending.remove().join();
+            while (done.output.hasRemaining()) {
+                out.write(done.output);
+            }
+            summary.lines += done.lines;
+            summary.errors += done.errors;
+        }
+        return summary;
+    }
+
+    /**
+     * 文件以UTF-8字节顺序标记开头时跳过它
+     */
+    private static long skipByteOrderMark(FileChannel in, long size) throws IOException {
+        if (size < 3) {
+            return 0;
+        }
+        ByteBuffer head = in.map(FileChannel.MapMode.READ_ONLY, 0, 3);
+        boolean bom = (head.get(0) & 0xFF) == 0xEF && (head.get(1) & 0xFF) == 0xBB && (head.get(2) & 0xFF) == 0xBF;
+        return bom ? 3 : 0;
+    }
+
+    /**
+     * 从 position 开始映射一块，不是文件的最后一块时截到最后一个换行符之后
+     * @return limit 为块长度的只读缓冲区
+     */
+    private static ByteBuffer mapChunk(FileChannel in, long position, long size) throws IOException {
+        long length = CHUNK_SIZE;
+        while (true) {
+            if (position + length >= size) {
+                return in.map(FileChannel.MapMode.READ_ONLY, position, size - position);
+            }
+            ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            for (int i = (int) length - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return buffer.limit(i + 1);
+                }
+            }
+            if (length > Integer.MAX_VALUE / 2) {
+                throw new IOException("输入文件中有超过2GB的行");
+            }
+            length *= 2;
+        }
+    }
+
+    /**
+     * 计算一块中的每一行，在工作线程中执行
+     */
+    private static Chunk evaluate(ByteBuffer input, ExpressionEvaluator evaluator) {
+        // 格式化器和解码器都不是线程安全的，每块各用一个
+        NumberFormatter formatter = new NumberFormatter();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer text = CharBuffer.allocate(256);
+        StringBuilder output = new StringBuilder(input.limit() / 2);
+        ByteBuffer line = input.duplicate();
+        Chunk chunk = new Chunk();
+        int limit = input.limit();
+
+        for (int start = 0; start < limit; ) {
+            int end = start;
+            while (end < limit && input.get(end) != '\n') {
+                end++;
+            }
+            int next = end + 1;
+            if (end > start && input.get(end - 1) == '\r') {
+                end--;
+            }
+
+            // UTF-8中每个字符至少一个字节，按字节数分配足够长的字符缓冲区
+            if (text.capacity() < end - start) {
+                text = CharBuffer.allocate(Math.max(end - start, text.capacity() * 2));
+            }
+            text.clear();
+            line.limit(end).position(start);
+            decoder.reset().decode(line, text, true);
+            decoder.flush(text);
+            String expression = text.flip().toString();
+
+            if (!expression.isBlank()) {
+                try {
+                    Number result = ExpressionEvaluator.requireFinite(evaluator.evaluateNumber(expression, CONTEXT));
+                    output.append(formatter.format(result));
+                } catch (RuntimeException e) {
+                    output.append("错误: ").append(e.getMessage());
+                    chunk.errors++;
+                }
+            }
+            output.append('\n');
+            chunk.lines++;
+            start = next;
+        }
+
+        try {
+            chunk.output = StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(output));
+        } catch (CharacterCodingException e) {
+            // 解码时已把非法字节替换为U+FFFD，结果中不会有无法编码的字符
+            throw new IllegalStateException(e);
+        }
+        return chunk;
+    }
+
+    /**
+     * 一块的计算结果
+     */
+    private static final class Chunk {
+        ByteBuffer output;
+        int lines;
+        int errors;
+    }
+
+    /**
+     * 全部块的统计
+     */
+    private static final class Summary {
+        long lines;
+        long errors;
+    }
+}
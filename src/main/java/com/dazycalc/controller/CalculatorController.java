@@ -1,15 +1,26 @@
 package com.dazycalc.controller;
 
+import com.dazycalc.engine.BudgetExceededException;
+import com.dazycalc.engine.EvaluationBudget;
+import com.dazycalc.engine.NumericMode;
 import com.dazycalc.model.CalculatorModel;
 import com.dazycalc.model.CalculatorOperation;
+import com.dazycalc.model.NumberFormatter;
 import com.dazycalc.view.CalculatorFrame;
 
 /**
  * 计算器控制器，连接模型和视图
+ * 实时预览和按下等号时的计算都在后台线程中进行，EDT上只做表达式编辑和界面刷新
  */
-public class CalculatorController {
+public class CalculatorController implements LiveEvaluationWorker.Listener {
     private final CalculatorModel model;
     private final CalculatorFrame view;
+    private final LiveEvaluationWorker previewWorker = new LiveEvaluationWorker();
+    // 按下等号的计算使用另一个后台线程，与实时预览互不取消
+    private final LiveEvaluationWorker resultWorker;
+    private final LiveEvaluationWorker.Listener resultListener = new ResultListener();
+    // 结果只在刷新视图时格式化，模型中保存的是数值
+    private final NumberFormatter resultFormatter = new NumberFormatter();
     
     /**
      * 构造函数
@@ -19,25 +30,105 @@ public class CalculatorController {
     public CalculatorController(CalculatorModel model, CalculatorFrame view) {
         this.model = model;
         this.view = view;
+        this.resultWorker = new LiveEvaluationWorker(EvaluationBudget.DEFAULT, model.getEvaluator()::evaluateNumber);
+        model.setPreviewDeferred(true);
     }
     
     /**
-     * 更新视图
+     * 更新视图，并在需要时安排后台计算实时预览
      */
     private void updateView() {
+        renderView();
+        schedulePreview();
+    }
+    
+    /**
+     * 把模型中待计算的预览提交给后台线程
+     */
+    private void schedulePreview() {
+        if (model.isPreviewPending()) {
+            // 表达式已经改变，尚未完成的等号计算的结果不会再被采用
+            resultWorker.cancel();
+            previewWorker.submit(model.getExpression(), model.getEvaluationContext(), this);
+        } else {
+            // 结果已确定（如按下等号或清除），之前提交的预览作废
+            previewWorker.cancel();
+        }
+    }
+    
+    @Override
+    public void onResult(String expression, Number result) {
+        if (model.applyPreviewResult(expression, result)) {
+            renderView();
+        }
+    }
+    
+    @Override
+    public void onFailure(String expression, RuntimeException error) {
+        if (model.applyPreviewFailure(expression)) {
+            renderView();
+        }
+    }
+    
+    @Override
+    public void onTooExpensive(String expression) {
+        if (model.applyPreviewTooExpensive(expression)) {
+            renderView();
+        }
+    }
+    
+    /**
+     * 按下等号的计算结果回调，结果在EDT上写回模型
+     */
+    private final class ResultListener implements LiveEvaluationWorker.Listener {
+        @Override
+        public void onResult(String expression, Number result) {
+            if (model.applyResult(expression, result)) {
+                renderView();
+            }
+        }
+
+        @Override
+        public void onFailure(String expression, RuntimeException error) {
+            if (model.applyResultFailure(expression, error)) {
+                renderView();
+            }
+        }
+
+        @Override
+        public void onTooExpensive(String expression) {
+            if (model.applyResultFailure(expression, new BudgetExceededException())) {
+                renderView();
+            }
+        }
+    }
+    
+    /**
+     * 按模型当前状态刷新视图
+     */
+    private void renderView() {
         // 在错误状态下显示错误消息
         if (model.isErrorState()) {
             view.updateDisplay(model.getErrorMessage(), "错误", "");
         } else {
-            // 正常状态下显示表达式和结果
+            // 正常状态下显示表达式和结果，计算量过大时用提示代替结果
+            String result = model.isTooExpensive() ? CalculatorModel.TOO_EXPENSIVE_MESSAGE : formatResult();
             view.updateDisplay(
-                model.getCurrentResult(),  // 当前结果作为主显示
+                result,                    // 当前结果作为主显示
                 model.getExpression(),     // 表达式
-                model.getCurrentResult()   // 同时也将结果传递给结果区域
+                result                     // 同时也将结果传递给结果区域
             );
         }
     }
     
+    /**
+     * 格式化模型的当前结果，没有结果时为空字符串
+     */
+    private String formatResult() {
+        Number value = model.getCurrentValue();
+        return value == null ? "" : resultFormatter.format(value);
+    }
+    
     /**
      * 不进行计算，仅更新视图显示
      */
@@ -48,51 +139,24 @@ public class CalculatorController {
             view.updateDisplay(
                 model.getExpression(),  // 表达式作为主显示
                 model.getExpression(),  // 表达式
-                model.getCurrentResult() // 结果区域显示当前结果
+                formatResult()          // 结果区域显示当前结果
             );
         }
     }
     
     /**
      * 直接设置表达式，但不进行计算
-     * 用于粘贴操作
+     * 用于粘贴操作：整段文本一次载入模型，实时预览在后台只计算一次
      * @param expression 要设置的表达式
+     * @return 表达式能被识别时返回true，否则模型进入错误状态
      */
-    public void setExpressionDirectly(String expression) {
-        // 首先清除当前状态
-        model.clear();
-        
-        // 设置新的表达式到模型
-        // 这里我们需要一个字符一个字符地添加，以确保表达式格式正确
-        for (int i = 0; i < expression.length(); i++) {
-            char c = expression.charAt(i);
-            
-            if (Character.isDigit(c)) {
-                // 数字
-                model.addDigit(String.valueOf(c));
-            } else if (c == '.') {
-                // 小数点
-                model.addDecimalPoint();
-            } else if (c == '+') {
-                model.setOperation(CalculatorOperation.ADD);
-            } else if (c == '-') {
-                model.setOperation(CalculatorOperation.SUBTRACT);
-            } else if (c == '*' || c == '×') {
-                model.setOperation(CalculatorOperation.MULTIPLY);
-            } else if (c == '/' || c == '÷') {
-                model.setOperation(CalculatorOperation.DIVIDE);
-            } else if (c == '(') {
-                model.addLeftParenthesis();
-            } else if (c == ')') {
-                model.addRightParenthesis();
-            } else if (c == '%') {
-                model.calculatePercent();
-            }
-            // 忽略其他字符
-        }
-        
-        // 更新视图，但不触发计算
+    public boolean setExpressionDirectly(CharSequence expression) {
+        boolean loaded = model.loadExpression(expression);
+
+        // 更新视图，预览在后台计算
         updateViewWithoutCalculation();
+        schedulePreview();
+        return loaded;
     }
     
     /**
@@ -147,10 +211,15 @@ public class CalculatorController {
     
     /**
      * 计算结果
+     * 表达式快照交给后台线程计算，结果回到EDT后替换表达式；计算期间表达式被修改时结果作废
      */
     public void calculateResult() {
-        model.calculateResult();
-        updateView();
+        String expression = model.beginCalculateResult();
+        previewWorker.cancel();
+        if (expression != null) {
+            resultWorker.submit(expression, model.getEvaluationContext(), resultListener);
+        }
+        renderView();
     }
     
     /**
@@ -242,6 +311,7 @@ public class CalculatorController {
      * @param type 三角函数类型
      * @deprecated 使用 {@link #calculateTrigFunction(String, boolean)} 代替
      */
+    @Deprecated
     public void calculateTrigFunction(String type) {
         calculateTrigFunction(type, true);
     }
@@ -251,6 +321,7 @@ public class CalculatorController {
      * @param type 反三角函数类型
      * @deprecated 使用 {@link #calculateInverseTrigFunction(String, boolean)} 代替
      */
+    @Deprecated
     public void calculateInverseTrigFunction(String type) {
         calculateInverseTrigFunction(type, true);
     }
@@ -351,6 +422,15 @@ public class CalculatorController {
         updateView();
     }
     
+    /**
+     * 切换数值模式
+     * @param numericMode 数值模式
+     */
+    public void setNumericMode(NumericMode numericMode) {
+        model.setNumericMode(numericMode);
+        updateView();
+    }
+    
     /**
      * 内存清除
      */
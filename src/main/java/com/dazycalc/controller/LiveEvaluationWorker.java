@@ -0,0 +1,214 @@
+package com.dazycalc.controller;
+
+import com.dazycalc.engine.BudgetExceededException;
+import com.dazycalc.engine.CancellationToken;
+import com.dazycalc.engine.EvaluationBudget;
+import com.dazycalc.engine.EvaluationCancelledException;
+import com.dazycalc.engine.EvaluationContext;
+import com.dazycalc.engine.IncrementalEvaluator;
+
+import javax.swing.SwingUtilities;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 表达式的后台计算线程，用于实时预览和按下等号时的计算
+ * 每次提交一份表达式快照，只保留最新的一份：尚未开始的旧请求直接被替换，
+ * 计算完成时若已有更新的请求，结果会被丢弃。结果通过 {@link SwingUtilities#invokeLater} 回到EDT。
+ * 每个请求带有自己的取消标记，提交新请求时正在计算的旧请求会在下一个检查点停止；
+ * 计算量超过预算的表达式报告为计算量过大，而不是一直占用后台线程。
+ * 默认使用 {@link IncrementalEvaluator} 做增量预览，也可以指定其他计算方式
+ */
+public class LiveEvaluationWorker {
+
+    /**
+     * 在后台线程中执行的计算
+     */
+    @FunctionalInterface
+    public interface Evaluation {
+        /**
+         * 计算表达式
+         * @param expression 表达式快照
+         * @param context 求值上下文，包含本次请求的预算和取消标记
+         * @return 计算结果
+         */
+        Number evaluate(String expression, EvaluationContext context);
+    }
+
+    /**
+     * 计算结果回调，在EDT上调用
+     */
+    public interface Listener {
+        /**
+         * 计算成功
+         * @param expression 表达式快照
+         * @param result 计算结果，类型取决于数值模式
+         */
+        void onResult(String expression, Number result);
+
+        /**
+         * 计算失败
+         * @param expression 表达式快照
+         * @param error 计算时抛出的异常
+         */
+        void onFailure(String expression, RuntimeException error);
+
+        /**
+         * 计算量超过预算
+         * @param expression 表达式快照
+         */
+        void onTooExpensive(String expression);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "calculator-evaluator");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<Request> pending = new AtomicReference<>();
+    private final AtomicReference<Request> running = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final EvaluationBudget budget;
+    // 只在后台线程中调用
+    private final Evaluation evaluation;
+
+    /**
+     * 使用默认计算预算创建增量预览线程
+     */
+    public LiveEvaluationWorker() {
+        this(EvaluationBudget.DEFAULT);
+    }
+
+    /**
+     * 创建增量预览线程
+     * @param budget 每次预览计算的预算
+     */
+    public LiveEvaluationWorker(EvaluationBudget budget) {
+        // 增量求值器保存了上一次的解析状态，不是线程安全的，只在后台线程中使用
+        this(budget, new IncrementalEvaluator()::evaluateNumber);
+    }
+
+    /**
+     * 创建使用指定计算方式的后台线程
+     * @param budget 每次计算的预算
+     * @param evaluation 计算方式，只在后台线程中调用
+     */
+    public LiveEvaluationWorker(EvaluationBudget budget, Evaluation evaluation) {
+        this.budget = budget;
+        this.evaluation = evaluation;
+    }
+
+    /**
+     * 提交一份表达式快照
+     * @param expression 表达式
+     * @param context 求值上下文，预算和取消标记由后台线程替换
+     * @param listener 结果回调
+     */
+    public void submit(String expression, EvaluationContext context, Listener listener) {
+        Request request = new Request(generation.incrementAndGet(), expression, context, listener);
+        cancelRunning();
+        if (pending.getAndSet(request) == null) {
+            // 之前没有排队的请求，需要安排一次计算；否则旧请求已被替换，由已安排的计算处理
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * 使所有尚未送达的结果失效
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        pending.set(null);
+        cancelRunning();
+    }
+
+    /**
+     * 关闭后台线程
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void cancelRunning() {
+        Request current = running.get();
+        if (current != null) {
+            current.cancellationToken.cancel();
+        }
+    }
+
+    private void drain() {
+        Request request = pending.getAndSet(null);
+        if (request == null) {
+            return;
+        }
+        running.set(request);
+        if (request.generation != generation.get()) {
+            // 登记之前已有更新的请求或被取消，不再计算
+            running.set(null);
+            return;
+        }
+
+        EvaluationContext context = request.context
+                .withBudget(budget)
+                .withCancellationToken(request.cancellationToken);
+        int outcome = Request.RESULT;
+        Number result = null;
+        RuntimeException error = null;
+        try {
+            result = evaluation.evaluate(request.expression, context);
+        } catch (EvaluationCancelledException e) {
+            return; // 已有更新的请求
+        } catch (BudgetExceededException e) {
+            outcome = Request.TOO_EXPENSIVE;
+        } catch (RuntimeException e) {
+            outcome = Request.FAILURE;
+            error = e;
+        } finally {
+            running.compareAndSet(request, null);
+        }
+
+        if (request.generation != generation.get()) {
+            return; // 已有更新的请求，丢弃过期结果
+        }
+        final int delivered = outcome;
+        final Number value = result;
+        final RuntimeException failure = error;
+        SwingUtilities.invokeLater(() -> {
+            if (request.generation != generation.get()) {
+                return;
+            }
+            if (delivered == Request.RESULT) {
+                request.listener.onResult(request.expression, value);
+            } else if (delivered == Request.TOO_EXPENSIVE) {
+                request.listener.onTooExpensive(request.expression);
+            } else {
+                request.listener.onFailure(request.expression, failure);
+            }
+        });
+    }
+
+    /**
+     * 一次计算请求
+     */
+    private static final class Request {
+        static final int RESULT = 0;
+        static final int FAILURE = 1;
+        static final int TOO_EXPENSIVE = 2;
+
+        final long generation;
+        final String expression;
+        final EvaluationContext context;
+        final Listener listener;
+        final CancellationToken cancellationToken = new CancellationToken();
+
+        Request(long generation, String expression, EvaluationContext context, Listener listener) {
+            this.generation = generation;
+            this.expression = expression;
+            this.context = context;
+            this.listener = listener;
+        }
+    }
+}
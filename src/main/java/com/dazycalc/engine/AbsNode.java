@@ -0,0 +1,36 @@
+package com.dazycalc.engine;
+
+/**
+ * 绝对值节点，如 |x|
+ */
+public final class AbsNode extends Node {
+    private final Node operand;
+
+    public AbsNode(Node operand) {
+        this.operand = operand;
+    }
+
+    public Node getOperand() {
+        return operand;
+    }
+
+    @Override
+    public double evaluate(AngleMode angleMode) {
+        return Math.abs(operand.evaluate(angleMode));
+    }
+
+    @Override
+    int childCount() {
+        return 1;
+    }
+
+    @Override
+    Node child(int index) {
+        return operand;
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+        return new AbsNode(children[0]);
+    }
+}
@@ -0,0 +1,18 @@
+package com.dazycalc.engine;
+
+/**
+ * 角度模式枚举，决定三角函数参数与反三角函数结果的单位
+ */
+public enum AngleMode {
+    RADIAN,
+    DEGREE;
+
+    /**
+     * 根据是否为弧度制获取角度模式
+     * @param isRadianMode true为弧度制，false为角度制
+     * @return 对应的角度模式
+     */
+    public static AngleMode of(boolean isRadianMode) {
+        return isRadianMode ? RADIAN : DEGREE;
+    }
+}
@@ -0,0 +1,19 @@
+package com.dazycalc.engine;
+
+/**
+ * 批量求值的后端
+ * 逐个元素调用 {@link Evaluator} 的标量实现见 {@link BatchTask#scalar(Evaluator)}；
+ * 以 vector 配置编译时另有按 SIMD 通道计算的向量化实现（见 {@link BatchTask#vectorized(Program, AngleMode)}）。
+ * 实现可以被多个线程同时使用，每次调用只写入结果数组中 [from, to) 的部分
+ */
+interface BatchEvaluator {
+
+    /**
+     * 对一段输入求值
+     * @param inputs 每个变量一个数组，按变量下标排列
+     * @param out 结果数组，计算出错的元素为NaN
+     * @param from 起始下标
+     * @param to 结束下标（不含）
+     */
+    void evaluate(double[][] inputs, double[] out, int from, int to);
+}
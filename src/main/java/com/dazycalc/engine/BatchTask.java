@@ -0,0 +1,135 @@
+package com.dazycalc.engine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 批量求值的fork/join任务
+ * 把输入区间对半拆分，直到不超过粒度后在当前线程交给 {@link BatchEvaluator} 计算，结果直接写入调用方提供的结果数组，
+ * 各任务写入结果数组中互不重叠的区间。
+ *
+ * 向量化后端 VectorEvaluator 依赖孵化模块 jdk.incubator.vector，只在以 vector 配置编译
+ * （mvn -P vector）并且运行时加上 --add-modules jdk.incubator.vector 时可用，
+ * 否则使用逐个元素求值的标量后端；也可以通过系统属性 dazycalc.vector=false 关闭
+ */
+final class BatchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    // 每个子任务至少计算的步数，任务太小时拆分和调度的开销超过并行的收益
+    private static final long MIN_TASK_STEPS = 1 << 15;
+    // 每个工作线程平均分到的子任务数，多于一个才能在线程之间均衡负载
+    private static final int TASKS_PER_THREAD = 4;
+    // 少于这个元素数的区间交给标量后端，向量化后端每次调用要分配一块栈数组，元素太少时不划算
+    private static final int MIN_VECTOR_COUNT = 64;
+    // VectorEvaluator.compile(Program, AngleMode)，不可用时为null
+    private static final MethodHandle VECTOR_FACTORY = findVectorFactory();
+
+    private final BatchEvaluator evaluator;
+    private final double[][] inputs;
+    private final double[] out;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    private BatchTask(BatchEvaluator evaluator, double[][] inputs, double[] out, int from, int to, int grain) {
+        this.evaluator = evaluator;
+        this.inputs = inputs;
+        this.out = out;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    /**
+     * 创建逐个元素求值的标量后端
+     * 每次调用只分配一个变量值数组，逐个元素求值时没有任何对象分配；
+     * 求值器可以被多个线程同时使用（见 {@link TieredEvaluator}）
+     */
+    static BatchEvaluator scalar(Evaluator evaluator) {
+        return (inputs, out, from, to) -> {
+            double[] vars = new double[inputs.length];
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < vars.length; j++) {
+                    vars[j] = inputs[j][i];
+                }
+                try {
+                    out[i] = evaluator.eval(vars);
+                } catch (ExpressionException e) {
+                    // 计算出错的元素（如除数为0、超出定义域）结果为NaN，不中断其余元素
+                    out[i] = Double.NaN;
+                }
+            }
+        };
+    }
+
+    /**
+     * 创建向量化后端，元素很少的区间仍交给标量后端
+     * @param scalar 同一表达式的标量后端
+     * @return 向量化后端，没有以 vector 配置编译、运行时没有加载 jdk.incubator.vector 模块或者已被关闭时返回null
+     */
+    static BatchEvaluator vectorized(Program program, AngleMode angleMode, BatchEvaluator scalar) {
+        if (VECTOR_FACTORY == null) {
+            return null;
+        }
+        BatchEvaluator vector;
+        try {
+            vector = (BatchEvaluator) VECTOR_FACTORY.invokeExact(program, angleMode);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        return (inputs, out, from, to) -> {
+            if (to - from < MIN_VECTOR_COUNT) {
+                scalar.evaluate(inputs, out, from, to);
+            } else {
+                vector.evaluate(inputs, out, from, to);
+            }
+        };
+    }
+
+    /**
+     * 对每组变量值求值，计算量足够大时在公共fork/join线程池中并行计算
+     * @param evaluator 批量求值的后端
+     * @param inputs 每个变量一个数组，长度都与结果数组相同
+     * @param out 结果数组
+     * @param cost 单个元素估算的计算步数（见 {@link CostModel}）
+     */
+    static void run(BatchEvaluator evaluator, double[][] inputs, double[] out, long cost) {
+        int count = out.length;
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long grain = Math.max(MIN_TASK_STEPS / Math.max(1, cost), count / ((long) parallelism * TASKS_PER_THREAD));
+        if (parallelism <= 1 || count <= grain) {
+            evaluator.evaluate(inputs, out, 0, count);
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new BatchTask(evaluator, inputs, out, 0, count, (int) Math.max(1, grain)));
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= grain) {
+            evaluator.evaluate(inputs, out, from, to);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new BatchTask(evaluator, inputs, out, from, middle, grain),
+                new BatchTask(evaluator, inputs, out, middle, to, grain));
+    }
+
+    private static MethodHandle findVectorFactory() {
+        if (!Boolean.parseBoolean(System.getProperty("dazycalc.vector", "true"))) {
+            return null;
+        }
+        try {
+            Class<?> type = Class.forName("com.dazycalc.engine.VectorEvaluator");
+            return MethodHandles.lookup().findStatic(type, "compile",
+                    MethodType.methodType(BatchEvaluator.class, Program.class, AngleMode.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // 没有以 vector 配置编译，或者运行时没有加载 jdk.incubator.vector 模块
+            return null;
+        }
+    }
+}
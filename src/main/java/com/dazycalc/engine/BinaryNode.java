@@ -0,0 +1,67 @@
+package com.dazycalc.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 二元运算节点，如 a+b、a×b、a^b
+ */
+public final class BinaryNode extends Node {
+    private final Operator operator;
+    private final Node left;
+    private final Node right;
+
+    public BinaryNode(Operator operator, Node left, Node right) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public Node getLeft() {
+        return left;
+    }
+
+    public Node getRight() {
+        return right;
+    }
+
+    @Override
+    public double evaluate(AngleMode angleMode) {
+        if (!(left instanceof BinaryNode)) {
+            return operator.apply(left.evaluate(angleMode), right.evaluate(angleMode));
+        }
+
+        // 左结合的长链（如1+2+...+n）会形成很深的左脊，这里沿左脊迭代求值，避免递归过深
+        List<BinaryNode> spine = new ArrayList<>();
+        Node node = this;
+        while (node instanceof BinaryNode) {
+            spine.add((BinaryNode) node);
+            node = ((BinaryNode) node).left;
+        }
+        double value = node.evaluate(angleMode);
+        for (int i = spine.size() - 1; i >= 0; i--) {
+            BinaryNode binary = spine.get(i);
+            value = binary.operator.apply(value, binary.right.evaluate(angleMode));
+        }
+        return value;
+    }
+
+    @Override
+    int childCount() {
+        return 2;
+    }
+
+    @Override
+    Node child(int index) {
+        return index == 0 ? left : right;
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+        return new BinaryNode(operator, children[0], children[1]);
+    }
+}
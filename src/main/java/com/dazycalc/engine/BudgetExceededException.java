@@ -0,0 +1,12 @@
+package com.dazycalc.engine;
+
+/**
+ * 表达式的计算量超过了 {@link EvaluationBudget} 规定的步数或时间上限
+ */
+public class BudgetExceededException extends ExpressionException {
+    private static final long serialVersionUID = 1L;
+
+    public BudgetExceededException() {
+        super("计算量过大");
+    }
+}
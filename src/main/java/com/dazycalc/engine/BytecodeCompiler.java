@@ -0,0 +1,364 @@
+package com.dazycalc.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 字节码编译器
+ * 把后缀程序翻译成一个实现 {@link Evaluator} 的隐藏类（{@link MethodHandles.Lookup#defineHiddenClass}），
+ * 生成的 eval 方法是一段没有分支的直线代码，JIT可以把 Math.sin、Math.pow 等调用直接内联
+ * 隐藏类不被类加载器强引用，求值器不再使用后即可被卸载
+ */
+public final class BytecodeCompiler {
+    // 单个方法的字节码长度上限
+    private static final int MAX_CODE_LENGTH = 65535;
+    // 常量池条目上限（留出余量给类名、方法名等）
+    private static final int MAX_CONSTANTS = 60000;
+    // eval方法的局部变量：0为this，1为参数数组，临时变量从2开始，每个double占两个槽
+    private static final int FIRST_TEMP_LOCAL = 2;
+    private static final int MAX_LOCALS = 65535;
+
+    private static final String CLASS_NAME = "com/dazycalc/engine/GeneratedEvaluator";
+    private static final String KERNELS = "com/dazycalc/engine/Kernels";
+    private static final String MATH = "java/lang/Math";
+    private static final String UNARY = "(D)D";
+    private static final String BINARY = "(DD)D";
+
+    // 指令
+    private static final int SIPUSH = 0x11;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DALOAD = 0x31;
+    private static final int LDC2_W = 0x14;
+    private static final int DLOAD = 0x18;
+    private static final int DSTORE = 0x39;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DNEG = 0x77;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int WIDE = 0xc4;
+
+    private static final MathFunction[] FUNCTIONS = MathFunction.values();
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * 编译后缀程序
+     * @return 生成的求值器；程序过大无法放进单个方法，或者调用了通过方法句柄绑定的函数时返回null，
+     *         调用方应继续解释执行
+     */
+    public static Evaluator compile(Program program, AngleMode angleMode) {
+        if (program.getConstants().length > MAX_CONSTANTS || program.getCallTargets().length > 0
+                || maxLocals(program) > MAX_LOCALS) {
+            return null;
+        }
+        byte[] classBytes = generate(program, angleMode);
+        if (classBytes == null) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+            return (Evaluator) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("生成求值器失败", e);
+        }
+    }
+
+    private static byte[] generate(Program program, AngleMode angleMode) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int evaluatorInterface = pool.classRef("com/dazycalc/engine/Evaluator");
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int initName = pool.utf8("<init>");
+        int initDesc = pool.utf8("()V");
+        int evalName = pool.utf8("eval");
+        int evalDesc = pool.utf8("([D)D");
+        int codeAttribute = pool.utf8("Code");
+
+        ByteArrayOutputStream evalCode = new ByteArrayOutputStream();
+        if (!emitEval(program, angleMode, pool, evalCode)) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(61); // Java 17
+            pool.writeTo(out);
+            out.writeShort(0x0031); // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(evaluatorInterface);
+            out.writeShort(0); // 字段
+            out.writeShort(2); // 方法
+
+            // 构造函数
+            byte[] initCode = {
+                    (byte) ALOAD_0,
+                    (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+                    (byte) RETURN
+            };
+            writeMethod(out, 0x0001, initName, initDesc, codeAttribute, 1, 1, initCode); // ACC_PUBLIC
+
+            // eval方法：每个double占两个栈槽，平方和保存临时变量时的dup2、读取变量时的数组引用和下标需要额外两个槽
+            int maxStack = (program.getMaxStackDepth() + 1) * 2;
+            writeMethod(out, 0x0011, evalName, evalDesc, codeAttribute, maxStack, maxLocals(program),
+                    evalCode.toByteArray()); // ACC_PUBLIC | ACC_FINAL
+
+            out.writeShort(0); // 类属性
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 生成eval方法体
+     * @return 方法体超出长度限制时返回false
+     */
+    private static boolean emitEval(Program program, AngleMode angleMode, ConstantPool pool, ByteArrayOutputStream code) {
+        int[] ops = program.getCode();
+        double[] constants = program.getConstants();
+        boolean radian = angleMode == AngleMode.RADIAN;
+
+        for (int pc = 0; pc < ops.length; pc++) {
+            switch (ops[pc]) {
+                case Opcodes.CONST:
+                    emitU2(code, LDC2_W, pool.doubleConstant(constants[ops[++pc]]));
+                    break;
+                case Opcodes.ADD:
+                    code.write(DADD);
+                    break;
+                case Opcodes.SUBTRACT:
+                    code.write(DSUB);
+                    break;
+                case Opcodes.MULTIPLY:
+                    code.write(DMUL);
+                    break;
+                case Opcodes.DIVIDE:
+                    emitInvoke(code, pool, KERNELS, "divide", BINARY);
+                    break;
+                case Opcodes.MODULO:
+                    emitInvoke(code, pool, KERNELS, "modulo", BINARY);
+                    break;
+                case Opcodes.POWER:
+                    emitInvoke(code, pool, MATH, "pow", BINARY);
+                    break;
+                case Opcodes.NEGATE:
+                    code.write(DNEG);
+                    break;
+                case Opcodes.ABS:
+                    emitInvoke(code, pool, MATH, "abs", UNARY);
+                    break;
+                case Opcodes.SQUARE:
+                    code.write(DUP2);
+                    code.write(DMUL);
+                    break;
+                case Opcodes.FACTORIAL:
+                    emitInvoke(code, pool, KERNELS, "factorial", UNARY);
+                    break;
+                case Opcodes.CALL:
+                    emitCall(code, pool, FUNCTIONS[ops[++pc]], radian);
+                    break;
+                case Opcodes.STORE:
+                    code.write(DUP2);
+                    emitLocal(code, DSTORE, FIRST_TEMP_LOCAL + 2 * ops[++pc]);
+                    break;
+                case Opcodes.LOAD:
+                    emitLocal(code, DLOAD, FIRST_TEMP_LOCAL + 2 * ops[++pc]);
+                    break;
+                case Opcodes.VAR: {
+                    // vars[index]，数组引用和下标占用的两个栈槽已计入maxStack
+                    int index = ops[++pc];
+                    if (index > Short.MAX_VALUE) {
+                        return false;
+                    }
+                    code.write(ALOAD_1);
+                    emitU2(code, SIPUSH, index);
+                    code.write(DALOAD);
+                    break;
+                }
+                default:
+                    throw new ExpressionException("未知操作码: " + ops[pc]);
+            }
+            if (code.size() > MAX_CODE_LENGTH - 1) {
+                return false;
+            }
+        }
+        code.write(DRETURN);
+        return true;
+    }
+
+    /**
+     * 生成函数调用，无需参数检查的函数直接调用 Math 中的方法
+     */
+    private static void emitCall(ByteArrayOutputStream code, ConstantPool pool, MathFunction function, boolean radian) {
+        switch (function) {
+            case SIN:
+                emitInvoke(code, pool, radian ? MATH : KERNELS, radian ? "sin" : "sinDegrees", UNARY);
+                break;
+            case COS:
+                emitInvoke(code, pool, radian ? MATH : KERNELS, radian ? "cos" : "cosDegrees", UNARY);
+                break;
+            case TAN:
+                emitInvoke(code, pool, radian ? MATH : KERNELS, radian ? "tan" : "tanDegrees", UNARY);
+                break;
+            case ARCSIN:
+                emitInvoke(code, pool, KERNELS, radian ? "asin" : "asinDegrees", UNARY);
+                break;
+            case ARCCOS:
+                emitInvoke(code, pool, KERNELS, radian ? "acos" : "acosDegrees", UNARY);
+                break;
+            case ARCTAN:
+                emitInvoke(code, pool, radian ? MATH : KERNELS, radian ? "atan" : "atanDegrees", UNARY);
+                break;
+            case LOG10:
+                emitInvoke(code, pool, KERNELS, "log10", UNARY);
+                break;
+            case LN:
+                emitInvoke(code, pool, KERNELS, "ln", UNARY);
+                break;
+            case SQRT:
+                emitInvoke(code, pool, KERNELS, "sqrt", UNARY);
+                break;
+            case ABS:
+                emitInvoke(code, pool, MATH, "abs", UNARY);
+                break;
+            case GAMMA:
+                emitInvoke(code, pool, KERNELS, "gamma", UNARY);
+                break;
+            default:
+                throw new ExpressionException("未知函数: " + function.getFunctionName());
+        }
+    }
+
+    /**
+     * 读写局部变量，下标超过255时使用wide前缀
+     */
+    private static void emitLocal(ByteArrayOutputStream code, int opcode, int index) {
+        if (index > 0xFF) {
+            code.write(WIDE);
+            emitU2(code, opcode, index);
+        } else {
+            code.write(opcode);
+            code.write(index);
+        }
+    }
+
+    private static int maxLocals(Program program) {
+        return FIRST_TEMP_LOCAL + 2 * program.getTempCount();
+    }
+
+    private static void emitInvoke(ByteArrayOutputStream code, ConstantPool pool, String owner, String name, String descriptor) {
+        emitU2(code, INVOKESTATIC, pool.methodRef(owner, name, descriptor));
+    }
+
+    private static void emitU2(ByteArrayOutputStream code, int opcode, int index) {
+        code.write(opcode);
+        code.write(index >> 8);
+        code.write(index);
+    }
+
+    private static void writeMethod(DataOutputStream out, int access, int name, int descriptor, int codeAttribute,
+                                    int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // 异常表
+        out.writeShort(0); // 属性
+    }
+
+    /**
+     * 常量池，相同条目只写入一次
+     */
+    private static final class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int DOUBLE = 6;
+        private static final int CLASS = 7;
+        private static final int METHOD_REF = 10;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<Object, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            return indexes.computeIfAbsent("U:" + value, key -> add(UTF8, 1, data -> data.writeUTF(value)));
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return indexes.computeIfAbsent("C:" + name, key -> add(CLASS, 1, data -> data.writeShort(nameIndex)));
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = indexes.computeIfAbsent("N:" + name + descriptor, key -> add(NAME_AND_TYPE, 1, data -> {
+                data.writeShort(nameIndex);
+                data.writeShort(descriptorIndex);
+            }));
+            return indexes.computeIfAbsent("M:" + owner + "." + name + descriptor, key -> add(METHOD_REF, 1, data -> {
+                data.writeShort(ownerIndex);
+                data.writeShort(nameAndType);
+            }));
+        }
+
+        int doubleConstant(double value) {
+            // 以位模式为键，区分 0.0 和 -0.0
+            return indexes.computeIfAbsent(Double.doubleToRawLongBits(value),
+                    key -> add(DOUBLE, 2, data -> data.writeDouble(value)));
+        }
+
+        /**
+         * 写入一个条目
+         * @param slots 条目占用的下标数，long和double占两个
+         */
+        private int add(int tag, int slots, Writer writer) {
+            int index = count;
+            try {
+                out.writeByte(tag);
+                writer.write(out);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            count += slots;
+            return index;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            target.write(bytes.toByteArray());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,51 @@
+package com.dazycalc.engine;
+
+/**
+ * 通过方法句柄绑定的函数的调用节点，如 pmt(0.005, 360, 100000)、npv(0.1, -100, 60, 60)
+ * 内置的单参数函数使用 {@link FunctionNode}
+ */
+public final class CallNode extends Node {
+    private final FunctionDefinition function;
+    private final Node[] arguments;
+
+    public CallNode(FunctionDefinition function, Node[] arguments) {
+        this.function = function;
+        this.arguments = arguments;
+    }
+
+    public FunctionDefinition getFunction() {
+        return function;
+    }
+
+    public int getArgumentCount() {
+        return arguments.length;
+    }
+
+    public Node getArgument(int index) {
+        return arguments[index];
+    }
+
+    @Override
+    public double evaluate(AngleMode angleMode) {
+        double[] values = new double[arguments.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = arguments[i].evaluate(angleMode);
+        }
+        return function.invoke(values, 0, values.length, angleMode);
+    }
+
+    @Override
+    int childCount() {
+        return arguments.length;
+    }
+
+    @Override
+    Node child(int index) {
+        return arguments[index];
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+        return new CallNode(function, children.clone());
+    }
+}
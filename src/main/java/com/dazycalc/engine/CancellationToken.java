@@ -0,0 +1,38 @@
+package com.dazycalc.engine;
+
+/**
+ * 求值的取消标记
+ * 由发起方持有，在任意线程调用 {@link #cancel()} 后，正在进行的求值会在下一个检查点
+ * 抛出 {@link EvaluationCancelledException}
+ */
+public final class CancellationToken {
+    /** 不可取消的标记，对它调用 {@link #cancel()} 没有效果 */
+    public static final CancellationToken NONE = new CancellationToken(false);
+
+    private final boolean cancellable;
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this(true);
+    }
+
+    private CancellationToken(boolean cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * 请求取消求值
+     */
+    public void cancel() {
+        if (cancellable) {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * 是否已请求取消
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,255 @@
+package com.dazycalc.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 编译后的表达式，保存表达式文本、对应的语法树和后缀程序
+ * 同一表达式只需解析一次，之后每次求值只是执行一遍后缀程序；
+ * 双精度求值器按角度模式折叠常数子树（见 {@link Optimizer}），
+ * 反复求值的热点表达式会自动切换到字节码实现（见 {@link TieredEvaluator}）
+ * 表达式可以含有编译时声明的变量，按声明的顺序传入变量的值；
+ * {@link #evaluateAll(AngleMode, double[][], double[])} 对整组输入批量求值，用于按公式生成函数表等场合
+ * 编译结果是线程安全的，可以被多个线程同时求值
+ */
+public final class CompiledExpression {
+    private static final double[] NO_VARS = new double[0];
+
+    private final String source;
+    private final List<String> variables;
+    private final Node root;
+    private final Program program;
+    private final long estimatedCost;
+    // 精确性分析的结果，0表示尚未分析，1表示精确，2表示不精确
+    private volatile int exactness;
+    // 整数求值器，integral为0表示尚未分析，1表示可以按整数计算，2表示不能
+    private IntegerEvaluator integerEvaluator;
+    private volatile int integral;
+    // 定点十进制求值器，dec64为0表示尚未分析，1表示可以按定点十进制计算，2表示不能
+    private Dec64Evaluator dec64Evaluator;
+    private volatile int dec64;
+    // 双倍精度求值器，首次使用时创建
+    private volatile DoubleDoubleEvaluator doubleDoubleEvaluator;
+    // 按角度模式缓存的求值器
+    private final AtomicReferenceArray<Evaluator> evaluators = new AtomicReferenceArray<>(AngleMode.values().length);
+    // 按角度模式缓存的批量求值后端
+    private final AtomicReferenceArray<BatchEvaluator> batchEvaluators = new AtomicReferenceArray<>(AngleMode.values().length);
+
+    private CompiledExpression(String source, List<String> variables) {
+        this.source = source;
+        this.variables = variables;
+        this.root = ExpressionParser.parse(source, variables);
+        this.program = Program.compile(root);
+        this.estimatedCost = CostModel.estimate(root);
+    }
+
+    /**
+     * 编译不含变量的表达式
+     * @param source 表达式文本
+     * @return 编译结果
+     */
+    public static CompiledExpression compile(String source) {
+        return new CompiledExpression(source, Collections.emptyList());
+    }
+
+    /**
+     * 编译含有变量的表达式，如 compile("sin(x)×y", "x", "y")
+     * 变量名由字母、数字和下划线组成，不以数字开头，不能与函数名或常数e相同
+     * @param source 表达式文本
+     * @param variables 声明的变量名，变量的下标为它在参数中的位置
+     * @return 编译结果
+     * @throws ExpressionException 变量名不合法或重复，或者表达式中有未声明的变量
+     */
+    public static CompiledExpression compile(String source, String... variables) {
+        for (int i = 0; i < variables.length; i++) {
+            if (!Lexer.isVariableName(variables[i])) {
+                throw new ExpressionException("不合法的变量名: " + variables[i]);
+            }
+            for (int j = 0; j < i; j++) {
+                if (variables[j].equals(variables[i])) {
+                    throw new ExpressionException("变量名重复: " + variables[i]);
+                }
+            }
+        }
+        return new CompiledExpression(source, Collections.unmodifiableList(Arrays.asList(variables.clone())));
+    }
+
+    /**
+     * 获取表达式文本
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * 获取声明的变量名，按变量下标排列
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * 获取语法树根节点
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * 获取后缀程序
+     */
+    public Program getProgram() {
+        return program;
+    }
+
+    /**
+     * 获取估算的计算步数（见 {@link CostModel}）
+     */
+    public long getEstimatedCost() {
+        return estimatedCost;
+    }
+
+    /**
+     * 双精度计算结果是否与十进制精确计算的结果相同（见 {@link Exactness}），首次调用时分析并缓存
+     */
+    public boolean isExactInDouble() {
+        int result = exactness;
+        if (result == 0) {
+            result = Exactness.isExact(program) ? 1 : 2;
+            exactness = result;
+        }
+        return result == 1;
+    }
+
+    /**
+     * 表达式是否只含整数字面量和整数运算，可以按整数精确计算（见 {@link IntegerEvaluator}），首次调用时分析并缓存
+     */
+    public boolean isIntegral() {
+        return integerEvaluator() != null;
+    }
+
+    /**
+     * 获取整数求值器，不能按整数计算时返回null
+     */
+    IntegerEvaluator integerEvaluator() {
+        int state = integral;
+        if (state == 0) {
+            IntegerEvaluator evaluator = IntegerEvaluator.compile(program);
+            integerEvaluator = evaluator;
+            // volatile写保证其他线程看到integral后也能看到integerEvaluator
+            integral = evaluator != null ? 1 : 2;
+            return evaluator;
+        }
+        return state == 1 ? integerEvaluator : null;
+    }
+
+    /**
+     * 获取定点十进制求值器，首次调用时分析并缓存，不能按定点十进制计算时返回null
+     */
+    Dec64Evaluator dec64Evaluator() {
+        int state = dec64;
+        if (state == 0) {
+            Dec64Evaluator evaluator = Dec64Evaluator.compile(program);
+            dec64Evaluator = evaluator;
+            dec64 = evaluator != null ? 1 : 2;
+            return evaluator;
+        }
+        return state == 1 ? dec64Evaluator : null;
+    }
+
+    /**
+     * 获取双倍精度求值器，首次调用时创建并缓存
+     */
+    DoubleDoubleEvaluator doubleDoubleEvaluator() {
+        DoubleDoubleEvaluator evaluator = doubleDoubleEvaluator;
+        if (evaluator == null) {
+            evaluator = new DoubleDoubleEvaluator(program);
+            doubleDoubleEvaluator = evaluator;
+        }
+        return evaluator;
+    }
+
+    /**
+     * 获取绑定了指定角度模式的求值器
+     * @param angleMode 角度模式
+     */
+    public Evaluator evaluator(AngleMode angleMode) {
+        Evaluator evaluator = evaluators.get(angleMode.ordinal());
+        if (evaluator == null) {
+            Program folded = Program.compile(Optimizer.fold(root, angleMode));
+            evaluators.compareAndSet(angleMode.ordinal(), null, new TieredEvaluator(folded, angleMode));
+            evaluator = evaluators.get(angleMode.ordinal());
+        }
+        return evaluator;
+    }
+
+    /**
+     * 获取批量求值的后端，可用时使用向量化实现，否则逐个元素调用 {@link #evaluator(AngleMode)}
+     */
+    BatchEvaluator batchEvaluator(AngleMode angleMode) {
+        BatchEvaluator evaluator = batchEvaluators.get(angleMode.ordinal());
+        if (evaluator == null) {
+            BatchEvaluator scalar = BatchTask.scalar(evaluator(angleMode));
+            BatchEvaluator vectorized = BatchTask.vectorized(Program.compile(Optimizer.fold(root, angleMode)), angleMode, scalar);
+            batchEvaluators.compareAndSet(angleMode.ordinal(), null, vectorized != null ? vectorized : scalar);
+            evaluator = batchEvaluators.get(angleMode.ordinal());
+        }
+        return evaluator;
+    }
+
+    /**
+     * 计算不含变量的表达式的值，不受计算预算约束
+     * 需要限制计算量时使用 {@link ExpressionEvaluator#evaluate(CompiledExpression, EvaluationContext)}
+     * @param angleMode 角度模式
+     */
+    public double evaluate(AngleMode angleMode) {
+        return evaluate(angleMode, NO_VARS);
+    }
+
+    /**
+     * 按给定的变量值计算表达式的值，不受计算预算约束
+     * @param angleMode 角度模式
+     * @param values 变量值，按变量下标排列
+     * @throws IllegalArgumentException 变量值的个数与声明的变量个数不同
+     */
+    public double evaluate(AngleMode angleMode, double[] values) {
+        if (values.length != variables.size()) {
+            throw new IllegalArgumentException("需要 " + variables.size() + " 个变量值，实际为 " + values.length + " 个");
+        }
+        return evaluator(angleMode).eval(values);
+    }
+
+    /**
+     * 对只有一个变量的表达式批量求值，见 {@link #evaluateAll(AngleMode, double[][], double[])}
+     * @param angleMode 角度模式
+     * @param xs 变量的值
+     * @param out 结果数组，长度与 xs 相同，out[i] 为变量取 xs[i] 时的值
+     */
+    public void evaluateAll(AngleMode angleMode, double[] xs, double[] out) {
+        evaluateAll(angleMode, new double[][] {xs}, out);
+    }
+
+    /**
+     * 批量求值：第i个结果为各变量分别取 inputs[0][i]、inputs[1][i]…… 时表达式的值
+     * 结果直接写入调用方预先分配的数组，逐个元素求值时没有对象分配；
+     * 输入较多时拆分到多个处理器核心上并行计算，可用时每个核心再按SIMD通道向量化计算（见 {@link BatchTask}）。
+     * 计算出错的元素（如除数为0、超出定义域）结果为NaN，不中断其余元素。不受计算预算约束
+     * @param angleMode 角度模式
+     * @param inputs 每个变量一个数组，按变量下标排列，长度都与结果数组相同
+     * @param out 结果数组
+     * @throws IllegalArgumentException 输入数组的个数与声明的变量个数不同，或者长度与结果数组不同
+     */
+    public void evaluateAll(AngleMode angleMode, double[][] inputs, double[] out) {
+        if (inputs.length != variables.size()) {
+            throw new IllegalArgumentException("需要 " + variables.size() + " 组变量值，实际为 " + inputs.length + " 组");
+        }
+        for (double[] input : inputs) {
+            if (input.length != out.length) {
+                throw new IllegalArgumentException("变量值的个数 " + input.length + " 与结果数组的长度 " + out.length + " 不同");
+            }
+        }
+        BatchTask.run(batchEvaluator(angleMode), inputs, out, estimatedCost);
+    }
+}
@@ -0,0 +1,40 @@
+package com.dazycalc.engine;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * 计算量估算
+ * 求值前遍历语法树，估算需要执行的步数：双精度下所有运算（包括查表的阶乘）都是常数时间，每个节点记1步。
+ * 共享的子树（见 {@link NodeTable}）只计算一次，之后的每次引用只是读取临时变量，记1步
+ */
+public final class CostModel {
+
+    private CostModel() {
+    }
+
+    /**
+     * 估算语法树的计算步数
+     * @param root 语法树根节点
+     * @return 估算的步数
+     */
+    public static long estimate(Node root) {
+        long cost = 0;
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        // 显式栈遍历，深度嵌套的表达式不会导致栈溢出
+        ArrayDeque<Node> work = new ArrayDeque<>();
+        work.push(root);
+        while (!work.isEmpty()) {
+            Node node = work.pop();
+            cost++;
+            if (node.childCount() > 0 && visited.add(node)) {
+                for (int i = node.childCount() - 1; i >= 0; i--) {
+                    work.push(node.child(i));
+                }
+            }
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,239 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * 压缩在一个long中的十进制数
+ * 高56位是有符号系数c，低8位是有符号指数e，表示的值为 c × 10^e。
+ * 运算直接在long上进行，不分配任何对象；结果无法精确表示时（系数超过56位、指数越界、除不尽）
+ * 返回 {@link #NAN}，由调用方改用 {@link BigDecimal} 计算，因此得到的结果要么精确，要么根本不产生。
+ * 运算结果都经过规范化：去掉系数末尾的0，零的指数为0。
+ */
+public final class Dec64 {
+    /** 无法精确表示的结果（系数0、指数-128） */
+    public static final long NAN = 0x80L;
+
+    /** 零 */
+    public static final long ZERO = 0L;
+
+    private static final long MAX_COEFFICIENT = (1L << 55) - 1;
+    private static final long MIN_COEFFICIENT = -(1L << 55);
+    private static final int MAX_EXPONENT = 127;
+    private static final int MIN_EXPONENT = -127;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private Dec64() {
+    }
+
+    /**
+     * 获取系数
+     */
+    public static long coefficient(long value) {
+        return value >> 8;
+    }
+
+    /**
+     * 获取指数
+     */
+    public static int exponent(long value) {
+        return (byte) value;
+    }
+
+    /**
+     * 由系数和指数构造规范化的值，无法精确表示时返回 {@link #NAN}
+     */
+    public static long of(long coefficient, int exponent) {
+        if (coefficient == 0) {
+            return ZERO;
+        }
+        // 去掉末尾的0，既是规范化，也可能让超长的系数重新放得下
+        while (coefficient % 10 == 0 && exponent < MAX_EXPONENT) {
+            coefficient /= 10;
+            exponent++;
+        }
+        // 指数过大时把系数放大，仍然精确
+        while (exponent > MAX_EXPONENT && coefficient >= MIN_COEFFICIENT / 10 && coefficient <= MAX_COEFFICIENT / 10) {
+            coefficient *= 10;
+            exponent--;
+        }
+        if (coefficient > MAX_COEFFICIENT || coefficient < MIN_COEFFICIENT
+                || exponent > MAX_EXPONENT || exponent < MIN_EXPONENT) {
+            return NAN;
+        }
+        return (coefficient << 8) | (exponent & 0xFF);
+    }
+
+    /**
+     * 把BigDecimal转换为Dec64，无法精确表示时返回 {@link #NAN}
+     */
+    public static long of(BigDecimal value) {
+        if (value.signum() == 0) {
+            return ZERO;
+        }
+        BigDecimal stripped = value.stripTrailingZeros();
+        BigInteger unscaled = stripped.unscaledValue();
+        if (unscaled.bitLength() >= Long.SIZE) {
+            return NAN;
+        }
+        long scale = -(long) stripped.scale();
+        if (scale < Integer.MIN_VALUE || scale > Integer.MAX_VALUE) {
+            return NAN;
+        }
+        return of(unscaled.longValue(), (int) scale);
+    }
+
+    /**
+     * 转换为BigDecimal
+     */
+    public static BigDecimal toBigDecimal(long value) {
+        if (value == NAN) {
+            throw new ArithmeticException("Dec64 NaN");
+        }
+        return BigDecimal.valueOf(coefficient(value), -exponent(value));
+    }
+
+    public static long add(long a, long b) {
+        if (a == NAN || b == NAN) {
+            return NAN;
+        }
+        long ca = coefficient(a);
+        long cb = coefficient(b);
+        int ea = exponent(a);
+        int eb = exponent(b);
+        if (ca == 0) {
+            return b;
+        }
+        if (cb == 0) {
+            return a;
+        }
+        // 对齐到较小的指数，放大系数在long范围内是精确的
+        if (ea > eb) {
+            ca = scaleUp(ca, ea - eb);
+            if (ca == Long.MIN_VALUE) {
+                return NAN;
+            }
+            ea = eb;
+        } else if (eb > ea) {
+            cb = scaleUp(cb, eb - ea);
+            if (cb == Long.MIN_VALUE) {
+                return NAN;
+            }
+        }
+        long sum = ca + cb;
+        if (((ca ^ sum) & (cb ^ sum)) < 0) {
+            return NAN;
+        }
+        return of(sum, ea);
+    }
+
+    public static long subtract(long a, long b) {
+        return add(a, negate(b));
+    }
+
+    public static long multiply(long a, long b) {
+        if (a == NAN || b == NAN) {
+            return NAN;
+        }
+        long ca = coefficient(a);
+        long cb = coefficient(b);
+        if (ca == 0 || cb == 0) {
+            return ZERO;
+        }
+        long product = ca * cb;
+        if (Math.multiplyHigh(ca, cb) != (product >> 63)) {
+            return NAN;
+        }
+        return of(product, exponent(a) + exponent(b));
+    }
+
+    /**
+     * 除法，商是有限小数且系数放得下时精确，否则返回 {@link #NAN}
+     * @throws ExpressionException 除数为零
+     */
+    public static long divide(long a, long b) {
+        if (a == NAN || b == NAN) {
+            return NAN;
+        }
+        long ca = coefficient(a);
+        long cb = coefficient(b);
+        if (cb == 0) {
+            throw new ExpressionException("除数不能为零");
+        }
+        if (ca == 0) {
+            return ZERO;
+        }
+        // 被除数尽量放大，商是有限小数且位数不多时一定能整除
+        int shift = 0;
+        while (shift < POWERS_OF_TEN.length - 1 && Math.abs(ca) <= Long.MAX_VALUE / 10) {
+            ca *= 10;
+            shift++;
+        }
+        if (ca % cb != 0) {
+            return NAN;
+        }
+        return of(ca / cb, exponent(a) - exponent(b) - shift);
+    }
+
+    /**
+     * 取余，结果与被除数同号（与double的%一致）
+     * @throws ExpressionException 除数为零
+     */
+    public static long remainder(long a, long b) {
+        if (a == NAN || b == NAN) {
+            return NAN;
+        }
+        long ca = coefficient(a);
+        long cb = coefficient(b);
+        if (cb == 0) {
+            throw new ExpressionException("除数不能为零");
+        }
+        int ea = exponent(a);
+        int eb = exponent(b);
+        if (ea > eb) {
+            ca = scaleUp(ca, ea - eb);
+            ea = eb;
+        } else if (eb > ea) {
+            cb = scaleUp(cb, eb - ea);
+        }
+        if (ca == Long.MIN_VALUE || cb == Long.MIN_VALUE) {
+            return NAN;
+        }
+        return of(ca % cb, ea);
+    }
+
+    public static long negate(long value) {
+        if (value == NAN) {
+            return NAN;
+        }
+        // 系数的取值范围不对称，-(-2^55) 放不下
+        return of(-coefficient(value), exponent(value));
+    }
+
+    public static long abs(long value) {
+        return coefficient(value) < 0 ? negate(value) : value;
+    }
+
+    /**
+     * 系数乘以 10^n，溢出时返回 Long.MIN_VALUE
+     */
+    private static long scaleUp(long coefficient, int n) {
+        if (n >= POWERS_OF_TEN.length) {
+            return Long.MIN_VALUE;
+        }
+        long power = POWERS_OF_TEN[n];
+        long result = coefficient * power;
+        if (Math.multiplyHigh(coefficient, power) != (result >> 63) || result == Long.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,199 @@
+package com.dazycalc.engine;
+
+/**
+ * 定点十进制求值器
+ * 在 {@link Dec64} 组成的long栈上执行后缀程序，加、减、乘、除、取余都不分配对象。
+ * 只支持能精确表示的字面量、四则运算、取余、取负、绝对值、平方、非负整数次幂和不超过20的整数阶乘，
+ * 含有其他运算的程序在编译时被拒绝；运行中出现无法精确表示的中间结果时 {@link #execute()} 返回
+ * {@link Dec64#NAN}，由调用方改用 {@link DecimalEvaluator} 计算。
+ * 实例只保存编译好的常量，可以被多个线程同时使用。
+ */
+public final class Dec64Evaluator {
+    // 乘方只展开不超过这个值的指数，更大的幂很快就会超出56位系数
+    private static final int MAX_EXPONENT = 64;
+    private static final int MAX_FACTORIAL = 20;
+
+    private final Program program;
+    private final long[] constants;
+
+    private Dec64Evaluator(Program program, long[] constants) {
+        this.program = program;
+        this.constants = constants;
+    }
+
+    /**
+     * 为程序创建定点十进制求值器
+     * @param program 后缀程序
+     * @return 求值器，程序含有变量、不支持的运算、π、e或无法精确表示的字面量时返回null
+     */
+    public static Dec64Evaluator compile(Program program) {
+        int[] code = program.getCode();
+        for (int pc = 0; pc < code.length; pc++) {
+            if (code[pc] == Opcodes.INVOKE || code[pc] == Opcodes.VAR
+                    || (code[pc] == Opcodes.CALL && code[pc + 1] != MathFunction.ABS.ordinal())) {
+                return null;
+            }
+            if (Opcodes.hasOperand(code[pc])) {
+                pc++;
+            }
+        }
+
+        double[] values = program.getConstants();
+        String[] literals = program.getLiterals();
+        long[] constants = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            constants[i] = literal(values[i], literals[i]);
+            if (constants[i] == Dec64.NAN) {
+                return null;
+            }
+        }
+        return new Dec64Evaluator(program, constants);
+    }
+
+    /**
+     * 把字面量转换为定点十进制数
+     * @return π、e或无法精确表示的字面量返回 {@link Dec64#NAN}
+     */
+    static long literal(double value, String literal) {
+        if (DecimalEvaluator.isSymbolicConstant(literal) || Double.isNaN(value) || Double.isInfinite(value)) {
+            return Dec64.NAN;
+        }
+        return Dec64.of(DecimalEvaluator.literal(value, literal, null));
+    }
+
+    /**
+     * 执行程序
+     * @return 精确结果，中间结果无法精确表示时返回 {@link Dec64#NAN}
+     * @throws ExpressionException 除数为零或对负整数求阶乘
+     */
+    public long execute() {
+        long[] s = new long[Math.max(1, program.getMaxStackDepth())];
+        long[] temps = new long[program.getTempCount()];
+        int[] code = program.getCode();
+        int sp = 0;
+        EvaluationMeter.charge(code.length);
+
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case Opcodes.CONST:
+                    s[sp++] = constants[code[++pc]];
+                    break;
+                case Opcodes.STORE:
+                    temps[code[++pc]] = s[sp - 1];
+                    break;
+                case Opcodes.LOAD:
+                    s[sp++] = temps[code[++pc]];
+                    break;
+                case Opcodes.CALL:
+                    pc++; // 编译时已确认只有绝对值函数
+                    s[sp - 1] = Dec64.abs(s[sp - 1]);
+                    break;
+                default: {
+                    long right = Opcodes.isBinary(code[pc]) ? s[--sp] : 0;
+                    s[sp - 1] = apply(code[pc], s[sp - 1], right);
+                    break;
+                }
+            }
+            if (s[sp - 1] == Dec64.NAN) {
+                return Dec64.NAN;
+            }
+        }
+
+        if (sp != 1) {
+            throw new ExpressionException("表达式错误");
+        }
+        return s[0];
+    }
+
+    /**
+     * 计算单个运算，供 {@link IncrementalEvaluator} 逐棵子树计算
+     * @param opcode 不带操作数的运算操作码
+     * @param a 左操作数，一元运算的唯一操作数
+     * @param b 右操作数，一元运算时忽略
+     * @return 精确结果，无法精确表示时返回 {@link Dec64#NAN}
+     * @throws ExpressionException 除数为零或对负整数求阶乘
+     */
+    static long apply(int opcode, long a, long b) {
+        switch (opcode) {
+            case Opcodes.ADD:
+                return Dec64.add(a, b);
+            case Opcodes.SUBTRACT:
+                return Dec64.subtract(a, b);
+            case Opcodes.MULTIPLY:
+                return Dec64.multiply(a, b);
+            case Opcodes.DIVIDE:
+                return Dec64.divide(a, b);
+            case Opcodes.MODULO:
+                return Dec64.remainder(a, b);
+            case Opcodes.POWER:
+                return power(a, b);
+            case Opcodes.NEGATE:
+                return Dec64.negate(a);
+            case Opcodes.ABS:
+                return Dec64.abs(a);
+            case Opcodes.SQUARE:
+                return Dec64.multiply(a, a);
+            case Opcodes.FACTORIAL:
+                return factorial(a);
+            default:
+                throw new ExpressionException("未知操作码: " + opcode);
+        }
+    }
+
+    /**
+     * 非负整数次幂，按平方-乘算法计算；负数或非整数指数返回 {@link Dec64#NAN}
+     */
+    private static long power(long base, long exponent) {
+        long n = integerValue(exponent);
+        if (n < 0 || n > MAX_EXPONENT) {
+            return Dec64.NAN;
+        }
+        long result = Dec64.of(1, 0);
+        long square = base;
+        while (true) {
+            if ((n & 1) != 0) {
+                result = Dec64.multiply(result, square);
+            }
+            n >>>= 1;
+            if (n == 0 || result == Dec64.NAN) {
+                return result;
+            }
+            square = Dec64.multiply(square, square);
+        }
+    }
+
+    private static long factorial(long value) {
+        long n = integerValue(value);
+        if (n == Long.MIN_VALUE || n > MAX_FACTORIAL) {
+            return Dec64.NAN;
+        }
+        if (n < 0) {
+            throw new ExpressionException("阶乘不适用于负整数");
+        }
+        long result = 1;
+        for (int i = 2; i <= n; i++) {
+            result *= i;
+        }
+        return Dec64.of(result, 0);
+    }
+
+    /**
+     * 整数值，不是整数或超出范围时返回 Long.MIN_VALUE
+     */
+    private static long integerValue(long value) {
+        long coefficient = Dec64.coefficient(value);
+        int exponent = Dec64.exponent(value);
+        // 规范化的值末尾没有0，指数为负说明有小数部分
+        if (exponent < 0 || exponent > 18) {
+            return coefficient == 0 ? 0 : Long.MIN_VALUE;
+        }
+        long result = coefficient;
+        for (int i = 0; i < exponent; i++) {
+            if (Math.abs(result) > Long.MAX_VALUE / 10) {
+                return Long.MIN_VALUE;
+            }
+            result *= 10;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,201 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * 十进制高精度求值器
+ * 与 {@link Interpreter} 执行同样的后缀程序，操作数换成 {@link BigDecimal}，按上下文的精度舍入。
+ * 数字字面量按原始文本精确转换，0.1 就是十进制的0.1；π和e取当前精度下缓存的值
+ * 没有高精度实现的运算（非整数的阶乘和伽马函数、通过方法句柄绑定的函数）按双精度计算后转换
+ */
+public final class DecimalEvaluator {
+    private static final MathFunction[] FUNCTIONS = MathFunction.values();
+
+    private DecimalEvaluator() {
+    }
+
+    /**
+     * 执行程序
+     * @param program 后缀程序
+     * @param context 求值上下文，使用其中的角度模式和高精度计算的精度
+     * @return 按上下文精度舍入的结果
+     */
+    public static BigDecimal execute(Program program, EvaluationContext context) {
+        MathContext mc = context.getDecimalContext();
+        AngleMode angleMode = context.getAngleMode();
+        BigDecimal[] s = new BigDecimal[Math.max(1, program.getMaxStackDepth())];
+        BigDecimal[] temps = new BigDecimal[program.getTempCount()];
+        int[] code = program.getCode();
+        double[] constants = program.getConstants();
+        String[] literals = program.getLiterals();
+        FunctionDefinition[] callTargets = program.getCallTargets();
+        int[] callArities = program.getCallArities();
+        int sp = 0;
+
+        try {
+            for (int pc = 0; pc < code.length; pc++) {
+                switch (code[pc]) {
+                    case Opcodes.CONST: {
+                        int index = code[++pc];
+                        s[sp++] = literal(constants[index], literals[index], mc);
+                        break;
+                    }
+                    case Opcodes.CALL:
+                        s[sp - 1] = call(FUNCTIONS[code[++pc]], s[sp - 1], angleMode, mc);
+                        break;
+                    case Opcodes.INVOKE: {
+                        int site = code[++pc];
+                        sp -= callArities[site];
+                        s[sp] = invoke(callTargets[site], s, sp, callArities[site], angleMode, mc);
+                        sp++;
+                        break;
+                    }
+                    case Opcodes.STORE:
+                        temps[code[++pc]] = s[sp - 1];
+                        break;
+                    case Opcodes.LOAD:
+                        s[sp++] = temps[code[++pc]];
+                        break;
+                    default: {
+                        BigDecimal right = Opcodes.isBinary(code[pc]) ? s[--sp] : null;
+                        s[sp - 1] = apply(code[pc], s[sp - 1], right, mc);
+                        break;
+                    }
+                }
+                EvaluationMeter.charge(1);
+            }
+        } catch (ArithmeticException e) {
+            // 指数超出BigDecimal的表示范围等
+            throw new ResultOverflowException();
+        }
+
+        if (sp != 1) {
+            throw new ExpressionException("表达式错误");
+        }
+        return s[0].round(mc);
+    }
+
+    /**
+     * 计算单个运算，供 {@link IncrementalEvaluator} 逐棵子树计算
+     * @param opcode 不带操作数的运算操作码
+     * @param a 左操作数，一元运算的唯一操作数
+     * @param b 右操作数，一元运算时忽略
+     * @param mc 精度
+     * @return 按精度舍入的结果
+     * @throws ExpressionException 除数为零、参数超出定义域等
+     */
+    static BigDecimal apply(int opcode, BigDecimal a, BigDecimal b, MathContext mc) {
+        switch (opcode) {
+            case Opcodes.ADD:
+                return a.add(b, mc);
+            case Opcodes.SUBTRACT:
+                return a.subtract(b, mc);
+            case Opcodes.MULTIPLY:
+                return a.multiply(b, mc);
+            case Opcodes.DIVIDE:
+                if (b.signum() == 0) {
+                    throw new ExpressionException("除数不能为零");
+                }
+                return a.divide(b, mc);
+            case Opcodes.MODULO:
+                if (b.signum() == 0) {
+                    throw new ExpressionException("除数不能为零");
+                }
+                // 与double的%一致：结果与被除数同号
+                return a.remainder(b).round(mc);
+            case Opcodes.POWER:
+                return DecimalMath.pow(a, b, mc);
+            case Opcodes.NEGATE:
+                return a.negate();
+            case Opcodes.ABS:
+                return a.abs();
+            case Opcodes.SQUARE:
+                return a.multiply(a, mc);
+            case Opcodes.FACTORIAL:
+                return DecimalMath.factorial(a, mc);
+            default:
+                throw new ExpressionException("未知操作码: " + opcode);
+        }
+    }
+
+    /**
+     * 字面量是否为符号常数π或e（包括带负号的形式）
+     */
+    static boolean isSymbolicConstant(String literal) {
+        if (literal == null) {
+            return false;
+        }
+        String body = literal.startsWith("-") ? literal.substring(1) : literal;
+        return body.equals("π") || body.equals("e");
+    }
+
+    /**
+     * 把字面量转换为BigDecimal，优先使用原始文本
+     */
+    static BigDecimal literal(double value, String literal, MathContext mc) {
+        if (literal == null) {
+            return BigDecimal.valueOf(value);
+        }
+        boolean negative = literal.startsWith("-");
+        String body = negative ? literal.substring(1) : literal;
+        BigDecimal result;
+        if (body.equals("π")) {
+            result = DecimalMath.pi(mc);
+        } else if (body.equals("e")) {
+            result = DecimalMath.e(mc);
+        } else {
+            try {
+                result = new BigDecimal(body);
+            } catch (NumberFormatException e) {
+                // 指数超出BigDecimal的范围：过大时溢出，过小时与double一样下溢为0
+                if (Double.isInfinite(value)) {
+                    throw new ResultOverflowException();
+                }
+                result = BigDecimal.ZERO;
+            }
+        }
+        return negative ? result.negate() : result;
+    }
+
+    static BigDecimal call(MathFunction function, BigDecimal x, AngleMode angleMode, MathContext mc) {
+        switch (function) {
+            case SIN:
+                return DecimalMath.sin(x, angleMode, mc);
+            case COS:
+                return DecimalMath.cos(x, angleMode, mc);
+            case TAN:
+                return DecimalMath.tan(x, angleMode, mc);
+            case ARCSIN:
+                return DecimalMath.asin(x, angleMode, mc);
+            case ARCCOS:
+                return DecimalMath.acos(x, angleMode, mc);
+            case ARCTAN:
+                return DecimalMath.atan(x, angleMode, mc);
+            case LOG10:
+                return DecimalMath.log10(x, mc);
+            case LN:
+                return DecimalMath.ln(x, mc);
+            case SQRT:
+                return DecimalMath.sqrt(x, mc);
+            case ABS:
+                return x.abs();
+            case GAMMA:
+                return DecimalMath.gamma(x, mc);
+            default:
+                throw new ExpressionException("未知函数: " + function.getFunctionName());
+        }
+    }
+
+    /**
+     * 按双精度调用函数，参数为 s[from, from + count)
+     */
+    static BigDecimal invoke(FunctionDefinition function, BigDecimal[] s, int from, int count,
+                                     AngleMode angleMode, MathContext mc) {
+        double[] args = new double[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = s[from + i].doubleValue();
+        }
+        return DecimalMath.fromDouble(function.invoke(args, 0, count, angleMode), mc);
+    }
+}
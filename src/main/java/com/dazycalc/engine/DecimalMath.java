@@ -0,0 +1,493 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 任意精度的数学函数
+ * 所有函数按传入的 MathContext 计算：内部多保留若干位保护位，结果再舍入到目标精度
+ * 常数π、e和ln10按精度缓存，同一精度只计算一次
+ * 级数和迭代的每一步都会扣减当前求值的预算（见 {@link EvaluationMeter}），精度很高时也不会无限制地占用线程
+ */
+public final class DecimalMath {
+    // 内部计算多保留的位数
+    private static final int GUARD_DIGITS = 10;
+    // e^x 的指数超过此值时结果的十进制指数超出int范围（ln10 × Integer.MAX_VALUE）
+    private static final BigDecimal MAX_EXP_ARGUMENT = BigDecimal.valueOf(4_900_000_000L);
+    private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    private static final BigDecimal DEGREES_PER_TURN = BigDecimal.valueOf(360);
+    private static final BigDecimal DEGREES_PER_QUADRANT = BigDecimal.valueOf(90);
+    private static final BigDecimal DEGREES_PER_HALF_TURN = BigDecimal.valueOf(180);
+
+    // 按精度缓存的常数，值比键多保留保护位
+    private static final ConcurrentHashMap<Integer, BigDecimal> PI = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, BigDecimal> E = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, BigDecimal> LN10 = new ConcurrentHashMap<>();
+
+    private DecimalMath() {
+    }
+
+    /**
+     * 圆周率π
+     */
+    public static BigDecimal pi(MathContext mc) {
+        return PI.computeIfAbsent(mc.getPrecision(), DecimalMath::computePi).round(mc);
+    }
+
+    /**
+     * 自然常数e
+     */
+    public static BigDecimal e(MathContext mc) {
+        return E.computeIfAbsent(mc.getPrecision(), DecimalMath::computeE).round(mc);
+    }
+
+    /**
+     * ln10
+     */
+    static BigDecimal ln10(MathContext mc) {
+        return LN10.computeIfAbsent(mc.getPrecision(),
+                precision -> lnNewton(BigDecimal.TEN, new MathContext(precision + GUARD_DIGITS))).round(mc);
+    }
+
+    /**
+     * 指数函数 e^x
+     */
+    public static BigDecimal exp(BigDecimal x, MathContext mc) {
+        if (x.signum() == 0) {
+            return BigDecimal.ONE;
+        }
+        if (x.abs().compareTo(MAX_EXP_ARGUMENT) > 0) {
+            if (x.signum() < 0) {
+                return BigDecimal.ZERO; // 下溢，与双精度一致
+            }
+            throw new ResultOverflowException();
+        }
+        // 先把参数缩小到 |r| <= 1/2，计算泰勒级数后再平方回去；每次平方误差翻倍，需要额外的保护位
+        int halvings = Math.max(0, Math.getExponent(x.abs().doubleValue()) + 2);
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS + halvings * 3 / 10 + 1);
+        BigDecimal r = x.divide(TWO.pow(halvings), work);
+
+        BigDecimal epsilon = BigDecimal.ONE.movePointLeft(work.getPrecision());
+        BigDecimal sum = BigDecimal.ONE;
+        BigDecimal term = BigDecimal.ONE;
+        for (int k = 1; term.abs().compareTo(epsilon) > 0; k++) {
+            term = term.multiply(r, work).divide(BigDecimal.valueOf(k), work);
+            sum = sum.add(term, work);
+            EvaluationMeter.charge(1);
+        }
+        for (int i = 0; i < halvings; i++) {
+            sum = sum.multiply(sum, work);
+            EvaluationMeter.charge(1);
+        }
+        return sum.round(mc);
+    }
+
+    /**
+     * 自然对数
+     */
+    public static BigDecimal ln(BigDecimal x, MathContext mc) {
+        if (x.signum() <= 0) {
+            throw new ExpressionException("对数函数参数必须为正数");
+        }
+        if (x.compareTo(BigDecimal.ONE) == 0) {
+            return BigDecimal.ZERO;
+        }
+        // x = m × 10^k，1 <= m < 10，ln x = ln m + k·ln10
+        int k = x.precision() - x.scale() - 1;
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS + digits(k));
+        BigDecimal m = x.movePointLeft(k);
+        BigDecimal result = lnNewton(m, work);
+        if (k != 0) {
+            result = result.add(ln10(work).multiply(BigDecimal.valueOf(k), work), work);
+        }
+        return result.round(mc);
+    }
+
+    /**
+     * 常用对数
+     */
+    public static BigDecimal log10(BigDecimal x, MathContext mc) {
+        if (x.signum() <= 0) {
+            throw new ExpressionException("对数函数参数必须为正数");
+        }
+        // 10的整数次幂直接得到精确结果
+        BigDecimal stripped = x.stripTrailingZeros();
+        if (stripped.unscaledValue().equals(BigInteger.ONE)) {
+            return BigDecimal.valueOf(-(long) stripped.scale());
+        }
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS);
+        return ln(x, work).divide(ln10(work), mc);
+    }
+
+    /**
+     * 平方根
+     */
+    public static BigDecimal sqrt(BigDecimal x, MathContext mc) {
+        if (x.signum() < 0) {
+            throw new ExpressionException("平方根函数参数必须为非负数");
+        }
+        return x.sqrt(mc);
+    }
+
+    /**
+     * 幂运算 x^y，整数指数用BigDecimal的乘方，其余按 e^(y·ln x) 计算
+     */
+    public static BigDecimal pow(BigDecimal x, BigDecimal y, MathContext mc) {
+        boolean integerExponent = isInteger(y);
+        if (integerExponent && y.abs().compareTo(BigDecimal.valueOf(999_999_999)) <= 0) {
+            if (x.signum() == 0 && y.signum() < 0) {
+                throw new ExpressionException("除数不能为零");
+            }
+            return x.pow(y.intValueExact(), mc);
+        }
+        if (x.signum() == 0) {
+            if (y.signum() < 0) {
+                throw new ExpressionException("除数不能为零");
+            }
+            return BigDecimal.ZERO;
+        }
+        if (x.signum() < 0 && !integerExponent) {
+            throw new ExpressionException("计算结果无效");
+        }
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS);
+        BigDecimal exponent = y.multiply(ln(x.abs(), work), work);
+        // 结果的相对误差约等于指数的绝对误差，指数的整数部分越长，计算ln时需要的位数越多
+        int integerDigits = exponent.precision() - exponent.scale();
+        if (integerDigits > 0) {
+            work = new MathContext(work.getPrecision() + integerDigits);
+            exponent = y.multiply(ln(x.abs(), work), work);
+        }
+        BigDecimal result = exp(exponent, work);
+        // 负数的奇数次幂为负
+        if (x.signum() < 0 && y.toBigInteger().testBit(0)) {
+            result = result.negate();
+        }
+        return result.round(mc);
+    }
+
+    /**
+     * 正弦函数
+     */
+    public static BigDecimal sin(BigDecimal x, AngleMode angleMode, MathContext mc) {
+        if (angleMode == AngleMode.DEGREE) {
+            // 先在十进制下精确地对360取模，90的整数倍直接给出精确结果
+            BigDecimal degrees = x.remainder(DEGREES_PER_TURN);
+            if (isQuadrant(degrees)) {
+                return quadrantValue(degrees, 0);
+            }
+            return sinRadians(toRadians(degrees, mc), mc);
+        }
+        return sinRadians(x, mc);
+    }
+
+    /**
+     * 余弦函数
+     */
+    public static BigDecimal cos(BigDecimal x, AngleMode angleMode, MathContext mc) {
+        if (angleMode == AngleMode.DEGREE) {
+            BigDecimal degrees = x.remainder(DEGREES_PER_TURN);
+            if (isQuadrant(degrees)) {
+                return quadrantValue(degrees, 1);
+            }
+            return cosRadians(toRadians(degrees, mc), mc);
+        }
+        return cosRadians(x, mc);
+    }
+
+    /**
+     * 正切函数
+     */
+    public static BigDecimal tan(BigDecimal x, AngleMode angleMode, MathContext mc) {
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS);
+        BigDecimal cos = cos(x, angleMode, work);
+        if (cos.signum() == 0) {
+            throw new ExpressionException("正切函数在此处无定义");
+        }
+        return sin(x, angleMode, work).divide(cos, mc);
+    }
+
+    /**
+     * 反正切函数
+     */
+    public static BigDecimal atan(BigDecimal x, AngleMode angleMode, MathContext mc) {
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS);
+        return fromRadians(atanRadians(x, work), angleMode, mc);
+    }
+
+    /**
+     * 反正弦函数
+     */
+    public static BigDecimal asin(BigDecimal x, AngleMode angleMode, MathContext mc) {
+        if (x.abs().compareTo(BigDecimal.ONE) > 0) {
+            throw new ExpressionException("反正弦函数参数必须在[-1,1]之间");
+        }
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS);
+        return fromRadians(asinRadians(x, work), angleMode, mc);
+    }
+
+    /**
+     * 反余弦函数
+     */
+    public static BigDecimal acos(BigDecimal x, AngleMode angleMode, MathContext mc) {
+        if (x.abs().compareTo(BigDecimal.ONE) > 0) {
+            throw new ExpressionException("反余弦函数参数必须在[-1,1]之间");
+        }
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS);
+        BigDecimal halfPi = pi(work).divide(TWO, work);
+        return fromRadians(halfPi.subtract(asinRadians(x, work), work), angleMode, mc);
+    }
+
+    /**
+     * 阶乘，整数逐项相乘，非整数按双精度的伽马函数计算
+     */
+    public static BigDecimal factorial(BigDecimal x, MathContext mc) {
+        if (!isInteger(x)) {
+            return fromDouble(Kernels.factorial(x.doubleValue()), mc);
+        }
+        if (x.signum() < 0) {
+            throw new ExpressionException("阶乘不适用于负整数");
+        }
+        if (x.compareTo(MAX_LONG) > 0) {
+            // 参数超出long范围时结果远超BigDecimal的指数范围，longValue() 也只会保留低64位
+            throw new ResultOverflowException();
+        }
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS);
+        long n = x.longValue();
+        BigDecimal result = BigDecimal.ONE;
+        for (long k = 2; k <= n; k++) {
+            result = result.multiply(BigDecimal.valueOf(k), work);
+            EvaluationMeter.charge(1);
+        }
+        return result.round(mc);
+    }
+
+    /**
+     * 伽马函数，正整数按阶乘精确计算，其余按双精度计算
+     */
+    public static BigDecimal gamma(BigDecimal x, MathContext mc) {
+        if (isInteger(x) && x.signum() > 0) {
+            return factorial(x.subtract(BigDecimal.ONE), mc);
+        }
+        return fromDouble(Kernels.gamma(x.doubleValue()), mc);
+    }
+
+    /**
+     * 把双精度内核的结果转换为BigDecimal，无穷大和NaN无法表示
+     */
+    static BigDecimal fromDouble(double value, MathContext mc) {
+        if (Double.isNaN(value)) {
+            throw new ExpressionException("计算结果无效");
+        }
+        if (Double.isInfinite(value)) {
+            throw new ResultOverflowException();
+        }
+        return new BigDecimal(value, mc);
+    }
+
+    /**
+     * 是否为整数
+     */
+    static boolean isInteger(BigDecimal x) {
+        return x.signum() == 0 || x.stripTrailingZeros().scale() <= 0;
+    }
+
+    private static BigDecimal sinRadians(BigDecimal x, MathContext mc) {
+        MathContext work = reductionContext(x, mc);
+        BigDecimal r = reduce(x, work);
+        // sin r = r - r³/3! + r⁵/5! - ...
+        BigDecimal epsilon = BigDecimal.ONE.movePointLeft(work.getPrecision());
+        BigDecimal square = r.multiply(r, work);
+        BigDecimal term = r;
+        BigDecimal sum = r;
+        for (int k = 1; term.abs().compareTo(epsilon) > 0; k++) {
+            term = term.multiply(square, work).divide(BigDecimal.valueOf((2L * k) * (2L * k + 1)), work).negate();
+            sum = sum.add(term, work);
+            EvaluationMeter.charge(1);
+        }
+        return sum.round(mc);
+    }
+
+    private static BigDecimal cosRadians(BigDecimal x, MathContext mc) {
+        MathContext work = reductionContext(x, mc);
+        BigDecimal r = reduce(x, work);
+        // cos r = 1 - r²/2! + r⁴/4! - ...
+        BigDecimal epsilon = BigDecimal.ONE.movePointLeft(work.getPrecision());
+        BigDecimal square = r.multiply(r, work);
+        BigDecimal term = BigDecimal.ONE;
+        BigDecimal sum = BigDecimal.ONE;
+        for (int k = 1; term.abs().compareTo(epsilon) > 0; k++) {
+            term = term.multiply(square, work).divide(BigDecimal.valueOf((2L * k - 1) * (2L * k)), work).negate();
+            sum = sum.add(term, work);
+            EvaluationMeter.charge(1);
+        }
+        return sum.round(mc);
+    }
+
+    /**
+     * 参数很大时，对2π取模会损失与整数部分位数相当的有效数字，需要相应增加精度
+     */
+    private static MathContext reductionContext(BigDecimal x, MathContext mc) {
+        int integerDigits = Math.max(0, x.precision() - x.scale());
+        return new MathContext(mc.getPrecision() + GUARD_DIGITS + integerDigits);
+    }
+
+    /**
+     * 把弧度参数约化到 [-π, π]
+     */
+    private static BigDecimal reduce(BigDecimal x, MathContext work) {
+        BigDecimal pi = pi(work);
+        BigDecimal twoPi = pi.multiply(TWO);
+        BigDecimal r = x.remainder(twoPi, work);
+        if (r.compareTo(pi) > 0) {
+            r = r.subtract(twoPi, work);
+        } else if (r.compareTo(pi.negate()) < 0) {
+            r = r.add(twoPi, work);
+        }
+        return r;
+    }
+
+    private static boolean isQuadrant(BigDecimal degrees) {
+        return isInteger(degrees) && degrees.remainder(DEGREES_PER_QUADRANT).signum() == 0;
+    }
+
+    /**
+     * 90°整数倍处的精确正弦（shift为0）或余弦（shift为1）值
+     */
+    private static BigDecimal quadrantValue(BigDecimal degrees, int shift) {
+        int quadrant = Math.floorMod(degrees.divide(DEGREES_PER_QUADRANT).intValue() + shift, 4);
+        switch (quadrant) {
+            case 1:
+                return BigDecimal.ONE;
+            case 3:
+                return BigDecimal.ONE.negate();
+            default:
+                return BigDecimal.ZERO;
+        }
+    }
+
+    private static BigDecimal toRadians(BigDecimal degrees, MathContext mc) {
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS);
+        return degrees.multiply(pi(work), work).divide(DEGREES_PER_HALF_TURN, work);
+    }
+
+    private static BigDecimal fromRadians(BigDecimal radians, AngleMode angleMode, MathContext mc) {
+        if (angleMode == AngleMode.RADIAN) {
+            return radians.round(mc);
+        }
+        MathContext work = new MathContext(mc.getPrecision() + GUARD_DIGITS);
+        return radians.multiply(DEGREES_PER_HALF_TURN, work).divide(pi(work), mc);
+    }
+
+    private static BigDecimal asinRadians(BigDecimal x, MathContext work) {
+        if (x.abs().compareTo(BigDecimal.ONE) == 0) {
+            BigDecimal halfPi = pi(work).divide(TWO, work);
+            return x.signum() > 0 ? halfPi : halfPi.negate();
+        }
+        // asin x = atan(x / √(1-x²))
+        BigDecimal cos = BigDecimal.ONE.subtract(x.multiply(x, work), work).sqrt(work);
+        return atanRadians(x.divide(cos, work), work);
+    }
+
+    private static BigDecimal atanRadians(BigDecimal x, MathContext work) {
+        if (x.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        if (x.signum() < 0) {
+            return atanRadians(x.negate(), work).negate();
+        }
+        if (x.compareTo(BigDecimal.ONE) > 0) {
+            // atan x = π/2 - atan(1/x)
+            BigDecimal halfPi = pi(work).divide(TWO, work);
+            return halfPi.subtract(atanRadians(BigDecimal.ONE.divide(x, work), work), work);
+        }
+        // 用 atan x = 2·atan(x / (1 + √(1+x²))) 把参数缩小三次，再计算泰勒级数
+        int halvings = 3;
+        for (int i = 0; i < halvings; i++) {
+            BigDecimal root = BigDecimal.ONE.add(x.multiply(x, work), work).sqrt(work);
+            x = x.divide(BigDecimal.ONE.add(root, work), work);
+        }
+        BigDecimal epsilon = BigDecimal.ONE.movePointLeft(work.getPrecision());
+        BigDecimal square = x.multiply(x, work);
+        BigDecimal power = x;
+        BigDecimal sum = x;
+        for (int k = 1; power.abs().compareTo(epsilon) > 0; k++) {
+            power = power.multiply(square, work).negate();
+            sum = sum.add(power.divide(BigDecimal.valueOf(2L * k + 1), work), work);
+            EvaluationMeter.charge(1);
+        }
+        return sum.multiply(BigDecimal.valueOf(1L << halvings), work);
+    }
+
+    /**
+     * 用Halley迭代 y ← y + 2(m - e^y)/(m + e^y) 求 ln m，初值取双精度结果，每次迭代有效位数约变为三倍
+     */
+    private static BigDecimal lnNewton(BigDecimal m, MathContext work) {
+        BigDecimal epsilon = BigDecimal.ONE.movePointLeft(work.getPrecision());
+        BigDecimal y = new BigDecimal(Math.log(m.doubleValue()), work);
+        for (int i = 0; i < 64; i++) {
+            BigDecimal power = exp(y, work);
+            BigDecimal delta = TWO.multiply(m.subtract(power, work), work).divide(m.add(power, work), work);
+            y = y.add(delta, work);
+            EvaluationMeter.charge(1);
+            // 修正量小于绝对误差限，或只剩e^y的舍入误差（不超过y末位的几倍）时收敛；
+            // 只按绝对误差判断时 |y| >= 0.1 的修正量永远达不到误差限，每次都会跑满全部迭代
+            BigDecimal tolerance = epsilon.max(y.abs().movePointLeft(work.getPrecision() - 2));
+            if (delta.abs().compareTo(tolerance) <= 0) {
+                break;
+            }
+        }
+        return y;
+    }
+
+    /**
+     * 用Machin公式 π = 16·atan(1/5) - 4·atan(1/239) 计算π
+     */
+    private static BigDecimal computePi(int precision) {
+        MathContext work = new MathContext(precision + GUARD_DIGITS);
+        BigDecimal a = atanInverse(5, work).multiply(BigDecimal.valueOf(16), work);
+        BigDecimal b = atanInverse(239, work).multiply(BigDecimal.valueOf(4), work);
+        return a.subtract(b, work);
+    }
+
+    /**
+     * atan(1/n) = 1/n - 1/(3n³) + 1/(5n⁵) - ...
+     */
+    private static BigDecimal atanInverse(int n, MathContext work) {
+        BigDecimal epsilon = BigDecimal.ONE.movePointLeft(work.getPrecision() + 1);
+        BigDecimal nSquared = BigDecimal.valueOf((long) n * n);
+        BigDecimal power = BigDecimal.ONE.divide(BigDecimal.valueOf(n), work);
+        BigDecimal sum = power;
+        for (int k = 1; power.compareTo(epsilon) > 0; k++) {
+            power = power.divide(nSquared, work);
+            BigDecimal term = power.divide(BigDecimal.valueOf(2L * k + 1), work);
+            sum = (k & 1) == 1 ? sum.subtract(term, work) : sum.add(term, work);
+        }
+        return sum;
+    }
+
+    /**
+     * e = Σ 1/k!
+     */
+    private static BigDecimal computeE(int precision) {
+        MathContext work = new MathContext(precision + GUARD_DIGITS);
+        BigDecimal epsilon = BigDecimal.ONE.movePointLeft(work.getPrecision() + 1);
+        BigDecimal term = BigDecimal.ONE;
+        BigDecimal sum = BigDecimal.ONE;
+        for (int k = 1; term.compareTo(epsilon) > 0; k++) {
+            term = term.divide(BigDecimal.valueOf(k), work);
+            sum = sum.add(term, work);
+        }
+        return sum;
+    }
+
+    /**
+     * 整数的十进制位数
+     */
+    private static int digits(long value) {
+        return value == 0 ? 1 : (int) Math.log10(Math.abs((double) value)) + 1;
+    }
+}
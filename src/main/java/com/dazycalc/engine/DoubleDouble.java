@@ -0,0 +1,579 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * 双倍精度浮点数（double-double）
+ * 用两个double的未求值和 hi + lo 表示一个数，|lo| 不超过 hi 最低位的一半，约有106位二进制有效位（约31位十进制）。
+ * 基本运算使用无误差变换（two-sum、基于FMA的two-product），开销只是double的几倍。
+ * 不可变对象，可以在多个线程之间共享
+ */
+public final class DoubleDouble {
+    /** 十进制有效位数，转换为BigDecimal时按此舍入 */
+    public static final int DIGITS = 31;
+
+    public static final DoubleDouble ZERO = new DoubleDouble(0, 0);
+    public static final DoubleDouble ONE = new DoubleDouble(1, 0);
+    public static final DoubleDouble PI = valueOf(new BigDecimal("3.14159265358979323846264338327950288419716939937511"));
+    public static final DoubleDouble E = valueOf(new BigDecimal("2.71828182845904523536028747135266249775724709369996"));
+    public static final DoubleDouble LN2 = valueOf(new BigDecimal("0.693147180559945309417232121458176568075500134360255"));
+    public static final DoubleDouble LN10 = valueOf(new BigDecimal("2.30258509299404568401799145468436420760110148862877"));
+
+    private static final DoubleDouble HALF_PI = PI.scalb(-1);
+    // π/2 减去 HALF_PI 后的剩余部分，三段合起来约160位，约化时误差不随倍数放大
+    private static final double HALF_PI_TAIL = new BigDecimal("1.57079632679489661923132169163975144209858469968755")
+            .subtract(new BigDecimal(HALF_PI.hi)).subtract(new BigDecimal(HALF_PI.lo)).doubleValue();
+    // |x| 超过它时改为十进制精确约化；倍数超过2^53后 n 与 π/2 各段的乘积不再精确，余数完全错误
+    private static final double MAX_FAST_REDUCTION = 0x1p40;
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+    private static final BigDecimal DEGREES_PER_QUADRANT = BigDecimal.valueOf(90);
+    private static final DoubleDouble RADIANS_PER_DEGREE = PI.divide(new DoubleDouble(180, 0));
+    private static final MathContext DIGITS_CONTEXT = new MathContext(DIGITS, RoundingMode.HALF_EVEN);
+    // |hi| 小于它时 lo 是非规格化数或零，精度不足106位
+    private static final double MIN_FULL_PRECISION = 0x1p-969;
+
+    // 1/n!，泰勒级数的系数；|r| ≤ π/4 时30项足够收敛到双倍精度
+    private static final DoubleDouble[] INVERSE_FACTORIALS = new DoubleDouble[30];
+
+    static {
+        BigDecimal factorial = BigDecimal.ONE;
+        for (int n = 0; n < INVERSE_FACTORIALS.length; n++) {
+            if (n > 0) {
+                factorial = factorial.multiply(BigDecimal.valueOf(n));
+            }
+            INVERSE_FACTORIALS[n] = valueOf(BigDecimal.ONE.divide(factorial, new MathContext(40)));
+        }
+    }
+    // 机器精度 2^-104
+    private static final double EPSILON = 0x1p-104;
+    // e^x 的参数在缩小到 |r| ≤ ln2/2 后再除以 2^EXP_HALVINGS，级数收敛更快
+    private static final int EXP_HALVINGS = 9;
+    // 整数次幂按平方-乘算法计算的最大指数
+    private static final double MAX_INTEGER_EXPONENT = 1 << 30;
+    private static final int MAX_FACTORIAL = 170;
+
+    private final double hi;
+    private final double lo;
+
+    private DoubleDouble(double hi, double lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    /**
+     * 由double构造
+     */
+    public static DoubleDouble valueOf(double value) {
+        return new DoubleDouble(value, 0);
+    }
+
+    /**
+     * 由BigDecimal构造，取最接近的双倍精度值
+     */
+    public static DoubleDouble valueOf(BigDecimal value) {
+        double hi = value.doubleValue();
+        if (Double.isInfinite(hi)) {
+            return new DoubleDouble(hi, 0);
+        }
+        double lo = value.subtract(new BigDecimal(hi)).doubleValue();
+        return quickTwoSum(hi, lo);
+    }
+
+    /**
+     * 高位部分
+     */
+    public double hi() {
+        return hi;
+    }
+
+    /**
+     * 低位部分
+     */
+    public double lo() {
+        return lo;
+    }
+
+    /**
+     * 最接近的double值
+     */
+    public double doubleValue() {
+        return hi + lo;
+    }
+
+    /**
+     * 是否为有限值
+     */
+    public boolean isFinite() {
+        return Double.isFinite(hi);
+    }
+
+    /**
+     * 符号，负数返回-1，零返回0，正数返回1
+     */
+    public int signum() {
+        return hi > 0 ? 1 : hi < 0 ? -1 : 0;
+    }
+
+    /**
+     * 转换为 {@link #DIGITS} 位有效数字的BigDecimal
+     * hi 和 lo 都精确转换为十进制后相加，再按银行家舍入取 {@link #DIGITS} 位，结果是精确值正确舍入后的结果。
+     * 溢出边缘 lo 可能不是有限值，此时只取 hi；
+     * |hi| 很小、lo 落入非规格化数范围时已没有双倍精度，按 hi 的最短十进制表示转换，与双精度模式的结果相同
+     * @throws ExpressionException 不是有限值
+     */
+    public BigDecimal toBigDecimal() {
+        if (!isFinite()) {
+            throw new ResultOverflowException();
+        }
+        if (hi == 0) {
+            return BigDecimal.ZERO;
+        }
+        if (Math.abs(hi) < MIN_FULL_PRECISION) {
+            return new BigDecimal(Double.toString(hi));
+        }
+        BigDecimal exact = new BigDecimal(hi);
+        if (lo != 0 && Double.isFinite(lo)) {
+            exact = exact.add(new BigDecimal(lo));
+        }
+        return exact.round(DIGITS_CONTEXT);
+    }
+
+    // ---- 无误差变换 ----
+
+    /**
+     * 已知 |a| ≥ |b| 时求 a + b 的精确和
+     */
+    private static DoubleDouble quickTwoSum(double a, double b) {
+        double s = a + b;
+        if (!Double.isFinite(s)) {
+            return new DoubleDouble(s, 0);
+        }
+        return new DoubleDouble(s, b - (s - a));
+    }
+
+    // ---- 基本运算 ----
+
+    public DoubleDouble add(DoubleDouble other) {
+        // two-sum 分别求高位和低位之和，再合并误差
+        double s = hi + other.hi;
+        double v = s - hi;
+        double e = (hi - (s - v)) + (other.hi - v);
+        double t = lo + other.lo;
+        double w = t - lo;
+        double f = (lo - (t - w)) + (other.lo - w);
+        e += t;
+        double h = s + e;
+        e = e - (h - s);
+        e += f;
+        return quickTwoSum(h, e);
+    }
+
+    public DoubleDouble subtract(DoubleDouble other) {
+        return add(other.negate());
+    }
+
+    public DoubleDouble multiply(DoubleDouble other) {
+        double p = hi * other.hi;
+        // FMA 得到 hi × other.hi 的精确舍入误差
+        double e = Math.fma(hi, other.hi, -p);
+        e += hi * other.lo + lo * other.hi;
+        return quickTwoSum(p, e);
+    }
+
+    public DoubleDouble multiply(double other) {
+        double p = hi * other;
+        double e = Math.fma(hi, other, -p) + lo * other;
+        return quickTwoSum(p, e);
+    }
+
+    /**
+     * 除法，先用double求商的近似值，再用两次余数修正
+     * @throws ExpressionException 除数为零
+     */
+    public DoubleDouble divide(DoubleDouble other) {
+        if (other.hi == 0) {
+            throw new ExpressionException("除数不能为零");
+        }
+        double q1 = hi / other.hi;
+        DoubleDouble r = subtract(other.multiply(q1));
+        double q2 = r.hi / other.hi;
+        r = r.subtract(other.multiply(q2));
+        double q3 = r.hi / other.hi;
+        return quickTwoSum(q1, q2).add(new DoubleDouble(q3, 0));
+    }
+
+    /**
+     * 取余，结果与被除数同号（与double的%一致）
+     * @throws ExpressionException 除数为零
+     */
+    public DoubleDouble remainder(DoubleDouble other) {
+        DoubleDouble quotient = divide(other);
+        DoubleDouble truncated = quotient.truncate();
+        DoubleDouble result = subtract(other.multiply(truncated));
+        // 商的舍入可能让整数部分多算一，修正到与被除数同号且小于除数
+        if (result.signum() != 0 && result.signum() != signum()) {
+            result = result.add(signum() == other.signum() ? other : other.negate());
+        }
+        return result;
+    }
+
+    public DoubleDouble negate() {
+        return new DoubleDouble(-hi, -lo);
+    }
+
+    public DoubleDouble abs() {
+        return hi < 0 ? negate() : this;
+    }
+
+    /**
+     * 乘以 2^n，精确
+     */
+    public DoubleDouble scalb(int n) {
+        return new DoubleDouble(Math.scalb(hi, n), Math.scalb(lo, n));
+    }
+
+    /**
+     * 向零取整
+     */
+    public DoubleDouble truncate() {
+        return hi >= 0 ? floor() : negate().floor().negate();
+    }
+
+    /**
+     * 向下取整
+     */
+    public DoubleDouble floor() {
+        double h = Math.floor(hi);
+        if (h != hi) {
+            return new DoubleDouble(h, 0);
+        }
+        return quickTwoSum(h, Math.floor(lo));
+    }
+
+    /**
+     * 是否为整数
+     */
+    public boolean isInteger() {
+        return Math.rint(hi) == hi && Math.rint(lo) == lo;
+    }
+
+    // ---- 数学函数 ----
+
+    /**
+     * 平方根，一次牛顿迭代把double的近似值修正到双倍精度
+     * @throws ExpressionException 参数为负数
+     */
+    public static DoubleDouble sqrt(DoubleDouble x) {
+        if (x.hi < 0) {
+            throw new ExpressionException("平方根函数参数必须为非负数");
+        }
+        if (x.hi == 0 || !x.isFinite()) {
+            return x;
+        }
+        double approx = Math.sqrt(x.hi);
+        DoubleDouble a = valueOf(approx);
+        // sqrt(x) ≈ a + (x - a²) / 2a
+        return a.add(valueOf(x.subtract(a.multiply(a)).hi / (2 * approx)));
+    }
+
+    /**
+     * 指数函数 e^x
+     */
+    public static DoubleDouble exp(DoubleDouble x) {
+        if (x.hi > 709.8) {
+            return new DoubleDouble(Double.POSITIVE_INFINITY, 0);
+        }
+        if (x.hi < -745.2) {
+            return ZERO;
+        }
+        if (x.hi == 0) {
+            return ONE;
+        }
+        // x = k·ln2 + r，再把r缩小 2^EXP_HALVINGS 倍，求 e^r - 1 后反复平方还原
+        double k = Math.rint(x.hi / LN2.hi);
+        DoubleDouble r = x.subtract(LN2.multiply(k)).scalb(-EXP_HALVINGS);
+        DoubleDouble power = r;
+        DoubleDouble sum = r;
+        for (int n = 2; n < INVERSE_FACTORIALS.length; n++) {
+            power = power.multiply(r);
+            DoubleDouble term = power.multiply(INVERSE_FACTORIALS[n]);
+            sum = sum.add(term);
+            if (Math.abs(term.hi) <= EPSILON * Math.abs(sum.hi)) {
+                break;
+            }
+        }
+        // e^(2r) - 1 = (e^r - 1)² + 2(e^r - 1)
+        for (int i = 0; i < EXP_HALVINGS; i++) {
+            sum = sum.multiply(sum).add(sum.scalb(1));
+        }
+        DoubleDouble result = sum.add(ONE);
+        // 2^k 分两步乘，避免结果接近下溢时 2^k 本身溢出
+        int half = (int) k / 2;
+        return result.scalb(half).scalb((int) k - half);
+    }
+
+    /**
+     * 自然对数，从double的近似值出发做一次牛顿迭代：y ← y + x·e^(-y) - 1
+     * @throws ExpressionException 参数不为正数
+     */
+    public static DoubleDouble ln(DoubleDouble x) {
+        if (x.hi <= 0) {
+            throw new ExpressionException("对数函数参数必须为正数");
+        }
+        if (x.hi == 1 && x.lo == 0) {
+            return ZERO;
+        }
+        // x = m·2^k，1 ≤ m < 2，避免 e^(-y) 接近下溢时低位部分丢失精度
+        int k = Math.getExponent(x.hi);
+        DoubleDouble m = x.scalb(-k);
+        DoubleDouble y = valueOf(Math.log(m.hi));
+        y = y.add(m.multiply(exp(y.negate()))).subtract(ONE);
+        return k == 0 ? y : y.add(LN2.multiply(k));
+    }
+
+    /**
+     * 常用对数
+     * @throws ExpressionException 参数不为正数
+     */
+    public static DoubleDouble log10(DoubleDouble x) {
+        DoubleDouble result = ln(x).divide(LN10);
+        // 10的整数次幂返回精确的整数
+        double rounded = Math.rint(result.hi);
+        if (rounded >= 0 && Math.abs(result.hi - rounded) < 1e-25
+                && x.equals(powInteger(valueOf(10), (long) rounded))) {
+            return valueOf(rounded);
+        }
+        return result;
+    }
+
+    /**
+     * 幂运算 x^y，整数指数按平方-乘算法计算，其余按 e^(y·ln x) 计算
+     * @throws ExpressionException 0的负数次幂，或负数的非整数次幂
+     */
+    public static DoubleDouble pow(DoubleDouble x, DoubleDouble y) {
+        boolean integerExponent = y.isInteger();
+        if (x.hi == 0) {
+            if (y.hi < 0) {
+                throw new ExpressionException("除数不能为零");
+            }
+            return y.hi == 0 ? ONE : ZERO;
+        }
+        if (integerExponent && Math.abs(y.hi) <= MAX_INTEGER_EXPONENT) {
+            long n = (long) Math.abs(y.hi);
+            if (y.hi >= 0) {
+                return powInteger(x, n);
+            }
+            DoubleDouble result = ONE.divide(powInteger(x, n));
+            // x^n 溢出时结果可能仍在非规格化数范围内，改为先取倒数再求幂
+            return result.isFinite() ? result : powInteger(ONE.divide(x), n);
+        }
+        if (x.hi < 0 && !integerExponent) {
+            throw new ExpressionException("计算结果无效");
+        }
+        DoubleDouble result = exp(y.multiply(ln(x.abs())));
+        // 负数的奇数次幂为负
+        if (x.hi < 0 && Math.abs(y.hi) < 0x1p53 && ((long) y.hi & 1) != 0) {
+            result = result.negate();
+        }
+        return result;
+    }
+
+    private static DoubleDouble powInteger(DoubleDouble x, long n) {
+        DoubleDouble result = ONE;
+        DoubleDouble square = x;
+        while (n > 0) {
+            if ((n & 1) != 0) {
+                result = result.multiply(square);
+            }
+            n >>>= 1;
+            if (n > 0) {
+                square = square.multiply(square);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 正弦函数
+     */
+    public static DoubleDouble sin(DoubleDouble x, AngleMode angleMode) {
+        return sinCos(x, angleMode, 0);
+    }
+
+    /**
+     * 余弦函数
+     */
+    public static DoubleDouble cos(DoubleDouble x, AngleMode angleMode) {
+        return sinCos(x, angleMode, 1);
+    }
+
+    /**
+     * 正切函数
+     * @throws ExpressionException 余弦为0
+     */
+    public static DoubleDouble tan(DoubleDouble x, AngleMode angleMode) {
+        DoubleDouble cos = cos(x, angleMode);
+        if (cos.hi == 0) {
+            throw new ExpressionException("正切函数在此处无定义");
+        }
+        return sin(x, angleMode).divide(cos);
+    }
+
+    /**
+     * 把参数化为 x = n·(π/2) + r，|r| ≤ π/4，再按 n mod 4 选择 ±sin(r) 或 ±cos(r)
+     * 角度制下先按90°精确地约化，90°的整数倍得到精确的0和±1
+     * @param shift 0表示正弦，1表示余弦（cos x = sin(x + π/2)）
+     */
+    private static DoubleDouble sinCos(DoubleDouble x, AngleMode angleMode, int shift) {
+        if (!x.isFinite()) {
+            throw new ExpressionException("计算结果无效");
+        }
+        if (Math.abs(x.hi) > MAX_FAST_REDUCTION) {
+            return sinCosLarge(x, angleMode, shift);
+        }
+        double n;
+        DoubleDouble r;
+        if (angleMode == AngleMode.DEGREE) {
+            n = Math.rint(x.hi / 90);
+            r = x.subtract(valueOf(90).multiply(n)).multiply(RADIANS_PER_DEGREE);
+        } else {
+            n = Math.rint(x.hi / HALF_PI.hi);
+            // n 与每一段的乘积都精确地表示为双倍精度数
+            r = x.subtract(valueOf(HALF_PI.hi).multiply(n))
+                    .subtract(valueOf(HALF_PI.lo).multiply(n))
+                    .subtract(valueOf(HALF_PI_TAIL).multiply(n));
+        }
+        return sinCosReduced((int) (((long) (n % 4) + 4 + shift) % 4), r);
+    }
+
+    /**
+     * 参数很大时在十进制下精确约化：hi + lo 精确转换为BigDecimal，弧度制下π/2取到比整数部分多 2×DIGITS 位，
+     * 参数即使非常接近π/2的整数倍，余数也有完整的双倍精度
+     */
+    private static DoubleDouble sinCosLarge(DoubleDouble x, AngleMode angleMode, int shift) {
+        BigDecimal exact = new BigDecimal(x.hi).add(new BigDecimal(x.lo));
+        BigDecimal period;
+        if (angleMode == AngleMode.DEGREE) {
+            period = DEGREES_PER_QUADRANT;
+        } else {
+            int integerDigits = exact.precision() - exact.scale();
+            period = DecimalMath.pi(new MathContext(integerDigits + 2 * DIGITS)).multiply(HALF);
+        }
+        BigDecimal[] division = exact.divideAndRemainder(period);
+        BigInteger n = division[0].toBigInteger();
+        BigDecimal remainder = division[1];
+        // 取最近的整数倍，使余数不超过半个周期
+        BigDecimal half = period.multiply(HALF);
+        if (remainder.compareTo(half) > 0) {
+            n = n.add(BigInteger.ONE);
+            remainder = remainder.subtract(period);
+        } else if (remainder.compareTo(half.negate()) < 0) {
+            n = n.subtract(BigInteger.ONE);
+            remainder = remainder.add(period);
+        }
+        DoubleDouble r = valueOf(remainder);
+        if (angleMode == AngleMode.DEGREE) {
+            r = r.multiply(RADIANS_PER_DEGREE);
+        }
+        // 补码的最低两位就是 n mod 4
+        return sinCosReduced((n.intValue() + shift) & 3, r);
+    }
+
+    /**
+     * 按象限选择 ±sin(r) 或 ±cos(r)
+     */
+    private static DoubleDouble sinCosReduced(int quadrant, DoubleDouble r) {
+        switch (quadrant) {
+            case 0:
+                return sinTaylor(r);
+            case 1:
+                return cosTaylor(r);
+            case 2:
+                return sinTaylor(r).negate();
+            default:
+                return cosTaylor(r).negate();
+        }
+    }
+
+    /**
+     * |r| ≤ π/4 时按泰勒级数计算 sin r
+     */
+    private static DoubleDouble sinTaylor(DoubleDouble r) {
+        if (r.hi == 0) {
+            return ZERO;
+        }
+        DoubleDouble r2 = r.multiply(r).negate();
+        DoubleDouble power = r;
+        DoubleDouble sum = r;
+        for (int n = 3; n < INVERSE_FACTORIALS.length; n += 2) {
+            power = power.multiply(r2);
+            DoubleDouble term = power.multiply(INVERSE_FACTORIALS[n]);
+            sum = sum.add(term);
+            if (Math.abs(term.hi) <= EPSILON * Math.abs(sum.hi)) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * |r| ≤ π/4 时按泰勒级数计算 cos r
+     */
+    private static DoubleDouble cosTaylor(DoubleDouble r) {
+        if (r.hi == 0) {
+            return ONE;
+        }
+        DoubleDouble r2 = r.multiply(r).negate();
+        DoubleDouble power = ONE;
+        DoubleDouble sum = ONE;
+        for (int n = 2; n < INVERSE_FACTORIALS.length; n += 2) {
+            power = power.multiply(r2);
+            DoubleDouble term = power.multiply(INVERSE_FACTORIALS[n]);
+            sum = sum.add(term);
+            if (Math.abs(term.hi) <= EPSILON) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 阶乘，不超过170的整数逐项相乘，其余按double计算
+     * @throws ExpressionException 参数为负整数
+     */
+    public static DoubleDouble factorial(DoubleDouble x) {
+        if (x.isInteger() && x.hi >= 0 && x.hi <= MAX_FACTORIAL) {
+            DoubleDouble result = ONE;
+            for (int i = 2; i <= (int) x.hi; i++) {
+                result = result.multiply(i);
+            }
+            return result;
+        }
+        return valueOf(Kernels.factorial(x.doubleValue()));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DoubleDouble)) {
+            return false;
+        }
+        DoubleDouble other = (DoubleDouble) o;
+        return hi == other.hi && lo == other.lo;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(hi) * 31 + Double.hashCode(lo);
+    }
+
+    @Override
+    public String toString() {
+        return isFinite() ? toBigDecimal().toString() : Double.toString(hi);
+    }
+}
@@ -0,0 +1,171 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+
+/**
+ * 双倍精度求值器
+ * 在 {@link DoubleDouble} 操作数栈上执行后缀程序。四则运算、乘方、平方根、正弦、余弦、正切、
+ * 自然对数和常用对数有双倍精度实现；反三角函数、伽马函数和通过方法句柄绑定的函数没有，按double计算后转换。
+ * 数字字面量在创建求值器时按原始文本转换为最接近的双倍精度值，π和e取双倍精度的常数。
+ * 实例只保存编译好的常量，可以被多个线程同时使用。
+ */
+public final class DoubleDoubleEvaluator {
+    private static final MathFunction[] FUNCTIONS = MathFunction.values();
+
+    private final Program program;
+    private final DoubleDouble[] constants;
+
+    /**
+     * 为程序创建双倍精度求值器
+     * @param program 后缀程序
+     */
+    public DoubleDoubleEvaluator(Program program) {
+        this.program = program;
+        double[] values = program.getConstants();
+        String[] literals = program.getLiterals();
+        this.constants = new DoubleDouble[values.length];
+        for (int i = 0; i < values.length; i++) {
+            constants[i] = literal(values[i], literals[i]);
+        }
+    }
+
+    /**
+     * 执行程序
+     * @param angleMode 角度模式
+     * @return 计算结果
+     * @throws ExpressionException 除数为零、参数超出定义域等
+     */
+    public DoubleDouble execute(AngleMode angleMode) {
+        DoubleDouble[] s = new DoubleDouble[Math.max(1, program.getMaxStackDepth())];
+        DoubleDouble[] temps = new DoubleDouble[program.getTempCount()];
+        int[] code = program.getCode();
+        FunctionDefinition[] callTargets = program.getCallTargets();
+        int[] callArities = program.getCallArities();
+        int sp = 0;
+        // 每个内核的迭代次数都有固定上限，按指令数一次扣减
+        EvaluationMeter.charge(code.length);
+
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case Opcodes.CONST:
+                    s[sp++] = constants[code[++pc]];
+                    break;
+                case Opcodes.CALL:
+                    s[sp - 1] = call(FUNCTIONS[code[++pc]], s[sp - 1], angleMode);
+                    break;
+                case Opcodes.INVOKE: {
+                    int site = code[++pc];
+                    sp -= callArities[site];
+                    s[sp] = invoke(callTargets[site], s, sp, callArities[site], angleMode);
+                    sp++;
+                    break;
+                }
+                case Opcodes.STORE:
+                    temps[code[++pc]] = s[sp - 1];
+                    break;
+                case Opcodes.LOAD:
+                    s[sp++] = temps[code[++pc]];
+                    break;
+                default: {
+                    DoubleDouble right = Opcodes.isBinary(code[pc]) ? s[--sp] : null;
+                    s[sp - 1] = apply(code[pc], s[sp - 1], right);
+                    break;
+                }
+            }
+        }
+
+        if (sp != 1) {
+            throw new ExpressionException("表达式错误");
+        }
+        return s[0];
+    }
+
+    /**
+     * 计算单个运算，供 {@link IncrementalEvaluator} 逐棵子树计算
+     * @param opcode 不带操作数的运算操作码
+     * @param a 左操作数，一元运算的唯一操作数
+     * @param b 右操作数，一元运算时忽略
+     * @return 计算结果
+     */
+    static DoubleDouble apply(int opcode, DoubleDouble a, DoubleDouble b) {
+        switch (opcode) {
+            case Opcodes.ADD:
+                return a.add(b);
+            case Opcodes.SUBTRACT:
+                return a.subtract(b);
+            case Opcodes.MULTIPLY:
+                return a.multiply(b);
+            case Opcodes.DIVIDE:
+                return a.divide(b);
+            case Opcodes.MODULO:
+                return a.remainder(b);
+            case Opcodes.POWER:
+                return DoubleDouble.pow(a, b);
+            case Opcodes.NEGATE:
+                return a.negate();
+            case Opcodes.ABS:
+                return a.abs();
+            case Opcodes.SQUARE:
+                return a.multiply(a);
+            case Opcodes.FACTORIAL:
+                return DoubleDouble.factorial(a);
+            default:
+                throw new ExpressionException("未知操作码: " + opcode);
+        }
+    }
+
+    /**
+     * 按double调用函数，参数为 s[from, from + count)
+     */
+    static DoubleDouble invoke(FunctionDefinition function, DoubleDouble[] s, int from, int count,
+                               AngleMode angleMode) {
+        double[] args = new double[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = s[from + i].doubleValue();
+        }
+        return DoubleDouble.valueOf(function.invoke(args, 0, count, angleMode));
+    }
+
+    /**
+     * 把字面量转换为双倍精度值，优先使用原始文本
+     */
+    static DoubleDouble literal(double value, String literal) {
+        if (literal == null || Double.isInfinite(value) || value == 0) {
+            // 下溢为0的字面量同样直接取double值，不解析超出范围的指数
+            return DoubleDouble.valueOf(value);
+        }
+        boolean negative = literal.startsWith("-");
+        String body = negative ? literal.substring(1) : literal;
+        DoubleDouble result;
+        if (body.equals("π")) {
+            result = DoubleDouble.PI;
+        } else if (body.equals("e")) {
+            result = DoubleDouble.E;
+        } else {
+            result = DoubleDouble.valueOf(new BigDecimal(body));
+        }
+        return negative ? result.negate() : result;
+    }
+
+    static DoubleDouble call(MathFunction function, DoubleDouble x, AngleMode angleMode) {
+        switch (function) {
+            case SIN:
+                return DoubleDouble.sin(x, angleMode);
+            case COS:
+                return DoubleDouble.cos(x, angleMode);
+            case TAN:
+                return DoubleDouble.tan(x, angleMode);
+            case LOG10:
+                return DoubleDouble.log10(x);
+            case LN:
+                return DoubleDouble.ln(x);
+            case SQRT:
+                return DoubleDouble.sqrt(x);
+            case ABS:
+                return x.abs();
+            default:
+                // 反三角函数和伽马函数按double计算
+                return DoubleDouble.valueOf(function.apply(x.doubleValue(), angleMode));
+        }
+    }
+}
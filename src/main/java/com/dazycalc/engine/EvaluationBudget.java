@@ -0,0 +1,67 @@
+package com.dazycalc.engine;
+
+/**
+ * 单次求值的计算预算，包括步数上限和时间上限
+ * 求值前先用 {@link CostModel} 估算语法树的计算量，超过步数上限的表达式直接拒绝；
+ * 求值过程中耗时与输入规模有关的部分（如增量分析很长的表达式）会按实际执行的步数扣减预算，并检查是否超时
+ * 默认值可以通过系统属性 dazycalc.budget.maxSteps 和 dazycalc.budget.timeoutMillis 配置，
+ * 小于等于0表示不限制
+ */
+public final class EvaluationBudget {
+    /** 不限制步数和时间 */
+    public static final EvaluationBudget UNLIMITED = new EvaluationBudget(0, 0);
+
+    /** 默认预算 */
+    public static final EvaluationBudget DEFAULT = new EvaluationBudget(
+            Long.getLong("dazycalc.budget.maxSteps", 10_000_000L),
+            Long.getLong("dazycalc.budget.timeoutMillis", 2_000L));
+
+    private final long maxSteps;
+    private final long timeoutMillis;
+
+    private EvaluationBudget(long maxSteps, long timeoutMillis) {
+        this.maxSteps = maxSteps;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 创建预算
+     * @param maxSteps 步数上限，小于等于0表示不限制
+     * @param timeoutMillis 时间上限（毫秒），小于等于0表示不限制
+     */
+    public static EvaluationBudget of(long maxSteps, long timeoutMillis) {
+        return new EvaluationBudget(maxSteps, timeoutMillis);
+    }
+
+    /**
+     * 获取步数上限，小于等于0表示不限制
+     */
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * 获取时间上限（毫秒），小于等于0表示不限制
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * 是否既不限制步数也不限制时间
+     */
+    public boolean isUnlimited() {
+        return maxSteps <= 0 && timeoutMillis <= 0;
+    }
+
+    /**
+     * 检查估算的计算量是否在步数上限之内
+     * @param estimatedSteps 估算的步数
+     * @throws BudgetExceededException 超过上限时抛出
+     */
+    public void check(long estimatedSteps) {
+        if (maxSteps > 0 && estimatedSteps > maxSteps) {
+            throw new BudgetExceededException();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.dazycalc.engine;
+
+/**
+ * 求值被 {@link CancellationToken} 取消
+ */
+public class EvaluationCancelledException extends ExpressionException {
+    private static final long serialVersionUID = 1L;
+
+    public EvaluationCancelledException() {
+        super("计算已取消");
+    }
+}
@@ -0,0 +1,128 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * 单次求值的上下文，包含角度模式、数值模式、结果精度、计算预算和取消标记
+ * 不可变对象，可以在多个线程之间共享
+ */
+public final class EvaluationContext {
+    /** 默认上下文：弧度制、双精度、不限制精度、默认预算、不可取消 */
+    public static final EvaluationContext DEFAULT = new EvaluationContext(AngleMode.RADIAN, MathContext.UNLIMITED,
+            EvaluationBudget.DEFAULT, CancellationToken.NONE, NumericMode.DOUBLE);
+
+    private final AngleMode angleMode;
+    private final MathContext mathContext;
+    private final EvaluationBudget budget;
+    private final CancellationToken cancellationToken;
+    private final NumericMode numericMode;
+
+    private EvaluationContext(AngleMode angleMode, MathContext mathContext, EvaluationBudget budget,
+                              CancellationToken cancellationToken, NumericMode numericMode) {
+        this.angleMode = angleMode;
+        this.mathContext = mathContext;
+        this.budget = budget;
+        this.cancellationToken = cancellationToken;
+        this.numericMode = numericMode;
+    }
+
+    /**
+     * 创建指定角度模式、其余取默认值的上下文
+     */
+    public static EvaluationContext of(AngleMode angleMode) {
+        return angleMode == DEFAULT.angleMode ? DEFAULT : DEFAULT.withAngleMode(angleMode);
+    }
+
+    /**
+     * 返回修改了角度模式的新上下文
+     */
+    public EvaluationContext withAngleMode(AngleMode angleMode) {
+        return new EvaluationContext(angleMode, mathContext, budget, cancellationToken, numericMode);
+    }
+
+    /**
+     * 返回修改了精度的新上下文
+     * @param mathContext 结果精度，精度为0表示不限制
+     */
+    public EvaluationContext withMathContext(MathContext mathContext) {
+        return new EvaluationContext(angleMode, mathContext, budget, cancellationToken, numericMode);
+    }
+
+    /**
+     * 返回修改了计算预算的新上下文
+     * @param budget 计算预算
+     */
+    public EvaluationContext withBudget(EvaluationBudget budget) {
+        return new EvaluationContext(angleMode, mathContext, budget, cancellationToken, numericMode);
+    }
+
+    /**
+     * 返回使用指定取消标记的新上下文
+     * @param cancellationToken 取消标记
+     */
+    public EvaluationContext withCancellationToken(CancellationToken cancellationToken) {
+        return new EvaluationContext(angleMode, mathContext, budget, cancellationToken, numericMode);
+    }
+
+    /**
+     * 返回修改了数值模式的新上下文
+     * @param numericMode 数值模式
+     */
+    public EvaluationContext withNumericMode(NumericMode numericMode) {
+        return new EvaluationContext(angleMode, mathContext, budget, cancellationToken, numericMode);
+    }
+
+    /**
+     * 获取角度模式
+     */
+    public AngleMode getAngleMode() {
+        return angleMode;
+    }
+
+    /**
+     * 获取结果精度
+     */
+    public MathContext getMathContext() {
+        return mathContext;
+    }
+
+    /**
+     * 获取数值模式
+     */
+    public NumericMode getNumericMode() {
+        return numericMode;
+    }
+
+    /**
+     * 获取高精度计算使用的精度，未限制精度时使用34位十进制（{@link MathContext#DECIMAL128}），
+     * 避免除法等运算产生无限小数
+     */
+    public MathContext getDecimalContext() {
+        return mathContext.getPrecision() == 0 ? MathContext.DECIMAL128 : mathContext;
+    }
+
+    /**
+     * 获取计算预算
+     */
+    public EvaluationBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * 获取取消标记
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * 按上下文精度对结果做舍入，未限制精度或结果不是有限值时原样返回
+     */
+    public double round(double value) {
+        if (mathContext.getPrecision() == 0 || Double.isNaN(value) || Double.isInfinite(value)) {
+            return value;
+        }
+        return new BigDecimal(value).round(mathContext).doubleValue();
+    }
+}
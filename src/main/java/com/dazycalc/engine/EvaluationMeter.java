@@ -0,0 +1,83 @@
+package com.dazycalc.engine;
+
+/**
+ * 一次求值的预算计量器
+ * 求值开始时绑定到当前线程，运算内核通过 {@link #charge(long)} 扣减步数，
+ * 无需在每个方法签名中传递上下文；生成的字节码调用的也是同样的内核，因此同样受预算约束
+ * 当前线程没有绑定计量器时，扣减是空操作
+ */
+final class EvaluationMeter {
+    private static final ThreadLocal<EvaluationMeter> CURRENT = new ThreadLocal<>();
+
+    private final CancellationToken cancellationToken;
+    private final long deadline;
+    private final boolean hasDeadline;
+    private final EvaluationMeter previous;
+    private long remainingSteps;
+
+    private EvaluationMeter(EvaluationContext context, EvaluationMeter previous) {
+        EvaluationBudget budget = context.getBudget();
+        this.cancellationToken = context.getCancellationToken();
+        this.hasDeadline = budget.getTimeoutMillis() > 0;
+        this.deadline = hasDeadline ? System.nanoTime() + budget.getTimeoutMillis() * 1_000_000L : 0;
+        this.remainingSteps = budget.getMaxSteps() > 0 ? budget.getMaxSteps() : Long.MAX_VALUE;
+        this.previous = previous;
+    }
+
+    /**
+     * 开始一次求值，把新的计量器绑定到当前线程
+     * 必须在finally中调用返回值的 {@link #end()}
+     */
+    static EvaluationMeter begin(EvaluationContext context) {
+        EvaluationMeter meter = new EvaluationMeter(context, CURRENT.get());
+        CURRENT.set(meter);
+        return meter;
+    }
+
+    /**
+     * 结束求值，恢复之前绑定的计量器
+     */
+    void end() {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * 从当前线程的计量器中扣减步数
+     * @param steps 已执行的步数
+     */
+    static void charge(long steps) {
+        EvaluationMeter meter = CURRENT.get();
+        if (meter != null) {
+            meter.consume(steps);
+        }
+    }
+
+    /**
+     * 扣减步数并检查预算和取消标记
+     * @throws BudgetExceededException 步数或时间超过上限
+     * @throws EvaluationCancelledException 求值已被取消
+     */
+    void consume(long steps) {
+        remainingSteps -= steps;
+        if (remainingSteps < 0) {
+            throw new BudgetExceededException();
+        }
+        checkpoint();
+    }
+
+    /**
+     * 检查是否超时或已被取消
+     */
+    void checkpoint() {
+        if (cancellationToken.isCancelled()) {
+            throw new EvaluationCancelledException();
+        }
+        if (hasDeadline && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException();
+        }
+    }
+}
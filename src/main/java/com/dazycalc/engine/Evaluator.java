@@ -0,0 +1,15 @@
+package com.dazycalc.engine;
+
+/**
+ * 已绑定角度模式的表达式求值器
+ * 解释执行和字节码编译两种后端都实现此接口
+ */
+public interface Evaluator {
+
+    /**
+     * 计算表达式的值
+     * @param vars 变量值数组，按变量下标排列；表达式不含变量时可以传空数组
+     * @return 计算结果
+     */
+    double eval(double[] vars);
+}
@@ -0,0 +1,234 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+
+/**
+ * 精确性分析
+ * 判断后缀程序在双精度下的计算结果是否与十进制精确计算的结果完全相同，供 {@link NumericMode#HYBRID} 选择快速路径。
+ *
+ * 分析对每个中间结果记录两个量：结果一定是 2^low 的整数倍，并且绝对值不超过 2^magnitude。
+ * 只要两者之间不超过53个二进制位（double的有效位数）且不超出double的指数范围，这个值就能被double精确表示，
+ * 而加、减、乘、取余、取绝对值在输入精确、结果可表示时都不会产生舍入误差；
+ * 幂运算只接受整数底数和不大于64的非负整数字面量指数。
+ * 字面量要求十进制文本与其double值完全相等（如 0.5、3、1e20；0.1 不满足），
+ * 除法、函数调用、π和e一律视为不精确。
+ */
+final class Exactness {
+    private static final int SIGNIFICAND_BITS = 53;
+    private static final int MIN_LOW = -1074;
+    private static final int MAX_HIGH = 1024;
+    // 只分析指数不超过此值的非负整数次幂
+    private static final int MAX_EXPONENT = 64;
+    // 分析阶乘的最大参数，更大的阶乘一定超出53位
+    private static final int MAX_FACTORIAL = 25;
+    // 对数计算的误差余量，只会让上界变大
+    private static final double SLACK = 1e-9;
+    private static final double LN2 = Math.log(2);
+
+    private Exactness() {
+    }
+
+    /**
+     * 程序在双精度下的计算结果是否精确
+     */
+    static boolean isExact(Program program) {
+        Bound[] s = new Bound[Math.max(1, program.getMaxStackDepth())];
+        Bound[] temps = new Bound[program.getTempCount()];
+        int[] code = program.getCode();
+        double[] constants = program.getConstants();
+        String[] literals = program.getLiterals();
+        int sp = 0;
+
+        for (int pc = 0; pc < code.length; pc++) {
+            Bound result;
+            switch (code[pc]) {
+                case Opcodes.CONST: {
+                    int index = code[++pc];
+                    result = literal(constants[index], literals[index]);
+                    sp++;
+                    break;
+                }
+                case Opcodes.STORE: {
+                    // 从临时变量中读出的值按运算结果处理，不再视为字面量
+                    Bound top = s[sp - 1];
+                    temps[code[++pc]] = top.literal ? new Bound(top.low, top.magnitude, false, 0) : top;
+                    continue;
+                }
+                case Opcodes.LOAD:
+                    s[sp++] = temps[code[++pc]];
+                    continue;
+                case Opcodes.VAR:
+                    // 变量的值在分析时未知
+                    return false;
+                default: {
+                    if (Opcodes.hasOperand(code[pc])) {
+                        return false; // 函数调用一般有舍入误差
+                    }
+                    Bound right = Opcodes.isBinary(code[pc]) ? s[--sp] : null;
+                    result = apply(code[pc], s[sp - 1], right);
+                    break;
+                }
+            }
+            if (result == null) {
+                return false;
+            }
+            s[sp - 1] = result;
+        }
+        return sp == 1;
+    }
+
+    /**
+     * 字面量的取值范围
+     * @return 字面量的十进制文本与double值不相等时返回null
+     */
+    static Bound literal(double value, String literal) {
+        if (!isExactLiteral(value, literal)) {
+            return null;
+        }
+        return new Bound(lowestBit(value), log2(Math.abs(value)), true, value);
+    }
+
+    /**
+     * 单个运算结果的取值范围
+     * @param opcode 不带操作数的运算操作码
+     * @param a 左操作数，一元运算的唯一操作数
+     * @param b 右操作数，一元运算时忽略
+     * @return 结果可能有舍入误差时返回null
+     */
+    static Bound apply(int opcode, Bound a, Bound b) {
+        int low;
+        double magnitude;
+        switch (opcode) {
+            case Opcodes.ADD:
+            case Opcodes.SUBTRACT:
+                low = Math.min(a.low, b.low);
+                magnitude = sumMagnitude(a.magnitude, b.magnitude);
+                break;
+            case Opcodes.MULTIPLY:
+                low = a.low + b.low;
+                magnitude = a.magnitude + b.magnitude;
+                break;
+            case Opcodes.MODULO:
+                // |a % b| < |b| 且不超过 |a|，结果是两者公共最小单位的整数倍
+                low = Math.min(a.low, b.low);
+                magnitude = Math.min(a.magnitude, b.magnitude);
+                break;
+            case Opcodes.POWER: {
+                double exponent = b.value;
+                // Math.pow 只保证整数底数、整数指数且结果可表示时精确
+                if (a.low < 0 || !b.literal
+                        || exponent < 0 || exponent > MAX_EXPONENT || exponent != Math.floor(exponent)) {
+                    return null;
+                }
+                int n = (int) exponent;
+                low = n == 0 ? 0 : a.low * n;
+                magnitude = n == 0 ? 0 : a.magnitude * n;
+                break;
+            }
+            case Opcodes.NEGATE:
+            case Opcodes.ABS:
+                low = a.low;
+                magnitude = a.magnitude;
+                break;
+            case Opcodes.SQUARE:
+                low = a.low * 2;
+                magnitude = a.magnitude * 2;
+                break;
+            case Opcodes.FACTORIAL: {
+                double n = a.value;
+                if (!a.literal || n < 0 || n > MAX_FACTORIAL || n != Math.floor(n)) {
+                    return null;
+                }
+                // n! 中2的幂次为 n - popcount(n)
+                low = (int) n - Integer.bitCount((int) n);
+                magnitude = log2(Kernels.factorial(n));
+                break;
+            }
+            default:
+                // 除法一般有舍入误差
+                return null;
+        }
+        return isRepresentable(low, magnitude) ? new Bound(low, magnitude, false, 0) : null;
+    }
+
+    /**
+     * 2^low 的整数倍、绝对值不超过 2^magnitude 的值能否被double精确表示
+     */
+    private static boolean isRepresentable(int low, double magnitude) {
+        if (magnitude == Double.NEGATIVE_INFINITY) {
+            return true; // 0
+        }
+        // 最高位在 floor(magnitude) 处
+        int high = (int) Math.floor(magnitude + SLACK) + 1;
+        return high - low <= SIGNIFICAND_BITS && low >= MIN_LOW && high <= MAX_HIGH;
+    }
+
+    /**
+     * log2(2^a + 2^b) 的上界
+     */
+    private static double sumMagnitude(double a, double b) {
+        double max = Math.max(a, b);
+        double min = Math.min(a, b);
+        if (min == Double.NEGATIVE_INFINITY) {
+            return max;
+        }
+        return max + Math.log1p(Math.pow(2, min - max)) / LN2 + SLACK;
+    }
+
+    private static double log2(double value) {
+        return value == 0 ? Double.NEGATIVE_INFINITY : Math.log(value) / LN2 + SLACK;
+    }
+
+    /**
+     * 字面量的十进制文本是否与其double值完全相等
+     */
+    private static boolean isExactLiteral(double value, String literal) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || DecimalEvaluator.isSymbolicConstant(literal)) {
+            return false;
+        }
+        if (literal == null) {
+            return true; // 没有文本的常量本身就是double值
+        }
+        return DecimalEvaluator.literal(value, literal, null).compareTo(new BigDecimal(value)) == 0;
+    }
+
+    /**
+     * 非零double最低有效位的二进制位置，0返回0
+     */
+    private static int lowestBit(double value) {
+        if (value == 0) {
+            return 0;
+        }
+        long bits = Double.doubleToRawLongBits(value);
+        int biasedExponent = (int) ((bits >>> 52) & 0x7FF);
+        long significand = bits & 0xFFFFFFFFFFFFFL;
+        int exponent;
+        if (biasedExponent == 0) {
+            exponent = -1074; // 非规格化数
+        } else {
+            significand |= 1L << 52;
+            exponent = biasedExponent - 1075;
+        }
+        // value = significand × 2^exponent
+        return exponent + Long.numberOfTrailingZeros(significand);
+    }
+
+    /**
+     * 一个中间结果的取值范围：值一定是 2^low 的整数倍，并且绝对值不超过 2^magnitude
+     */
+    static final class Bound {
+        final int low;
+        // 绝对值以2为底的对数的上界，0的上界为负无穷
+        final double magnitude;
+        // 值是否直接来自字面量，以及字面量的值（用于判断幂的指数和阶乘的参数）
+        final boolean literal;
+        final double value;
+
+        Bound(int low, double magnitude, boolean literal, double value) {
+            this.low = low;
+            this.magnitude = magnitude;
+            this.literal = literal;
+            this.value = value;
+        }
+    }
+}
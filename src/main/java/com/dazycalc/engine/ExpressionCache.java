@@ -0,0 +1,473 @@
+package com.dazycalc.engine;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 已编译表达式的有界缓存
+ * 以"规范化后的表达式文本 + 角度模式"为键，缓存编译结果和最近一次的计算结果
+ *
+ * 淘汰策略参考W-TinyLFU：
+ * 1. 新条目先进入容量约1%的窗口区（LRU）
+ * 2. 窗口区溢出的条目作为候选者进入主区，主区已满时与主区试用段最久未用的条目比较访问频率，频率低者被淘汰
+ * 3. 主区分为试用段和保护段（约80%），试用段中再次命中的条目晋升到保护段
+ * 访问频率由 {@link FrequencySketch} 估计。条目数和估算内存都有上限。
+ *
+ * 读操作只访问 ConcurrentHashMap，访问记录在拿不到锁时直接丢弃，不会阻塞读线程；
+ * 写操作和淘汰在锁内完成。缓存可以被多个线程、多个计算器模型共享。
+ */
+public final class ExpressionCache {
+    /** 默认最大条目数 */
+    public static final int DEFAULT_MAXIMUM_SIZE = Integer.getInteger("dazycalc.cache.maximumSize", 1024);
+    /** 默认最大估算内存（字节） */
+    public static final long DEFAULT_MAXIMUM_WEIGHT = Long.getLong("dazycalc.cache.maximumWeight", 64L << 20);
+
+    private static final ExpressionCache SHARED = new ExpressionCache(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_WEIGHT);
+
+    private final ConcurrentHashMap<Key, Entry> data = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final int maximumSize;
+    private final long maximumWeight;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+
+    // 以下字段由 evictionLock 保护
+    private final AccessOrder window = new AccessOrder();
+    private final AccessOrder probation = new AccessOrder();
+    private final AccessOrder protectedSegment = new AccessOrder();
+    private long weightedSize;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maximumSize 最大条目数
+     * @param maximumWeight 最大估算内存（字节）
+     */
+    public ExpressionCache(int maximumSize, long maximumWeight) {
+        if (maximumSize <= 0 || maximumWeight <= 0) {
+            throw new IllegalArgumentException("缓存容量必须为正数");
+        }
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * 获取全局共享的缓存实例
+     */
+    public static ExpressionCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * 规范化表达式文本：去掉词法分析时会被跳过的空白，并把 * / 统一为 × ÷
+     * 两侧的字符可能连成同一个词法单元时（如 "1 2"、"2 e3"、"1e -3"）保留一个空格，
+     * 因此规范化前后的文本总是得到相同的词法单元序列。
+     * 文本已经是规范形式时直接返回原字符串
+     */
+    public static String normalize(CharSequence expression) {
+        int length = expression.length();
+        int i = 0;
+        while (i < length && !needsNormalization(expression.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return expression.toString();
+        }
+
+        StringBuilder normalized = new StringBuilder(length);
+        normalized.append(expression, 0, i);
+        while (i < length) {
+            char c = expression.charAt(i);
+            if (c == '*') {
+                normalized.append('×');
+            } else if (c == '/') {
+                normalized.append('÷');
+            } else if (!Character.isWhitespace(c)) {
+                normalized.append(c);
+            } else {
+                int next = i + 1;
+                while (next < length && Character.isWhitespace(expression.charAt(next))) {
+                    next++;
+                }
+                if (next < length && joinsAcrossSpace(normalized, expression.charAt(next))) {
+                    normalized.append(' ');
+                }
+                i = next;
+                continue;
+            }
+            i++;
+        }
+        return normalized.toString();
+    }
+
+    private static boolean needsNormalization(char c) {
+        return c == '*' || c == '/' || Character.isWhitespace(c);
+    }
+
+    /**
+     * 判断去掉空白后，前面已输出的文本和下一个字符是否可能被词法分析器读成一个单元：
+     * 数字、标识符和小数点会连在一起，科学计数法的指数还会吸收紧跟在e后面的正负号
+     */
+    private static boolean joinsAcrossSpace(CharSequence before, char next) {
+        int end = before.length();
+        if (end == 0) {
+            return false;
+        }
+        char previous = before.charAt(end - 1);
+        if (isWordPart(previous) && isWordPart(next)) {
+            return true;
+        }
+        if ((previous == 'e' || previous == 'E') && (next == '+' || next == '-')) {
+            return true;
+        }
+        return (previous == '+' || previous == '-') && Character.isDigit(next)
+                && end >= 2 && (before.charAt(end - 2) == 'e' || before.charAt(end - 2) == 'E');
+    }
+
+    private static boolean isWordPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+    /**
+     * 获取缓存条目，未命中时编译表达式并放入缓存
+     * @param expression 表达式文本，规范化后的文本作为键，编译的仍是原文本
+     * @param angleMode 角度模式
+     * @return 缓存条目
+     * @throws ExpressionException 表达式无法解析时抛出，错误结果不会被缓存
+     */
+    public Entry getOrCompile(CharSequence expression, AngleMode angleMode) {
+        Key key = new Key(normalize(expression), angleMode);
+        Entry entry = data.get(key);
+        if (entry != null) {
+            hitCount.increment();
+            afterRead(entry);
+            return entry;
+        }
+
+        missCount.increment();
+        Entry created = new Entry(key, CompiledExpression.compile(expression.toString()));
+        entry = data.putIfAbsent(key, created);
+        if (entry != null) {
+            afterRead(entry);
+            return entry;
+        }
+        afterWrite(created);
+        return created;
+    }
+
+    /**
+     * 获取当前条目数
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * 获取当前估算内存（字节）
+     */
+    public long getWeightedSize() {
+        evictionLock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 获取命中次数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 获取未命中次数
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 获取淘汰次数
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 清空缓存（统计计数保留）
+     */
+    public void clear() {
+        evictionLock.lock();
+        try {
+            for (Entry entry : data.values()) {
+                remove(entry, false);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 记录一次读访问，拿不到锁时放弃记录
+     */
+    private void afterRead(Entry entry) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(entry.key.hashCode());
+            if (entry.region == null) {
+                return; // 已被淘汰
+            }
+            if (entry.region == probation) {
+                // 试用段再次命中，晋升到保护段
+                probation.remove(entry);
+                protectedSegment.addLast(entry);
+                while (protectedSegment.size > protectedMaximum) {
+                    probation.addLast(protectedSegment.removeFirst());
+                }
+            } else {
+                entry.region.moveToLast(entry);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void afterWrite(Entry entry) {
+        evictionLock.lock();
+        try {
+            if (data.get(entry.key) != entry) {
+                return; // 写入后已被清除
+            }
+            sketch.increment(entry.key.hashCode());
+            window.addLast(entry);
+            weightedSize += entry.weight;
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 淘汰多余条目
+     */
+    private void evict() {
+        // 窗口区溢出的条目进入主区，主区已满时按频率决定去留
+        int mainMaximum = maximumSize - windowMaximum;
+        while (window.size > windowMaximum) {
+            Entry candidate = window.first();
+            Entry victim = probation.first();
+            if (victim == null) {
+                victim = protectedSegment.first();
+            }
+            if (victim == null || probation.size + protectedSegment.size < mainMaximum) {
+                window.remove(candidate);
+                probation.addLast(candidate);
+            } else if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                remove(victim, true);
+                window.remove(candidate);
+                probation.addLast(candidate);
+            } else {
+                remove(candidate, true);
+            }
+        }
+
+        // 条目数或估算内存仍然超限时，从最不重要的区域开始淘汰
+        while (data.size() > maximumSize || weightedSize > maximumWeight) {
+            Entry victim = probation.first();
+            if (victim == null) {
+                victim = protectedSegment.first();
+            }
+            if (victim == null) {
+                victim = window.first();
+            }
+            if (victim == null) {
+                break;
+            }
+            remove(victim, true);
+        }
+    }
+
+    /**
+     * 从缓存中移除条目
+     * @param evicted 是否计入淘汰次数
+     */
+    private void remove(Entry entry, boolean evicted) {
+        if (entry.region != null) {
+            // 只有已链入访问顺序的条目才计入了估算内存
+            entry.region.remove(entry);
+            weightedSize -= entry.weight;
+        }
+        if (data.remove(entry.key, entry) && evicted) {
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * 缓存键：规范化后的表达式文本 + 角度模式
+     */
+    private static final class Key {
+        final String text;
+        final AngleMode angleMode;
+        final int hash;
+
+        Key(String text, AngleMode angleMode) {
+            this.text = text;
+            this.angleMode = angleMode;
+            this.hash = 31 * text.hashCode() + angleMode.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return angleMode == other.angleMode && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 缓存条目，保存编译结果和最近一次的计算结果
+     */
+    public static final class Entry {
+        private final Key key;
+        private final CompiledExpression compiled;
+        private final long weight;
+        private volatile double lastResult;
+        private volatile boolean hasResult;
+
+        // 以下字段由 evictionLock 保护
+        private AccessOrder region;
+        private Entry previous;
+        private Entry next;
+
+        Entry(Key key, CompiledExpression compiled) {
+            this.key = key;
+            this.compiled = compiled;
+            this.weight = estimateWeight(compiled);
+        }
+
+        /**
+         * 获取编译结果
+         */
+        public CompiledExpression getCompiled() {
+            return compiled;
+        }
+
+        /**
+         * 获取角度模式
+         */
+        public AngleMode getAngleMode() {
+            return key.angleMode;
+        }
+
+        /**
+         * 是否已缓存计算结果
+         */
+        public boolean hasResult() {
+            return hasResult;
+        }
+
+        /**
+         * 获取最近一次的计算结果，调用前应先检查 {@link #hasResult()}
+         */
+        public double getLastResult() {
+            return lastResult;
+        }
+
+        /**
+         * 记录计算结果
+         */
+        public void recordResult(double result) {
+            lastResult = result;
+            hasResult = true;
+        }
+
+        /**
+         * 估算条目占用的内存：文本、指令、常量池以及语法树节点
+         */
+        private static long estimateWeight(CompiledExpression compiled) {
+            Program program = compiled.getProgram();
+            return 128L
+                    + 2L * compiled.getSource().length()
+                    + 4L * program.getCode().length
+                    + 8L * program.getConstants().length
+                    + 32L * program.getCode().length;
+        }
+    }
+
+    /**
+     * 侵入式双向链表，按访问顺序排列，表头为最久未使用的条目
+     */
+    private static final class AccessOrder {
+        private Entry head;
+        private Entry tail;
+        private int size;
+
+        Entry first() {
+            return head;
+        }
+
+        void addLast(Entry entry) {
+            entry.region = this;
+            entry.previous = tail;
+            entry.next = null;
+            if (tail == null) {
+                head = entry;
+            } else {
+                tail.next = entry;
+            }
+            tail = entry;
+            size++;
+        }
+
+        Entry removeFirst() {
+            Entry entry = head;
+            remove(entry);
+            return entry;
+        }
+
+        void remove(Entry entry) {
+            if (entry.previous == null) {
+                head = entry.next;
+            } else {
+                entry.previous.next = entry.next;
+            }
+            if (entry.next == null) {
+                tail = entry.previous;
+            } else {
+                entry.next.previous = entry.previous;
+            }
+            entry.previous = null;
+            entry.next = null;
+            entry.region = null;
+            size--;
+        }
+
+        void moveToLast(Entry entry) {
+            if (tail != entry) {
+                remove(entry);
+                addLast(entry);
+            }
+        }
+    }
+}
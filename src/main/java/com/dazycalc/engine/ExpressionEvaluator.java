@@ -0,0 +1,263 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * 表达式求值器
+ * 不保存任何与调用相关的状态，角度模式、数值模式和精度都由每次调用传入的 {@link EvaluationContext} 决定，
+ * 因此同一个实例可以被多个线程同时使用
+ * 编译结果和计算结果保存在线程安全的 {@link ExpressionCache} 中，默认使用全局共享的缓存
+ * {@code evaluateNumber} 对只含整数运算的表达式返回精确的整数结果，不会因超过2^53而丢失精度
+ * 每次求值都受上下文中的 {@link EvaluationBudget} 约束：估算计算量超过上限的表达式不会开始计算，
+ * 计算过程中超时或被取消时抛出 {@link BudgetExceededException} 或 {@link EvaluationCancelledException}
+ */
+public final class ExpressionEvaluator {
+    /** 双精度结果为NaN时的错误信息 */
+    public static final String INVALID_RESULT_MESSAGE = "计算结果无效";
+
+    private static final double[] NO_VARS = new double[0];
+
+    private final ExpressionCache cache;
+
+    /**
+     * 使用全局共享缓存创建求值器
+     */
+    public ExpressionEvaluator() {
+        this(ExpressionCache.shared());
+    }
+
+    /**
+     * 使用指定缓存创建求值器
+     * @param cache 编译结果缓存
+     */
+    public ExpressionEvaluator(ExpressionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * 获取编译结果缓存
+     */
+    public ExpressionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * 编译表达式（结果来自缓存）
+     * @param expression 表达式文本
+     */
+    public CompiledExpression compile(String expression) {
+        return cache.getOrCompile(expression, AngleMode.RADIAN).getCompiled();
+    }
+
+    /**
+     * 解析并计算表达式
+     * 双精度模式下相同文本和角度模式的结果直接取自缓存；其他数值模式的结果转换为double返回
+     * @param expression 表达式文本
+     * @param context 求值上下文
+     * @throws BudgetExceededException 计算量超过预算
+     */
+    public double evaluate(String expression, EvaluationContext context) {
+        ExpressionCache.Entry entry = cache.getOrCompile(expression, context.getAngleMode());
+        if (context.getNumericMode() != NumericMode.DOUBLE) {
+            return evaluateNumber(entry.getCompiled(), context).doubleValue();
+        }
+        return evaluateDouble(entry, context);
+    }
+
+    /**
+     * 计算已编译的表达式
+     * @param expression 已编译的表达式
+     * @param context 求值上下文
+     * @throws BudgetExceededException 计算量超过预算
+     */
+    public double evaluate(CompiledExpression expression, EvaluationContext context) {
+        checkClosed(expression);
+        if (context.getNumericMode() != NumericMode.DOUBLE) {
+            return evaluateNumber(expression, context).doubleValue();
+        }
+        return context.round(run(expression, context));
+    }
+
+    /**
+     * 按上下文的数值模式解析并计算表达式
+     * 只含整数运算的表达式先按整数精确计算（见 {@link IntegerEvaluator}）
+     * @param expression 表达式文本
+     * @param context 求值上下文
+     * @return 整数精确结果在双精度模式下为 {@link Long} 或 {@link BigInteger}；
+     *         其余情况双精度模式返回 {@link Double}，其他模式返回按上下文精度舍入的 {@link BigDecimal}
+     * @throws BudgetExceededException 计算量超过预算
+     */
+    public Number evaluateNumber(String expression, EvaluationContext context) {
+        ExpressionCache.Entry entry = cache.getOrCompile(expression, context.getAngleMode());
+        Number exact = runInteger(entry.getCompiled(), context);
+        if (exact != null) {
+            return exact;
+        }
+        if (context.getNumericMode() == NumericMode.DOUBLE) {
+            return evaluateDouble(entry, context);
+        }
+        return evaluateInexact(entry.getCompiled(), context);
+    }
+
+    /**
+     * 按上下文的数值模式计算已编译的表达式
+     * 只含整数运算的表达式先按整数精确计算（见 {@link IntegerEvaluator}）；
+     * 自动模式下，精确性分析表明双精度结果精确时直接按双精度计算（见 {@link CompiledExpression#isExactInDouble()}）
+     * @param expression 已编译的表达式
+     * @param context 求值上下文
+     * @return 整数精确结果在双精度模式下为 {@link Long} 或 {@link BigInteger}；
+     *         其余情况双精度模式返回 {@link Double}，其他模式返回按上下文精度舍入的 {@link BigDecimal}
+     * @throws BudgetExceededException 计算量超过预算
+     */
+    public Number evaluateNumber(CompiledExpression expression, EvaluationContext context) {
+        checkClosed(expression);
+        Number exact = runInteger(expression, context);
+        return exact != null ? exact : evaluateInexact(expression, context);
+    }
+
+    /**
+     * 检查结果能否作为计算器的结果显示：双精度的无穷大按溢出报告，与其他数值模式的溢出使用同一条信息，
+     * NaN报告为结果无效
+     * @param result {@code evaluateNumber} 的结果
+     * @return 原结果
+     * @throws ResultOverflowException 结果为无穷大
+     * @throws ExpressionException 结果为NaN
+     */
+    public static Number requireFinite(Number result) {
+        if (result instanceof Double) {
+            double value = (Double) result;
+            if (Double.isInfinite(value)) {
+                throw new ResultOverflowException();
+            }
+            if (Double.isNaN(value)) {
+                throw new ExpressionException(INVALID_RESULT_MESSAGE);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 本类只计算不含变量的表达式，含有变量的表达式通过 {@link CompiledExpression#evaluate(AngleMode, double[])} 求值
+     */
+    private static void checkClosed(CompiledExpression expression) {
+        if (!expression.getVariables().isEmpty()) {
+            throw new ExpressionException("表达式含有变量: " + String.join(", ", expression.getVariables()));
+        }
+    }
+
+    /**
+     * 不能按整数精确计算时，按数值模式计算
+     */
+    private static Number evaluateInexact(CompiledExpression expression, EvaluationContext context) {
+        switch (context.getNumericMode()) {
+            case DECIMAL:
+                return runDecimal(expression, context);
+            case DEC64:
+                return runDec64(expression, context);
+            case DOUBLE_DOUBLE:
+                return runDoubleDouble(expression, context);
+            case HYBRID:
+                if (expression.isExactInDouble()) {
+                    return new BigDecimal(run(expression, context)).round(context.getDecimalContext());
+                }
+                return runDecimal(expression, context);
+            default:
+                return context.round(run(expression, context));
+        }
+    }
+
+    /**
+     * 双精度计算，使用缓存中的上一次结果
+     */
+    private static double evaluateDouble(ExpressionCache.Entry entry, EvaluationContext context) {
+        if (entry.hasResult()) {
+            return context.round(entry.getLastResult());
+        }
+        double result = run(entry.getCompiled(), context);
+        entry.recordResult(result);
+        return context.round(result);
+    }
+
+    /**
+     * 在预算约束下按双精度计算表达式
+     */
+    private static double run(CompiledExpression expression, EvaluationContext context) {
+        context.getBudget().check(expression.getEstimatedCost());
+        EvaluationMeter meter = EvaluationMeter.begin(context);
+        try {
+            return expression.evaluator(context.getAngleMode()).eval(NO_VARS);
+        } finally {
+            meter.end();
+        }
+    }
+
+    /**
+     * 在预算约束下按整数精确计算表达式
+     * @return 精确结果，双精度模式且未限制精度时原样返回，否则转换为按上下文精度舍入的BigDecimal；
+     *         表达式不能按整数计算或没有精确的整数结果时返回null
+     */
+    private static Number runInteger(CompiledExpression expression, EvaluationContext context) {
+        IntegerEvaluator integerEvaluator = expression.integerEvaluator();
+        if (integerEvaluator == null) {
+            return null;
+        }
+        context.getBudget().check(expression.getEstimatedCost());
+        Number result;
+        EvaluationMeter meter = EvaluationMeter.begin(context);
+        try {
+            result = integerEvaluator.execute();
+        } finally {
+            meter.end();
+        }
+        return result == null ? null : IntegerEvaluator.toResult(result, context);
+    }
+
+    /**
+     * 在预算约束下按定点十进制计算表达式，无法精确表示时改按十进制高精度计算
+     */
+    private static BigDecimal runDec64(CompiledExpression expression, EvaluationContext context) {
+        Dec64Evaluator dec64Evaluator = expression.dec64Evaluator();
+        if (dec64Evaluator == null) {
+            return runDecimal(expression, context);
+        }
+        context.getBudget().check(expression.getEstimatedCost());
+        EvaluationMeter meter = EvaluationMeter.begin(context);
+        try {
+            long result = dec64Evaluator.execute();
+            if (result != Dec64.NAN) {
+                return Dec64.toBigDecimal(result).round(context.getDecimalContext());
+            }
+            return DecimalEvaluator.execute(expression.getProgram(), context);
+        } finally {
+            meter.end();
+        }
+    }
+
+    /**
+     * 在预算约束下按双倍精度计算表达式
+     */
+    private static BigDecimal runDoubleDouble(CompiledExpression expression, EvaluationContext context) {
+        context.getBudget().check(expression.getEstimatedCost());
+        EvaluationMeter meter = EvaluationMeter.begin(context);
+        try {
+            DoubleDouble result = expression.doubleDoubleEvaluator().execute(context.getAngleMode());
+            return result.toBigDecimal().round(context.getDecimalContext());
+        } finally {
+            meter.end();
+        }
+    }
+
+    /**
+     * 在预算约束下按十进制高精度计算表达式
+     */
+    private static BigDecimal runDecimal(CompiledExpression expression, EvaluationContext context) {
+        context.getBudget().check(expression.getEstimatedCost());
+        EvaluationMeter meter = EvaluationMeter.begin(context);
+        try {
+            return DecimalEvaluator.execute(expression.getProgram(), context);
+        } finally {
+            meter.end();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.dazycalc.engine;
+
+/**
+ * 表达式解析或计算过程中出现的错误
+ */
+public class ExpressionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ExpressionException(String message) {
+        super(message);
+    }
+}
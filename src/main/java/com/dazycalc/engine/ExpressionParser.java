@@ -0,0 +1,306 @@
+package com.dazycalc.engine;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 表达式解析器
+ * 采用运算符优先级解析，运算符的结合力直接取自 {@link Operator#getPrecedence()}，
+ * 一次线性扫描即可生成语法树，不再对字符串做替换和拼接。
+ * 括号、函数调用、绝对值和前缀负号都保存在显式的运算符栈中，不使用递归，嵌套再深也不会栈溢出。
+ * 创建的节点都经过 {@link NodeTable} 去重，重复出现的子表达式（如 sqrt(2)×3+sqrt(2)×4 中的 sqrt(2)）只保留一个节点
+ *
+ * 结合力由低到高：
+ * 1. + -
+ * 2. × ÷ %
+ * 3. ^（与原有实现保持一致，按左结合处理）
+ * 4. 前缀负号
+ * 5. 后缀 ² !
+ */
+public final class ExpressionParser {
+    // 前缀负号的结合力，高于所有二元运算符
+    private static final int PREFIX_PRECEDENCE = Operator.POWER.getPrecedence() + 1;
+
+    private final Lexer lexer;
+    private final List<String> variables;
+    private final NodeTable nodes = new NodeTable();
+    private final Deque<Node> operands = new ArrayDeque<>();
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    private ExpressionParser(CharSequence input, List<String> variables) {
+        this.lexer = new Lexer(input);
+        this.variables = variables;
+    }
+
+    /**
+     * 解析不含变量的表达式
+     * @param input 表达式文本
+     * @return 语法树根节点
+     */
+    public static Node parse(CharSequence input) {
+        return parse(input, Collections.emptyList());
+    }
+
+    /**
+     * 解析表达式，其中的变量必须是已声明的变量
+     * @param input 表达式文本
+     * @param variables 声明的变量名，变量的下标为它在列表中的位置
+     * @return 语法树根节点
+     */
+    public static Node parse(CharSequence input, List<String> variables) {
+        ExpressionParser parser = new ExpressionParser(input, variables);
+        parser.lexer.next();
+        return parser.parseExpression();
+    }
+
+    /**
+     * 交替读取操作数和运算符，直到表达式结束
+     * 同级运算符先归约栈中已有的运算，因此所有二元运算都是左结合的
+     */
+    private Node parseExpression() {
+        while (true) {
+            parseOperand();
+            if (!parseOperators()) {
+                return operands.pop();
+            }
+        }
+    }
+
+    /**
+     * 读取一个操作数
+     * 操作数前的正负号、左括号、函数名和左绝对值符号依次压入运算符栈，读到数字或变量为止
+     */
+    private void parseOperand() {
+        while (true) {
+            switch (lexer.getType()) {
+                case NUMBER:
+                    operands.push(nodes.intern(lexer.toNumberNode(false)));
+                    lexer.next();
+                    return;
+                case VARIABLE: {
+                    int index = variables.indexOf(lexer.getName());
+                    if (index < 0) {
+                        throw new ExpressionException("未定义的变量: " + lexer.getName());
+                    }
+                    operands.push(nodes.intern(new VariableNode(lexer.getName(), index)));
+                    lexer.next();
+                    return;
+                }
+                case LEFT_PAREN:
+                    frames.push(new Frame(Frame.PAREN, null, null));
+                    lexer.next();
+                    break;
+                case FUNCTION: {
+                    FunctionDefinition function = lexer.getFunction();
+                    lexer.next();
+                    expect(TokenType.LEFT_PAREN, "函数 " + function.getName() + " 缺少左括号");
+                    frames.push(new Frame(Frame.FUNCTION, null, function));
+                    break;
+                }
+                case ABS_BAR:
+                    frames.push(new Frame(Frame.ABS, null, null));
+                    lexer.next();
+                    break;
+                case OPERATOR:
+                    if (parseSign()) {
+                        return;
+                    }
+                    break;
+                default:
+                    throw new ExpressionException("表达式错误");
+            }
+        }
+    }
+
+    /**
+     * 解析前缀正负号
+     * @return 负号紧跟数字、已经压入负数字面量时返回true
+     */
+    private boolean parseSign() {
+        Operator op = lexer.getOperator();
+        if (op != Operator.SUBTRACT && op != Operator.ADD) {
+            throw new ExpressionException("表达式错误");
+        }
+        lexer.next();
+
+        if (op == Operator.SUBTRACT && lexer.getType() == TokenType.NUMBER) {
+            // 负号紧跟数字时视为负数字面量，如 -3² 表示 (-3)²
+            operands.push(nodes.intern(lexer.toNumberNode(true)));
+            lexer.next();
+            return true;
+        }
+        if (op == Operator.SUBTRACT) {
+            frames.push(new Frame(Frame.NEGATE, null, null));
+        }
+        return false;
+    }
+
+    /**
+     * 读取操作数之后的后缀运算符、二元运算符、右括号、逗号和右绝对值符号
+     * @return 读到二元运算符或逗号、接下来应读取操作数时返回true；表达式结束时返回false
+     */
+    private boolean parseOperators() {
+        while (true) {
+            switch (lexer.getType()) {
+                case POSTFIX:
+                    // 后缀运算符结合力最高，直接作用于栈顶操作数
+                    operands.push(nodes.intern(new PostfixNode(lexer.getPostfix(), operands.pop())));
+                    lexer.next();
+                    break;
+                case OPERATOR: {
+                    Operator op = lexer.getOperator();
+                    reduceWhile(op.getPrecedence());
+                    frames.push(new Frame(Frame.BINARY, op, null));
+                    lexer.next();
+                    return true;
+                }
+                case RIGHT_PAREN:
+                    close(Frame.PAREN);
+                    break;
+                case ABS_BAR:
+                    close(Frame.ABS);
+                    break;
+                case COMMA: {
+                    reduceWhile(1);
+                    Frame frame = frames.peek();
+                    if (frame == null || frame.kind != Frame.FUNCTION) {
+                        throw unexpected();
+                    }
+                    frame.arguments++;
+                    lexer.next();
+                    return true;
+                }
+                case END:
+                    reduceWhile(1);
+                    if (!frames.isEmpty()) {
+                        throw unexpected();
+                    }
+                    return false;
+                default:
+                    throw unexpected();
+            }
+        }
+    }
+
+    /**
+     * 处理右括号或右绝对值符号：归约到匹配的帧为止，函数帧与右括号匹配
+     */
+    private void close(int kind) {
+        reduceWhile(1);
+        Frame frame = frames.peek();
+        boolean matched = frame != null
+                && (frame.kind == kind || (kind == Frame.PAREN && frame.kind == Frame.FUNCTION));
+        if (!matched) {
+            if (frame == null && kind == Frame.PAREN) {
+                throw new ExpressionException("括号不匹配");
+            }
+            throw unexpected();
+        }
+        frames.pop();
+        reduce(frame);
+        lexer.next();
+    }
+
+    /**
+     * 归约栈顶结合力不低于 minPrecedence 的运算，括号类的帧结合力为0，不会被归约
+     */
+    private void reduceWhile(int minPrecedence) {
+        while (!frames.isEmpty() && frames.peek().precedence() >= minPrecedence) {
+            reduce(frames.pop());
+        }
+    }
+
+    /**
+     * 用一个帧归约操作数栈
+     */
+    private void reduce(Frame frame) {
+        switch (frame.kind) {
+            case Frame.BINARY: {
+                Node right = operands.pop();
+                Node left = operands.pop();
+                operands.push(nodes.intern(new BinaryNode(frame.operator, left, right)));
+                break;
+            }
+            case Frame.NEGATE:
+                operands.push(nodes.intern(new UnaryNode(operands.pop())));
+                break;
+            case Frame.FUNCTION: {
+                FunctionDefinition function = frame.function;
+                int count = frame.arguments + 1;
+                function.checkArgumentCount(count);
+                if (function.getBuiltin() != null) {
+                    operands.push(nodes.intern(new FunctionNode(function.getBuiltin(), operands.pop())));
+                    break;
+                }
+                Node[] arguments = new Node[count];
+                for (int i = count - 1; i >= 0; i--) {
+                    arguments[i] = operands.pop();
+                }
+                operands.push(nodes.intern(new CallNode(function, arguments)));
+                break;
+            }
+            case Frame.ABS:
+                operands.push(nodes.intern(new AbsNode(operands.pop())));
+                break;
+            default:
+                break; // 普通括号不产生节点
+        }
+    }
+
+    /**
+     * 操作数之后出现了不能出现的词法单元，按最内层未闭合的括号报告错误
+     */
+    private ExpressionException unexpected() {
+        for (Frame frame : frames) {
+            if (frame.kind == Frame.PAREN || frame.kind == Frame.FUNCTION) {
+                return new ExpressionException("括号不匹配");
+            }
+            if (frame.kind == Frame.ABS) {
+                return new ExpressionException("绝对值符号不匹配");
+            }
+        }
+        return new ExpressionException("表达式错误");
+    }
+
+    private void expect(TokenType type, String message) {
+        if (lexer.getType() != type) {
+            throw new ExpressionException(message);
+        }
+        lexer.next();
+    }
+
+    /**
+     * 运算符栈帧
+     */
+    private static final class Frame {
+        static final int BINARY = 0;
+        static final int NEGATE = 1;
+        static final int PAREN = 2;
+        static final int FUNCTION = 3;
+        static final int ABS = 4;
+
+        final int kind;
+        final Operator operator;
+        final FunctionDefinition function;
+        // 函数帧中已经读完的参数个数（逗号的个数）
+        int arguments;
+
+        Frame(int kind, Operator operator, FunctionDefinition function) {
+            this.kind = kind;
+            this.operator = operator;
+            this.function = function;
+        }
+
+        /**
+         * 归约结合力，括号类的帧为0
+         */
+        int precedence() {
+            if (kind == BINARY) {
+                return operator.getPrecedence();
+            }
+            return kind == NEGATE ? PREFIX_PRECEDENCE : 0;
+        }
+    }
+}
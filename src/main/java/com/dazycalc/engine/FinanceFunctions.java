@@ -0,0 +1,91 @@
+package com.dazycalc.engine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 金融函数
+ * <ul>
+ * <li>pmt(利率, 期数, 本金)：等额本息每期还款额</li>
+ * <li>ipmt(利率, 第几期, 期数, 本金)：等额本息第几期还款中的利息</li>
+ * <li>npv(利率, 现金流1, 现金流2, ...)：净现值，第一笔现金流在第一期末</li>
+ * </ul>
+ * 利率按每期的小数表示（如月利率0.5%写作 0.005），本金为正时还款额也为正。
+ */
+final class FinanceFunctions implements FunctionProvider {
+    private static final MethodType FIXED3 = MethodType.methodType(double.class, double.class, double.class, double.class);
+    private static final MethodType FIXED4 = FIXED3.appendParameterTypes(double.class);
+    private static final MethodType VARIADIC = MethodType.methodType(double.class, double[].class);
+
+    @Override
+    public List<FunctionDefinition> getFunctions() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            return Arrays.asList(
+                    FunctionDefinition.of("pmt", lookup.findStatic(FinanceFunctions.class, "pmt", FIXED3)),
+                    FunctionDefinition.of("ipmt", lookup.findStatic(FinanceFunctions.class, "ipmt", FIXED4)),
+                    FunctionDefinition.variadic("npv", 2, lookup.findStatic(FinanceFunctions.class, "npv", VARIADIC)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("绑定金融函数失败", e);
+        }
+    }
+
+    /**
+     * 等额本息每期还款额 pv × r / (1 - (1 + r)^-n)，利率为0时为 pv / n
+     */
+    static double pmt(double rate, double periods, double principal) {
+        checkRate(rate);
+        checkPeriods(periods);
+        if (rate == 0) {
+            return principal / periods;
+        }
+        // 1 - (1 + r)^-n，用 expm1 和 log1p 避免利率很小时的抵消误差
+        return principal * rate / -Math.expm1(-periods * Math.log1p(rate));
+    }
+
+    /**
+     * 第k期还款中的利息：上一期末的剩余本金 × r
+     * 剩余本金为 pv × (1 + r)^(k-1) - pmt × ((1 + r)^(k-1) - 1) / r
+     */
+    static double ipmt(double rate, double period, double periods, double principal) {
+        checkRate(rate);
+        checkPeriods(periods);
+        if (period != Math.rint(period) || period < 1 || period > periods) {
+            throw new ExpressionException("还款期必须是1到总期数之间的整数");
+        }
+        if (rate == 0) {
+            return 0;
+        }
+        double growth = Math.expm1((period - 1) * Math.log1p(rate));
+        double balance = principal * (growth + 1) - pmt(rate, periods, principal) * growth / rate;
+        return balance * rate;
+    }
+
+    /**
+     * 净现值 Σ cfᵢ / (1 + r)^i，按秦九韶算法从最后一笔现金流向前折现
+     */
+    static double npv(double[] args) {
+        double rate = args[0];
+        checkRate(rate);
+        double value = 0;
+        for (int i = args.length - 1; i >= 1; i--) {
+            value = (value + args[i]) / (1 + rate);
+        }
+        return value;
+    }
+
+    private static void checkRate(double rate) {
+        if (!(rate > -1)) {
+            throw new ExpressionException("利率必须大于-100%");
+        }
+    }
+
+    private static void checkPeriods(double periods) {
+        if (!(periods > 0)) {
+            throw new ExpressionException("期数必须为正数");
+        }
+    }
+}
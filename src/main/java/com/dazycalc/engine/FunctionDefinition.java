@@ -0,0 +1,192 @@
+package com.dazycalc.engine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * 函数定义，由 {@link FunctionRegistry} 按名称查找
+ *
+ * 内置的单参数函数对应 {@link MathFunction}，各个求值器对它们有专门的实现；
+ * 其他函数通过 {@link MethodHandle} 绑定，参数和返回值都是double，可以是固定个数的参数，
+ * 也可以是一个double[]（可变参数）。绑定时把方法句柄适配成统一的 (double[] 栈, int 起始位置, int 参数个数) 形式，
+ * 求值时直接从操作数栈上取参数，固定参数的函数调用不分配对象，也不经过反射。
+ * 实例是不可变的，可以被多个线程同时使用。
+ */
+public final class FunctionDefinition {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(double.class, double[].class, int.class, int.class);
+    private static final MethodHandle ELEMENT = MethodHandles.arrayElementGetter(double[].class);
+    private static final MethodHandle ADD;
+    private static final MethodHandle COPY_RANGE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ADD = lookup.findStatic(FunctionDefinition.class, "add",
+                    MethodType.methodType(int.class, int.class, int.class));
+            COPY_RANGE = lookup.findStatic(FunctionDefinition.class, "copyRange",
+                    MethodType.methodType(double[].class, double[].class, int.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String name;
+    private final int minArity;
+    private final int maxArity;
+    private final MathFunction builtin;
+    // (double[] 栈, int 起始位置, int 参数个数) -> double，内置函数为null
+    private final MethodHandle invoker;
+
+    private FunctionDefinition(String name, int minArity, int maxArity, MathFunction builtin, MethodHandle invoker) {
+        this.name = name;
+        this.minArity = minArity;
+        this.maxArity = maxArity;
+        this.builtin = builtin;
+        this.invoker = invoker;
+    }
+
+    /**
+     * 内置函数的定义
+     */
+    static FunctionDefinition of(MathFunction function) {
+        return new FunctionDefinition(function.getFunctionName(), 1, 1, function, null);
+    }
+
+    /**
+     * 绑定固定参数个数的函数
+     * @param name 函数名，由字母开头，只含字母和数字
+     * @param handle 方法句柄，类型为 (double, ..., double)double，至少一个参数
+     * @throws IllegalArgumentException 函数名或方法句柄的类型不合法
+     */
+    public static FunctionDefinition of(String name, MethodHandle handle) {
+        checkName(name);
+        MethodType type = handle.type();
+        int arity = type.parameterCount();
+        if (type.returnType() != double.class || arity == 0) {
+            throw new IllegalArgumentException("函数 " + name + " 的类型必须为 (double, ...)double: " + type);
+        }
+        for (int i = 0; i < arity; i++) {
+            if (type.parameterType(i) != double.class) {
+                throw new IllegalArgumentException("函数 " + name + " 的类型必须为 (double, ...)double: " + type);
+            }
+        }
+
+        // 第i个参数换成 stack[from + i]，再把所有 (stack, from) 合并成同一对参数
+        MethodHandle target = handle;
+        for (int i = arity - 1; i >= 0; i--) {
+            MethodHandle offset = MethodHandles.insertArguments(ADD, 1, i);
+            target = MethodHandles.collectArguments(target, i, MethodHandles.filterArguments(ELEMENT, 1, offset));
+        }
+        int[] reorder = new int[arity * 2];
+        for (int i = 0; i < arity; i++) {
+            reorder[2 * i] = 0;
+            reorder[2 * i + 1] = 1;
+        }
+        target = MethodHandles.permuteArguments(target,
+                MethodType.methodType(double.class, double[].class, int.class), reorder);
+        target = MethodHandles.dropArguments(target, 2, int.class);
+        return new FunctionDefinition(name, arity, arity, null, target);
+    }
+
+    /**
+     * 绑定可变参数个数的函数，参数按顺序放在一个数组中传入
+     * @param name 函数名，由字母开头，只含字母和数字
+     * @param minArity 最少参数个数，至少为1
+     * @param handle 方法句柄，类型为 (double[])double，不得修改传入的数组之外的状态
+     * @throws IllegalArgumentException 函数名、参数个数或方法句柄的类型不合法
+     */
+    public static FunctionDefinition variadic(String name, int minArity, MethodHandle handle) {
+        checkName(name);
+        if (minArity < 1) {
+            throw new IllegalArgumentException("函数 " + name + " 至少需要一个参数");
+        }
+        if (!handle.type().equals(MethodType.methodType(double.class, double[].class))) {
+            throw new IllegalArgumentException("函数 " + name + " 的类型必须为 (double[])double: " + handle.type());
+        }
+        MethodHandle target = MethodHandles.filterReturnValue(COPY_RANGE, handle);
+        return new FunctionDefinition(name, minArity, Integer.MAX_VALUE, null, target);
+    }
+
+    private static void checkName(String name) {
+        boolean valid = !name.isEmpty() && Character.isLetter(name.charAt(0)) && !name.equals("e");
+        for (int i = 1; valid && i < name.length(); i++) {
+            valid = Character.isLetterOrDigit(name.charAt(i));
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("不合法的函数名: " + name);
+        }
+    }
+
+    /**
+     * 获取函数名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 最少参数个数
+     */
+    public int getMinArity() {
+        return minArity;
+    }
+
+    /**
+     * 最多参数个数，可变参数的函数为 {@link Integer#MAX_VALUE}
+     */
+    public int getMaxArity() {
+        return maxArity;
+    }
+
+    /**
+     * 对应的内置函数，通过方法句柄绑定的函数返回null
+     */
+    public MathFunction getBuiltin() {
+        return builtin;
+    }
+
+    /**
+     * 检查调用时的参数个数
+     * @throws ExpressionException 参数个数不符
+     */
+    public void checkArgumentCount(int count) {
+        if (count < minArity || count > maxArity) {
+            String expected = minArity == maxArity ? "需要 " + minArity : "至少需要 " + minArity;
+            throw new ExpressionException("函数 " + name + " " + expected + " 个参数，实际为 " + count + " 个");
+        }
+    }
+
+    /**
+     * 以 args[from, from + count) 为参数调用函数
+     * @param angleMode 角度模式，只影响内置的三角函数和反三角函数
+     * @throws ExpressionException 参数超出定义域等
+     */
+    public double invoke(double[] args, int from, int count, AngleMode angleMode) {
+        if (builtin != null) {
+            return builtin.apply(args[from], angleMode);
+        }
+        try {
+            return (double) invoker.invokeExact(args, from, count);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ExpressionException("函数 " + name + " 计算失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static int add(int from, int offset) {
+        return from + offset;
+    }
+
+    private static double[] copyRange(double[] args, int from, int count) {
+        double[] copy = new double[count];
+        System.arraycopy(args, from, copy, 0, count);
+        return copy;
+    }
+}
@@ -0,0 +1,42 @@
+package com.dazycalc.engine;
+
+/**
+ * 函数调用节点，如 sin(x)、sqrt(x)
+ */
+public final class FunctionNode extends Node {
+    private final MathFunction function;
+    private final Node argument;
+
+    public FunctionNode(MathFunction function, Node argument) {
+        this.function = function;
+        this.argument = argument;
+    }
+
+    public MathFunction getFunction() {
+        return function;
+    }
+
+    public Node getArgument() {
+        return argument;
+    }
+
+    @Override
+    public double evaluate(AngleMode angleMode) {
+        return function.apply(argument.evaluate(angleMode), angleMode);
+    }
+
+    @Override
+    int childCount() {
+        return 1;
+    }
+
+    @Override
+    Node child(int index) {
+        return argument;
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+        return new FunctionNode(function, children[0]);
+    }
+}
@@ -0,0 +1,17 @@
+package com.dazycalc.engine;
+
+import java.util.List;
+
+/**
+ * 函数扩展包
+ * 第三方的函数包实现这个接口，并在 META-INF/services/com.dazycalc.engine.FunctionProvider 中登记实现类，
+ * {@link FunctionRegistry} 初始化时通过 {@link java.util.ServiceLoader} 加载。
+ * 实现类必须是公共的，并且有公共的无参构造方法。
+ */
+public interface FunctionProvider {
+
+    /**
+     * 获取包中的函数，与内置函数或先加载的函数重名的函数会被忽略
+     */
+    List<FunctionDefinition> getFunctions();
+}
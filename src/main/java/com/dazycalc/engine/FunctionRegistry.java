@@ -0,0 +1,166 @@
+package com.dazycalc.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+/**
+ * 函数注册表
+ * 函数名保存在字典树中，词法分析时从当前位置沿树逐字符前进，匹配的开销只与函数名的长度有关，
+ * 与注册的函数个数无关；字符不是任何函数名的开头时（运算符、括号等）只需一次查找就能确定。
+ * 每个节点的子节点按字符排序保存在数组中，按二分查找。
+ *
+ * 默认注册表依次包含内置函数（{@link MathFunction}）、金融函数（见 {@link FinanceFunctions}）和
+ * 通过 {@link ServiceLoader} 发现的 {@link FunctionProvider}，首次使用时加载，之后不再改变，
+ * 可以被多个线程同时使用。重名的函数以先注册的为准。
+ */
+public final class FunctionRegistry {
+    private static final int ROOT = 0;
+
+    // 字典树：keys[node] 是按字符排序的子节点字符，children[node] 是对应的子节点
+    private final char[][] keys;
+    private final int[][] children;
+    // 以该节点结尾的函数，没有时为null
+    private final FunctionDefinition[] terminals;
+    private final List<FunctionDefinition> functions;
+    private final int longestNameLength;
+
+    private FunctionRegistry(List<FunctionDefinition> functions) {
+        List<TreeMap<Character, Integer>> nodes = new ArrayList<>();
+        List<FunctionDefinition> ends = new ArrayList<>();
+        nodes.add(new TreeMap<>());
+        ends.add(null);
+        int longest = 0;
+        for (FunctionDefinition function : functions) {
+            String name = function.getName();
+            int node = ROOT;
+            for (int i = 0; i < name.length(); i++) {
+                Integer next = nodes.get(node).get(name.charAt(i));
+                if (next == null) {
+                    next = nodes.size();
+                    nodes.get(node).put(name.charAt(i), next);
+                    nodes.add(new TreeMap<>());
+                    ends.add(null);
+                }
+                node = next;
+            }
+            ends.set(node, function);
+            longest = Math.max(longest, name.length());
+        }
+
+        this.keys = new char[nodes.size()][];
+        this.children = new int[nodes.size()][];
+        for (int node = 0; node < nodes.size(); node++) {
+            TreeMap<Character, Integer> edges = nodes.get(node);
+            keys[node] = new char[edges.size()];
+            children[node] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                keys[node][i] = edge.getKey();
+                children[node][i] = edge.getValue();
+                i++;
+            }
+        }
+        this.terminals = ends.toArray(new FunctionDefinition[0]);
+        this.functions = Collections.unmodifiableList(new ArrayList<>(functions));
+        this.longestNameLength = longest;
+    }
+
+    /**
+     * 获取默认注册表，首次调用时加载
+     */
+    public static FunctionRegistry getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * 在输入的指定位置匹配函数名（最长匹配优先）
+     * @return 匹配到的函数，未匹配时返回null
+     */
+    public FunctionDefinition match(CharSequence input, int pos) {
+        FunctionDefinition best = null;
+        int node = ROOT;
+        for (int i = pos; i < input.length(); i++) {
+            node = child(node, input.charAt(i));
+            if (node < 0) {
+                break;
+            }
+            if (terminals[node] != null) {
+                best = terminals[node];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 按完整的函数名查找
+     * @return 函数定义，没有这个函数时返回null
+     */
+    public FunctionDefinition lookup(CharSequence name) {
+        int node = ROOT;
+        for (int i = 0; i < name.length() && node >= 0; i++) {
+            node = child(node, name.charAt(i));
+        }
+        return node < 0 ? null : terminals[node];
+    }
+
+    /**
+     * 获取所有函数，按注册顺序排列
+     */
+    public List<FunctionDefinition> getFunctions() {
+        return functions;
+    }
+
+    /**
+     * 最长的函数名的长度
+     */
+    public int getLongestNameLength() {
+        return longestNameLength;
+    }
+
+    private int child(int node, char c) {
+        int index = Arrays.binarySearch(keys[node], c);
+        return index < 0 ? -1 : children[node][index];
+    }
+
+    private static FunctionRegistry load() {
+        Map<String, FunctionDefinition> functions = new LinkedHashMap<>();
+        for (MathFunction function : MathFunction.values()) {
+            functions.put(function.getFunctionName(), FunctionDefinition.of(function));
+        }
+        register(functions, new FinanceFunctions());
+
+        Iterator<FunctionProvider> providers = ServiceLoader.load(FunctionProvider.class).iterator();
+        while (true) {
+            // 一个扩展包加载失败不影响其他扩展包和内置函数
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                register(functions, providers.next());
+            } catch (ServiceConfigurationError | RuntimeException e) {
+                System.err.println("加载函数扩展失败: " + e.getMessage());
+            }
+        }
+        return new FunctionRegistry(new ArrayList<>(functions.values()));
+    }
+
+    private static void register(Map<String, FunctionDefinition> functions, FunctionProvider provider) {
+        for (FunctionDefinition function : provider.getFunctions()) {
+            if (functions.putIfAbsent(function.getName(), function) != null) {
+                System.err.println("忽略重名的函数: " + function.getName() + "（" + provider.getClass().getName() + "）");
+            }
+        }
+    }
+
+    private static final class Holder {
+        static final FunctionRegistry DEFAULT = load();
+    }
+}
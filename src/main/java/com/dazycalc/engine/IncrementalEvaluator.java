@@ -0,0 +1,727 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * 增量求值器，用于实时预览
+ *
+ * 使用运算符优先级（调度场）状态机解析表达式，每读入一个词法单元就把状态机的状态保存下来。
+ * 状态由不可变的链式栈组成，操作数栈中保存已经归约好的子树及其计算结果，
+ * 因此保存每个快照只需O(1)的额外空间。
+ *
+ * 表达式被编辑后，只从编辑位置所在的词法单元开始重新分析，之前的快照原样复用；
+ * 收尾时只需沿栈归约从编辑位置到根的那条路径。在长表达式末尾再输入一位数字时，
+ * 预览的开销与表达式长度基本无关。
+ * 精确整数和高精度模式的结果同样按子树保存在操作数中（见 {@link Backend}），不会在每次输入时重新计算整棵树。
+ *
+ * 与 {@link ExpressionParser} 的语法和语义保持一致，并且和原有实时预览的规则相同：
+ * 以运算符结尾时补0，未闭合的括号自动闭合。
+ * 实例保存了上一次的表达式，不是线程安全的。
+ */
+public final class IncrementalEvaluator {
+    // 词法分析向后查看的最大字符数（科学计数法的 e、符号和数字，或者读取函数名），编辑位置附近的单元需要重新分析；
+    // 变量名可以更长，但含有变量的单元总是报错，不会保存快照
+    private static final int LOOKAHEAD = Math.max(3, FunctionRegistry.getDefault().getLongestNameLength());
+    // 每分析这么多个词法单元扣减一次预算，检查超时和取消
+    private static final int CHECK_INTERVAL = 1 << 12;
+    // 前缀负号的优先级，高于所有二元运算符
+    private static final int PREFIX_PRECEDENCE = Operator.POWER.getPrecedence() + 1;
+
+    private static final State INITIAL = new State(null, null, true, false, false, null);
+
+    // 后端的计算结果：某个子树不被后端支持时，整棵树都不能用该后端计算
+    private static final Object UNSUPPORTED = new Object();
+    // 后端的计算结果：该子树没有精确结果（如整数除不尽），与在整个程序上运行时提前返回相同
+    private static final Object STOPPED = new Object();
+
+    // 操作数中各后端结果的下标：整数后端总是存在，其后是数值模式对应的后端，最后是它的后备后端
+    private static final int INTEGER = 0;
+    private static final int PRIMARY = 1;
+    private static final int FALLBACK = 2;
+
+    private AngleMode angleMode = AngleMode.RADIAN;
+    private NumericMode numericMode = NumericMode.DOUBLE;
+    private MathContext decimalContext;
+    private Backend[] backends = {new IntegerBackend()};
+    private String text = "";
+    private int tokenCount;
+    private int[] tokenEnds = new int[64];
+    private State[] states = new State[64];
+
+    /**
+     * 使用默认计算预算计算表达式的预览值
+     * @param expression 当前表达式
+     * @param angleMode 角度模式
+     * @return 计算结果
+     * @throws ExpressionException 表达式无法计算时抛出
+     */
+    public double evaluate(String expression, AngleMode angleMode) {
+        return evaluate(expression, EvaluationContext.of(angleMode));
+    }
+
+    /**
+     * 在预算约束下计算表达式的预览值
+     * 超时或被取消时，已经分析好的快照仍然有效，下一次调用从中断的位置继续
+     * @param expression 当前表达式
+     * @param context 求值上下文，使用其中的角度模式、计算预算和取消标记
+     * @return 计算结果
+     * @throws ExpressionException 表达式无法计算时抛出
+     * @throws BudgetExceededException 计算量超过预算
+     * @throws EvaluationCancelledException 求值已被取消
+     */
+    public double evaluate(String expression, EvaluationContext context) {
+        EvaluationMeter meter = EvaluationMeter.begin(context);
+        try {
+            return evaluate(expression, context, meter).value;
+        } finally {
+            meter.end();
+        }
+    }
+
+    /**
+     * 按上下文的数值模式计算表达式的预览值
+     * 结果与 {@link ExpressionEvaluator#evaluateNumber(String, EvaluationContext)} 的规则相同：先取整数精确结果，
+     * 再按数值模式取对应后端的结果。各后端的结果在增量分析时逐棵子树算好，编辑后同样只重新计算变化的路径；
+     * 切换数值模式或精度时保存的快照全部作废
+     * @param expression 当前表达式
+     * @param context 求值上下文
+     * @return 整数精确结果在双精度模式下为 {@link Long} 或 {@link BigInteger}；
+     *         其余情况双精度模式返回 {@link Double}，其他模式返回 {@link BigDecimal}
+     * @throws ExpressionException 表达式无法计算时抛出
+     * @throws BudgetExceededException 计算量超过预算
+     * @throws EvaluationCancelledException 求值已被取消
+     */
+    public Number evaluateNumber(String expression, EvaluationContext context) {
+        EvaluationMeter meter = EvaluationMeter.begin(context);
+        try {
+            Operand result = evaluate(expression, context, meter);
+            Object integer = valueOf(result.results[INTEGER]);
+            if (integer instanceof Number) {
+                return IntegerEvaluator.toResult((Number) integer, context);
+            }
+            MathContext mc = context.getDecimalContext();
+            switch (context.getNumericMode()) {
+                case DECIMAL:
+                    return ((BigDecimal) valueOf(result.results[PRIMARY])).round(mc);
+                case HYBRID:
+                    if (result.results[PRIMARY] instanceof Exactness.Bound) {
+                        return new BigDecimal(result.value).round(mc);
+                    }
+                    return ((BigDecimal) valueOf(result.results[FALLBACK])).round(mc);
+                case DEC64: {
+                    Object dec64 = valueOf(result.results[PRIMARY]);
+                    if (dec64 instanceof Long) {
+                        return Dec64.toBigDecimal((Long) dec64).round(mc);
+                    }
+                    return ((BigDecimal) valueOf(result.results[FALLBACK])).round(mc);
+                }
+                case DOUBLE_DOUBLE:
+                    return ((DoubleDouble) valueOf(result.results[PRIMARY])).toBigDecimal().round(mc);
+                default:
+                    return result.value;
+            }
+        } finally {
+            meter.end();
+        }
+    }
+
+    /**
+     * 取出后端的计算结果，计算中出错时抛出保存的异常
+     */
+    private static Object valueOf(Object result) {
+        if (result instanceof RuntimeException) {
+            throw (RuntimeException) result;
+        }
+        return result;
+    }
+
+    private Operand evaluate(String expression, EvaluationContext context, EvaluationMeter meter) {
+        if (context.getAngleMode() != angleMode || context.getNumericMode() != numericMode
+                || !context.getDecimalContext().equals(decimalContext)) {
+            // 缓存的子树值与角度模式、数值模式和精度有关，切换后全部作废
+            angleMode = context.getAngleMode();
+            numericMode = context.getNumericMode();
+            decimalContext = context.getDecimalContext();
+            backends = createBackends(angleMode, numericMode, decimalContext);
+            tokenCount = 0;
+        }
+
+        int restart = findRestartToken(commonPrefixLength(text, expression));
+        text = expression;
+        tokenCount = restart;
+
+        State state = restart == 0 ? INITIAL : states[restart - 1];
+        Lexer lexer = new Lexer(expression, restart == 0 ? 0 : tokenEnds[restart - 1]);
+        int sinceCheck = 0;
+        while (lexer.next() != TokenType.END) {
+            state = feed(state, lexer);
+            append(lexer.getTokenEnd(), state);
+            if (++sinceCheck == CHECK_INTERVAL) {
+                meter.consume(sinceCheck);
+                sinceCheck = 0;
+            }
+        }
+        return finish(state);
+    }
+
+    /**
+     * 数值模式用到的后端，下标依次为 {@link #INTEGER}、{@link #PRIMARY}、{@link #FALLBACK}
+     */
+    private static Backend[] createBackends(AngleMode angleMode, NumericMode numericMode, MathContext mc) {
+        switch (numericMode) {
+            case DECIMAL:
+                return new Backend[] {new IntegerBackend(), new DecimalBackend(angleMode, mc)};
+            case HYBRID:
+                return new Backend[] {new IntegerBackend(), new ExactnessBackend(), new DecimalBackend(angleMode, mc)};
+            case DEC64:
+                return new Backend[] {new IntegerBackend(), new Dec64Backend(), new DecimalBackend(angleMode, mc)};
+            case DOUBLE_DOUBLE:
+                return new Backend[] {new IntegerBackend(), new DoubleDoubleBackend(angleMode)};
+            default:
+                return new Backend[] {new IntegerBackend()};
+        }
+    }
+
+    /**
+     * 清空保存的快照
+     */
+    public void reset() {
+        text = "";
+        tokenCount = 0;
+        Arrays.fill(states, null);
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 找到第一个可能受编辑影响的词法单元
+     * 单元结束位置加上向后查看的距离超过编辑位置时，它的分析结果可能改变
+     */
+    private int findRestartToken(int editPosition) {
+        int low = 0;
+        int high = tokenCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokenEnds[mid] + LOOKAHEAD > editPosition) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private void append(int tokenEnd, State state) {
+        if (tokenCount == states.length) {
+            tokenEnds = Arrays.copyOf(tokenEnds, tokenCount * 2);
+            states = Arrays.copyOf(states, tokenCount * 2);
+        }
+        tokenEnds[tokenCount] = tokenEnd;
+        states[tokenCount] = state;
+        tokenCount++;
+    }
+
+    /**
+     * 读入一个词法单元，返回新的状态
+     */
+    private State feed(State s, Lexer lexer) {
+        TokenType type = lexer.getType();
+
+        if (s.awaitingParen) {
+            // 函数名后必须紧跟左括号，左括号已包含在函数帧中
+            if (type != TokenType.LEFT_PAREN) {
+                throw new ExpressionException("函数 " + s.frames.function.getName() + " 缺少左括号");
+            }
+            return new State(s.operands, s.frames, true, false, false, type);
+        }
+
+        if (s.expectOperand) {
+            switch (type) {
+                case NUMBER:
+                    return pushNumber(s, lexer);
+                case OPERATOR:
+                    if (lexer.getOperator() == Operator.SUBTRACT) {
+                        return new State(s.operands, new Frame(Frame.NEGATE, null, null, s.frames), true, false, true, type);
+                    }
+                    if (lexer.getOperator() == Operator.ADD) {
+                        return new State(s.operands, s.frames, true, false, false, type);
+                    }
+                    throw new ExpressionException("表达式错误");
+                case LEFT_PAREN:
+                    return new State(s.operands, new Frame(Frame.PAREN, null, null, s.frames), true, false, false, type);
+                case FUNCTION:
+                    return new State(s.operands, new Frame(Frame.FUNCTION, null, lexer.getFunction(), s.frames), true, true, false, type);
+                case ABS_BAR:
+                    return new State(s.operands, new Frame(Frame.ABS, null, null, s.frames), true, false, false, type);
+                case VARIABLE:
+                    // 实时预览的表达式没有声明变量
+                    throw new ExpressionException("未定义的变量: " + lexer.getName());
+                default:
+                    throw new ExpressionException("表达式错误");
+            }
+        }
+
+        switch (type) {
+            case OPERATOR: {
+                Operator op = lexer.getOperator();
+                Operand operands = s.operands;
+                Frame frames = s.frames;
+                // 左结合：先归约栈顶优先级不低于当前运算符的运算
+                while (frames != null && frames.precedence() >= op.getPrecedence()) {
+                    operands = reduce(frames, operands);
+                    frames = frames.next;
+                }
+                return new State(operands, new Frame(Frame.BINARY, op, null, frames), true, false, false, type);
+            }
+            case POSTFIX: {
+                // 后缀运算符结合力最高，直接作用于栈顶操作数
+                Operand top = s.operands;
+                Node node = new PostfixNode(lexer.getPostfix(), top.node);
+                boolean square = lexer.getPostfix() == PostfixNode.Kind.SQUARE;
+                double value = square ? top.value * top.value : Kernels.factorial(top.value);
+                Object[] results = apply(square ? Opcodes.SQUARE : Opcodes.FACTORIAL, top, null);
+                return new State(new Operand(node, value, results, top.next), s.frames, false, false, false, type);
+            }
+            case RIGHT_PAREN:
+                return close(s, Frame.PAREN, "括号不匹配", type);
+            case COMMA:
+                return nextArgument(s, type);
+            case ABS_BAR:
+                return close(s, Frame.ABS, "绝对值符号不匹配", type);
+            default:
+                throw new ExpressionException("表达式错误");
+        }
+    }
+
+    /**
+     * 压入数字，紧跟在前缀负号后的数字视为负数字面量
+     */
+    private State pushNumber(State s, Lexer lexer) {
+        Frame frames = s.frames;
+        boolean negate = s.afterPrefixMinus;
+        if (negate) {
+            frames = frames.next;
+        }
+        NumberNode node = lexer.toNumberNode(negate);
+        Object[] results = new Object[backends.length];
+        for (int i = 0; i < backends.length; i++) {
+            Object result = run(backends[i],
+                    (backend, args) -> backend.literal(node.getValue(), node.getLiteral()), null);
+            results[i] = result == STOPPED ? UNSUPPORTED : result;
+        }
+        return new State(new Operand(node, node.getValue(), results, s.operands), frames, false, false, false,
+                TokenType.NUMBER);
+    }
+
+    /**
+     * 处理右括号或右绝对值符号：归约到匹配的帧为止
+     */
+    private State close(State s, int kind, String message, TokenType type) {
+        Operand operands = s.operands;
+        Frame frames = s.frames;
+        while (frames != null && frames.precedence() > 0) {
+            operands = reduce(frames, operands);
+            frames = frames.next;
+        }
+        boolean matched = frames != null
+                && (frames.kind == kind || (kind == Frame.PAREN && frames.kind == Frame.FUNCTION));
+        if (!matched) {
+            throw new ExpressionException(message);
+        }
+        operands = reduce(frames, operands);
+        return new State(operands, frames.next, false, false, false, type);
+    }
+
+    /**
+     * 处理参数之间的逗号：归约到所在的函数帧为止，已完成的参数留在操作数栈上，函数帧的参数计数加一
+     */
+    private State nextArgument(State s, TokenType type) {
+        Operand operands = s.operands;
+        Frame frames = s.frames;
+        while (frames != null && frames.precedence() > 0) {
+            operands = reduce(frames, operands);
+            frames = frames.next;
+        }
+        if (frames == null || frames.kind != Frame.FUNCTION) {
+            throw new ExpressionException("表达式错误");
+        }
+        Frame function = new Frame(Frame.FUNCTION, null, frames.function, frames.arguments + 1, frames.next);
+        return new State(operands, function, true, false, false, type);
+    }
+
+    /**
+     * 表达式结束：补全末尾的操作数、闭合括号，并归约整个栈
+     */
+    private Operand finish(State s) {
+        if (s.awaitingParen) {
+            throw new ExpressionException("函数 " + s.frames.function.getName() + " 缺少左括号");
+        }
+        if (s.expectOperand) {
+            // 与原有预览规则一致：只有以运算符结尾时补0
+            if (s.lastType != TokenType.OPERATOR) {
+                throw new ExpressionException("表达式错误");
+            }
+            Lexer zero = new Lexer("0");
+            zero.next();
+            s = pushNumber(s, zero);
+        }
+
+        Operand operands = s.operands;
+        for (Frame frames = s.frames; frames != null; frames = frames.next) {
+            if (frames.kind == Frame.ABS) {
+                throw new ExpressionException("绝对值符号不匹配");
+            }
+            operands = reduce(frames, operands);
+        }
+        if (operands == null || operands.next != null) {
+            throw new ExpressionException("表达式错误");
+        }
+        return operands;
+    }
+
+    /**
+     * 用一个帧归约操作数栈，子树的值直接取自已缓存的结果
+     */
+    private Operand reduce(Frame frame, Operand operands) {
+        switch (frame.kind) {
+            case Frame.BINARY: {
+                Operand right = operands;
+                Operand left = right.next;
+                Node node = new BinaryNode(frame.operator, left.node, right.node);
+                double value = frame.operator.apply(left.value, right.value);
+                return new Operand(node, value, apply(Opcodes.of(frame.operator), left, right), left.next);
+            }
+            case Frame.NEGATE:
+                return new Operand(new UnaryNode(operands.node), -operands.value,
+                        apply(Opcodes.NEGATE, operands, null), operands.next);
+            case Frame.FUNCTION: {
+                FunctionDefinition function = frame.function;
+                int count = frame.arguments + 1;
+                function.checkArgumentCount(count);
+                MathFunction builtin = function.getBuiltin();
+                if (builtin != null) {
+                    Node node = new FunctionNode(builtin, operands.node);
+                    Object[] results = compute(new Operand[] {operands},
+                            (backend, args) -> backend.call(builtin, args[0]));
+                    return new Operand(node, builtin.apply(operands.value, angleMode), results, operands.next);
+                }
+                Node[] arguments = new Node[count];
+                Operand[] children = new Operand[count];
+                double[] values = new double[count];
+                Operand rest = operands;
+                for (int i = count - 1; i >= 0; i--) {
+                    arguments[i] = rest.node;
+                    children[i] = rest;
+                    values[i] = rest.value;
+                    rest = rest.next;
+                }
+                double value = function.invoke(values, 0, count, angleMode);
+                Object[] results = compute(children, (backend, args) -> backend.invoke(function, args));
+                return new Operand(new CallNode(function, arguments), value, results, rest);
+            }
+            case Frame.ABS:
+                return new Operand(new AbsNode(operands.node), Math.abs(operands.value),
+                        apply(Opcodes.ABS, operands, null), operands.next);
+            default:
+                return operands; // 普通括号不产生节点
+        }
+    }
+
+    /**
+     * 按各个后端计算一个运算
+     * @param right 二元运算的右操作数，一元运算为null
+     */
+    private Object[] apply(int opcode, Operand left, Operand right) {
+        Operand[] children = right == null ? new Operand[] {left} : new Operand[] {left, right};
+        return compute(children, (backend, args) -> backend.apply(opcode, args[0], right == null ? null : args[1]));
+    }
+
+    /**
+     * 按各个后端计算一个节点，结果与在整个程序上运行对应的求值器相同：
+     * 任一子树不被后端支持时结果为 {@link #UNSUPPORTED}；否则按计算顺序，第一个没有结果或出错的子树决定结果；
+     * 计算中出错时保存异常，只有最终用到这个结果时才抛出
+     */
+    private Object[] compute(Operand[] children, Step step) {
+        Object[] results = new Object[backends.length];
+        Object[] args = new Object[children.length];
+        for (int i = 0; i < backends.length; i++) {
+            Object stopped = null;
+            for (int j = 0; j < children.length && results[i] == null; j++) {
+                args[j] = children[j].results[i];
+                if (args[j] == UNSUPPORTED) {
+                    results[i] = UNSUPPORTED;
+                } else if (stopped == null && (args[j] == STOPPED || args[j] instanceof RuntimeException)) {
+                    stopped = args[j];
+                }
+            }
+            if (results[i] == null) {
+                results[i] = stopped != null ? stopped : run(backends[i], step, args);
+            }
+        }
+        return results;
+    }
+
+    private static Object run(Backend backend, Step step, Object[] args) {
+        try {
+            Object result = step.apply(backend, args);
+            return result == null ? STOPPED : result;
+        } catch (BudgetExceededException | EvaluationCancelledException e) {
+            throw e;
+        } catch (ExpressionException e) {
+            return e;
+        }
+    }
+
+    /**
+     * 操作数栈（不可变链表），保存子树及其计算结果
+     */
+    private static final class Operand {
+        final Node node;
+        final double value;
+        // 各后端的计算结果，下标与 backends 相同
+        final Object[] results;
+        final Operand next;
+
+        Operand(Node node, double value, Object[] results, Operand next) {
+            this.node = node;
+            this.value = value;
+            this.results = results;
+            this.next = next;
+        }
+    }
+
+    /**
+     * 在一个后端上计算一个节点
+     */
+    private interface Step {
+        Object apply(Backend backend, Object[] args);
+    }
+
+    /**
+     * 逐棵子树计算的数值后端，每个方法对应一种节点，参数是子树在同一后端上的结果
+     * 返回null表示没有结果：字面量返回null时为 {@link #UNSUPPORTED}，运算返回null时为 {@link #STOPPED}
+     */
+    private abstract static class Backend {
+        abstract Object literal(double value, String literal);
+
+        /**
+         * @param b 二元运算的右操作数，一元运算为null
+         */
+        abstract Object apply(int opcode, Object a, Object b);
+
+        Object call(MathFunction function, Object x) {
+            return UNSUPPORTED;
+        }
+
+        Object invoke(FunctionDefinition function, Object[] args) {
+            return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * 整数精确计算，见 {@link IntegerEvaluator}
+     */
+    private static final class IntegerBackend extends Backend {
+        @Override
+        Object literal(double value, String literal) {
+            return IntegerEvaluator.literal(value, literal);
+        }
+
+        @Override
+        Object apply(int opcode, Object a, Object b) {
+            return IntegerEvaluator.apply(opcode, (Number) a, (Number) b);
+        }
+
+        @Override
+        Object call(MathFunction function, Object x) {
+            return function == MathFunction.ABS ? IntegerEvaluator.apply(Opcodes.ABS, (Number) x, null) : UNSUPPORTED;
+        }
+    }
+
+    /**
+     * 双精度结果的精确性分析，见 {@link Exactness}
+     */
+    private static final class ExactnessBackend extends Backend {
+        @Override
+        Object literal(double value, String literal) {
+            return Exactness.literal(value, literal);
+        }
+
+        @Override
+        Object apply(int opcode, Object a, Object b) {
+            Exactness.Bound result = Exactness.apply(opcode, (Exactness.Bound) a, (Exactness.Bound) b);
+            return result == null ? UNSUPPORTED : result;
+        }
+    }
+
+    /**
+     * 定点十进制计算，见 {@link Dec64Evaluator}
+     */
+    private static final class Dec64Backend extends Backend {
+        @Override
+        Object literal(double value, String literal) {
+            long result = Dec64Evaluator.literal(value, literal);
+            return result == Dec64.NAN ? null : Long.valueOf(result);
+        }
+
+        @Override
+        Object apply(int opcode, Object a, Object b) {
+            long result = Dec64Evaluator.apply(opcode, (Long) a, b == null ? 0 : (Long) b);
+            return result == Dec64.NAN ? null : Long.valueOf(result);
+        }
+
+        @Override
+        Object call(MathFunction function, Object x) {
+            return function == MathFunction.ABS ? apply(Opcodes.ABS, x, null) : UNSUPPORTED;
+        }
+    }
+
+    /**
+     * 十进制高精度计算，见 {@link DecimalEvaluator}
+     */
+    private static final class DecimalBackend extends Backend {
+        private final AngleMode angleMode;
+        private final MathContext mc;
+
+        DecimalBackend(AngleMode angleMode, MathContext mc) {
+            this.angleMode = angleMode;
+            this.mc = mc;
+        }
+
+        @Override
+        Object literal(double value, String literal) {
+            return DecimalEvaluator.literal(value, literal, mc);
+        }
+
+        @Override
+        Object apply(int opcode, Object a, Object b) {
+            try {
+                return DecimalEvaluator.apply(opcode, (BigDecimal) a, (BigDecimal) b, mc);
+            } catch (ArithmeticException e) {
+                throw new ResultOverflowException();
+            }
+        }
+
+        @Override
+        Object call(MathFunction function, Object x) {
+            try {
+                return DecimalEvaluator.call(function, (BigDecimal) x, angleMode, mc);
+            } catch (ArithmeticException e) {
+                throw new ResultOverflowException();
+            }
+        }
+
+        @Override
+        Object invoke(FunctionDefinition function, Object[] args) {
+            BigDecimal[] values = Arrays.copyOf(args, args.length, BigDecimal[].class);
+            return DecimalEvaluator.invoke(function, values, 0, values.length, angleMode, mc);
+        }
+    }
+
+    /**
+     * 双倍精度计算，见 {@link DoubleDoubleEvaluator}
+     */
+    private static final class DoubleDoubleBackend extends Backend {
+        private final AngleMode angleMode;
+
+        DoubleDoubleBackend(AngleMode angleMode) {
+            this.angleMode = angleMode;
+        }
+
+        @Override
+        Object literal(double value, String literal) {
+            return DoubleDoubleEvaluator.literal(value, literal);
+        }
+
+        @Override
+        Object apply(int opcode, Object a, Object b) {
+            return DoubleDoubleEvaluator.apply(opcode, (DoubleDouble) a, (DoubleDouble) b);
+        }
+
+        @Override
+        Object call(MathFunction function, Object x) {
+            return DoubleDoubleEvaluator.call(function, (DoubleDouble) x, angleMode);
+        }
+
+        @Override
+        Object invoke(FunctionDefinition function, Object[] args) {
+            DoubleDouble[] values = Arrays.copyOf(args, args.length, DoubleDouble[].class);
+            return DoubleDoubleEvaluator.invoke(function, values, 0, values.length, angleMode);
+        }
+    }
+
+    /**
+     * 运算符栈帧（不可变链表）
+     */
+    private static final class Frame {
+        static final int BINARY = 0;
+        static final int NEGATE = 1;
+        static final int PAREN = 2;
+        static final int FUNCTION = 3;
+        static final int ABS = 4;
+
+        final int kind;
+        final Operator operator;
+        final FunctionDefinition function;
+        // 函数帧中已经读完的参数个数（逗号的个数）
+        final int arguments;
+        final Frame next;
+
+        Frame(int kind, Operator operator, FunctionDefinition function, Frame next) {
+            this(kind, operator, function, 0, next);
+        }
+
+        Frame(int kind, Operator operator, FunctionDefinition function, int arguments, Frame next) {
+            this.kind = kind;
+            this.operator = operator;
+            this.function = function;
+            this.arguments = arguments;
+            this.next = next;
+        }
+
+        /**
+         * 归约优先级，括号类的帧为0，不会被运算符归约
+         */
+        int precedence() {
+            if (kind == BINARY) {
+                return operator.getPrecedence();
+            }
+            return kind == NEGATE ? PREFIX_PRECEDENCE : 0;
+        }
+    }
+
+    /**
+     * 状态机在某个词法单元之后的状态
+     */
+    private static final class State {
+        final Operand operands;
+        final Frame frames;
+        // 下一个词法单元是否应为操作数
+        final boolean expectOperand;
+        // 是否刚读入函数名，等待左括号
+        final boolean awaitingParen;
+        // 上一个词法单元是否为前缀负号
+        final boolean afterPrefixMinus;
+        final TokenType lastType;
+
+        State(Operand operands, Frame frames, boolean expectOperand, boolean awaitingParen,
+              boolean afterPrefixMinus, TokenType lastType) {
+            this.operands = operands;
+            this.frames = frames;
+            this.expectOperand = expectOperand;
+            this.awaitingParen = awaitingParen;
+            this.afterPrefixMinus = afterPrefixMinus;
+            this.lastType = lastType;
+        }
+    }
+}
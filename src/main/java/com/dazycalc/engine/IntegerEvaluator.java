@@ -0,0 +1,412 @@
+package com.dazycalc.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * 整数求值器
+ * 所有字面量都是整数、只包含加、减、乘、除、取余、乘方、取负、绝对值、平方和阶乘的程序按整数精确计算：
+ * 操作数放在long数组中，按 {@link Math#addExact} 等方法同样的位运算检测溢出（不抛出异常，溢出时也不慢），
+ * 溢出的值提升为 {@link BigInteger}，重新落回long范围的值再降回long。乘方按平方-乘算法计算。
+ *
+ * 除法除不尽、指数为负或结果超过 {@link #MAX_BITS} 位时没有精确的整数结果，
+ * {@link #execute()} 返回null，由调用方改用其他方式计算。
+ * 实例只保存编译好的常量，可以被多个线程同时使用。
+ */
+public final class IntegerEvaluator {
+    /** 整数结果的最大二进制位数，超过时放弃精确计算（约1233位十进制数） */
+    public static final int MAX_BITS = 1 << 12;
+
+    // long能表示的最大阶乘为 20!
+    private static final int MAX_LONG_FACTORIAL = 20;
+    private static final long[] LONG_FACTORIALS = new long[MAX_LONG_FACTORIAL + 1];
+
+    static {
+        LONG_FACTORIALS[0] = 1;
+        for (int i = 1; i <= MAX_LONG_FACTORIAL; i++) {
+            LONG_FACTORIALS[i] = LONG_FACTORIALS[i - 1] * i;
+        }
+    }
+
+    private final Program program;
+    private final long[] constants;
+    // 超出long范围的常量，全部在long范围内时为null
+    private final BigInteger[] bigConstants;
+
+    private IntegerEvaluator(Program program, long[] constants, BigInteger[] bigConstants) {
+        this.program = program;
+        this.constants = constants;
+        this.bigConstants = bigConstants;
+    }
+
+    /**
+     * 为程序创建整数求值器
+     * @param program 后缀程序
+     * @return 整数求值器，程序含有变量、非整数字面量、π、e或整数运算之外的函数时返回null
+     */
+    public static IntegerEvaluator compile(Program program) {
+        int[] code = program.getCode();
+        for (int pc = 0; pc < code.length; pc++) {
+            if (code[pc] == Opcodes.INVOKE || code[pc] == Opcodes.VAR
+                    || (code[pc] == Opcodes.CALL && code[pc + 1] != MathFunction.ABS.ordinal())) {
+                return null;
+            }
+            if (Opcodes.hasOperand(code[pc])) {
+                pc++;
+            }
+        }
+
+        double[] values = program.getConstants();
+        String[] literals = program.getLiterals();
+        long[] constants = new long[values.length];
+        BigInteger[] bigConstants = null;
+        for (int i = 0; i < values.length; i++) {
+            BigInteger value = integerLiteral(values[i], literals[i]);
+            if (value == null) {
+                return null;
+            }
+            if (value.bitLength() < Long.SIZE) {
+                constants[i] = value.longValue();
+            } else {
+                if (bigConstants == null) {
+                    bigConstants = new BigInteger[values.length];
+                }
+                bigConstants[i] = value;
+            }
+        }
+        return new IntegerEvaluator(program, constants, bigConstants);
+    }
+
+    /**
+     * 字面量的精确整数值，不是整数时返回null
+     */
+    private static BigInteger integerLiteral(double value, String literal) {
+        if (DecimalEvaluator.isSymbolicConstant(literal) || Double.isNaN(value) || Double.isInfinite(value)) {
+            return null;
+        }
+        try {
+            // 按原始文本转换，超过2^53的字面量也不会丢失精度
+            return DecimalEvaluator.literal(value, literal, null).toBigIntegerExact();
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 执行程序
+     * @return 精确结果，在long范围内时为 {@link Long}，否则为 {@link BigInteger}；没有精确的整数结果时返回null
+     * @throws ExpressionException 除数为零或对负数求阶乘
+     */
+    public Number execute() {
+        int depth = Math.max(1, program.getMaxStackDepth());
+        long[] s = new long[depth];
+        // 不为null的位置表示该操作数已提升为BigInteger
+        BigInteger[] big = new BigInteger[depth];
+        long[] temps = new long[program.getTempCount()];
+        BigInteger[] bigTemps = new BigInteger[program.getTempCount()];
+        int[] code = program.getCode();
+        int sp = 0;
+
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case Opcodes.CONST: {
+                    int index = code[++pc];
+                    s[sp] = constants[index];
+                    big[sp] = bigConstants == null ? null : bigConstants[index];
+                    sp++;
+                    break;
+                }
+                case Opcodes.STORE: {
+                    int slot = code[++pc];
+                    temps[slot] = s[sp - 1];
+                    bigTemps[slot] = big[sp - 1];
+                    break;
+                }
+                case Opcodes.LOAD: {
+                    int slot = code[++pc];
+                    s[sp] = temps[slot];
+                    big[sp] = bigTemps[slot];
+                    sp++;
+                    break;
+                }
+                case Opcodes.CALL:
+                    pc++; // 编译时已确认只有绝对值函数
+                    apply(Opcodes.ABS, s, big, sp - 1);
+                    break;
+                default:
+                    if (Opcodes.isBinary(code[pc])) {
+                        sp--;
+                    }
+                    if (!apply(code[pc], s, big, sp - 1)) {
+                        return null;
+                    }
+                    break;
+            }
+        }
+        // 每条指令一步，阶乘和大整数乘方按实际的乘法次数另外扣减
+        EvaluationMeter.charge(code.length);
+
+        if (sp != 1) {
+            throw new ExpressionException("表达式错误");
+        }
+        return big[0] != null ? big[0] : Long.valueOf(s[0]);
+    }
+
+    /**
+     * 计算单个运算，供 {@link IncrementalEvaluator} 逐棵子树计算
+     * @param opcode 不带操作数的运算操作码
+     * @param a 左操作数，一元运算的唯一操作数
+     * @param b 右操作数，一元运算时忽略
+     * @return 精确结果，没有精确的整数结果时返回null
+     * @throws ExpressionException 除数为零或对负数求阶乘
+     */
+    static Number apply(int opcode, Number a, Number b) {
+        long[] s = new long[2];
+        BigInteger[] big = new BigInteger[2];
+        load(s, big, 0, a);
+        if (b != null) {
+            load(s, big, 1, b);
+        }
+        if (!apply(opcode, s, big, 0)) {
+            return null;
+        }
+        return big[0] != null ? big[0] : Long.valueOf(s[0]);
+    }
+
+    /**
+     * 字面量的精确整数值，在long范围内时为 {@link Long}，不是整数时返回null
+     */
+    static Number literal(double value, String literal) {
+        BigInteger result = integerLiteral(value, literal);
+        if (result == null || result.bitLength() >= Long.SIZE) {
+            return result;
+        }
+        return result.longValue();
+    }
+
+    private static void load(long[] s, BigInteger[] big, int i, Number value) {
+        if (value instanceof BigInteger) {
+            big[i] = (BigInteger) value;
+        } else {
+            s[i] = value.longValue();
+        }
+    }
+
+    /**
+     * 执行一个运算，操作数为 s[top]（二元运算还有 s[top + 1]），结果保存在top位置
+     * @return 没有精确的整数结果时返回false
+     */
+    private static boolean apply(int opcode, long[] s, BigInteger[] big, int top) {
+        int right = top + 1;
+        switch (opcode) {
+            case Opcodes.ADD:
+                if (big[top] == null && big[right] == null) {
+                    long a = s[top];
+                    long b = s[right];
+                    long r = a + b;
+                    if (((a ^ r) & (b ^ r)) >= 0) {
+                        s[top] = r;
+                        return true;
+                    }
+                }
+                return store(s, big, top, toBig(s, big, top).add(toBig(s, big, right)));
+            case Opcodes.SUBTRACT:
+                if (big[top] == null && big[right] == null) {
+                    long a = s[top];
+                    long b = s[right];
+                    long r = a - b;
+                    if (((a ^ b) & (a ^ r)) >= 0) {
+                        s[top] = r;
+                        return true;
+                    }
+                }
+                return store(s, big, top, toBig(s, big, top).subtract(toBig(s, big, right)));
+            case Opcodes.MULTIPLY:
+                if (big[top] == null && big[right] == null && fitsProduct(s[top], s[right])) {
+                    s[top] *= s[right];
+                    return true;
+                }
+                return store(s, big, top, toBig(s, big, top).multiply(toBig(s, big, right)));
+            case Opcodes.DIVIDE:
+                if (isZero(s, big, right)) {
+                    throw new ExpressionException("除数不能为零");
+                }
+                if (big[top] == null && big[right] == null && !(s[top] == Long.MIN_VALUE && s[right] == -1)) {
+                    if (s[top] % s[right] != 0) {
+                        return false; // 除不尽
+                    }
+                    s[top] /= s[right];
+                    return true;
+                }
+                BigInteger[] quotient = toBig(s, big, top).divideAndRemainder(toBig(s, big, right));
+                return quotient[1].signum() == 0 && store(s, big, top, quotient[0]);
+            case Opcodes.MODULO:
+                if (isZero(s, big, right)) {
+                    throw new ExpressionException("除数不能为零");
+                }
+                // 与double的%一致：结果与被除数同号
+                if (big[top] == null && big[right] == null) {
+                    s[top] %= s[right];
+                    return true;
+                }
+                return store(s, big, top, toBig(s, big, top).remainder(toBig(s, big, right)));
+            case Opcodes.POWER:
+                return power(s, big, top, right);
+            case Opcodes.NEGATE:
+                if (big[top] == null && s[top] != Long.MIN_VALUE) {
+                    s[top] = -s[top];
+                    return true;
+                }
+                return store(s, big, top, toBig(s, big, top).negate());
+            case Opcodes.ABS:
+                if (big[top] == null && s[top] != Long.MIN_VALUE) {
+                    s[top] = Math.abs(s[top]);
+                    return true;
+                }
+                return store(s, big, top, toBig(s, big, top).abs());
+            case Opcodes.SQUARE:
+                if (big[top] == null && fitsProduct(s[top], s[top])) {
+                    s[top] *= s[top];
+                    return true;
+                }
+                return store(s, big, top, toBig(s, big, top).pow(2));
+            case Opcodes.FACTORIAL:
+                return factorial(s, big, top);
+            default:
+                throw new ExpressionException("未知操作码: " + opcode);
+        }
+    }
+
+    /**
+     * 把精确的整数结果转换为上下文要求的形式
+     * 双精度模式且未限制精度时原样返回，否则转换为按上下文精度舍入的 {@link BigDecimal}
+     */
+    static Number toResult(Number value, EvaluationContext context) {
+        if (context.getNumericMode() == NumericMode.DOUBLE && context.getMathContext().getPrecision() == 0) {
+            return value;
+        }
+        BigDecimal decimal = value instanceof BigInteger
+                ? new BigDecimal((BigInteger) value) : BigDecimal.valueOf(value.longValue());
+        return decimal.round(context.getDecimalContext());
+    }
+
+    /**
+     * a × b 是否不会溢出long，与 {@link Math#multiplyExact(long, long)} 的判断相同，但溢出时不抛出异常
+     */
+    private static boolean fitsProduct(long a, long b) {
+        return Math.multiplyHigh(a, b) == ((a * b) >> 63);
+    }
+
+    private static BigInteger toBig(long[] s, BigInteger[] big, int i) {
+        return big[i] != null ? big[i] : BigInteger.valueOf(s[i]);
+    }
+
+    private static boolean isZero(long[] s, BigInteger[] big, int i) {
+        return big[i] == null && s[i] == 0;
+    }
+
+    /**
+     * 保存BigInteger结果，落回long范围时降为long
+     * @return 结果超过 {@link #MAX_BITS} 位时返回false
+     */
+    private static boolean store(long[] s, BigInteger[] big, int i, BigInteger value) {
+        if (value.bitLength() < Long.SIZE) {
+            s[i] = value.longValue();
+            big[i] = null;
+            return true;
+        }
+        if (value.bitLength() > MAX_BITS) {
+            return false;
+        }
+        big[i] = value;
+        return true;
+    }
+
+    /**
+     * 乘方 s[base] ^ s[exponent]，结果保存在base位置
+     * @return 指数为负（结果不是整数）或结果过大时返回false
+     */
+    private static boolean power(long[] s, BigInteger[] big, int base, int exponent) {
+        // 0、1、-1的任意次幂不会变大，先单独处理
+        if (big[base] == null && s[base] >= -1 && s[base] <= 1) {
+            boolean negativeExponent = big[exponent] != null ? big[exponent].signum() < 0 : s[exponent] < 0;
+            boolean odd = big[exponent] != null ? big[exponent].testBit(0) : (s[exponent] & 1) != 0;
+            if (s[base] == 0) {
+                if (negativeExponent) {
+                    return false; // 0的负数次幂是无穷大
+                }
+                s[base] = isZero(s, big, exponent) ? 1 : 0;
+            } else if (s[base] == -1 && !odd) {
+                s[base] = 1;
+            }
+            return true;
+        }
+        if (big[exponent] != null || s[exponent] < 0) {
+            return false;
+        }
+        long n = s[exponent];
+        if (big[base] == null) {
+            // 平方-乘算法，溢出时改用BigInteger
+            long result = 1;
+            long square = s[base];
+            long remaining = n;
+            while (true) {
+                if ((remaining & 1) != 0) {
+                    if (!fitsProduct(result, square)) {
+                        break;
+                    }
+                    result *= square;
+                }
+                remaining >>>= 1;
+                if (remaining == 0) {
+                    s[base] = result;
+                    return true;
+                }
+                if (!fitsProduct(square, square)) {
+                    break;
+                }
+                square *= square;
+            }
+        }
+        if (n >= MAX_BITS) {
+            return false; // |x| ≥ 2
+        }
+        BigInteger value = toBig(s, big, base);
+        // |x|^n 至少有 (bitLength - 1) × n + 1 位
+        if ((value.bitLength() - 1) * n >= MAX_BITS) {
+            return false;
+        }
+        EvaluationMeter.charge(Long.SIZE - Long.numberOfLeadingZeros(n));
+        return store(s, big, base, value.pow((int) n));
+    }
+
+    /**
+     * 阶乘 s[i]!，结果保存在原位置
+     * @return 结果过大时返回false
+     */
+    private static boolean factorial(long[] s, BigInteger[] big, int i) {
+        if (big[i] != null) {
+            if (big[i].signum() < 0) {
+                throw new ExpressionException("阶乘不适用于负整数");
+            }
+            return false;
+        }
+        long n = s[i];
+        if (n < 0) {
+            throw new ExpressionException("阶乘不适用于负整数");
+        }
+        if (n <= MAX_LONG_FACTORIAL) {
+            s[i] = LONG_FACTORIALS[(int) n];
+            return true;
+        }
+        BigInteger result = BigInteger.valueOf(LONG_FACTORIALS[MAX_LONG_FACTORIAL]);
+        for (long k = MAX_LONG_FACTORIAL + 1; k <= n; k++) {
+            result = result.multiply(BigInteger.valueOf(k));
+            if (result.bitLength() > MAX_BITS) {
+                return false;
+            }
+        }
+        EvaluationMeter.charge(n - MAX_LONG_FACTORIAL);
+        return store(s, big, i, result);
+    }
+}
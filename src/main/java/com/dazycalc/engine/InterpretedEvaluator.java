@@ -0,0 +1,22 @@
+package com.dazycalc.engine;
+
+/**
+ * 解释执行的求值器，直接在后缀程序上运行 {@link Interpreter}
+ * 每个线程使用各自的解释器（及其操作数栈），因此可以被多个线程同时使用
+ */
+public final class InterpretedEvaluator implements Evaluator {
+    private static final ThreadLocal<Interpreter> INTERPRETERS = ThreadLocal.withInitial(Interpreter::new);
+
+    private final Program program;
+    private final AngleMode angleMode;
+
+    public InterpretedEvaluator(Program program, AngleMode angleMode) {
+        this.program = program;
+        this.angleMode = angleMode;
+    }
+
+    @Override
+    public double eval(double[] vars) {
+        return INTERPRETERS.get().execute(program, angleMode, vars);
+    }
+}
@@ -0,0 +1,118 @@
+package com.dazycalc.engine;
+
+/**
+ * 后缀程序解释器
+ * 操作数栈是预先分配的double数组，按int操作码分派，稳态求值过程不产生任何对象分配
+ * 每个实例持有自己的操作数栈，不能被多个线程同时使用
+ */
+public final class Interpreter {
+    private static final MathFunction[] FUNCTIONS = MathFunction.values();
+    private static final double[] NO_VARS = new double[0];
+
+    private double[] stack = new double[16];
+    private double[] temps = new double[0];
+
+    /**
+     * 执行不含变量的程序
+     * @param program 后缀程序
+     * @param angleMode 角度模式
+     * @return 计算结果
+     */
+    public double execute(Program program, AngleMode angleMode) {
+        return execute(program, angleMode, NO_VARS);
+    }
+
+    /**
+     * 执行程序
+     * @param program 后缀程序
+     * @param angleMode 角度模式
+     * @param vars 变量值数组，按变量下标排列
+     * @return 计算结果
+     */
+    public double execute(Program program, AngleMode angleMode, double[] vars) {
+        if (stack.length < program.getMaxStackDepth()) {
+            stack = new double[program.getMaxStackDepth()];
+        }
+        if (temps.length < program.getTempCount()) {
+            temps = new double[program.getTempCount()];
+        }
+        final double[] s = stack;
+        final double[] t = temps;
+        final int[] code = program.getCode();
+        final double[] constants = program.getConstants();
+        final FunctionDefinition[] callTargets = program.getCallTargets();
+        final int[] callArities = program.getCallArities();
+        int sp = 0;
+
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case Opcodes.CONST:
+                    s[sp++] = constants[code[++pc]];
+                    break;
+                case Opcodes.ADD:
+                    sp--;
+                    s[sp - 1] = s[sp - 1] + s[sp];
+                    break;
+                case Opcodes.SUBTRACT:
+                    sp--;
+                    s[sp - 1] = s[sp - 1] - s[sp];
+                    break;
+                case Opcodes.MULTIPLY:
+                    sp--;
+                    s[sp - 1] = s[sp - 1] * s[sp];
+                    break;
+                case Opcodes.DIVIDE:
+                    sp--;
+                    s[sp - 1] = Kernels.divide(s[sp - 1], s[sp]);
+                    break;
+                case Opcodes.MODULO:
+                    sp--;
+                    s[sp - 1] = Kernels.modulo(s[sp - 1], s[sp]);
+                    break;
+                case Opcodes.POWER:
+                    sp--;
+                    s[sp - 1] = Math.pow(s[sp - 1], s[sp]);
+                    break;
+                case Opcodes.NEGATE:
+                    s[sp - 1] = -s[sp - 1];
+                    break;
+                case Opcodes.ABS:
+                    s[sp - 1] = Math.abs(s[sp - 1]);
+                    break;
+                case Opcodes.SQUARE:
+                    s[sp - 1] = s[sp - 1] * s[sp - 1];
+                    break;
+                case Opcodes.FACTORIAL:
+                    s[sp - 1] = Kernels.factorial(s[sp - 1]);
+                    break;
+                case Opcodes.CALL:
+                    s[sp - 1] = FUNCTIONS[code[++pc]].apply(s[sp - 1], angleMode);
+                    break;
+                case Opcodes.INVOKE: {
+                    // 参数就在操作数栈上，结果写回第一个参数的位置
+                    int site = code[++pc];
+                    sp -= callArities[site];
+                    s[sp] = callTargets[site].invoke(s, sp, callArities[site], angleMode);
+                    sp++;
+                    break;
+                }
+                case Opcodes.STORE:
+                    t[code[++pc]] = s[sp - 1];
+                    break;
+                case Opcodes.LOAD:
+                    s[sp++] = t[code[++pc]];
+                    break;
+                case Opcodes.VAR:
+                    s[sp++] = vars[code[++pc]];
+                    break;
+                default:
+                    throw new ExpressionException("未知操作码: " + code[pc]);
+            }
+        }
+
+        if (sp != 1) {
+            throw new ExpressionException("表达式错误");
+        }
+        return s[0];
+    }
+}
@@ -0,0 +1,155 @@
+package com.dazycalc.engine;
+
+import java.math.BigInteger;
+
+/**
+ * 运算内核
+ * 解释器、语法树和生成的字节码共用这些静态方法，保证各条求值路径的语义和错误信息一致
+ */
+public final class Kernels {
+    // 170! 是double能表示的最大阶乘，更大的整数阶乘溢出为无穷大
+    static final int MAX_FACTORIAL = 170;
+    // 0!..170!，用BigInteger精确计算后舍入，每一项都是最接近真值的double
+    private static final double[] FACTORIALS = new double[MAX_FACTORIAL + 1];
+
+    // Lanczos近似的参数（g=7，9项），相对误差约1e-15
+    static final double LANCZOS_G = 7;
+    static final double[] LANCZOS_COEFFICIENTS = {
+            0.99999999999980993,
+            676.5203681218851,
+            -1259.1392167224028,
+            771.32342877765313,
+            -176.61502916214059,
+            12.507343278686905,
+            -0.13857109526572012,
+            9.9843695780195716e-6,
+            1.5056327351493116e-7
+    };
+    static final double SQRT_TWO_PI = Math.sqrt(2 * Math.PI);
+
+    static {
+        BigInteger product = BigInteger.ONE;
+        FACTORIALS[0] = 1;
+        for (int n = 1; n <= MAX_FACTORIAL; n++) {
+            product = product.multiply(BigInteger.valueOf(n));
+            FACTORIALS[n] = product.doubleValue();
+        }
+    }
+
+    private Kernels() {
+    }
+
+    public static double divide(double a, double b) {
+        if (b == 0) {
+            throw new ExpressionException("除数不能为零");
+        }
+        return a / b;
+    }
+
+    public static double modulo(double a, double b) {
+        if (b == 0) {
+            throw new ExpressionException("除数不能为零");
+        }
+        return a % b;
+    }
+
+    /**
+     * 阶乘，整数查表，非整数按 x! = Γ(x+1) 计算
+     */
+    public static double factorial(double value) {
+        if (value == Math.floor(value)) {
+            if (value < 0) {
+                throw new ExpressionException("阶乘不适用于负整数");
+            }
+            return value > MAX_FACTORIAL ? Double.POSITIVE_INFINITY : FACTORIALS[(int) value];
+        }
+        return gamma(value + 1); // 非整数或NaN
+    }
+
+    /**
+     * 伽马函数，正整数查表，其余用Lanczos近似，x &lt; 0.5 时用反射公式
+     */
+    public static double gamma(double x) {
+        if (x == Math.floor(x)) {
+            if (x <= 0) {
+                throw new ExpressionException("伽马函数在非正整数处无定义");
+            }
+            return x > MAX_FACTORIAL + 1 ? Double.POSITIVE_INFINITY : FACTORIALS[(int) x - 1];
+        }
+        if (x > MAX_FACTORIAL + 2) {
+            return Double.POSITIVE_INFINITY; // Γ(171.62...) 之后溢出
+        }
+        if (x < 0.5) {
+            // Γ(x)Γ(1-x) = π / sin(πx)
+            return Math.PI / (Math.sin(Math.PI * x) * gamma(1 - x));
+        }
+        x -= 1;
+        double sum = LANCZOS_COEFFICIENTS[0];
+        for (int i = 1; i < LANCZOS_COEFFICIENTS.length; i++) {
+            sum += LANCZOS_COEFFICIENTS[i] / (x + i);
+        }
+        double t = x + LANCZOS_G + 0.5;
+        // t^(x+0.5) 拆成两半相乘，避免在结果溢出之前中间值先溢出
+        double half = Math.pow(t, (x + 0.5) / 2);
+        return SQRT_TWO_PI * sum * half * Math.exp(-t) * half;
+    }
+
+    public static double sinDegrees(double x) {
+        return Math.sin(Math.toRadians(x));
+    }
+
+    public static double cosDegrees(double x) {
+        return Math.cos(Math.toRadians(x));
+    }
+
+    public static double tanDegrees(double x) {
+        return Math.tan(Math.toRadians(x));
+    }
+
+    public static double asin(double x) {
+        if (x < -1 || x > 1) {
+            throw new ExpressionException("反正弦函数参数必须在[-1,1]之间");
+        }
+        return Math.asin(x);
+    }
+
+    public static double asinDegrees(double x) {
+        return Math.toDegrees(asin(x));
+    }
+
+    public static double acos(double x) {
+        if (x < -1 || x > 1) {
+            throw new ExpressionException("反余弦函数参数必须在[-1,1]之间");
+        }
+        return Math.acos(x);
+    }
+
+    public static double acosDegrees(double x) {
+        return Math.toDegrees(acos(x));
+    }
+
+    public static double atanDegrees(double x) {
+        return Math.toDegrees(Math.atan(x));
+    }
+
+    public static double log10(double x) {
+        if (x <= 0) {
+            throw new ExpressionException("对数函数参数必须为正数");
+        }
+        return Math.log10(x);
+    }
+
+    public static double ln(double x) {
+        if (x <= 0) {
+            throw new ExpressionException("对数函数参数必须为正数");
+        }
+        return Math.log(x);
+    }
+
+    public static double sqrt(double x) {
+        if (x < 0) {
+            throw new ExpressionException("平方根函数参数必须为非负数");
+        }
+        return Math.sqrt(x);
+    }
+}
@@ -0,0 +1,287 @@
+package com.dazycalc.engine;
+
+/**
+ * 表达式词法分析器
+ * 按需从输入中逐个读取词法单元，当前单元的信息保存在字段中，不为每个单元创建对象
+ */
+public final class Lexer {
+    private static final FunctionRegistry FUNCTIONS = FunctionRegistry.getDefault();
+
+    private final CharSequence input;
+    private int pos;
+
+    // 当前词法单元
+    private TokenType type;
+    private int tokenStart;
+    private double number;
+    // 常数的文本；数字字面量只记录区间，需要时才创建字符串
+    private String literal;
+    private int literalStart;
+    private int literalEnd;
+    private boolean integerLiteral;
+    private Operator operator;
+    private FunctionDefinition function;
+    private String name;
+    private PostfixNode.Kind postfix;
+
+    public Lexer(CharSequence input) {
+        this(input, 0);
+    }
+
+    /**
+     * 从指定位置开始分析
+     * @param input 输入文本
+     * @param start 起始位置，必须位于词法单元边界上
+     */
+    public Lexer(CharSequence input, int start) {
+        this.input = input;
+        this.pos = start;
+    }
+
+    /**
+     * 读取下一个词法单元
+     * @return 词法单元类型
+     */
+    public TokenType next() {
+        // 跳过空白字符
+        while (pos < input.length() && Character.isWhitespace(input.charAt(pos))) {
+            pos++;
+        }
+
+        tokenStart = pos;
+        if (pos >= input.length()) {
+            type = TokenType.END;
+            return type;
+        }
+
+        char c = input.charAt(pos);
+
+        // 处理数字、小数点和科学计数法
+        if (Character.isDigit(c) || c == '.') {
+            scanNumber();
+            return type;
+        }
+
+        // 处理常数
+        if (c == 'π') {
+            pos++;
+            number = Math.PI;
+            literal = "π";
+            integerLiteral = false;
+            type = TokenType.NUMBER;
+            return type;
+        }
+
+        // 处理函数名、常数e和变量名：先读取完整的标识符，整个标识符是函数名时才是函数
+        if (isIdentifierStart(c)) {
+            scanIdentifier();
+            return type;
+        }
+
+        pos++;
+        switch (c) {
+            case '(':
+                type = TokenType.LEFT_PAREN;
+                return type;
+            case ')':
+                type = TokenType.RIGHT_PAREN;
+                return type;
+            case '|':
+                type = TokenType.ABS_BAR;
+                return type;
+            case ',':
+                type = TokenType.COMMA;
+                return type;
+            case '²':
+                postfix = PostfixNode.Kind.SQUARE;
+                type = TokenType.POSTFIX;
+                return type;
+            case '!':
+                postfix = PostfixNode.Kind.FACTORIAL;
+                type = TokenType.POSTFIX;
+                return type;
+            default:
+                break;
+        }
+
+        Operator op = Operator.fromSymbol(c);
+        if (op != null) {
+            operator = op;
+            type = TokenType.OPERATOR;
+            return type;
+        }
+
+        throw new ExpressionException("无法识别的字符: " + c);
+    }
+
+    /**
+     * 扫描标识符，按函数名、常数e、变量名的顺序判断
+     */
+    private void scanIdentifier() {
+        int start = pos;
+        while (pos < input.length() && isIdentifierPart(input.charAt(pos))) {
+            pos++;
+        }
+        FunctionDefinition matched = FUNCTIONS.match(input, start);
+        if (matched != null && matched.getName().length() == pos - start) {
+            function = matched;
+            type = TokenType.FUNCTION;
+        } else if (pos - start == 1 && input.charAt(start) == 'e') {
+            number = Math.E;
+            literal = "e";
+            integerLiteral = false;
+            type = TokenType.NUMBER;
+        } else {
+            name = input.subSequence(start, pos).toString();
+            type = TokenType.VARIABLE;
+        }
+    }
+
+    /**
+     * 判断是否可以作为变量名：由字母、数字和下划线组成，不以数字开头，并且不是函数名或常数
+     */
+    static boolean isVariableName(CharSequence text) {
+        if (text.length() == 0 || !isIdentifierStart(text.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < text.length(); i++) {
+            if (!isIdentifierPart(text.charAt(i))) {
+                return false;
+            }
+        }
+        return !"e".contentEquals(text) && FUNCTIONS.lookup(text) == null;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (Character.isLetter(c) && c != 'π') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || Character.isDigit(c);
+    }
+
+    /**
+     * 扫描数字，支持科学计数法，如 1.23e+4
+     */
+    private void scanNumber() {
+        int start = pos;
+        while (pos < input.length() && (Character.isDigit(input.charAt(pos)) || input.charAt(pos) == '.')) {
+            pos++;
+        }
+
+        // 只有在e或E后面是数字，或者是正负号加数字时，才视为科学计数法
+        if (pos < input.length() && (input.charAt(pos) == 'e' || input.charAt(pos) == 'E')) {
+            int exponentPos = pos + 1;
+            if (exponentPos < input.length() && (input.charAt(exponentPos) == '+' || input.charAt(exponentPos) == '-')) {
+                exponentPos++;
+            }
+            if (exponentPos < input.length() && Character.isDigit(input.charAt(exponentPos))) {
+                pos = exponentPos;
+                while (pos < input.length() && Character.isDigit(input.charAt(pos))) {
+                    pos++;
+                }
+            }
+        }
+
+        literal = null;
+        literalStart = start;
+        literalEnd = pos;
+        integerLiteral = true;
+        for (int i = start; i < pos; i++) {
+            if (!Character.isDigit(input.charAt(i))) {
+                integerLiteral = false;
+                break;
+            }
+        }
+        number = NumberParser.parse(input, start, pos);
+        type = TokenType.NUMBER;
+    }
+
+    /**
+     * 获取当前词法单元类型
+     */
+    public TokenType getType() {
+        return type;
+    }
+
+    /**
+     * 获取当前词法单元在输入中的起始位置
+     */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * 获取当前词法单元在输入中的结束位置（不含）
+     */
+    public int getTokenEnd() {
+        return pos;
+    }
+
+    /**
+     * 获取当前数字的值
+     */
+    public double getNumber() {
+        return number;
+    }
+
+    /**
+     * 获取当前数字的原始文本，常数为 "π" 或 "e"
+     * 数字字面量的文本在调用时才创建
+     */
+    public String getLiteral() {
+        if (literal == null && type == TokenType.NUMBER) {
+            return input.subSequence(literalStart, literalEnd).toString();
+        }
+        return literal;
+    }
+
+    /**
+     * 当前数字是否为只由数字组成的整数字面量（不含小数点和指数）
+     */
+    public boolean isIntegerLiteral() {
+        return integerLiteral;
+    }
+
+    /**
+     * 为当前数字创建语法树节点
+     * 输入是不可变的String时节点只记录字面量在输入中的位置，文本在需要时才创建
+     * @param negate 是否作为负数字面量（紧跟在前缀负号之后）
+     */
+    NumberNode toNumberNode(boolean negate) {
+        double value = negate ? -number : number;
+        if (literal == null && input instanceof String) {
+            return new NumberNode(value, (String) input, literalStart, literalEnd, negate);
+        }
+        String text = getLiteral();
+        return new NumberNode(value, negate ? "-" + text : text);
+    }
+
+    /**
+     * 获取当前运算符
+     */
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * 获取当前函数
+     */
+    public FunctionDefinition getFunction() {
+        return function;
+    }
+
+    /**
+     * 获取当前变量名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取当前后缀运算符
+     */
+    public PostfixNode.Kind getPostfix() {
+        return postfix;
+    }
+}
@@ -0,0 +1,67 @@
+package com.dazycalc.engine;
+
+/**
+ * 计算器内置的单参数数学函数
+ * 按名称查找函数使用 {@link FunctionRegistry}
+ */
+public enum MathFunction {
+    ARCSIN("arcsin"),
+    ARCCOS("arccos"),
+    ARCTAN("arctan"),
+    SIN("sin"),
+    COS("cos"),
+    TAN("tan"),
+    LOG10("log10"),
+    LN("ln"),
+    SQRT("sqrt"),
+    ABS("abs"),
+    GAMMA("gamma");
+
+    private final String functionName;
+
+    MathFunction(String functionName) {
+        this.functionName = functionName;
+    }
+
+    /**
+     * 获取函数名
+     */
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    /**
+     * 计算函数值
+     * @param x 参数
+     * @param angleMode 角度模式，影响三角函数和反三角函数
+     */
+    public double apply(double x, AngleMode angleMode) {
+        boolean radian = angleMode == AngleMode.RADIAN;
+        switch (this) {
+            case SIN:
+                return radian ? Math.sin(x) : Kernels.sinDegrees(x);
+            case COS:
+                return radian ? Math.cos(x) : Kernels.cosDegrees(x);
+            case TAN:
+                return radian ? Math.tan(x) : Kernels.tanDegrees(x);
+            case ARCSIN:
+                return radian ? Kernels.asin(x) : Kernels.asinDegrees(x);
+            case ARCCOS:
+                return radian ? Kernels.acos(x) : Kernels.acosDegrees(x);
+            case ARCTAN:
+                return radian ? Math.atan(x) : Kernels.atanDegrees(x);
+            case LOG10:
+                return Kernels.log10(x);
+            case LN:
+                return Kernels.ln(x);
+            case SQRT:
+                return Kernels.sqrt(x);
+            case ABS:
+                return Math.abs(x);
+            case GAMMA:
+                return Kernels.gamma(x);
+            default:
+                throw new ExpressionException("未知函数: " + functionName);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.dazycalc.engine;
+
+/**
+ * 表达式语法树节点基类
+ * 所有节点都是不可变的，解析一次后可以重复求值
+ */
+public abstract class Node {
+
+    /**
+     * 计算节点的值
+     * @param angleMode 角度模式
+     */
+    public abstract double evaluate(AngleMode angleMode);
+
+    /**
+     * 子节点个数
+     */
+    int childCount() {
+        return 0;
+    }
+
+    /**
+     * 获取第index个子节点
+     */
+    Node child(int index) {
+        throw new IndexOutOfBoundsException("没有子节点: " + index);
+    }
+
+    /**
+     * 以新的子节点创建同类节点
+     * @param children 与 {@link #child(int)} 一一对应的子节点
+     */
+    Node withChildren(Node[] children) {
+        return this;
+    }
+}
@@ -0,0 +1,121 @@
+package com.dazycalc.engine;
+
+/**
+ * 语法树节点的共享表（hash-consing）
+ * 子节点都已经过去重时，两个节点结构相同当且仅当类型、运算符或函数相同并且子节点是同一个对象，
+ * 所以判断相等和计算散列值都只需要看一层。每创建一个节点就到表中查找，结构相同的子树只保留一份，
+ * 语法树成为有向无环图，占用的内存与不同子表达式的个数成正比，与表达式文本的长度无关。
+ * 表使用开放寻址，实例不是线程安全的。
+ */
+final class NodeTable {
+    private Node[] nodes = new Node[64];
+    private int[] hashes = new int[64];
+    private int size;
+
+    /**
+     * 查找结构相同的节点，没有时登记并返回传入的节点
+     * @param node 子节点都已经由本表去重的节点
+     */
+    Node intern(Node node) {
+        int hash = hash(node);
+        int mask = nodes.length - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            Node existing = nodes[i];
+            if (existing == null) {
+                nodes[i] = node;
+                hashes[i] = hash;
+                if (++size * 2 > nodes.length) {
+                    grow();
+                }
+                return node;
+            }
+            if (hashes[i] == hash && same(existing, node)) {
+                return existing;
+            }
+        }
+    }
+
+    /**
+     * 表中不同节点的个数
+     */
+    int size() {
+        return size;
+    }
+
+    private static int hash(Node node) {
+        if (node instanceof NumberNode) {
+            return ((NumberNode) node).literalHash();
+        }
+        if (node instanceof VariableNode) {
+            return ((VariableNode) node).getIndex();
+        }
+        int hash = node.getClass().hashCode() * 31 + System.identityHashCode(label(node));
+        for (int i = 0; i < node.childCount(); i++) {
+            hash = hash * 31 + System.identityHashCode(node.child(i));
+        }
+        return hash;
+    }
+
+    private static boolean same(Node a, Node b) {
+        if (a.getClass() != b.getClass()) {
+            return false;
+        }
+        if (a instanceof NumberNode) {
+            return ((NumberNode) a).sameLiteral((NumberNode) b);
+        }
+        if (a instanceof VariableNode) {
+            return ((VariableNode) a).getIndex() == ((VariableNode) b).getIndex();
+        }
+        int count = a.childCount();
+        if (label(a) != label(b) || count != b.childCount()) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (a.child(i) != b.child(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 节点除子节点以外的内容：运算符、后缀运算符的种类或函数，都是单例，按引用比较
+     */
+    private static Object label(Node node) {
+        if (node instanceof BinaryNode) {
+            return ((BinaryNode) node).getOperator();
+        }
+        if (node instanceof PostfixNode) {
+            return ((PostfixNode) node).getKind();
+        }
+        if (node instanceof FunctionNode) {
+            return ((FunctionNode) node).getFunction();
+        }
+        if (node instanceof CallNode) {
+            return ((CallNode) node).getFunction();
+        }
+        return null;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void grow() {
+        Node[] oldNodes = nodes;
+        int[] oldHashes = hashes;
+        nodes = new Node[oldNodes.length * 2];
+        hashes = new int[oldNodes.length * 2];
+        int mask = nodes.length - 1;
+        for (int j = 0; j < oldNodes.length; j++) {
+            if (oldNodes[j] != null) {
+                int i = spread(oldHashes[j]) & mask;
+                while (nodes[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                nodes[i] = oldNodes[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+    }
+}
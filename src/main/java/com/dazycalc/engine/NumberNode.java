@@ -0,0 +1,128 @@
+package com.dazycalc.engine;
+
+/**
+ * 数字字面量节点（包括常数π和e）
+ * 除了double值，还保存字面量的原始文本，高精度求值时按文本精确转换，不受double舍入影响
+ */
+public final class NumberNode extends Node {
+    private final double value;
+    // 字面量在输入中的位置，文本在第一次获取时才创建
+    private final String source;
+    private final int start;
+    private final int end;
+    private final boolean negative;
+    private volatile String literal;
+
+    public NumberNode(double value) {
+        this(value, null);
+    }
+
+    /**
+     * @param value 字面量的double值
+     * @param literal 字面量文本，如 "0.1"、"-3"、"π"，为null时按double值转换
+     */
+    public NumberNode(double value, String literal) {
+        this.value = value;
+        this.literal = literal;
+        this.source = null;
+        this.start = 0;
+        this.end = 0;
+        this.negative = false;
+    }
+
+    /**
+     * 由输入中的区间延迟得到字面量文本，解析时不为每个数字创建字符串
+     * @param value 字面量的double值（已按negative取负）
+     * @param source 输入文本
+     * @param start 字面量在输入中的起始位置
+     * @param end 字面量在输入中的结束位置（不含）
+     * @param negative 是否为负数字面量，文本前加负号
+     */
+    NumberNode(double value, String source, int start, int end, boolean negative) {
+        this.value = value;
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.negative = negative;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * 获取字面量文本，没有文本时返回null
+     */
+    public String getLiteral() {
+        String result = literal;
+        if (result == null && source != null) {
+            result = source.substring(start, end);
+            if (negative) {
+                result = "-" + result;
+            }
+            literal = result;
+        }
+        return result;
+    }
+
+    @Override
+    public double evaluate(AngleMode angleMode) {
+        return value;
+    }
+
+    /**
+     * 值和字面量文本是否都与另一个节点相同，直接比较输入中的字符，不创建字符串
+     */
+    boolean sameLiteral(NumberNode other) {
+        if (Double.doubleToLongBits(value) != Double.doubleToLongBits(other.value)) {
+            return false;
+        }
+        int length = literalLength();
+        if (length != other.literalLength()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (literalChar(i) != other.literalChar(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 与 {@link #sameLiteral(NumberNode)} 一致的散列值
+     */
+    int literalHash() {
+        int hash = Double.hashCode(value);
+        int length = literalLength();
+        for (int i = 0; i < length; i++) {
+            hash = hash * 31 + literalChar(i);
+        }
+        return hash;
+    }
+
+    /**
+     * 字面量文本的长度，没有文本时返回-1
+     */
+    private int literalLength() {
+        String text = literal;
+        if (text != null) {
+            return text.length();
+        }
+        return source == null ? -1 : end - start + (negative ? 1 : 0);
+    }
+
+    private char literalChar(int index) {
+        String text = literal;
+        if (text != null) {
+            return text.charAt(index);
+        }
+        if (negative) {
+            if (index == 0) {
+                return '-';
+            }
+            index--;
+        }
+        return source.charAt(start + index);
+    }
+}
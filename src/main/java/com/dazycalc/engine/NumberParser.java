@@ -0,0 +1,242 @@
+package com.dazycalc.engine;
+
+import java.math.BigInteger;
+
+/**
+ * 十进制数字解析
+ * 直接从字符序列的指定区间读取数字并转换为double，不创建中间字符串。
+ * 有效数字不超过19位时，先尝试Clinger快速路径（有效数字和10的幂都能被double精确表示时一次乘除即可），
+ * 再使用Eisel–Lemire算法（Lemire, "Number Parsing at a Gigabyte per Second"）以128位截断的5的幂求出正确舍入的结果；
+ * 有效数字超过19位或Eisel–Lemire无法判定舍入方向的极少数情况交给 {@link Double#parseDouble(String)}。
+ */
+public final class NumberParser {
+    // 5的幂表覆盖的十进制指数范围，超出时结果一定是0或无穷大
+    private static final int MIN_EXPONENT = -342;
+    private static final int MAX_EXPONENT = 308;
+    // 64位整数最多能完整保存的十进制位数
+    private static final int MAX_DIGITS = 19;
+    // Clinger快速路径的范围：有效数字不超过2^53，10的幂不超过10^22
+    private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+    private static final int MAX_EXACT_POWER = 22;
+    // 舍入到偶数的判定只在此指数范围内可能出现
+    private static final int MIN_EXPONENT_ROUND_TO_EVEN = -4;
+    private static final int MAX_EXPONENT_ROUND_TO_EVEN = 23;
+    // 在此范围内乘积的低64位全为1时结果仍然可靠
+    private static final int MIN_SAFE_EXPONENT = -27;
+    private static final int MAX_SAFE_EXPONENT = 55;
+
+    private static final int MANTISSA_BITS = 52;
+    private static final int MIN_BINARY_EXPONENT = -1023;
+    private static final int INFINITE_POWER = 0x7FF;
+
+    private static final double[] EXACT_POWERS_OF_TEN = new double[MAX_EXACT_POWER + 1];
+
+    /**
+     * 5^q 的高128位（负指数为 1/5^-q 向上取整），最高位在第127位，分成高64位和低64位
+     */
+    private static final long[] POWERS_OF_FIVE_HIGH = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+    private static final long[] POWERS_OF_FIVE_LOW = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+
+    static {
+        EXACT_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_EXACT_POWER; i++) {
+            EXACT_POWERS_OF_TEN[i] = EXACT_POWERS_OF_TEN[i - 1] * 10;
+        }
+
+        BigInteger five = BigInteger.valueOf(5);
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int q = MIN_EXPONENT; q <= MAX_EXPONENT; q++) {
+            BigInteger c;
+            if (q >= 0) {
+                BigInteger power = five.pow(q);
+                c = power.bitLength() <= 128 ? power.shiftLeft(128 - power.bitLength())
+                        : power.shiftRight(power.bitLength() - 128);
+            } else {
+                BigInteger power = five.pow(-q);
+                int z = power.subtract(BigInteger.ONE).bitLength(); // 2^z >= 5^-q 的最小z
+                int b = q >= MIN_SAFE_EXPONENT ? z + 127 : 2 * z + 128;
+                c = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+                if (c.bitLength() > 128) {
+                    c = c.shiftRight(c.bitLength() - 128);
+                }
+            }
+            POWERS_OF_FIVE_HIGH[q - MIN_EXPONENT] = c.shiftRight(64).longValue();
+            POWERS_OF_FIVE_LOW[q - MIN_EXPONENT] = c.and(mask).longValue();
+        }
+    }
+
+    private NumberParser() {
+    }
+
+    /**
+     * 解析整个字符序列
+     * @see #parse(CharSequence, int, int)
+     */
+    public static double parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * 解析字符序列中 [start, end) 区间的十进制数字
+     * 格式为可选的正负号、数字（可以带一个小数点，如 1.5、.5、2.）、可选的指数部分（如 e+4、E-8）
+     * @throws ExpressionException 区间内不是合法的数字
+     */
+    public static double parse(CharSequence text, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+            negative = text.charAt(pos) == '-';
+            pos++;
+        }
+
+        long significand = 0;
+        int digitCount = 0; // 不含前导0的有效数字位数
+        int exponent = 0;   // 小数点和截断带来的十进制指数修正
+        boolean anyDigit = false;
+        boolean seenPoint = false;
+        for (; pos < end; pos++) {
+            char c = text.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                anyDigit = true;
+                if (digitCount < MAX_DIGITS) {
+                    if (significand != 0 || c != '0') {
+                        significand = significand * 10 + (c - '0');
+                        digitCount++;
+                    }
+                    if (seenPoint) {
+                        exponent--;
+                    }
+                } else {
+                    // 超过19位，无法在long中精确保存
+                    digitCount++;
+                    if (!seenPoint) {
+                        exponent++;
+                    }
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigit) {
+            throw formatError(text, start, end);
+        }
+
+        if (pos < end && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+                negativeExponent = text.charAt(pos) == '-';
+                pos++;
+            }
+            if (pos == end) {
+                throw formatError(text, start, end);
+            }
+            int value = 0;
+            for (; pos < end; pos++) {
+                char c = text.charAt(pos);
+                if (c < '0' || c > '9') {
+                    throw formatError(text, start, end);
+                }
+                // 指数再大结果也只是0或无穷大，截断避免溢出
+                if (value < 100_000) {
+                    value = value * 10 + (c - '0');
+                }
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (pos != end) {
+            throw formatError(text, start, end);
+        }
+
+        if (digitCount > MAX_DIGITS) {
+            return Double.parseDouble(text.subSequence(start, end).toString());
+        }
+        double result = toDouble(significand, exponent);
+        if (Double.isNaN(result)) {
+            return Double.parseDouble(text.subSequence(start, end).toString());
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * 求 w × 10^q 正确舍入的double值，无法判定时返回NaN
+     */
+    static double toDouble(long w, int q) {
+        if (w == 0 || q < MIN_EXPONENT) {
+            return 0;
+        }
+        if (q > MAX_EXPONENT) {
+            return Double.POSITIVE_INFINITY;
+        }
+        // Clinger快速路径：两个操作数都精确，一次正确舍入的乘除就是正确结果
+        if (w >= 0 && w <= MAX_EXACT_SIGNIFICAND && q >= -MAX_EXACT_POWER && q <= MAX_EXACT_POWER) {
+            return q < 0 ? w / EXACT_POWERS_OF_TEN[-q] : w * EXACT_POWERS_OF_TEN[q];
+        }
+
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+
+        // w × 5^q 的高128位近似值，低位不够精确时再乘下一半
+        int index = q - MIN_EXPONENT;
+        long high = unsignedMultiplyHigh(w, POWERS_OF_FIVE_HIGH[index]);
+        long low = w * POWERS_OF_FIVE_HIGH[index];
+        if ((high & 0x1FF) == 0x1FF) {
+            long secondHigh = unsignedMultiplyHigh(w, POWERS_OF_FIVE_LOW[index]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0) {
+                high++;
+            }
+        }
+        if (low == -1L && (q < MIN_SAFE_EXPONENT || q > MAX_SAFE_EXPONENT)) {
+            return Double.NaN;
+        }
+
+        int upperBit = (int) (high >>> 63);
+        int shift = upperBit + 64 - MANTISSA_BITS - 3;
+        long mantissa = high >>> shift;
+        int power2 = (int) (((152_170 + 65_536) * (long) q) >> 16) + 63 + upperBit - lz - MIN_BINARY_EXPONENT;
+
+        if (power2 <= 0) {
+            // 非规格化数
+            if (-power2 + 1 >= 64) {
+                return 0;
+            }
+            mantissa >>>= -power2 + 1;
+            mantissa += mantissa & 1;
+            mantissa >>>= 1;
+            power2 = mantissa < (1L << MANTISSA_BITS) ? 0 : 1;
+            return Double.longBitsToDouble(((long) power2 << MANTISSA_BITS) | (mantissa & ((1L << MANTISSA_BITS) - 1)));
+        }
+
+        // 恰好位于两个double正中间时舍入到偶数，否则向上舍入
+        if (Long.compareUnsigned(low, 1) <= 0 && q >= MIN_EXPONENT_ROUND_TO_EVEN
+                && q <= MAX_EXPONENT_ROUND_TO_EVEN && (mantissa & 3) == 1
+                && (mantissa << shift) == high) {
+            mantissa &= ~1L;
+        }
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= (2L << MANTISSA_BITS)) {
+            mantissa = 1L << MANTISSA_BITS;
+            power2++;
+        }
+        mantissa &= ~(1L << MANTISSA_BITS);
+        if (power2 >= INFINITE_POWER) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Double.longBitsToDouble(((long) power2 << MANTISSA_BITS) | mantissa);
+    }
+
+    /**
+     * 两个无符号64位整数乘积的高64位
+     */
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    private static ExpressionException formatError(CharSequence text, int start, int end) {
+        return new ExpressionException("数字格式错误: " + text.subSequence(start, end));
+    }
+}
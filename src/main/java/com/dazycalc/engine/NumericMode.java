@@ -0,0 +1,23 @@
+package com.dazycalc.engine;
+
+/**
+ * 数值模式枚举，决定表达式按什么数值类型计算
+ */
+public enum NumericMode {
+    /** 双精度浮点数，速度最快，0.1+0.2 这类十进制小数会带有二进制舍入误差 */
+    DOUBLE,
+    /** 十进制高精度，按上下文的 MathContext 用 BigDecimal 计算 */
+    DECIMAL,
+    /** 自动选择：静态分析表明double计算结果精确时走双精度，否则按十进制高精度计算 */
+    HYBRID,
+    /**
+     * 定点十进制：四则运算在压缩为long的十进制数（{@link Dec64}）上精确计算，不分配对象，适合金额计算；
+     * 结果无法精确表示（如 1÷3）或含有函数调用时改按十进制高精度计算
+     */
+    DEC64,
+    /**
+     * 双倍精度：用两个double之和表示一个数（{@link DoubleDouble}），约31位有效数字，
+     * 开销只是双精度的几倍，远低于十进制高精度
+     */
+    DOUBLE_DOUBLE
+}
@@ -0,0 +1,74 @@
+package com.dazycalc.engine;
+
+/**
+ * 字节码程序的操作码定义
+ * 带操作数的指令在操作码之后紧跟一个int操作数
+ */
+public final class Opcodes {
+    /** 压入常量池中的常量，操作数为常量池下标 */
+    public static final int CONST = 0;
+    public static final int ADD = 1;
+    public static final int SUBTRACT = 2;
+    public static final int MULTIPLY = 3;
+    public static final int DIVIDE = 4;
+    public static final int MODULO = 5;
+    public static final int POWER = 6;
+    /** 取负 */
+    public static final int NEGATE = 7;
+    /** 绝对值 |x| */
+    public static final int ABS = 8;
+    /** 平方 x² */
+    public static final int SQUARE = 9;
+    /** 阶乘 x! */
+    public static final int FACTORIAL = 10;
+    /** 调用函数，操作数为 {@link MathFunction} 的序号 */
+    public static final int CALL = 11;
+    /** 调用通过方法句柄绑定的函数，操作数为 {@link Program#getCallTargets()} 的下标，参数个数见 {@link Program#getCallArities()} */
+    public static final int INVOKE = 12;
+    /** 把栈顶的值保存到临时变量，不出栈，操作数为临时变量下标；公共子表达式第一次计算后使用 */
+    public static final int STORE = 13;
+    /** 压入临时变量的值，操作数为临时变量下标 */
+    public static final int LOAD = 14;
+    /** 压入变量的值，操作数为变量下标 */
+    public static final int VAR = 15;
+
+    private Opcodes() {
+    }
+
+    /**
+     * 获取二元运算符对应的操作码
+     */
+    public static int of(Operator operator) {
+        switch (operator) {
+            case ADD:
+                return ADD;
+            case SUBTRACT:
+                return SUBTRACT;
+            case MULTIPLY:
+                return MULTIPLY;
+            case DIVIDE:
+                return DIVIDE;
+            case MODULO:
+                return MODULO;
+            case POWER:
+                return POWER;
+            default:
+                throw new IllegalArgumentException("未知运算符: " + operator);
+        }
+    }
+
+    /**
+     * 判断操作码是否为二元运算（ADD 到 POWER）
+     */
+    public static boolean isBinary(int opcode) {
+        return opcode >= ADD && opcode <= POWER;
+    }
+
+    /**
+     * 判断操作码是否带有操作数
+     */
+    public static boolean hasOperand(int opcode) {
+        return opcode == CONST || opcode == CALL || opcode == INVOKE || opcode == STORE || opcode == LOAD
+                || opcode == VAR;
+    }
+}
@@ -0,0 +1,82 @@
+package com.dazycalc.engine;
+
+/**
+ * 二元运算符枚举
+ */
+public enum Operator {
+    ADD('+', 1),
+    SUBTRACT('-', 1),
+    MULTIPLY('×', 2),
+    DIVIDE('÷', 2),
+    MODULO('%', 2),
+    POWER('^', 3);
+
+    private final char symbol;
+    private final int precedence;
+
+    Operator(char symbol, int precedence) {
+        this.symbol = symbol;
+        this.precedence = precedence;
+    }
+
+    /**
+     * 获取运算符号
+     */
+    public char getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * 获取运算符优先级，数值越大优先级越高
+     */
+    public int getPrecedence() {
+        return precedence;
+    }
+
+    /**
+     * 执行运算
+     */
+    public double apply(double a, double b) {
+        switch (this) {
+            case ADD:
+                return a + b;
+            case SUBTRACT:
+                return a - b;
+            case MULTIPLY:
+                return a * b;
+            case DIVIDE:
+                return Kernels.divide(a, b);
+            case MODULO:
+                return Kernels.modulo(a, b); // 取余运算
+            case POWER:
+                return Math.pow(a, b); // 幂运算
+            default:
+                throw new ExpressionException("未知运算符: " + symbol);
+        }
+    }
+
+    /**
+     * 根据字符查找运算符，支持 * 和 / 作为 × 和 ÷ 的别名
+     * @return 对应的运算符，不是运算符时返回null
+     */
+    public static Operator fromSymbol(char c) {
+        switch (c) {
+            case '+':
+                return ADD;
+            case '-':
+                return SUBTRACT;
+            case '×':
+            case '*':
+                return MULTIPLY;
+            case '÷':
+            case '/':
+                return DIVIDE;
+            case '%':
+                return MODULO;
+            case '^':
+                return POWER;
+            default:
+                return null;
+        }
+    }
+}
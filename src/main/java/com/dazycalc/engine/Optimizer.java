@@ -0,0 +1,78 @@
+package com.dazycalc.engine;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 常量折叠
+ * 按指定的角度模式，把操作数全部是常数的子树在编译时算出来，换成一个数字节点：
+ * π、e和字面量之间的运算、参数为常数的函数调用（如 sqrt(2)）都只在折叠时计算一次。
+ * 折叠使用与解释执行相同的内核，结果与不折叠时完全相同；折叠后的数字没有原始文本，
+ * 因此只用于双精度求值，高精度求值仍然使用未折叠的程序。
+ * 计算出错的子树（如 1÷0）保留原样，错误在求值时照常报告。
+ * 每个不同的节点只处理一次，折叠后的节点同样经过 {@link NodeTable} 去重。
+ */
+final class Optimizer {
+
+    private Optimizer() {
+    }
+
+    /**
+     * 折叠常数子树
+     * @param root 语法树根节点
+     * @param angleMode 角度模式，决定三角函数的折叠结果
+     * @return 折叠后的语法树，整棵树都是常数时为一个数字节点
+     */
+    static Node fold(Node root, AngleMode angleMode) {
+        Map<Node, Node> folded = new IdentityHashMap<>();
+        NodeTable nodes = new NodeTable();
+        // 显式栈做后序遍历：子节点都处理完之后再处理节点本身
+        Deque<Node> work = new ArrayDeque<>();
+        work.push(root);
+        while (!work.isEmpty()) {
+            Node node = work.peek();
+            if (folded.containsKey(node)) {
+                work.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (int i = node.childCount() - 1; i >= 0; i--) {
+                if (!folded.containsKey(node.child(i))) {
+                    work.push(node.child(i));
+                    ready = false;
+                }
+            }
+            if (ready) {
+                work.pop();
+                folded.put(node, foldNode(node, folded, nodes, angleMode));
+            }
+        }
+        return folded.get(root);
+    }
+
+    private static Node foldNode(Node node, Map<Node, Node> folded, NodeTable nodes, AngleMode angleMode) {
+        int count = node.childCount();
+        if (count == 0) {
+            return nodes.intern(node);
+        }
+        Node[] children = new Node[count];
+        boolean changed = false;
+        boolean constant = true;
+        for (int i = 0; i < count; i++) {
+            children[i] = folded.get(node.child(i));
+            changed |= children[i] != node.child(i);
+            constant &= children[i] instanceof NumberNode;
+        }
+        Node result = changed ? node.withChildren(children) : node;
+        if (constant) {
+            try {
+                return nodes.intern(new NumberNode(result.evaluate(angleMode)));
+            } catch (ExpressionException e) {
+                // 保留原样，求值时报告同样的错误
+            }
+        }
+        return nodes.intern(result);
+    }
+}
@@ -0,0 +1,65 @@
+package com.dazycalc.engine;
+
+/**
+ * 后缀运算节点，如平方(x²)、阶乘(x!)
+ */
+public final class PostfixNode extends Node {
+
+    /**
+     * 后缀运算符
+     */
+    public enum Kind {
+        SQUARE('²'),
+        FACTORIAL('!');
+
+        private final char symbol;
+
+        Kind(char symbol) {
+            this.symbol = symbol;
+        }
+
+        public char getSymbol() {
+            return symbol;
+        }
+    }
+
+    private final Kind kind;
+    private final Node operand;
+
+    public PostfixNode(Kind kind, Node operand) {
+        this.kind = kind;
+        this.operand = operand;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Node getOperand() {
+        return operand;
+    }
+
+    @Override
+    public double evaluate(AngleMode angleMode) {
+        double value = operand.evaluate(angleMode);
+        if (kind == Kind.SQUARE) {
+            return value * value;
+        }
+        return Kernels.factorial(value);
+    }
+
+    @Override
+    int childCount() {
+        return 1;
+    }
+
+    @Override
+    Node child(int index) {
+        return operand;
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+        return new PostfixNode(kind, children[0]);
+    }
+}
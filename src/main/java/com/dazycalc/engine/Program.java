@@ -0,0 +1,258 @@
+package com.dazycalc.engine;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 由语法树编译得到的后缀（RPN）程序
+ * 指令保存在紧凑的int数组中，数字字面量保存在double常量池中，求值时无需再解析文本；
+ * 字面量的原始文本另外保存，供高精度求值使用；通过方法句柄绑定的函数保存在调用表中，每个调用点一项；
+ * 变量只记录下标，求值时从调用方传入的变量值数组中读取。
+ * 语法树中被多处引用的同一个节点（见 {@link NodeTable}）只计算一次，结果保存在临时变量中，
+ * 指令数与不同子表达式的个数成正比
+ */
+public final class Program {
+    private final int[] code;
+    private final double[] constants;
+    private final String[] literals;
+    private final FunctionDefinition[] callTargets;
+    private final int[] callArities;
+    private final int tempCount;
+    private final int maxStackDepth;
+
+    private Program(int[] code, double[] constants, String[] literals,
+                    FunctionDefinition[] callTargets, int[] callArities, int tempCount, int maxStackDepth) {
+        this.code = code;
+        this.constants = constants;
+        this.literals = literals;
+        this.callTargets = callTargets;
+        this.callArities = callArities;
+        this.tempCount = tempCount;
+        this.maxStackDepth = maxStackDepth;
+    }
+
+    /**
+     * 获取指令数组（调用方不得修改）
+     */
+    public int[] getCode() {
+        return code;
+    }
+
+    /**
+     * 获取常量池（调用方不得修改）
+     */
+    public double[] getConstants() {
+        return constants;
+    }
+
+    /**
+     * 获取与常量池一一对应的字面量文本，没有文本的常量为null（调用方不得修改）
+     */
+    public String[] getLiterals() {
+        return literals;
+    }
+
+    /**
+     * 获取 {@link Opcodes#INVOKE} 调用的函数，下标为指令的操作数（调用方不得修改）
+     */
+    public FunctionDefinition[] getCallTargets() {
+        return callTargets;
+    }
+
+    /**
+     * 获取与调用表一一对应的参数个数（调用方不得修改）
+     */
+    public int[] getCallArities() {
+        return callArities;
+    }
+
+    /**
+     * 获取 {@link Opcodes#STORE} 和 {@link Opcodes#LOAD} 使用的临时变量个数
+     */
+    public int getTempCount() {
+        return tempCount;
+    }
+
+    /**
+     * 获取求值所需的最大操作数栈深度
+     */
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * 将语法树编译为后缀程序
+     * 使用显式栈做后序遍历，长链表达式不会导致递归过深。
+     * 被多处引用的节点第一次计算后用 {@link Opcodes#STORE} 保存，之后的引用改为 {@link Opcodes#LOAD}；
+     * 同一个数字节点只占一个常量池位置
+     */
+    public static Program compile(Node root) {
+        Map<Node, Integer> references = countReferences(root);
+        Map<Node, Integer> temps = new IdentityHashMap<>();
+        Builder builder = new Builder();
+        Deque<Object> work = new ArrayDeque<>();
+        work.push(root);
+
+        while (!work.isEmpty()) {
+            Object item = work.pop();
+            if (item instanceof Emit) {
+                Emit emit = (Emit) item;
+                builder.emit(emit.opcode, emit.operand, emit.stackEffect);
+                continue;
+            }
+            if (item instanceof NumberNode) {
+                builder.emitConstant((NumberNode) item);
+                continue;
+            }
+            if (item instanceof VariableNode) {
+                builder.emit(Opcodes.VAR, ((VariableNode) item).getIndex(), 1);
+                continue;
+            }
+            Integer temp = temps.get(item);
+            if (temp != null) {
+                builder.emit(Opcodes.LOAD, temp, 1);
+                continue;
+            }
+            Integer uses = references.get(item);
+            if (uses != null && uses > 1) {
+                // 子树整个输出完之后才会遇到后面的引用，此时临时变量已经保存好
+                int slot = builder.newTemp();
+                temps.put((Node) item, slot);
+                work.push(new Emit(Opcodes.STORE, slot, 0));
+            }
+            if (item instanceof BinaryNode) {
+                BinaryNode binary = (BinaryNode) item;
+                work.push(new Emit(Opcodes.of(binary.getOperator()), 0, -1));
+                work.push(binary.getRight());
+                work.push(binary.getLeft());
+            } else if (item instanceof UnaryNode) {
+                work.push(new Emit(Opcodes.NEGATE, 0, 0));
+                work.push(((UnaryNode) item).getOperand());
+            } else if (item instanceof AbsNode) {
+                work.push(new Emit(Opcodes.ABS, 0, 0));
+                work.push(((AbsNode) item).getOperand());
+            } else if (item instanceof PostfixNode) {
+                PostfixNode postfix = (PostfixNode) item;
+                int opcode = postfix.getKind() == PostfixNode.Kind.SQUARE ? Opcodes.SQUARE : Opcodes.FACTORIAL;
+                work.push(new Emit(opcode, 0, 0));
+                work.push(postfix.getOperand());
+            } else if (item instanceof FunctionNode) {
+                FunctionNode call = (FunctionNode) item;
+                work.push(new Emit(Opcodes.CALL, call.getFunction().ordinal(), 0));
+                work.push(call.getArgument());
+            } else if (item instanceof CallNode) {
+                CallNode call = (CallNode) item;
+                int count = call.getArgumentCount();
+                work.push(new Emit(Opcodes.INVOKE, builder.addCallTarget(call.getFunction(), count), 1 - count));
+                for (int i = count - 1; i >= 0; i--) {
+                    work.push(call.getArgument(i));
+                }
+            } else {
+                throw new ExpressionException("无法编译的节点: " + item);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * 统计每个非叶子节点被引用的次数，共享的子树只遍历一次
+     */
+    private static Map<Node, Integer> countReferences(Node root) {
+        Map<Node, Integer> references = new IdentityHashMap<>();
+        Deque<Node> work = new ArrayDeque<>();
+        work.push(root);
+        while (!work.isEmpty()) {
+            Node node = work.pop();
+            if (node.childCount() > 0 && references.merge(node, 1, Integer::sum) == 1) {
+                for (int i = 0; i < node.childCount(); i++) {
+                    work.push(node.child(i));
+                }
+            }
+        }
+        return references;
+    }
+
+    /**
+     * 待输出的指令
+     */
+    private static final class Emit {
+        final int opcode;
+        final int operand;
+        final int stackEffect;
+
+        Emit(int opcode, int operand, int stackEffect) {
+            this.opcode = opcode;
+            this.operand = operand;
+            this.stackEffect = stackEffect;
+        }
+    }
+
+    /**
+     * 程序构建器，负责扩容数组并统计栈深度
+     */
+    private static final class Builder {
+        private int[] code = new int[16];
+        private int codeLength;
+        private double[] constants = new double[8];
+        private String[] literals = new String[8];
+        private int constantCount;
+        private FunctionDefinition[] callTargets = new FunctionDefinition[0];
+        private int[] callArities = new int[0];
+        private int callCount;
+        private final Map<NumberNode, Integer> constantIndexes = new IdentityHashMap<>();
+        private int tempCount;
+        private int depth;
+        private int maxDepth;
+
+        void emitConstant(NumberNode number) {
+            Integer index = constantIndexes.get(number);
+            if (index == null) {
+                if (constantCount == constants.length) {
+                    constants = Arrays.copyOf(constants, constantCount * 2);
+                    literals = Arrays.copyOf(literals, constantCount * 2);
+                }
+                constants[constantCount] = number.getValue();
+                literals[constantCount] = number.getLiteral();
+                index = constantCount++;
+                constantIndexes.put(number, index);
+            }
+            emit(Opcodes.CONST, index, 1);
+        }
+
+        int newTemp() {
+            return tempCount++;
+        }
+
+        int addCallTarget(FunctionDefinition function, int arity) {
+            if (callCount == callTargets.length) {
+                callTargets = Arrays.copyOf(callTargets, Math.max(4, callCount * 2));
+                callArities = Arrays.copyOf(callArities, Math.max(4, callCount * 2));
+            }
+            callTargets[callCount] = function;
+            callArities[callCount] = arity;
+            return callCount++;
+        }
+
+        void emit(int opcode, int operand, int stackEffect) {
+            if (codeLength + 2 > code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[codeLength++] = opcode;
+            if (Opcodes.hasOperand(opcode)) {
+                code[codeLength++] = operand;
+            }
+            depth += stackEffect;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        Program build() {
+            return new Program(Arrays.copyOf(code, codeLength),
+                    Arrays.copyOf(constants, constantCount), Arrays.copyOf(literals, constantCount),
+                    Arrays.copyOf(callTargets, callCount), Arrays.copyOf(callArities, callCount), tempCount, maxDepth);
+        }
+    }
+}
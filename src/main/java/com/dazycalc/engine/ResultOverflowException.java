@@ -0,0 +1,16 @@
+package com.dazycalc.engine;
+
+/**
+ * 计算结果超出了当前数值模式能表示的范围
+ * 各数值模式的溢出都通过它报告，使同一个表达式在不同模式下给出相同的错误信息
+ */
+public class ResultOverflowException extends ExpressionException {
+    /** 溢出时的错误信息 */
+    public static final String MESSAGE = "计算结果超出范围";
+
+    private static final long serialVersionUID = 1L;
+
+    public ResultOverflowException() {
+        super(MESSAGE);
+    }
+}
@@ -0,0 +1,61 @@
+package com.dazycalc.engine;
+
+/**
+ * 分层求值器
+ * 先解释执行，调用次数达到阈值后自动切换到 {@link BytecodeCompiler} 生成的字节码实现
+ * 阈值可以通过系统属性 dazycalc.compileThreshold 配置，小于等于0表示从不编译
+ * 可以被多个线程同时使用；调用计数不做同步，并发时只会让切换稍晚发生
+ */
+public final class TieredEvaluator implements Evaluator {
+    /** 默认编译阈值 */
+    public static final int DEFAULT_THRESHOLD = Integer.getInteger("dazycalc.compileThreshold", 1000);
+
+    private final Program program;
+    private final AngleMode angleMode;
+    private final int threshold;
+    private volatile Evaluator delegate;
+    private int calls;
+    private volatile boolean compiled;
+
+    public TieredEvaluator(Program program, AngleMode angleMode) {
+        this(program, angleMode, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param program 后缀程序
+     * @param angleMode 角度模式
+     * @param threshold 切换到字节码前的解释执行次数，小于等于0表示从不编译
+     */
+    public TieredEvaluator(Program program, AngleMode angleMode, int threshold) {
+        this.program = program;
+        this.angleMode = angleMode;
+        this.threshold = threshold;
+        this.delegate = new InterpretedEvaluator(program, angleMode);
+    }
+
+    @Override
+    public double eval(double[] vars) {
+        if (!compiled && threshold > 0 && ++calls >= threshold) {
+            compile();
+        }
+        return delegate.eval(vars);
+    }
+
+    /**
+     * 是否已经切换到字节码实现
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    private synchronized void compile() {
+        if (compiled) {
+            return;
+        }
+        compiled = true;
+        Evaluator generated = BytecodeCompiler.compile(program, angleMode);
+        if (generated != null) {
+            delegate = generated;
+        }
+    }
+}
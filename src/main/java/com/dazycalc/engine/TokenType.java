@@ -0,0 +1,19 @@
+package com.dazycalc.engine;
+
+/**
+ * 词法单元类型
+ */
+public enum TokenType {
+    NUMBER,
+    OPERATOR,
+    FUNCTION,
+    /** 变量名 */
+    VARIABLE,
+    LEFT_PAREN,
+    RIGHT_PAREN,
+    ABS_BAR,
+    /** 函数参数之间的逗号 */
+    COMMA,
+    POSTFIX,
+    END
+}
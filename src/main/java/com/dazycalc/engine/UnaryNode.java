@@ -0,0 +1,36 @@
+package com.dazycalc.engine;
+
+/**
+ * 一元取负节点，如 -(2+3)
+ */
+public final class UnaryNode extends Node {
+    private final Node operand;
+
+    public UnaryNode(Node operand) {
+        this.operand = operand;
+    }
+
+    public Node getOperand() {
+        return operand;
+    }
+
+    @Override
+    public double evaluate(AngleMode angleMode) {
+        return -operand.evaluate(angleMode);
+    }
+
+    @Override
+    int childCount() {
+        return 1;
+    }
+
+    @Override
+    Node child(int index) {
+        return operand;
+    }
+
+    @Override
+    Node withChildren(Node[] children) {
+        return new UnaryNode(children[0]);
+    }
+}
@@ -0,0 +1,35 @@
+package com.dazycalc.engine;
+
+/**
+ * 变量节点，如 x、y
+ * 变量按声明的顺序编号，求值时从变量值数组中按下标读取（见 {@link Evaluator#eval(double[])}）
+ */
+public final class VariableNode extends Node {
+    private final String name;
+    private final int index;
+
+    /**
+     * @param name 变量名
+     * @param index 变量下标，即在声明的变量列表中的位置
+     */
+    public VariableNode(String name, int index) {
+        this.name = name;
+        this.index = index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * 语法树本身不带变量值，含有变量的表达式需要编译后通过 {@link Evaluator} 求值
+     */
+    @Override
+    public double evaluate(AngleMode angleMode) {
+        throw new ExpressionException("变量 " + name + " 没有赋值");
+    }
+}
@@ -0,0 +1,524 @@
+package com.dazycalc.engine;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 向量化的批量求值器（jdk.incubator.vector）
+ * 按块解释后缀程序：每条指令一次作用于一整块输入，操作数栈和临时变量的每一项都是一块double数组，
+ * 块内按 {@link DoubleVector} 的通道数逐段计算，不足一段的尾部用标量循环计算。
+ * 指令分派的开销分摊到整块上，每个循环只做一种运算，JIT可以把它编译成SIMD指令。
+ *
+ * + − × ÷、平方、绝对值和平方根与标量求值的结果逐位相同；幂、三角函数、反三角函数和对数使用向量化的数学库，
+ * 与 {@link Math} 中的实现可能相差1ulp。伽马函数的Lanczos近似按通道计算，整数、小于0.5和溢出的参数回到标量内核；
+ * 取模、阶乘和通过方法句柄绑定的函数没有向量化的实现，逐个元素调用标量内核。
+ * 与标量实现一样，计算出错（除数为0、超出定义域等）的元素结果为NaN。
+ *
+ * 只在以 vector 配置编译时参与构建，通过 {@link BatchTask#vectorized(Program, AngleMode)} 创建
+ */
+final class VectorEvaluator implements BatchEvaluator {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    // 每块的元素个数，是通道数的整数倍；操作数栈和临时变量的数组都能留在一级缓存中
+    private static final int BLOCK = 256;
+    private static final MathFunction[] FUNCTIONS = MathFunction.values();
+    // 与 Math.toRadians 和 Math.toDegrees 使用的系数相同
+    private static final double DEGREES_TO_RADIANS = Math.toRadians(1);
+    private static final double RADIANS_TO_DEGREES = Math.toDegrees(1);
+
+    private final int[] code;
+    private final double[] constants;
+    private final FunctionDefinition[] callTargets;
+    private final int[] callArities;
+    private final int stackDepth;
+    private final int tempCount;
+    private final int maxArity;
+    private final AngleMode angleMode;
+
+    private VectorEvaluator(Program program, AngleMode angleMode) {
+        this.code = program.getCode();
+        this.constants = program.getConstants();
+        this.callTargets = program.getCallTargets();
+        this.callArities = program.getCallArities();
+        this.stackDepth = Math.max(1, program.getMaxStackDepth());
+        this.tempCount = program.getTempCount();
+        this.maxArity = Arrays.stream(callArities).max().orElse(0);
+        this.angleMode = angleMode;
+    }
+
+    /**
+     * 为程序创建向量化的批量求值器，所有指令都可以按块计算
+     */
+    static BatchEvaluator compile(Program program, AngleMode angleMode) {
+        return new VectorEvaluator(program, angleMode);
+    }
+
+    @Override
+    public void evaluate(double[][] inputs, double[] out, int from, int to) {
+        // 每次调用分配一次工作区，之后逐块复用
+        double[][] stack = new double[stackDepth][BLOCK];
+        double[][] temps = new double[tempCount][BLOCK];
+        boolean[] invalid = new boolean[BLOCK];
+        double[] args = new double[maxArity];
+        for (int start = from; start < to; start += BLOCK) {
+            int length = Math.min(BLOCK, to - start);
+            boolean failed = execute(inputs, start, length, stack, temps, invalid, args);
+            System.arraycopy(stack[0], 0, out, start, length);
+            if (failed) {
+                for (int i = 0; i < length; i++) {
+                    if (invalid[i]) {
+                        out[start + i] = Double.NaN;
+                    }
+                }
+                Arrays.fill(invalid, false);
+            }
+        }
+    }
+
+    /**
+     * 对一块输入执行程序，结果在 stack[0] 中
+     * @return 是否有元素计算出错，出错的元素在invalid中标记
+     */
+    private boolean execute(double[][] inputs, int start, int length,
+                            double[][] stack, double[][] temps, boolean[] invalid, double[] args) {
+        boolean failed = false;
+        int sp = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            switch (code[pc]) {
+                case Opcodes.CONST:
+                    Arrays.fill(stack[sp++], 0, length, constants[code[++pc]]);
+                    break;
+                case Opcodes.VAR:
+                    System.arraycopy(inputs[code[++pc]], start, stack[sp++], 0, length);
+                    break;
+                case Opcodes.STORE:
+                    System.arraycopy(stack[sp - 1], 0, temps[code[++pc]], 0, length);
+                    break;
+                case Opcodes.LOAD:
+                    System.arraycopy(temps[code[++pc]], 0, stack[sp++], 0, length);
+                    break;
+                case Opcodes.ADD:
+                    sp--;
+                    add(stack[sp - 1], stack[sp], length);
+                    break;
+                case Opcodes.SUBTRACT:
+                    sp--;
+                    subtract(stack[sp - 1], stack[sp], length);
+                    break;
+                case Opcodes.MULTIPLY:
+                    sp--;
+                    multiply(stack[sp - 1], stack[sp], length);
+                    break;
+                case Opcodes.DIVIDE:
+                    sp--;
+                    failed |= divide(stack[sp - 1], stack[sp], invalid, length);
+                    break;
+                case Opcodes.MODULO:
+                    sp--;
+                    failed |= modulo(stack[sp - 1], stack[sp], invalid, length);
+                    break;
+                case Opcodes.POWER:
+                    sp--;
+                    power(stack[sp - 1], stack[sp], length);
+                    break;
+                case Opcodes.NEGATE:
+                    negate(stack[sp - 1], length);
+                    break;
+                case Opcodes.ABS:
+                    abs(stack[sp - 1], length);
+                    break;
+                case Opcodes.SQUARE:
+                    multiply(stack[sp - 1], stack[sp - 1], length);
+                    break;
+                case Opcodes.FACTORIAL:
+                    failed |= factorial(stack[sp - 1], invalid, length);
+                    break;
+                case Opcodes.CALL:
+                    failed |= call(FUNCTIONS[code[++pc]], stack[sp - 1], invalid, length);
+                    break;
+                case Opcodes.INVOKE: {
+                    int site = code[++pc];
+                    sp -= callArities[site];
+                    failed |= invoke(callTargets[site], stack, sp, callArities[site], args, invalid, length);
+                    sp++;
+                    break;
+                }
+                default:
+                    throw new ExpressionException("未知操作码: " + code[pc]);
+            }
+        }
+        return failed;
+    }
+
+    private boolean call(MathFunction function, double[] a, boolean[] invalid, int length) {
+        boolean radian = angleMode == AngleMode.RADIAN;
+        double toRadians = radian ? 1 : DEGREES_TO_RADIANS;
+        double toDegrees = radian ? 1 : RADIANS_TO_DEGREES;
+        switch (function) {
+            case SIN:
+                sin(a, toRadians, length);
+                return false;
+            case COS:
+                cos(a, toRadians, length);
+                return false;
+            case TAN:
+                tan(a, toRadians, length);
+                return false;
+            case ARCSIN: {
+                boolean failed = markOutside(a, -1, 1, invalid, length);
+                asin(a, toDegrees, length);
+                return failed;
+            }
+            case ARCCOS: {
+                boolean failed = markOutside(a, -1, 1, invalid, length);
+                acos(a, toDegrees, length);
+                return failed;
+            }
+            case ARCTAN:
+                atan(a, toDegrees, length);
+                return false;
+            case LOG10: {
+                boolean failed = markOutside(a, Double.MIN_VALUE, Double.POSITIVE_INFINITY, invalid, length);
+                log10(a, length);
+                return failed;
+            }
+            case LN: {
+                boolean failed = markOutside(a, Double.MIN_VALUE, Double.POSITIVE_INFINITY, invalid, length);
+                log(a, length);
+                return failed;
+            }
+            case SQRT: {
+                boolean failed = markOutside(a, 0, Double.POSITIVE_INFINITY, invalid, length);
+                sqrt(a, length);
+                return failed;
+            }
+            case ABS:
+                abs(a, length);
+                return false;
+            case GAMMA:
+                return gamma(a, invalid, length);
+            default:
+                throw new ExpressionException("未知函数: " + function.getFunctionName());
+        }
+    }
+
+    // ---- 算术运算 ----
+
+    private static void add(double[] a, double[] b, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = a[i] + b[i];
+        }
+    }
+
+    private static void subtract(double[] a, double[] b, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = a[i] - b[i];
+        }
+    }
+
+    private static void multiply(double[] a, double[] b, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = a[i] * b[i];
+        }
+    }
+
+    private static boolean divide(double[] a, double[] b, boolean[] invalid, int length) {
+        boolean failed = false;
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector divisor = DoubleVector.fromArray(SPECIES, b, i);
+            failed |= mark(divisor.compare(VectorOperators.EQ, 0), invalid, i);
+            DoubleVector.fromArray(SPECIES, a, i).div(divisor).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            if (b[i] == 0) {
+                invalid[i] = true;
+                failed = true;
+            }
+            a[i] = a[i] / b[i];
+        }
+        return failed;
+    }
+
+    /**
+     * 取模没有向量化的实现，逐个元素计算
+     */
+    private static boolean modulo(double[] a, double[] b, boolean[] invalid, int length) {
+        boolean failed = false;
+        for (int i = 0; i < length; i++) {
+            if (b[i] == 0) {
+                invalid[i] = true;
+                failed = true;
+            }
+            a[i] = a[i] % b[i];
+        }
+        return failed;
+    }
+
+    /**
+     * 向量化的幂按C语言的约定处理特殊值，pow(±1, ±∞) 和 pow(1, NaN) 为1；{@link Math#pow} 在这些情况下为NaN，逐通道改回NaN
+     */
+    private static void power(double[] a, double[] b, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector base = DoubleVector.fromArray(SPECIES, a, i);
+            DoubleVector exponent = DoubleVector.fromArray(SPECIES, b, i);
+            VectorMask<Double> undefined = exponent.test(VectorOperators.IS_NAN)
+                    .or(base.abs().compare(VectorOperators.EQ, 1).and(exponent.test(VectorOperators.IS_INFINITE)));
+            base.pow(exponent).blend(Double.NaN, undefined).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.pow(a[i], b[i]);
+        }
+    }
+
+    private static void negate(double[] a, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).neg().intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = -a[i];
+        }
+    }
+
+    private static void abs(double[] a, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).abs().intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.abs(a[i]);
+        }
+    }
+
+    /**
+     * 阶乘主要用于整数查表，没有向量化的实现，逐个元素调用标量内核
+     */
+    private static boolean factorial(double[] a, boolean[] invalid, int length) {
+        boolean failed = false;
+        for (int i = 0; i < length; i++) {
+            try {
+                a[i] = Kernels.factorial(a[i]);
+            } catch (ExpressionException e) {
+                invalid[i] = true;
+                failed = true;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 通过方法句柄绑定的函数逐个元素调用，参数从各个操作数栈块中取出
+     */
+    private boolean invoke(FunctionDefinition function, double[][] stack, int sp, int arity,
+                           double[] args, boolean[] invalid, int length) {
+        boolean failed = false;
+        double[] result = stack[sp];
+        for (int i = 0; i < length; i++) {
+            for (int k = 0; k < arity; k++) {
+                args[k] = stack[sp + k][i];
+            }
+            try {
+                result[i] = function.invoke(args, 0, arity, angleMode);
+            } catch (ExpressionException e) {
+                invalid[i] = true;
+                failed = true;
+            }
+        }
+        return failed;
+    }
+
+    // ---- 函数 ----
+    // 每个函数单独一个循环，向量运算符在循环中是常量，JIT才能把它替换成向量化数学库的调用
+
+    private static void sin(double[] a, double toRadians, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).mul(toRadians).lanewise(VectorOperators.SIN).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.sin(a[i] * toRadians);
+        }
+    }
+
+    private static void cos(double[] a, double toRadians, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).mul(toRadians).lanewise(VectorOperators.COS).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.cos(a[i] * toRadians);
+        }
+    }
+
+    private static void tan(double[] a, double toRadians, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).mul(toRadians).lanewise(VectorOperators.TAN).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.tan(a[i] * toRadians);
+        }
+    }
+
+    private static void asin(double[] a, double toDegrees, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.ASIN).mul(toDegrees).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.asin(a[i]) * toDegrees;
+        }
+    }
+
+    private static void acos(double[] a, double toDegrees, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.ACOS).mul(toDegrees).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.acos(a[i]) * toDegrees;
+        }
+    }
+
+    private static void atan(double[] a, double toDegrees, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.ATAN).mul(toDegrees).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.atan(a[i]) * toDegrees;
+        }
+    }
+
+    private static void log(double[] a, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.LOG).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.log(a[i]);
+        }
+    }
+
+    private static void log10(double[] a, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.LOG10).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.log10(a[i]);
+        }
+    }
+
+    private static void sqrt(double[] a, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.SQRT).intoArray(a, i);
+        }
+        for (; i < length; i++) {
+            a[i] = Math.sqrt(a[i]);
+        }
+    }
+
+    /**
+     * 伽马函数：参数在 [0.5, 172] 内且不是整数时按通道计算Lanczos近似（与 {@link Kernels#gamma(double)} 相同的系数和运算顺序），
+     * 其余参数（整数查表、反射公式、溢出）逐个通道调用标量内核
+     */
+    private static boolean gamma(double[] a, boolean[] invalid, int length) {
+        boolean failed = false;
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+            // 参数不超过172，转换成long再转回来就是向下取整
+            DoubleVector whole = (DoubleVector) x.convert(VectorOperators.D2L, 0).convert(VectorOperators.L2D, 0);
+            VectorMask<Double> special = x.compare(VectorOperators.LT, 0.5)
+                    .or(x.compare(VectorOperators.GT, Kernels.MAX_FACTORIAL + 2))
+                    .or(x.compare(VectorOperators.EQ, whole));
+            lanczos(x).intoArray(a, i);
+            if (special.anyTrue()) {
+                for (int lane = 0; lane < SPECIES.length(); lane++) {
+                    if (special.laneIsSet(lane)) {
+                        failed |= gammaAt(a, i + lane, x.lane(lane), invalid);
+                    }
+                }
+            }
+        }
+        for (; i < length; i++) {
+            failed |= gammaAt(a, i, a[i], invalid);
+        }
+        return failed;
+    }
+
+    private static DoubleVector lanczos(DoubleVector x) {
+        double[] c = Kernels.LANCZOS_COEFFICIENTS;
+        DoubleVector y = x.sub(1);
+        DoubleVector sum = DoubleVector.broadcast(SPECIES, c[0])
+                .add(y.broadcast(c[1]).div(y.add(1)))
+                .add(y.broadcast(c[2]).div(y.add(2)))
+                .add(y.broadcast(c[3]).div(y.add(3)))
+                .add(y.broadcast(c[4]).div(y.add(4)))
+                .add(y.broadcast(c[5]).div(y.add(5)))
+                .add(y.broadcast(c[6]).div(y.add(6)))
+                .add(y.broadcast(c[7]).div(y.add(7)))
+                .add(y.broadcast(c[8]).div(y.add(8)));
+        DoubleVector t = y.add(Kernels.LANCZOS_G).add(0.5);
+        DoubleVector half = t.pow(y.add(0.5).div(2));
+        return sum.mul(Kernels.SQRT_TWO_PI).mul(half).mul(t.neg().lanewise(VectorOperators.EXP)).mul(half);
+    }
+
+    private static boolean gammaAt(double[] a, int index, double x, boolean[] invalid) {
+        try {
+            a[index] = Kernels.gamma(x);
+            return false;
+        } catch (ExpressionException e) {
+            invalid[index] = true;
+            return true;
+        }
+    }
+
+    // ---- 定义域检查 ----
+
+    /**
+     * 标记不在 [low, high] 内的元素，NaN不标记（与标量内核一样得到NaN结果而不报错）
+     */
+    private static boolean markOutside(double[] a, double low, double high, boolean[] invalid, int length) {
+        boolean failed = false;
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, i);
+            failed |= mark(x.compare(VectorOperators.LT, low).or(x.compare(VectorOperators.GT, high)), invalid, i);
+        }
+        for (; i < length; i++) {
+            if (a[i] < low || a[i] > high) {
+                invalid[i] = true;
+                failed = true;
+            }
+        }
+        return failed;
+    }
+
+    private static boolean mark(VectorMask<Double> mask, boolean[] invalid, int offset) {
+        if (!mask.anyTrue()) {
+            return false;
+        }
+        mask.or(VectorMask.fromArray(SPECIES, invalid, offset)).intoArray(invalid, offset);
+        return true;
+    }
+}
@@ -1,8 +1,22 @@
 package com.dazycalc.model;
 
+import com.dazycalc.engine.AngleMode;
+import com.dazycalc.engine.BudgetExceededException;
+import com.dazycalc.engine.EvaluationContext;
+import com.dazycalc.engine.ExpressionEvaluator;
+import com.dazycalc.engine.ExpressionException;
+import com.dazycalc.engine.IncrementalEvaluator;
+import com.dazycalc.engine.Lexer;
+import com.dazycalc.engine.NumericMode;
+import com.dazycalc.engine.ResultOverflowException;
+import com.dazycalc.engine.TokenType;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Stack;
 
 /**
  * 计算器模型类，负责处理计算逻辑
@@ -12,35 +26,201 @@ import java.util.Stack;
  * 3. 只有按下等号时，才会计算结果并替换表达式
  */
 public class CalculatorModel {
+    /** 计算量超过预算时显示的提示 */
+    public static final String TOO_EXPENSIVE_MESSAGE = "计算量过大";
+
     // 显示相关
-    private String displayExpression = ""; // 用于显示的表达式文本
-    private String currentResult = "0"; // 当前计算结果
+    private final ExpressionBuffer displayExpression = new ExpressionBuffer(); // 用于显示的表达式文本
+    private Number currentValue = 0L; // 当前计算结果，没有结果时为null
     private boolean errorState = false; // 错误状态
     private String errorMessage = ""; // 错误消息
+    private boolean tooExpensive = false; // 当前表达式的计算量是否超过预算
 
     // 内存相关
-    private double memory = 0; // 内存值
+    private Number memory = 0L; // 内存值
     private List<String> history = new ArrayList<>(); // 历史记录
 
     // 状态标记
-    private boolean isInFunctionInput = false; // 是否在输入函数参数
-    private int functionParenthesisPos = -1; // 函数左括号位置
+    // 函数输入的帧栈：每层保存一个正在输入参数的函数左括号位置，栈顶是最内层的函数
+    private int[] functionFrames = new int[4];
+    private int functionDepth = 0;
 
     // 添加一个用于记录角度模式的字段，默认使用弧度制
     private boolean isUsingRadianMode = true;
 
+    // 数值模式，默认使用双精度
+    private NumericMode numericMode = NumericMode.DOUBLE;
+    // 高精度模式的计算精度
+    private MathContext decimalContext = MathContext.DECIMAL128;
+
+    // 表达式求值器，无状态，可与其他模型实例共享
+    private final ExpressionEvaluator evaluator;
+
+    // 把数值写回表达式的格式化器，复用内部缓冲区，只在模型所在的线程上使用
+    private final NumberFormatter formatter = new NumberFormatter();
+    // 科学计数法转换使用的格式化器，保留3位有效数字
+    private final NumberFormatter scientificFormatter =
+            new NumberFormatter(NumberFormatter.Notation.SCIENTIFIC, 3, false);
+
+    // 实时预览使用的增量求值器，保存了上一次预览的解析状态
+    private final IncrementalEvaluator previewEvaluator = new IncrementalEvaluator();
+
+    // 是否把实时预览交给外部（如后台线程）计算
+    private boolean previewDeferred = false;
+    // 是否有尚未计算的实时预览
+    private boolean previewPending = false;
+
+    /**
+     * 使用共享缓存的求值器创建模型
+     */
+    public CalculatorModel() {
+        this(new ExpressionEvaluator());
+    }
+
+    /**
+     * 使用指定的求值器创建模型
+     * @param evaluator 表达式求值器，可以在多个模型之间共享
+     */
+    public CalculatorModel(ExpressionEvaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
     /**
      * 获取当前表达式文本
      */
     public String getExpression() {
-        return displayExpression;
+        return displayExpression.toString();
     }
 
     /**
      * 获取当前计算结果
+     * 结果保持求值器给出的类型（Long、BigInteger、BigDecimal或Double），由显示层格式化
+     * @return 当前结果，表达式无法计算或处于错误状态时返回null
+     */
+    public Number getCurrentValue() {
+        return currentValue;
+    }
+
+    /**
+     * 获取当前角度模式
+     */
+    public AngleMode getAngleMode() {
+        return AngleMode.of(isUsingRadianMode);
+    }
+
+    /**
+     * 获取当前数值模式
+     */
+    public NumericMode getNumericMode() {
+        return numericMode;
+    }
+
+    /**
+     * 设置数值模式，并按新模式重新计算实时预览
+     * @param numericMode 数值模式
+     */
+    public void setNumericMode(NumericMode numericMode) {
+        this.numericMode = numericMode;
+        if (!errorState) {
+            tryCalculateResult();
+        }
+    }
+
+    /**
+     * 设置双精度以外的数值模式的结果精度
+     * @param decimalContext 计算精度，精度为0时使用34位
+     */
+    public void setDecimalContext(MathContext decimalContext) {
+        this.decimalContext = decimalContext;
+        if (!errorState) {
+            tryCalculateResult();
+        }
+    }
+
+    /**
+     * 获取表达式求值器，求值器无状态，可以在其他线程中使用
+     */
+    public ExpressionEvaluator getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * 获取按当前角度模式和数值模式计算所用的上下文
+     */
+    public EvaluationContext getEvaluationContext() {
+        EvaluationContext context = EvaluationContext.of(getAngleMode());
+        if (numericMode == NumericMode.DOUBLE) {
+            return context;
+        }
+        return context.withNumericMode(numericMode).withMathContext(decimalContext);
+    }
+
+    /**
+     * 设置是否延迟计算实时预览
+     * 开启后编辑操作只标记预览待计算，由调用方在其他线程计算后通过
+     * {@link #applyPreviewResult(String, Number)} 或 {@link #applyPreviewFailure(String)} 回填
+     */
+    public void setPreviewDeferred(boolean previewDeferred) {
+        this.previewDeferred = previewDeferred;
+    }
+
+    /**
+     * 是否有尚未计算的实时预览
      */
-    public String getCurrentResult() {
-        return currentResult;
+    public boolean isPreviewPending() {
+        return previewPending;
+    }
+
+    /**
+     * 回填延迟计算的预览结果
+     * @param expression 计算时的表达式快照
+     * @param result 计算结果
+     * @return 快照仍是当前表达式、结果被采用时返回true
+     */
+    public boolean applyPreviewResult(String expression, Number result) {
+        if (errorState || !expression.equals(displayExpression.toString())) {
+            return false;
+        }
+        previewPending = false;
+        currentValue = isInvalid(result) ? null : result;
+        return true;
+    }
+
+    /**
+     * 回填延迟计算失败的预览
+     * @param expression 计算时的表达式快照
+     * @return 快照仍是当前表达式时返回true
+     */
+    public boolean applyPreviewFailure(String expression) {
+        if (errorState || !expression.equals(displayExpression.toString())) {
+            return false;
+        }
+        previewPending = false;
+        currentValue = null;
+        return true;
+    }
+
+    /**
+     * 回填计算量超过预算的预览
+     * @param expression 计算时的表达式快照
+     * @return 快照仍是当前表达式时返回true
+     */
+    public boolean applyPreviewTooExpensive(String expression) {
+        if (errorState || !expression.equals(displayExpression.toString())) {
+            return false;
+        }
+        previewPending = false;
+        currentValue = null;
+        tooExpensive = true;
+        return true;
+    }
+
+    /**
+     * 当前表达式的计算量是否超过预算
+     * 实时预览超过预算时只设置此标记；按下等号时超过预算还会进入错误状态
+     */
+    public boolean isTooExpensive() {
+        return tooExpensive;
     }
 
     /**
@@ -73,21 +253,15 @@ public class CalculatorModel {
         }
 
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
-            int closingPos = displayExpression.lastIndexOf(')');
-            if (closingPos == displayExpression.length() - 1) {
-                // 如果已经有右括号，替换它
-                displayExpression = displayExpression.substring(0, displayExpression.length() - 1) + digit + ")";
-            } else {
-                // 在函数名后面添加数字
-                displayExpression += digit;
-            }
+        if (isInFunctionInput()) {
+            // 添加到最内层函数的参数末尾（如果已经有右括号，在它之前插入）
+            insertIntoFunction(digit);
         } else {
             // 普通数字输入
-            if (displayExpression.equals("0")) {
-                displayExpression = digit; // 替换前导0
+            if (displayExpression.length() == 1 && displayExpression.charAt(0) == '0') {
+                displayExpression.setText(digit); // 替换前导0
             } else {
-                displayExpression += digit;
+                displayExpression.append(digit);
             }
         }
 
@@ -104,7 +278,7 @@ public class CalculatorModel {
         }
 
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             // 解析当前函数参数
             String parameter = extractFunctionParameter();
             
@@ -123,10 +297,10 @@ public class CalculatorModel {
             String lastNumber = extractLastNumber();
             
             if (!lastNumber.contains(".")) {
-                if (lastNumber.isEmpty() || isOperator(displayExpression.substring(displayExpression.length() - 1))) {
-                    displayExpression += "0.";
+                if (lastNumber.isEmpty() || isOperator(displayExpression.lastChar())) {
+                    displayExpression.append("0.");
                 } else {
-                    displayExpression += ".";
+                    displayExpression.append(".");
                 }
             }
         }
@@ -142,7 +316,7 @@ public class CalculatorModel {
         }
 
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             String parameter = extractFunctionParameter();
             
             if (parameter.startsWith("-")) {
@@ -155,19 +329,16 @@ public class CalculatorModel {
             }
         } else {
             // 找到最后一个数字
-            String lastNumber = extractLastNumber();
-            int lastNumberPos = displayExpression.lastIndexOf(lastNumber);
-            
-            if (lastNumber.startsWith("-")) {
-                // 移除负号
-                displayExpression = displayExpression.substring(0, lastNumberPos) + 
-                                   lastNumber.substring(1) + 
-                                   displayExpression.substring(lastNumberPos + lastNumber.length());
-            } else if (!lastNumber.isEmpty() && !lastNumber.equals("0")) {
-                // 添加负号
-                displayExpression = displayExpression.substring(0, lastNumberPos) + 
-                                   "-" + lastNumber + 
-                                   displayExpression.substring(lastNumberPos + lastNumber.length());
+            int token = lastNumberToken();
+            if (token != -1) {
+                int start = lastNumberStart(token);
+                if (displayExpression.charAt(start) == '-') {
+                    // 移除负号
+                    displayExpression.delete(start, start + 1);
+                } else if (!extractLastNumber().equals("0")) {
+                    // 添加负号
+                    displayExpression.insert(start, "-");
+                }
             }
         }
 
@@ -183,30 +354,28 @@ public class CalculatorModel {
             return;
         }
 
-        // 如果当前在函数输入模式，完成函数输入
-        if (isInFunctionInput) {
-            completeFunctionInput();
+        // 如果当前在函数输入模式，完成最内层的函数输入，操作符写入外层函数的参数（如果有）
+        if (isInFunctionInput()) {
+            closeFunctionFrame();
         }
 
         // 检查表达式是否为空
         if (displayExpression.isEmpty()) {
-            displayExpression = "0" + operation.getSymbol();
+            displayExpression.append("0" + operation.getSymbol());
             return;
         }
 
         // 检查最后一个字符是否是操作符，如果是则替换
-        if (displayExpression.length() > 0) {
-            char lastChar = displayExpression.charAt(displayExpression.length() - 1);
-            if (isOperator(String.valueOf(lastChar))) {
-                displayExpression = displayExpression.substring(0, displayExpression.length() - 1) + 
-                                   operation.getSymbol();
-            } else if (lastChar == '(') {
-                // 如果最后是左括号，添加0和操作符
-                displayExpression += "0" + operation.getSymbol();
-            } else {
-                // 否则直接添加操作符
-                displayExpression += operation.getSymbol();
-            }
+        int position = inputPosition();
+        char lastChar = position == 0 ? 0 : displayExpression.charAt(position - 1);
+        if (isOperator(lastChar)) {
+            displayExpression.replace(position - 1, position, operation.getSymbol());
+        } else if (position == 0 || lastChar == '(') {
+            // 如果最后是左括号，添加0和操作符
+            displayExpression.insert(position, "0" + operation.getSymbol());
+        } else {
+            // 否则直接添加操作符
+            displayExpression.insert(position, operation.getSymbol());
         }
 
         // 尝试实时计算结果
@@ -222,17 +391,18 @@ public class CalculatorModel {
         }
 
         // 检查最后一个字符
-        if (!displayExpression.isEmpty()) {
-            char lastChar = displayExpression.charAt(displayExpression.length() - 1);
+        int position = inputPosition();
+        if (position > 0) {
+            char lastChar = displayExpression.charAt(position - 1);
             // 如果最后一个字符是数字或右括号，添加乘号
-            if (Character.isDigit(lastChar) || lastChar == ')' || lastChar == '.' || 
+            if (Character.isDigit(lastChar) || lastChar == ')' || lastChar == '.' ||
                 lastChar == 'π' || lastChar == 'e') {
-                displayExpression += "×(";
+                displayExpression.insert(position, "×(");
             } else {
-                displayExpression += "(";
+                displayExpression.insert(position, "(");
             }
         } else {
-            displayExpression = "(";
+            displayExpression.insert(position, "(");
         }
     }
 
@@ -244,22 +414,22 @@ public class CalculatorModel {
             return;
         }
 
-        // 计算左右括号数量
-        int leftCount = 0;
-        int rightCount = 0;
-        for (char c : displayExpression.toCharArray()) {
-            if (c == '(') leftCount++;
-            if (c == ')') rightCount++;
+        // 当前函数的参数中没有未闭合的括号时，右括号结束这一层函数输入
+        if (isInFunctionInput() && !hasOpenParenthesisInParameter()) {
+            if (functionClosingPos() == -1 && isOperator(displayExpression.lastChar())) {
+                displayExpression.append("0");
+            }
+            completeFunctionInput();
+            return;
         }
 
         // 确保有未匹配的左括号
-        if (leftCount > rightCount) {
+        if (displayExpression.unclosedCount() > 0) {
             // 如果最后一个字符是操作符，先添加0
-            if (!displayExpression.isEmpty() && 
-                isOperator(String.valueOf(displayExpression.charAt(displayExpression.length() - 1)))) {
-                displayExpression += "0";
+            if (isOperator(displayExpression.lastChar())) {
+                displayExpression.append("0");
             }
-            displayExpression += ")";
+            displayExpression.append(")");
 
             // 尝试实时计算结果
             tryCalculateResult();
@@ -274,49 +444,92 @@ public class CalculatorModel {
             clear();
         }
 
-        // 如果已在函数输入模式，先完成当前函数
-        if (isInFunctionInput) {
-            completeFunctionInput();
-        }
+        // 已在函数输入模式时，新函数嵌套在当前函数的参数中
+        int position = inputPosition();
+        StringBuilder text = new StringBuilder();
 
         // 检查是否需要添加乘号
-        if (!displayExpression.isEmpty()) {
-            char lastChar = displayExpression.charAt(displayExpression.length() - 1);
-            if (Character.isDigit(lastChar) || lastChar == ')' || lastChar == '.' || 
+        if (position > 0) {
+            char lastChar = displayExpression.charAt(position - 1);
+            if (Character.isDigit(lastChar) || lastChar == ')' || lastChar == '.' ||
                 lastChar == 'π' || lastChar == 'e') {
-                displayExpression += "×";
+                text.append('×');
             }
         }
 
-        // 添加函数名和左括号
-        displayExpression += functionName + "(";
-        isInFunctionInput = true;
-        functionParenthesisPos = displayExpression.length() - 1;
+        // 添加函数名和左括号；外层函数已有右括号时同时补上右括号，保持外层括号的配对
+        text.append(functionName).append('(');
+        int parenthesisPos = position + text.length() - 1;
+        if (position < displayExpression.length()) {
+            text.append(')');
+        }
+        displayExpression.insert(position, text);
+        pushFunctionFrame(parenthesisPos);
     }
 
     /**
      * 完成函数输入
      */
     public void completeFunctionInput() {
-        if (!isInFunctionInput) {
+        if (!isInFunctionInput()) {
             return;
         }
 
+        closeFunctionFrame();
+
+        // 尝试实时计算结果
+        tryCalculateResult();
+    }
+
+    /**
+     * 结束最内层的函数输入，回到外层函数（如果有）的参数中
+     */
+    private void closeFunctionFrame() {
         // 如果函数输入不完整，添加右括号
-        if (displayExpression.charAt(displayExpression.length() - 1) != ')') {
+        if (functionClosingPos() == -1) {
             // 如果括号内为空，添加0
-            if (displayExpression.charAt(displayExpression.length() - 1) == '(') {
-                displayExpression += "0";
+            if (displayExpression.lastChar() == '(') {
+                displayExpression.append("0");
             }
-            displayExpression += ")";
+            displayExpression.append(")");
         }
 
-        // 重置函数输入状态
-        isInFunctionInput = false;
-        functionParenthesisPos = -1;
+        // 弹出当前函数
+        functionDepth--;
+    }
 
-        // 尝试实时计算结果
-        tryCalculateResult();
+    /**
+     * 是否在输入函数参数
+     */
+    private boolean isInFunctionInput() {
+        return functionDepth > 0;
+    }
+
+    /**
+     * 最内层函数的左括号位置，不在函数输入模式时返回-1
+     */
+    private int functionParenthesisPos() {
+        return functionDepth == 0 ? -1 : functionFrames[functionDepth - 1];
+    }
+
+    private void pushFunctionFrame(int parenthesisPos) {
+        if (functionDepth == functionFrames.length) {
+            functionFrames = Arrays.copyOf(functionFrames, functionDepth * 2);
+        }
+        functionFrames[functionDepth++] = parenthesisPos;
+    }
+
+    /**
+     * 新输入内容的位置：函数输入模式下是最内层函数参数的末尾，否则是表达式末尾
+     */
+    private int inputPosition() {
+        if (isInFunctionInput()) {
+            int closingPos = functionClosingPos();
+            if (closingPos != -1) {
+                return closingPos;
+            }
+        }
+        return displayExpression.length();
     }
 
     /**
@@ -328,16 +541,17 @@ public class CalculatorModel {
         }
 
         // 检查是否需要添加乘号
-        if (!displayExpression.isEmpty()) {
-            char lastChar = displayExpression.charAt(displayExpression.length() - 1);
-            if (Character.isDigit(lastChar) || lastChar == ')' || lastChar == '.' || 
+        int position = inputPosition();
+        if (position > 0) {
+            char lastChar = displayExpression.charAt(position - 1);
+            if (Character.isDigit(lastChar) || lastChar == ')' || lastChar == '.' ||
                 lastChar == 'π' || lastChar == 'e') {
-                displayExpression += "×";
+                displayExpression.insert(position++, "×");
             }
         }
 
         // 添加常数符号
-        displayExpression += constant;
+        displayExpression.insert(position, constant);
 
         // 尝试实时计算结果
         tryCalculateResult();
@@ -345,91 +559,127 @@ public class CalculatorModel {
 
     /**
      * 计算结果（按下等号）
+     * 在调用线程上同步计算；界面中由控制器通过 {@link #beginCalculateResult()} 和
+     * {@link #applyResult(String, Number)} 把计算放到后台线程
      */
     public void calculateResult() {
-        if (errorState) {
+        String expression = beginCalculateResult();
+        if (expression == null) {
             return;
         }
+        try {
+            applyResult(expression, evaluateExpression(expression));
+        } catch (RuntimeException e) {
+            applyResultFailure(expression, e);
+        }
+    }
 
-        // 如果当前在函数输入模式，完成函数输入
-        if (isInFunctionInput) {
-            completeFunctionInput();
+    /**
+     * 准备按下等号时的计算：由内向外完成所有函数输入，表达式为空时直接得到0
+     * @return 需要计算的表达式；处于错误状态或无需计算时返回null
+     */
+    public String beginCalculateResult() {
+        if (errorState) {
+            return null;
         }
 
-        try {
-            // 确保表达式不为空
-            if (displayExpression.isEmpty()) {
-                displayExpression = "0";
-                currentResult = "0";
-                return;
-            }
+        // 如果当前在函数输入模式，由内向外完成所有函数输入
+        while (isInFunctionInput()) {
+            closeFunctionFrame();
+        }
 
-            // 解析并计算表达式
-            double result = evaluateExpression(displayExpression);
-            
-            // 检查结果是否有效
-            if (Double.isInfinite(result) || Double.isNaN(result)) {
-                setErrorState("计算结果无效");
-                return;
-            }
+        // 确保表达式不为空
+        if (displayExpression.isEmpty()) {
+            displayExpression.setText("0");
+            currentValue = 0L;
+            previewPending = false;
+            return null;
+        }
+        previewPending = false;
+        return displayExpression.toString();
+    }
+
+    /**
+     * 回填按下等号的计算结果
+     * @param expression {@link #beginCalculateResult()} 返回的表达式
+     * @param result 计算结果
+     * @return 表达式仍是当前表达式、结果被采用时返回true
+     */
+    public boolean applyResult(String expression, Number result) {
+        if (errorState || !expression.equals(displayExpression.toString())) {
+            return false;
+        }
+
+        // 检查结果是否有效
+        if (isInvalid(result)) {
+            setErrorState(invalidResultMessage(result));
+            return true;
+        }
 
-            // 添加到历史记录
-            String historyEntry = displayExpression + " = " + formatNumber(result);
-            history.add(historyEntry);
+        // 添加到历史记录
+        String historyEntry = displayExpression + " = " + formatNumber(result);
+        history.add(historyEntry);
 
-            // 更新当前结果和表达式
-            currentResult = formatNumber(result);
-            displayExpression = currentResult;
+        // 更新当前结果和表达式，表达式中写入能还原结果的文本
+        currentValue = result;
+        displayExpression.setText(formatNumber(result));
+        previewPending = false;
+        return true;
+    }
 
-        } catch (Exception e) {
-            setErrorState("计算错误: " + e.getMessage());
+    /**
+     * 回填按下等号时计算失败的结果
+     * @param expression {@link #beginCalculateResult()} 返回的表达式
+     * @param error 计算时抛出的异常
+     * @return 表达式仍是当前表达式时返回true
+     */
+    public boolean applyResultFailure(String expression, RuntimeException error) {
+        if (errorState || !expression.equals(displayExpression.toString())) {
+            return false;
+        }
+        if (error instanceof BudgetExceededException) {
+            setErrorState(TOO_EXPENSIVE_MESSAGE);
+            tooExpensive = true;
+        } else if (error instanceof ResultOverflowException) {
+            setErrorState(ResultOverflowException.MESSAGE);
+        } else {
+            setErrorState("计算错误: " + error.getMessage());
         }
+        return true;
     }
 
     /**
      * 尝试实时计算结果（不改变表达式）
      */
     private void tryCalculateResult() {
+        tooExpensive = false;
+
         // 如果表达式为空，不计算
         if (displayExpression.isEmpty()) {
-            currentResult = "0";
+            currentValue = 0L;
+            previewPending = false;
             return;
         }
 
-        try {
-            // 创建一个临时表达式用于计算
-            String tempExpression = displayExpression;
-            
-            // 如果表达式以操作符结尾，添加0
-            if (isOperator(tempExpression.substring(tempExpression.length() - 1))) {
-                tempExpression += "0";
-            }
-            
-            // 确保所有括号都闭合
-            int leftCount = 0;
-            int rightCount = 0;
-            for (char c : tempExpression.toCharArray()) {
-                if (c == '(') leftCount++;
-                if (c == ')') rightCount++;
-            }
-            
-            // 添加缺失的右括号
-            for (int i = 0; i < leftCount - rightCount; i++) {
-                tempExpression += ")";
-            }
+        // 延迟模式下只做标记，由外部计算
+        if (previewDeferred) {
+            previewPending = true;
+            return;
+        }
 
-            // 解析并计算表达式
-            double result = evaluateExpression(tempExpression);
+        try {
+            // 增量计算：只重新分析编辑位置之后的部分，
+            // 以操作符结尾时补0、未闭合的括号自动闭合
+            Number result = previewEvaluator.evaluateNumber(displayExpression.toString(), getEvaluationContext());
             
             // 更新当前结果
-            if (!Double.isInfinite(result) && !Double.isNaN(result)) {
-                currentResult = formatNumber(result);
-            } else {
-                currentResult = "";
-            }
+            currentValue = isInvalid(result) ? null : result;
+        } catch (BudgetExceededException e) {
+            currentValue = null;
+            tooExpensive = true;
         } catch (Exception e) {
             // 计算错误时不显示结果
-            currentResult = "";
+            currentValue = null;
         }
     }
 
@@ -437,32 +687,187 @@ public class CalculatorModel {
      * 清除所有 (C)
      */
     public void clear() {
-        displayExpression = "";
-        currentResult = "0";
+        displayExpression.setText("");
+        currentValue = 0L;
+        previewPending = false;
         errorState = false;
         errorMessage = "";
-        isInFunctionInput = false;
-        functionParenthesisPos = -1;
+        tooExpensive = false;
+        functionDepth = 0;
+    }
+
+    /**
+     * 一次载入整段表达式（用于粘贴），代替逐个字符模拟按键
+     * 整段文本只做一次词法分析：空白只用来分隔词法单元，* 和 / 换成 × 和 ÷，函数、参数之间的逗号、常数、乘方、绝对值和后缀运算符原样保留；
+     * 无法识别的字符、格式错误的数字、只隔着空白的两个数字（如 "2 3"、"1e 5"）、多余的右括号或缺少左括号的函数使模型进入错误状态。
+     * % 后面紧跟操作数时是取余（与表达式区显示的取余符号一致），否则与原来粘贴时一样是百分比，把前面的数字除以100。
+     * 未闭合的函数括号恢复为函数输入状态，可以继续输入参数。实时预览只计算一次。
+     * @param text 表达式文本
+     * @return 载入成功时返回true
+     */
+    public boolean loadExpression(CharSequence text) {
+        clear();
+
+        StringBuilder normalized = new StringBuilder(text.length());
+        try {
+            Lexer lexer = new Lexer(text);
+            int depth = 0;
+            int absDepth = 0;
+            // % 前面的数字在normalized中的起始位置，前面不是数字时为-1
+            int numberStart = -1;
+            // 上一个词法单元是否为还不能确定含义的 %
+            boolean pendingPercent = false;
+            TokenType previous = null;
+            for (TokenType type = lexer.next(); type != TokenType.END; type = lexer.next()) {
+                if (previous == TokenType.FUNCTION && type != TokenType.LEFT_PAREN) {
+                    throw new ExpressionException("函数缺少左括号");
+                }
+                if (previous == TokenType.NUMBER && type == TokenType.NUMBER) {
+                    throw new ExpressionException("数字之间缺少运算符");
+                }
+                if (pendingPercent) {
+                    pendingPercent = false;
+                    if (startsOperand(type, absDepth)) {
+                        normalized.append(CalculatorOperation.MODULO.getSymbol());
+                    } else {
+                        applyPercent(normalized, numberStart);
+                        previous = TokenType.NUMBER;
+                    }
+                }
+                switch (type) {
+                    case NUMBER:
+                        numberStart = normalized.length();
+                        normalized.append(text, lexer.getTokenStart(), lexer.getTokenEnd());
+                        break;
+                    case OPERATOR:
+                        if (lexer.getOperator().getSymbol() == '%') {
+                            // 要看下一个词法单元才能确定是取余还是百分比
+                            pendingPercent = true;
+                            if (previous != TokenType.NUMBER) {
+                                numberStart = -1;
+                            }
+                            break;
+                        }
+                        normalized.append(lexer.getOperator().getSymbol());
+                        break;
+                    case VARIABLE:
+                        // 计算器没有变量
+                        throw new ExpressionException("未定义的变量: " + lexer.getName());
+                    case LEFT_PAREN:
+                        depth++;
+                        normalized.append('(');
+                        break;
+                    case RIGHT_PAREN:
+                        if (depth == 0) {
+                            throw new ExpressionException("括号不匹配");
+                        }
+                        depth--;
+                        normalized.append(')');
+                        break;
+                    case ABS_BAR:
+                        absDepth += startsOperand(previous) ? 1 : -1;
+                        normalized.append(text, lexer.getTokenStart(), lexer.getTokenEnd());
+                        break;
+                    default:
+                        normalized.append(text, lexer.getTokenStart(), lexer.getTokenEnd());
+                        break;
+                }
+                previous = type;
+            }
+            if (pendingPercent) {
+                applyPercent(normalized, numberStart);
+            }
+            if (previous == TokenType.FUNCTION) {
+                throw new ExpressionException("函数缺少左括号");
+            }
+        } catch (ExpressionException e) {
+            setErrorState("无法载入表达式: " + e.getMessage());
+            return false;
+        }
+
+        displayExpression.setText(normalized);
+        restoreFunctionFrames();
+
+        // 尝试实时计算结果
+        tryCalculateResult();
+        return true;
+    }
+
+    /**
+     * 载入表达式时，上一个词法单元之后是否应为操作数（表达式开头、运算符、左括号、逗号或函数名之后），
+     * 此时的绝对值符号是左绝对值符号
+     */
+    private static boolean startsOperand(TokenType previous) {
+        return previous == null || previous == TokenType.OPERATOR || previous == TokenType.LEFT_PAREN
+                || previous == TokenType.COMMA || previous == TokenType.FUNCTION;
+    }
+
+    /**
+     * 载入表达式时，% 之后的词法单元能否作为右操作数；没有未闭合的绝对值符号时，绝对值符号是左绝对值符号
+     */
+    private static boolean startsOperand(TokenType type, int absDepth) {
+        return type == TokenType.NUMBER || type == TokenType.FUNCTION || type == TokenType.LEFT_PAREN
+                || (type == TokenType.ABS_BAR && absDepth == 0);
+    }
+
+    /**
+     * 把normalized末尾从start开始的数字按十进制精确除以100，与 {@link #calculatePercent()} 相同
+     * @param start 数字的起始位置，% 前面不是数字（如 (5)%）时为-1
+     */
+    private void applyPercent(StringBuilder normalized, int start) {
+        if (start >= 0) {
+            try {
+                String percent = formatNumber(parseOperand(normalized.substring(start)).movePointLeft(2));
+                normalized.replace(start, normalized.length(), percent);
+                return;
+            } catch (NumberFormatException e) {
+                // π、e这样的常数
+            }
+        }
+        throw new ExpressionException("百分比计算错误");
+    }
+
+    /**
+     * 把表达式末尾未闭合的函数括号恢复为函数输入的帧栈，由外向内压栈
+     */
+    private void restoreFunctionFrames() {
+        functionDepth = 0;
+        for (int open = displayExpression.innermostOpen(); open != -1; open = displayExpression.enclosingOpen(open)) {
+            if (open > 0 && displayExpression.kind(open - 1) == ExpressionBuffer.FUNCTION) {
+                pushFunctionFrame(displayExpression.tokenStart(open));
+            }
+        }
+        // 上面是由内向外压入的，翻转成由外向内
+        for (int i = 0, j = functionDepth - 1; i < j; i++, j--) {
+            int frame = functionFrames[i];
+            functionFrames[i] = functionFrames[j];
+            functionFrames[j] = frame;
+        }
     }
 
     /**
      * 清除当前输入 (CE)
      */
     public void clearEntry() {
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             // 仅清除函数参数
             replaceFunctionParameter("");
         } else {
             // 清除最后输入的数字或操作符
-            String lastToken = extractLastToken();
-            if (!lastToken.isEmpty()) {
-                displayExpression = displayExpression.substring(0, displayExpression.length() - lastToken.length());
-                if (displayExpression.isEmpty()) {
-                    displayExpression = "0";
-                }
+            int length = displayExpression.length();
+            int token = lastNumberToken();
+            if (length > 0 && isOperator(displayExpression.lastChar())) {
+                displayExpression.delete(length - 1, length);
+            } else if (token != -1) {
+                // 只删除数字本身，保留其后的右括号
+                displayExpression.delete(lastNumberStart(token), displayExpression.tokenEnd(token));
             } else {
                 // 如果没有可清除的部分，清除全部
                 clear();
+                length = 0;
+            }
+            if (length > 0 && displayExpression.isEmpty()) {
+                displayExpression.setText("0");
             }
         }
 
@@ -481,21 +886,23 @@ public class CalculatorModel {
 
         if (!displayExpression.isEmpty()) {
             // 删除最后一个字符
-            displayExpression = displayExpression.substring(0, displayExpression.length() - 1);
+            int length = displayExpression.length();
+            displayExpression.delete(length - 1, length);
             
             // 如果删除后为空，设为0
             if (displayExpression.isEmpty()) {
-                displayExpression = "0";
+                displayExpression.setText("0");
             }
             
-            // 检查是否还在函数输入模式
-            if (isInFunctionInput) {
-                int lastOpenParen = displayExpression.lastIndexOf("(");
-                if (lastOpenParen == -1 || !isFunctionName(displayExpression.substring(0, lastOpenParen))) {
-                    // 如果没有左括号或括号前不是函数名，退出函数输入模式
-                    isInFunctionInput = false;
-                    functionParenthesisPos = -1;
+            // 检查是否还在函数输入模式：函数的左括号仍在，且前面仍是函数名
+            while (isInFunctionInput()) {
+                int open = displayExpression.tokenStartingAt(functionParenthesisPos());
+                if (open > 0 && displayExpression.kind(open) == ExpressionBuffer.OPEN
+                        && displayExpression.kind(open - 1) == ExpressionBuffer.FUNCTION) {
+                    break;
                 }
+                // 如果左括号已被删除或括号前不是函数名，退出这一层函数输入
+                functionDepth--;
             }
             
             // 尝试实时计算结果
@@ -507,12 +914,8 @@ public class CalculatorModel {
      * 内存存储 (MS)
      */
     public void memoryStore() {
-        try {
-            if (!currentResult.isEmpty()) {
-                memory = Double.parseDouble(currentResult);
-            }
-        } catch (Exception e) {
-            // 忽略错误
+        if (currentValue != null) {
+            memory = currentValue;
         }
     }
 
@@ -520,12 +923,8 @@ public class CalculatorModel {
      * 内存加 (M+)
      */
     public void memoryAdd() {
-        try {
-            if (!currentResult.isEmpty()) {
-                memory += Double.parseDouble(currentResult);
-            }
-        } catch (Exception e) {
-            // 忽略错误
+        if (currentValue != null) {
+            memory = add(memory, currentValue);
         }
     }
 
@@ -533,12 +932,8 @@ public class CalculatorModel {
      * 内存减 (M-)
      */
     public void memorySubtract() {
-        try {
-            if (!currentResult.isEmpty()) {
-                memory -= Double.parseDouble(currentResult);
-            }
-        } catch (Exception e) {
-            // 忽略错误
+        if (currentValue != null) {
+            memory = add(memory, negate(currentValue));
         }
     }
 
@@ -549,19 +944,19 @@ public class CalculatorModel {
         // 根据上下文决定如何插入内存值
         String memValue = formatNumber(memory);
         
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             // 在函数参数中插入内存值
             replaceFunctionParameter(memValue);
         } else {
             // 检查是否需要插入乘号
             if (!displayExpression.isEmpty()) {
-                char lastChar = displayExpression.charAt(displayExpression.length() - 1);
-                if (Character.isDigit(lastChar) || lastChar == ')' || lastChar == '.' || 
+                char lastChar = displayExpression.lastChar();
+                if (Character.isDigit(lastChar) || lastChar == ')' || lastChar == '.' ||
                     lastChar == 'π' || lastChar == 'e') {
-                    displayExpression += "×";
+                    displayExpression.append("×");
                 }
             }
-            displayExpression += memValue;
+            displayExpression.append(memValue);
         }
         
         // 尝试实时计算结果
@@ -572,7 +967,7 @@ public class CalculatorModel {
      * 内存清除 (MC)
      */
     public void memoryClear() {
-        memory = 0;
+        memory = 0L;
     }
 
     /**
@@ -581,516 +976,111 @@ public class CalculatorModel {
     private void setErrorState(String message) {
         errorState = true;
         errorMessage = message;
-        currentResult = "";
+        currentValue = null;
+        tooExpensive = false;
+        previewPending = false;
     }
 
     // 辅助方法
 
     /**
      * 解析并计算表达式
+     * 编译结果和计算结果由求值器的缓存保存，相同的表达式无需重新解析和计算
      */
-    private double evaluateExpression(String expression) {
-        // 替换特殊常量
-        expression = expression.replace("π", String.valueOf(Math.PI));
-        expression = expression.replace("e", String.valueOf(Math.E));
-        
-        // 处理特殊表达式，如平方(x²)、阶乘(x!)、绝对值(|x|)等
-        expression = processSpecialExpressions(expression);
-        
-        // 处理函数调用
-        expression = processFunctions(expression);
-        
-        // 转换为后缀表达式并计算
-        List<String> tokens = tokenizeExpression(expression);
-        List<String> rpnTokens = convertToRPN(tokens);
-        return evaluateRPN(rpnTokens);
+    private Number evaluateExpression(String expression) {
+        return evaluator.evaluateNumber(expression, getEvaluationContext());
     }
 
     /**
-     * 处理特殊表达式，如平方(x²)、阶乘(x!)、绝对值(|x|)等
+     * 判断结果是否无效（双精度的无穷大或NaN）
      */
-    private String processSpecialExpressions(String expression) {
-        StringBuilder processedExpr = new StringBuilder();
-        
-        for (int i = 0; i < expression.length(); i++) {
-            char c = expression.charAt(i);
-            
-            if (c == '²') {
-                // 处理平方表达式
-                // 寻找前面的数字
-                int j = i - 1;
-                while (j >= 0 && (Character.isDigit(expression.charAt(j)) || 
-                                  expression.charAt(j) == '.' ||
-                                  expression.charAt(j) == 'e' ||
-                                  expression.charAt(j) == 'π' ||
-                                  (j > 0 && expression.charAt(j) == '-' && !Character.isDigit(expression.charAt(j-1))))) {
-                    j--;
-                }
-                
-                // 提取数值
-                String number = expression.substring(j + 1, i);
-                
-                try {
-                    // 替换为平方值
-                    double value = Double.parseDouble(number);
-                    double squared = value * value;
-                    
-                    // 删除之前已追加的数字，并添加结果
-                    processedExpr.delete(processedExpr.length() - number.length(), processedExpr.length());
-                    processedExpr.append(formatNumber(squared));
-                } catch (NumberFormatException e) {
-                    // 如果不是有效数字，保留原始表达式
-                    processedExpr.append(c);
-                }
-            } else if (c == '!') {
-                // 处理阶乘表达式
-                // 寻找前面的数字
-                int j = i - 1;
-                while (j >= 0 && (Character.isDigit(expression.charAt(j)) || 
-                                 (j > 0 && expression.charAt(j) == '-' && !Character.isDigit(expression.charAt(j-1))))) {
-                    j--;
-                }
-                
-                // 提取数值
-                String number = expression.substring(j + 1, i);
-                
-                try {
-                    // 计算阶乘
-                    double value = Double.parseDouble(number);
-                    
-                    // 检查是否为非负整数
-                    if (value < 0 || value != Math.floor(value)) {
-                        throw new RuntimeException("阶乘只适用于非负整数");
-                    }
-                    
-                    // 计算阶乘
-                    double result = 1;
-                    for (int k = 2; k <= value; k++) {
-                        result *= k;
-                    }
-                    
-                    // 删除之前已追加的数字，并添加结果
-                    processedExpr.delete(processedExpr.length() - number.length(), processedExpr.length());
-                    processedExpr.append(formatNumber(result));
-                } catch (NumberFormatException e) {
-                    // 如果不是有效数字，保留原始表达式
-                    processedExpr.append(c);
-                }
-            } else if (c == '|') {
-                // 处理绝对值表达式
-                // 找到匹配的闭合竖线
-                int closePos = expression.indexOf('|', i + 1);
-                if (closePos > i) {
-                    // 提取绝对值内的内容
-                    String absContent = expression.substring(i + 1, closePos);
-                    
-                    try {
-                        // 计算内容的值
-                        double value = evaluateExpression(absContent);
-                        double absValue = Math.abs(value);
-                        
-                        // 添加绝对值计算结果
-                        processedExpr.append(formatNumber(absValue));
-                        
-                        // 跳过已处理的内容
-                        i = closePos;
-                    } catch (Exception e) {
-                        // 如果计算错误，保留原始表达式
-                        processedExpr.append(c);
-                    }
-                } else {
-                    // 如果没有找到匹配的闭合竖线，保留原始字符
-                    processedExpr.append(c);
-                }
-            } else {
-                // 其他字符直接添加
-                processedExpr.append(c);
-            }
-        }
-        
-        return processedExpr.toString();
+    private boolean isInvalid(Number result) {
+        return result instanceof Double && (((Double) result).isInfinite() || ((Double) result).isNaN());
     }
 
     /**
-     * 处理函数调用
+     * 无效结果的错误信息，双精度溢出与其他数值模式的溢出使用同一条信息
      */
-    private String processFunctions(String expression) {
-        // 处理所有的函数调用，从内到外
-        boolean containsFunction = true;
-        while (containsFunction) {
-            containsFunction = false;
-            
-            // 查找函数调用模式: 函数名(参数)
-            int pos = 0;
-            while (pos < expression.length()) {
-                // 查找函数名
-                int funcStart = -1;
-                String funcName = "";
-                
-                // 检查常见函数名
-                String[] functionNames = {"arcsin", "arccos", "arctan", "sin", "cos", "tan", "log10", "ln", "sqrt", "abs"};
-                for (String name : functionNames) {
-                    if (pos + name.length() <= expression.length() && 
-                        expression.substring(pos, pos + name.length()).equals(name) && 
-                        pos + name.length() < expression.length() && 
-                        expression.charAt(pos + name.length()) == '(') {
-                        funcStart = pos;
-                        funcName = name;
-                        pos += name.length();
-                        break;
-                    }
-                }
-                
-                // 如果找到函数名
-                if (funcStart >= 0) {
-                    // 查找匹配的右括号
-                    int parenCount = 1; // 已找到一个左括号
-                    int parenEnd = -1;
-                    for (int i = pos + 1; i < expression.length(); i++) {
-                        if (expression.charAt(i) == '(') {
-                            parenCount++;
-                        } else if (expression.charAt(i) == ')') {
-                            parenCount--;
-                            if (parenCount == 0) {
-                                parenEnd = i;
-                                break;
-                            }
-                        }
-                    }
-                    
-                    // 如果找到匹配的右括号
-                    if (parenEnd > pos) {
-                        // 提取参数表达式并递归求值
-                        String paramExpr = expression.substring(pos + 1, parenEnd);
-                        double paramValue = evaluateExpression(paramExpr);
-                        
-                        // 应用函数并获取结果
-                        double result = 0;
-                        try {
-                            switch (funcName) {
-                                case "sin":
-                                    if (isUsingRadianMode) {
-                                        result = Math.sin(paramValue);
-                                    } else {
-                                        // 角度转弧度后计算
-                                        result = Math.sin(Math.toRadians(paramValue));
-                                    }
-                                    break;
-                                case "cos":
-                                    if (isUsingRadianMode) {
-                                        result = Math.cos(paramValue);
-                                    } else {
-                                        // 角度转弧度后计算
-                                        result = Math.cos(Math.toRadians(paramValue));
-                                    }
-                                    break;
-                                case "tan":
-                                    if (isUsingRadianMode) {
-                                        result = Math.tan(paramValue);
-                                    } else {
-                                        // 角度转弧度后计算
-                                        result = Math.tan(Math.toRadians(paramValue));
-                                    }
-                                    break;
-                                case "arcsin":
-                                    if (paramValue < -1 || paramValue > 1) {
-                                        throw new RuntimeException("反正弦函数参数必须在[-1,1]之间");
-                                    }
-                                    if (isUsingRadianMode) {
-                                        result = Math.asin(paramValue);
-                                    } else {
-                                        // 计算结果弧度转角度
-                                        result = Math.toDegrees(Math.asin(paramValue));
-                                    }
-                                    break;
-                                case "arccos":
-                                    if (paramValue < -1 || paramValue > 1) {
-                                        throw new RuntimeException("反余弦函数参数必须在[-1,1]之间");
-                                    }
-                                    if (isUsingRadianMode) {
-                                        result = Math.acos(paramValue);
-                                    } else {
-                                        // 计算结果弧度转角度
-                                        result = Math.toDegrees(Math.acos(paramValue));
-                                    }
-                                    break;
-                                case "arctan":
-                                    if (isUsingRadianMode) {
-                                        result = Math.atan(paramValue);
-                                    } else {
-                                        // 计算结果弧度转角度
-                                        result = Math.toDegrees(Math.atan(paramValue));
-                                    }
-                                    break;
-                                case "log10":
-                                    if (paramValue <= 0) {
-                                        throw new RuntimeException("对数函数参数必须为正数");
-                                    }
-                                    result = Math.log10(paramValue);
-                                    break;
-                                case "ln":
-                                    if (paramValue <= 0) {
-                                        throw new RuntimeException("对数函数参数必须为正数");
-                                    }
-                                    result = Math.log(paramValue);
-                                    break;
-                                case "sqrt":
-                                    if (paramValue < 0) {
-                                        throw new RuntimeException("平方根函数参数必须为非负数");
-                                    }
-                                    result = Math.sqrt(paramValue);
-                                    break;
-                                case "abs":
-                                    result = Math.abs(paramValue);
-                                    break;
-                                default:
-                                    throw new RuntimeException("未知函数: " + funcName);
-                            }
-                            
-                            // 替换函数调用为结果
-                            expression = expression.substring(0, funcStart) + 
-                                       formatNumber(result) + 
-                                       expression.substring(parenEnd + 1);
-                            
-                            // 重置位置，继续查找下一个函数
-                            pos = funcStart;
-                            containsFunction = true;
-                        } catch (Exception e) {
-                            throw new RuntimeException("函数计算错误: " + e.getMessage());
-                        }
-                    } else {
-                        pos = funcStart + funcName.length() + 1;
-                    }
-                } else {
-                    pos++;
-                }
-            }
-        }
-        
-        return expression;
+    private static String invalidResultMessage(Number result) {
+        return ((Double) result).isInfinite() ? ResultOverflowException.MESSAGE
+                : ExpressionEvaluator.INVALID_RESULT_MESSAGE;
     }
 
     /**
-     * 将表达式分割成token
+     * 两个计算结果相加：整数之和保持精确，有一方是double时按double计算，否则按BigDecimal精确计算
      */
-    private List<String> tokenizeExpression(String expression) {
-        List<String> tokens = new ArrayList<>();
-        StringBuilder numBuilder = new StringBuilder();
-        boolean numberStarted = false;
-        
-        for (int i = 0; i < expression.length(); i++) {
-            char c = expression.charAt(i);
-            
-            // 处理数字、小数点和科学计数法
-            if (Character.isDigit(c) || c == '.') {
-                numBuilder.append(c);
-                numberStarted = true;
-                continue;
-            }
-            
-            // 处理科学计数法表示
-            if ((c == 'e' || c == 'E') && numberStarted) {
-                // 只有在数字已经开始且下一个字符是数字或正负号时，才视为科学计数法
-                if (i + 1 < expression.length() && 
-                    (Character.isDigit(expression.charAt(i + 1)) || 
-                     expression.charAt(i + 1) == '+' || 
-                     expression.charAt(i + 1) == '-')) {
-                    
-                    numBuilder.append(c); // 添加e或E字符
-                    
-                    // 添加可能的正负号
-                    if (i + 1 < expression.length() && 
-                        (expression.charAt(i + 1) == '+' || expression.charAt(i + 1) == '-')) {
-                        numBuilder.append(expression.charAt(i + 1));
-                        i++; // 跳过符号
-                    }
-                    
-                    // 添加指数部分的数字
-                    while (i + 1 < expression.length() && Character.isDigit(expression.charAt(i + 1))) {
-                        numBuilder.append(expression.charAt(i + 1));
-                        i++;
-                    }
-                    
-                    continue;
-                }
-            }
-            
-            // 处理负号
-            if (c == '-') {
-                // 如果负号前面是操作符或左括号或是表达式的开始，视为负号
-                if (i == 0 || expression.charAt(i - 1) == '(' || 
-                    "+-×÷%^".indexOf(expression.charAt(i - 1)) >= 0) {
-                    numBuilder.append(c);
-                    numberStarted = true;
-                    continue;
+    private static Number add(Number a, Number b) {
+        if (isIntegral(a) && isIntegral(b)) {
+            if (a instanceof Long && b instanceof Long) {
+                long x = a.longValue();
+                long y = b.longValue();
+                long sum = x + y;
+                if (((x ^ sum) & (y ^ sum)) >= 0) {
+                    return sum;
                 }
             }
-            
-            // 如果之前有数字在构建中，添加到tokens
-            if (numberStarted) {
-                tokens.add(numBuilder.toString());
-                numBuilder.setLength(0);
-                numberStarted = false;
-            }
-            
-            // 处理操作符和括号
-            if (c == '+' || c == '-' || c == '×' || c == '÷' || c == '(' || c == ')' || c == '%' || c == '^') {
-                tokens.add(String.valueOf(c));
-            }
+            return narrow(toBigInteger(a).add(toBigInteger(b)));
         }
-        
-        // 添加最后一个数字（如果有）
-        if (numberStarted) {
-            tokens.add(numBuilder.toString());
+        if (!(a instanceof BigDecimal || isIntegral(a)) || !(b instanceof BigDecimal || isIntegral(b))) {
+            return a.doubleValue() + b.doubleValue();
         }
-        
-        return tokens;
+        return toBigDecimal(a).add(toBigDecimal(b));
     }
 
-    /**
-     * 将中缀表达式转换为后缀表达式(RPN)
-     */
-    private List<String> convertToRPN(List<String> tokens) {
-        List<String> output = new ArrayList<>();
-        Stack<String> operatorStack = new Stack<>();
-        
-        for (String token : tokens) {
-            // 数字直接加入输出
-            if (!isOperator(token) && !token.equals("(") && !token.equals(")")) {
-                output.add(token);
-            }
-            // 左括号压入栈
-            else if (token.equals("(")) {
-                operatorStack.push(token);
-            }
-            // 右括号处理
-            else if (token.equals(")")) {
-                while (!operatorStack.isEmpty() && !operatorStack.peek().equals("(")) {
-                    output.add(operatorStack.pop());
-                }
-                if (!operatorStack.isEmpty() && operatorStack.peek().equals("(")) {
-                    operatorStack.pop(); // 弹出左括号
-                } else {
-                    throw new RuntimeException("括号不匹配");
-                }
-            }
-            // 操作符处理
-            else if (isOperator(token)) {
-                while (!operatorStack.isEmpty() && 
-                       isOperator(operatorStack.peek()) && 
-                       getPrecedence(operatorStack.peek()) >= getPrecedence(token)) {
-                    output.add(operatorStack.pop());
-                }
-                operatorStack.push(token);
-            }
+    private static Number negate(Number value) {
+        if (value instanceof Long && value.longValue() != Long.MIN_VALUE) {
+            return -value.longValue();
         }
-        
-        // 处理栈中剩余的操作符
-        while (!operatorStack.isEmpty()) {
-            if (operatorStack.peek().equals("(")) {
-                throw new RuntimeException("括号不匹配");
-            }
-            output.add(operatorStack.pop());
+        if (isIntegral(value)) {
+            return narrow(toBigInteger(value).negate());
         }
-        
-        return output;
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).negate();
+        }
+        return -value.doubleValue();
     }
 
-    /**
-     * 计算后缀表达式(RPN)
-     */
-    private double evaluateRPN(List<String> rpnTokens) {
-        Stack<Double> stack = new Stack<>();
-        
-        for (String token : rpnTokens) {
-            if (isOperator(token)) {
-                if (stack.size() < 2) {
-                    throw new RuntimeException("表达式错误");
-                }
-                double b = stack.pop();
-                double a = stack.pop();
-                
-                switch (token) {
-                    case "+":
-                        stack.push(a + b);
-                        break;
-                    case "-":
-                        stack.push(a - b);
-                        break;
-                    case "×":
-                        stack.push(a * b);
-                        break;
-                    case "÷":
-                        if (b == 0) {
-                            throw new RuntimeException("除数不能为零");
-                        }
-                        stack.push(a / b);
-                        break;
-                    case "%":
-                        if (b == 0) {
-                            throw new RuntimeException("除数不能为零");
-                        }
-                        stack.push(a % b); // 取余运算
-                        break;
-                    case "^":
-                        stack.push(Math.pow(a, b)); // 幂运算
-                        break;
-                }
-            } else {
-                stack.push(Double.parseDouble(token));
-            }
-        }
-        
-        if (stack.size() != 1) {
-            throw new RuntimeException("表达式错误");
-        }
-        
-        return stack.pop();
+    private static boolean isIntegral(Number value) {
+        return value instanceof Long || value instanceof BigInteger;
+    }
+
+    private static BigInteger toBigInteger(Number value) {
+        return value instanceof BigInteger ? (BigInteger) value : BigInteger.valueOf(value.longValue());
+    }
+
+    private static BigDecimal toBigDecimal(Number value) {
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(toBigInteger(value));
     }
 
     /**
-     * 获取操作符优先级
+     * 放得下long的整数转换为Long
      */
-    private int getPrecedence(String operator) {
-        switch (operator) {
-            case "+":
-            case "-":
-                return 1;
-            case "×":
-            case "÷":
-            case "%":
-                return 2;
-            case "^":
-                return 3;
-            default:
-                return 0;
-        }
+    private static Number narrow(BigInteger value) {
+        return value.bitLength() < Long.SIZE ? (Number) value.longValue() : value;
     }
 
     /**
-     * 判断字符串是否为操作符
+     * 判断字符是否为操作符
      */
-    private boolean isOperator(String token) {
-        return token.equals("+") || token.equals("-") || 
-               token.equals("×") || token.equals("÷") ||
-               token.equals("%") || token.equals("^");
+    private boolean isOperator(char c) {
+        return c == '+' || c == '-' || c == '×' || c == '÷' || c == '%' || c == '^';
     }
 
     /**
      * 提取函数参数
      */
     private String extractFunctionParameter() {
-        if (!isInFunctionInput || functionParenthesisPos == -1) {
+        if (!isInFunctionInput()) {
             return "";
         }
-        
-        int closingPos = displayExpression.lastIndexOf(')');
-        if (closingPos != -1 && closingPos > functionParenthesisPos) {
+
+        int closingPos = functionClosingPos();
+        if (closingPos != -1) {
             // 如果有右括号，返回括号内的内容
-            return displayExpression.substring(functionParenthesisPos + 1, closingPos);
+            return displayExpression.substring(functionParenthesisPos() + 1, closingPos);
         } else {
             // 否则返回左括号后的所有内容
-            return displayExpression.substring(functionParenthesisPos + 1);
+            return displayExpression.substring(functionParenthesisPos() + 1, displayExpression.length());
         }
     }
 
@@ -1098,20 +1088,17 @@ public class CalculatorModel {
      * 替换函数参数
      */
     private void replaceFunctionParameter(String newParameter) {
-        if (!isInFunctionInput || functionParenthesisPos == -1) {
+        if (!isInFunctionInput()) {
             return;
         }
-        
-        int closingPos = displayExpression.lastIndexOf(')');
-        if (closingPos != -1 && closingPos > functionParenthesisPos) {
+
+        int closingPos = functionClosingPos();
+        if (closingPos != -1) {
             // 如果有右括号，替换括号内的内容
-            displayExpression = displayExpression.substring(0, functionParenthesisPos + 1) + 
-                              newParameter + 
-                              displayExpression.substring(closingPos);
+            displayExpression.replace(functionParenthesisPos() + 1, closingPos, newParameter);
         } else {
             // 否则替换左括号后的所有内容，并添加右括号
-            displayExpression = displayExpression.substring(0, functionParenthesisPos + 1) + 
-                              newParameter + ")";
+            displayExpression.replace(functionParenthesisPos() + 1, displayExpression.length(), newParameter + ")");
         }
     }
 
@@ -1119,129 +1106,113 @@ public class CalculatorModel {
      * 在函数内插入内容
      */
     private void insertIntoFunction(String content) {
-        if (!isInFunctionInput || functionParenthesisPos == -1) {
+        if (!isInFunctionInput()) {
             return;
         }
-        
-        int closingPos = displayExpression.lastIndexOf(')');
-        if (closingPos != -1 && closingPos > functionParenthesisPos) {
+
+        int closingPos = functionClosingPos();
+        if (closingPos != -1) {
             // 如果有右括号，在右括号前插入
-            displayExpression = displayExpression.substring(0, closingPos) + 
-                              content + 
-                              displayExpression.substring(closingPos);
+            displayExpression.insert(closingPos, content);
         } else {
             // 否则直接在表达式末尾添加内容
-            displayExpression += content;
+            displayExpression.append(content);
         }
     }
 
     /**
-     * 提取表达式中的最后一个数字
+     * 当前函数左括号匹配的右括号位置，还没有闭合时返回-1
      */
-    private String extractLastNumber() {
-        if (displayExpression.isEmpty()) {
-            return "";
+    private int functionClosingPos() {
+        int open = displayExpression.tokenStartingAt(functionParenthesisPos());
+        if (open == -1) {
+            return -1;
         }
-        
-        int i = displayExpression.length() - 1;
-        // 跳过最后的右括号
-        while (i >= 0 && displayExpression.charAt(i) == ')') {
-            i--;
+        int close = displayExpression.matchingToken(open);
+        return close == -1 ? -1 : displayExpression.tokenStart(close);
+    }
+
+    /**
+     * 最内层函数的参数中是否有未闭合的括号
+     * 函数已有右括号时参数内的括号都已配对；否则参数延伸到表达式末尾，看末尾最内层的未闭合括号是不是函数自己的左括号
+     */
+    private boolean hasOpenParenthesisInParameter() {
+        int open = displayExpression.tokenStartingAt(functionParenthesisPos());
+        return open != -1 && displayExpression.matchingToken(open) == -1
+                && displayExpression.innermostOpen() != open;
+    }
+
+    /**
+     * 表达式末尾（跳过右括号）的数字单元，没有时返回-1
+     */
+    private int lastNumberToken() {
+        int token = displayExpression.tokenCount() - 1;
+        while (token >= 0 && displayExpression.kind(token) == ExpressionBuffer.CLOSE) {
+            token--;
         }
-        
-        int end = i + 1;
-        // 向前寻找非数字、非小数点、非负号、非科学计数法的字符
-        while (i >= 0) {
-            char c = displayExpression.charAt(i);
-            // 处理普通数字部分（数字和小数点）
-            if (Character.isDigit(c) || c == '.') {
-                i--;
-                continue;
-            }
-            
-            // 处理科学计数法中的e和E
-            if ((c == 'e' || c == 'E') && i > 0) {
-                // 确保e或E之前有数字（即确实属于科学计数法）
-                boolean hasDigitBefore = false;
-                for (int j = i - 1; j >= 0; j--) {
-                    if (Character.isDigit(displayExpression.charAt(j))) {
-                        hasDigitBefore = true;
-                        break;
-                    } else if (displayExpression.charAt(j) != '.' && displayExpression.charAt(j) != '-') {
-                        break;
-                    }
-                }
-                
-                if (hasDigitBefore) {
-                    i--;
-                    continue;
-                }
-            }
-            
-            // 处理科学计数法中e或E后面的正负号
-            if ((c == '+' || c == '-') && i > 0) {
-                char prev = displayExpression.charAt(i - 1);
-                if (prev == 'e' || prev == 'E') {
-                    i--;
-                    continue;
-                }
-            }
-            
-            // 处理负数的负号（只有在开头或者之前是操作符时才视为负号的一部分）
-            if (c == '-') {
-                if (i == 0 || !Character.isDigit(displayExpression.charAt(i - 1))) {
-                    i--;
-                    continue;
-                }
-            }
-            
-            // 不是数字的一部分，停止搜索
-            break;
+        return token >= 0 && displayExpression.kind(token) == ExpressionBuffer.NUMBER ? token : -1;
+    }
+
+    /**
+     * 数字的起始位置，紧挨着的前缀负号算作数字的一部分
+     */
+    private int lastNumberStart(int token) {
+        int start = displayExpression.tokenStart(token);
+        if (token > 0 && isPrefixMinus(token - 1) && displayExpression.tokenEnd(token - 1) == start) {
+            start = displayExpression.tokenStart(token - 1);
         }
-        
-        return displayExpression.substring(i + 1, end);
+        return start;
     }
 
     /**
-     * 提取表达式中的最后一个token（数字或操作符）
+     * 负号在表达式开头或紧跟操作符、左括号时是前缀负号
      */
-    private String extractLastToken() {
-        if (displayExpression.isEmpty()) {
-            return "";
+    private boolean isPrefixMinus(int token) {
+        if (displayExpression.kind(token) != ExpressionBuffer.OPERATOR
+                || displayExpression.charAt(displayExpression.tokenStart(token)) != '-') {
+            return false;
         }
-        
-        // 检查最后一个字符是否为操作符
-        if (isOperator(displayExpression.substring(displayExpression.length() - 1))) {
-            return displayExpression.substring(displayExpression.length() - 1);
+        if (token == 0) {
+            return true;
         }
-        
-        // 否则尝试提取最后一个数字
-        return extractLastNumber();
+        byte previous = displayExpression.kind(token - 1);
+        return previous == ExpressionBuffer.OPERATOR || previous == ExpressionBuffer.OPEN;
     }
 
     /**
-     * 判断字符串是否为函数名
+     * 提取表达式中的最后一个数字
      */
-    private boolean isFunctionName(String str) {
-        String[] functionNames = {"sin", "cos", "tan", "arcsin", "arccos", "arctan", "log", "ln", "sqrt"};
-        for (String name : functionNames) {
-            if (str.endsWith(name)) {
-                return true;
-            }
+    private String extractLastNumber() {
+        int token = lastNumberToken();
+        if (token == -1) {
+            return "";
         }
-        return false;
+        return displayExpression.substring(lastNumberStart(token), displayExpression.tokenEnd(token));
     }
 
     /**
-     * 格式化数字
+     * 把表达式中的最后一个数字替换为新文本，数字之后的右括号保持不变
+     * 调用前应已确认 {@link #extractLastNumber()} 不为空
      */
-    private String formatNumber(double number) {
-        // 移除不必要的小数部分
-        if (number == (long) number) {
-            return String.format("%d", (long) number);
-        } else {
-            return String.valueOf(number);
-        }
+    private void replaceLastNumber(String replacement) {
+        int token = lastNumberToken();
+        displayExpression.replace(lastNumberStart(token), displayExpression.tokenEnd(token), replacement);
+    }
+
+    /**
+     * 把数值写成表达式文本（等号后的表达式、历史记录、内存调用），写出的文本能被重新解析为同一个值
+     * 显示用的格式化由控制器负责
+     */
+    private String formatNumber(Number number) {
+        return formatter.format(number);
+    }
+
+    /**
+     * 读取表达式中的数字文本，按十进制精确转换，不经过double
+     * @throws NumberFormatException 不是合法的数字
+     */
+    private static BigDecimal parseOperand(String text) {
+        return new BigDecimal(text);
     }
 
     /**
@@ -1254,13 +1225,11 @@ public class CalculatorModel {
         }
         
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             String parameter = extractFunctionParameter();
             if (!parameter.isEmpty()) {
                 try {
-                    double value = Double.parseDouble(parameter);
-                    value = value / 100;
-                    replaceFunctionParameter(formatNumber(value));
+                    replaceFunctionParameter(formatNumber(parseOperand(parameter).movePointLeft(2)));
                 } catch (Exception e) {
                     setErrorState("百分比计算错误");
                 }
@@ -1270,14 +1239,11 @@ public class CalculatorModel {
             String lastNumber = extractLastNumber();
             if (!lastNumber.isEmpty()) {
                 try {
-                    double value = Double.parseDouble(lastNumber);
-                    value = value / 100;
+                    // 按十进制文本精确除以100
+                    String percent = formatNumber(parseOperand(lastNumber).movePointLeft(2));
                     
                     // 替换最后一个数字
-                    int lastPos = displayExpression.lastIndexOf(lastNumber);
-                    displayExpression = displayExpression.substring(0, lastPos) + 
-                                      formatNumber(value) + 
-                                      displayExpression.substring(lastPos + lastNumber.length());
+                    replaceLastNumber(percent);
                     
                     // 尝试实时计算结果
                     tryCalculateResult();
@@ -1298,7 +1264,7 @@ public class CalculatorModel {
         }
         
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             completeFunctionInput();
         }
         
@@ -1306,16 +1272,13 @@ public class CalculatorModel {
         String lastNumber = extractLastNumber();
         if (!lastNumber.isEmpty()) {
             try {
-                double value = Double.parseDouble(lastNumber);
+                parseOperand(lastNumber); // 数字格式错误时抛出异常
                 
-                // 构建平方表达式
-                String squareExpr = formatNumber(value) + "²";
+                // 构建平方表达式，沿用原来的数字文本
+                String squareExpr = lastNumber + "²";
                 
                 // 替换最后一个数字为平方表达式
-                int lastPos = displayExpression.lastIndexOf(lastNumber);
-                displayExpression = displayExpression.substring(0, lastPos) + 
-                                  squareExpr + 
-                                  displayExpression.substring(lastPos + lastNumber.length());
+                replaceLastNumber(squareExpr);
                 
                 // 尝试实时计算结果
                 tryCalculateResult();
@@ -1335,7 +1298,7 @@ public class CalculatorModel {
         }
         
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             completeFunctionInput();
         }
         
@@ -1343,21 +1306,16 @@ public class CalculatorModel {
         String lastNumber = extractLastNumber();
         if (!lastNumber.isEmpty()) {
             try {
-                double value = Double.parseDouble(lastNumber);
-                
-                if (value == 0) {
+                if (parseOperand(lastNumber).signum() == 0) {
                     setErrorState("除数不能为零");
                     return;
                 }
                 
                 // 构建倒数表达式
-                String reciprocalExpr = "1/(" + formatNumber(value) + ")";
+                String reciprocalExpr = "1/(" + lastNumber + ")";
                 
                 // 替换最后一个数字为倒数表达式
-                int lastPos = displayExpression.lastIndexOf(lastNumber);
-                displayExpression = displayExpression.substring(0, lastPos) + 
-                                  reciprocalExpr + 
-                                  displayExpression.substring(lastPos + lastNumber.length());
+                replaceLastNumber(reciprocalExpr);
                 
                 // 尝试实时计算结果
                 tryCalculateResult();
@@ -1377,7 +1335,7 @@ public class CalculatorModel {
         }
         
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             completeFunctionInput();
         }
         
@@ -1385,35 +1343,19 @@ public class CalculatorModel {
         String lastNumber = extractLastNumber();
         if (!lastNumber.isEmpty()) {
             try {
-                double value = Double.parseDouble(lastNumber);
+                double value = parseOperand(lastNumber).doubleValue();
                 
-                // 检查是否为非负整数
-                if (value < 0 || value != Math.floor(value)) {
-                    setErrorState("阶乘只适用于非负整数");
+                // 负整数没有阶乘，非整数按伽马函数计算
+                if (value < 0 && value == Math.floor(value)) {
+                    setErrorState("阶乘不适用于负整数");
                     return;
                 }
                 
-                // 计算阶乘
-                double result = 1;
-                for (int i = 2; i <= value; i++) {
-                    result *= i;
-                    // 检查溢出
-                    if (Double.isInfinite(result)) {
-                        setErrorState("结果太大");
-                        return;
-                    }
-                }
-                
-                // 构建阶乘表达式
-                String factorialExpr = formatNumber(value) + "!";
-                
                 // 替换最后一个数字为阶乘表达式
-                int lastPos = displayExpression.lastIndexOf(lastNumber);
-                displayExpression = displayExpression.substring(0, lastPos) + 
-                                  factorialExpr + 
-                                  displayExpression.substring(lastPos + lastNumber.length());
+                replaceLastNumber(lastNumber + "!");
                 
-                // 尝试实时计算结果
+                // 与输入的 n! 一样由实时预览计算，延迟预览时在后台线程中进行：
+                // 十进制模式下较大的 n 需要计算数秒，不能在按键时同步计算；溢出在按下等号时报告
                 tryCalculateResult();
             } catch (Exception e) {
                 setErrorState("阶乘计算错误");
@@ -1467,6 +1409,7 @@ public class CalculatorModel {
      * @param type 三角函数类型 (sin, cos, tan)
      * @deprecated 使用 {@link #calculateTrigFunction(String, boolean)} 代替
      */
+    @Deprecated
     public void calculateTrigFunction(String type) {
         calculateTrigFunction(type, true);
     }
@@ -1476,6 +1419,7 @@ public class CalculatorModel {
      * @param type 三角函数类型 (sin, cos, tan)
      * @deprecated 使用 {@link #calculateInverseTrigFunction(String, boolean)} 代替
      */
+    @Deprecated
     public void calculateInverseTrigFunction(String type) {
         calculateInverseTrigFunction(type, true);
     }
@@ -1504,7 +1448,7 @@ public class CalculatorModel {
         }
         
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             completeFunctionInput();
         }
         
@@ -1512,14 +1456,11 @@ public class CalculatorModel {
         String lastNumber = extractLastNumber();
         if (!lastNumber.isEmpty()) {
             try {
-                double value = Double.parseDouble(lastNumber);
+                parseOperand(lastNumber); // 数字格式错误时抛出异常
                 
                 // 添加幂运算符，让用户输入指数
                 // 替换最后一个数字为底数加幂运算符
-                int lastPos = displayExpression.lastIndexOf(lastNumber);
-                displayExpression = displayExpression.substring(0, lastPos) + 
-                                   formatNumber(value) + "^" + 
-                                   displayExpression.substring(lastPos + lastNumber.length());
+                replaceLastNumber(lastNumber + "^");
                 
                 // 不需要立即计算结果，等待用户输入指数
             } catch (Exception e) {
@@ -1538,7 +1479,7 @@ public class CalculatorModel {
         }
         
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             completeFunctionInput();
         }
         
@@ -1546,16 +1487,13 @@ public class CalculatorModel {
         String lastNumber = extractLastNumber();
         if (!lastNumber.isEmpty()) {
             try {
-                double value = Double.parseDouble(lastNumber);
+                parseOperand(lastNumber); // 数字格式错误时抛出异常
                 
-                // 构建平方表达式
-                String squareExpr = formatNumber(value) + "²";
+                // 构建平方表达式，沿用原来的数字文本
+                String squareExpr = lastNumber + "²";
                 
                 // 替换最后一个数字为平方表达式
-                int lastPos = displayExpression.lastIndexOf(lastNumber);
-                displayExpression = displayExpression.substring(0, lastPos) + 
-                                  squareExpr + 
-                                  displayExpression.substring(lastPos + lastNumber.length());
+                replaceLastNumber(squareExpr);
                 
                 // 尝试实时计算结果
                 tryCalculateResult();
@@ -1575,7 +1513,7 @@ public class CalculatorModel {
         }
         
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             completeFunctionInput();
         }
         
@@ -1583,13 +1521,10 @@ public class CalculatorModel {
         String lastNumber = extractLastNumber();
         if (!lastNumber.isEmpty()) {
             try {
-                double value = Double.parseDouble(lastNumber);
+                parseOperand(lastNumber); // 数字格式错误时抛出异常
                 
                 // 添加取余运算符
-                int lastPos = displayExpression.lastIndexOf(lastNumber);
-                displayExpression = displayExpression.substring(0, lastPos) + 
-                                   formatNumber(value) + "%" + 
-                                   displayExpression.substring(lastPos + lastNumber.length());
+                replaceLastNumber(lastNumber + "%");
                 
                 // 不需要立即计算结果，等待用户输入除数
             } catch (Exception e) {
@@ -1608,7 +1543,7 @@ public class CalculatorModel {
         }
         
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             completeFunctionInput();
         }
         
@@ -1616,16 +1551,13 @@ public class CalculatorModel {
         String lastNumber = extractLastNumber();
         if (!lastNumber.isEmpty()) {
             try {
-                double value = Double.parseDouble(lastNumber);
+                parseOperand(lastNumber); // 数字格式错误时抛出异常
                 
                 // 构建绝对值表达式
-                String absExpr = "|" + formatNumber(value) + "|";
+                String absExpr = "|" + lastNumber + "|";
                 
                 // 替换最后一个数字为绝对值表达式
-                int lastPos = displayExpression.lastIndexOf(lastNumber);
-                displayExpression = displayExpression.substring(0, lastPos) + 
-                                  absExpr + 
-                                  displayExpression.substring(lastPos + lastNumber.length());
+                replaceLastNumber(absExpr);
                 
                 // 尝试实时计算结果
                 tryCalculateResult();
@@ -1645,7 +1577,7 @@ public class CalculatorModel {
         }
         
         // 如果在函数参数输入模式
-        if (isInFunctionInput) {
+        if (isInFunctionInput()) {
             completeFunctionInput();
         }
         
@@ -1653,18 +1585,15 @@ public class CalculatorModel {
         String lastNumber = extractLastNumber();
         if (!lastNumber.isEmpty()) {
             try {
-                double value = Double.parseDouble(lastNumber);
+                BigDecimal value = parseOperand(lastNumber);
                 
                 // 将数值转换为科学计数法格式 - 使用自定义格式确保清晰度
                 // 使用小括号包围整个科学计数法表示，避免与加法混淆
-                // 格式：(1.23e+4) 而不是 1.23e+4
-                String sciNotation = String.format("(%.2e)", value);
+                // 格式：(1.23E+4) 而不是 1.23E+4
+                String sciNotation = "(" + scientificFormatter.format(value) + ")";
                 
                 // 替换最后一个数字为科学计数法表示
-                int lastPos = displayExpression.lastIndexOf(lastNumber);
-                displayExpression = displayExpression.substring(0, lastPos) + 
-                                  sciNotation + 
-                                  displayExpression.substring(lastPos + lastNumber.length());
+                replaceLastNumber(sciNotation);
                 
                 // 尝试实时计算结果
                 tryCalculateResult();
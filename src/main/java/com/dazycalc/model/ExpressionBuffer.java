@@ -0,0 +1,390 @@
+package com.dazycalc.model;
+
+import com.dazycalc.engine.FunctionDefinition;
+import com.dazycalc.engine.FunctionRegistry;
+import com.dazycalc.engine.Operator;
+
+import java.util.Arrays;
+
+/**
+ * 可编辑的表达式文本
+ * 文本保存在间隙缓冲区中，在同一位置附近连续编辑只移动间隙，不复制整个文本。
+ * 同时维护词法单元的区间索引：每个单元记录起止位置、类型、匹配的括号和外层括号，
+ * 查找最后一个数字、函数参数的范围或匹配的括号只需常数时间（按位置查找单元为二分查找）。
+ *
+ * 编辑后从编辑位置前的单元开始重新扫描到文本末尾，之前的单元保持不变；
+ * 计算器的编辑几乎都发生在末尾，重新扫描的只是最后一两个单元。
+ * 扫描对不完整的输入（如退格留下的 "si"）也不报错，无法识别的字符作为 {@link #OTHER} 单元。
+ * 函数名与引擎的词法分析一样通过 {@link FunctionRegistry} 匹配，扩展包中的函数同样识别为 {@link #FUNCTION}。
+ */
+final class ExpressionBuffer implements CharSequence {
+    /** 数字字面量，如 12、0.5、1.5E-8（不含前缀负号） */
+    static final byte NUMBER = 0;
+    /** 二元运算符 + - × ÷ % ^ */
+    static final byte OPERATOR = 1;
+    /** 左括号 */
+    static final byte OPEN = 2;
+    /** 右括号 */
+    static final byte CLOSE = 3;
+    /** 函数名 */
+    static final byte FUNCTION = 4;
+    /** 其他字符：常数、绝对值符号、后缀运算符、参数之间的逗号、无法识别的字符 */
+    static final byte OTHER = 5;
+
+    // 编辑后重新扫描的回退距离：数字最多向后查看3个字符（科学计数法的 e、正负号、数字），
+    // 函数名最多向后查看最长函数名的长度，编辑点之前这么远的单元都可能受影响
+    private static final int RESCAN_DISTANCE = Math.max(3, FunctionRegistry.getDefault().getLongestNameLength()) + 1;
+
+    // 间隙缓冲区，[gapStart, gapEnd) 是空闲部分
+    private char[] chars = new char[64];
+    private int gapStart = 0;
+    private int gapEnd = chars.length;
+    // 文本的字符串形式，编辑后失效
+    private String text = "";
+
+    // 词法单元索引
+    private int tokenCount;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private byte[] kinds = new byte[16];
+    // 括号的匹配单元，没有匹配时为-1
+    private int[] match = new int[16];
+    // 包含该单元的最内层未闭合左括号，右括号取其匹配左括号的值，没有时为-1
+    private int[] enclosing = new int[16];
+    // 该单元之后未闭合的左括号数量
+    private int[] depth = new int[16];
+
+    @Override
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    /**
+     * [start, end) 区间的文本，直接从缓冲区复制，不生成整个文本的字符串
+     */
+    public String substring(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("区间越界: [" + start + ", " + end + ")，长度 " + length());
+        }
+        if (text != null) {
+            return text.substring(start, end);
+        }
+        char[] result = new char[end - start];
+        for (int i = start; i < end; i++) {
+            result[i - start] = charAt(i);
+        }
+        return new String(result);
+    }
+
+    /**
+     * 最后一个字符，文本为空时返回0
+     */
+    public char lastChar() {
+        int length = length();
+        return length == 0 ? 0 : charAt(length - 1);
+    }
+
+    public boolean isEmpty() {
+        return length() == 0;
+    }
+
+    @Override
+    public String toString() {
+        if (text == null) {
+            char[] result = new char[length()];
+            System.arraycopy(chars, 0, result, 0, gapStart);
+            System.arraycopy(chars, gapEnd, result, gapStart, chars.length - gapEnd);
+            text = new String(result);
+        }
+        return text;
+    }
+
+    /**
+     * 在末尾追加文本
+     */
+    public void append(CharSequence content) {
+        int length = length();
+        replace(length, length, content);
+    }
+
+    /**
+     * 在指定位置插入文本
+     */
+    public void insert(int position, CharSequence content) {
+        replace(position, position, content);
+    }
+
+    /**
+     * 删除 [start, end) 区间的文本
+     */
+    public void delete(int start, int end) {
+        replace(start, end, "");
+    }
+
+    /**
+     * 替换全部文本
+     */
+    public void setText(CharSequence content) {
+        replace(0, length(), content);
+    }
+
+    /**
+     * 把 [start, end) 区间替换为新文本，并更新词法单元索引
+     */
+    public void replace(int start, int end, CharSequence content) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("区间越界: [" + start + ", " + end + ")，长度 " + length());
+        }
+        int n = content.length();
+        if (start == end && n == 0) {
+            return;
+        }
+        moveGap(end);
+        gapStart = start; // 删除的部分并入间隙
+        ensureGap(n);
+        for (int i = 0; i < n; i++) {
+            chars[gapStart++] = content.charAt(i);
+        }
+        text = null;
+        rescan(start);
+    }
+
+    // ---- 词法单元索引 ----
+
+    /**
+     * 词法单元数量
+     */
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    public byte kind(int token) {
+        return kinds[token];
+    }
+
+    public int tokenStart(int token) {
+        return starts[token];
+    }
+
+    public int tokenEnd(int token) {
+        return ends[token];
+    }
+
+    /**
+     * 括号的匹配单元
+     * @return 匹配的右括号或左括号，没有匹配或不是括号时返回-1
+     */
+    public int matchingToken(int token) {
+        return match[token];
+    }
+
+    /**
+     * 包含该单元的最内层未闭合左括号，没有时返回-1
+     */
+    public int enclosingOpen(int token) {
+        return enclosing[token];
+    }
+
+    /**
+     * 文本末尾未闭合的左括号数量
+     */
+    public int unclosedCount() {
+        return tokenCount == 0 ? 0 : depth[tokenCount - 1];
+    }
+
+    /**
+     * 文本末尾最内层的未闭合左括号
+     * @return 左括号单元，所有括号都已闭合时返回-1
+     */
+    public int innermostOpen() {
+        return tokenCount == 0 ? -1 : stackTop(tokenCount - 1);
+    }
+
+    /**
+     * 从指定位置开始的单元
+     * @return 起始位置为position的单元，没有时返回-1
+     */
+    public int tokenStartingAt(int position) {
+        int token = firstEndingAfter(position);
+        return token < tokenCount && starts[token] == position ? token : -1;
+    }
+
+    /**
+     * 结束位置大于position的第一个单元，没有时返回tokenCount
+     */
+    private int firstEndingAfter(int position) {
+        int low = 0;
+        int high = tokenCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] > position) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 编辑后从结束位置距编辑点不超过 {@link #RESCAN_DISTANCE} 的单元开始重新扫描
+     */
+    private void rescan(int editStart) {
+        int token = firstEndingAfter(editStart - RESCAN_DISTANCE);
+        // 截掉的单元中可能有左括号之前的单元的匹配，沿未闭合的括号链清除
+        for (int open = token == 0 ? -1 : stackTop(token - 1); open != -1; open = enclosing[open]) {
+            match[open] = -1;
+        }
+        tokenCount = token;
+        scan(token == 0 ? 0 : ends[token - 1]);
+    }
+
+    /**
+     * 单元之后最内层的未闭合左括号
+     */
+    private int stackTop(int token) {
+        return kinds[token] == OPEN ? token : enclosing[token];
+    }
+
+    private void scan(int position) {
+        int length = length();
+        int top = tokenCount == 0 ? -1 : stackTop(tokenCount - 1);
+        int level = unclosedCount();
+        while (true) {
+            while (position < length && Character.isWhitespace(charAt(position))) {
+                position++;
+            }
+            if (position >= length) {
+                return;
+            }
+            int start = position;
+            char c = charAt(position);
+            byte kind;
+            int matched = -1;
+            int outer = top;
+            if (Character.isDigit(c) || c == '.') {
+                position = scanNumber(position);
+                kind = NUMBER;
+            } else if (c == '(') {
+                position++;
+                kind = OPEN;
+            } else if (c == ')') {
+                position++;
+                kind = CLOSE;
+                if (top != -1) {
+                    matched = top;
+                    outer = enclosing[top];
+                }
+            } else if (Operator.fromSymbol(c) != null) {
+                position++;
+                kind = OPERATOR;
+            } else {
+                FunctionDefinition function = FunctionRegistry.getDefault().match(this, position);
+                if (function != null) {
+                    position += function.getName().length();
+                    kind = FUNCTION;
+                } else {
+                    position++;
+                    kind = OTHER;
+                }
+            }
+
+            int token = tokenCount;
+            ensureTokenCapacity(token + 1);
+            starts[token] = start;
+            ends[token] = position;
+            kinds[token] = kind;
+            match[token] = matched;
+            enclosing[token] = outer;
+            if (kind == OPEN) {
+                top = token;
+                level++;
+            } else if (matched != -1) {
+                match[matched] = token;
+                top = outer;
+                level--;
+            }
+            depth[token] = level;
+            tokenCount++;
+        }
+    }
+
+    /**
+     * 扫描数字，规则与表达式解析器相同：数字和小数点，之后是可选的科学计数法指数
+     */
+    private int scanNumber(int position) {
+        int length = length();
+        while (position < length && (Character.isDigit(charAt(position)) || charAt(position) == '.')) {
+            position++;
+        }
+        if (position < length && (charAt(position) == 'e' || charAt(position) == 'E')) {
+            int exponent = position + 1;
+            if (exponent < length && (charAt(exponent) == '+' || charAt(exponent) == '-')) {
+                exponent++;
+            }
+            if (exponent < length && Character.isDigit(charAt(exponent))) {
+                position = exponent;
+                while (position < length && Character.isDigit(charAt(position))) {
+                    position++;
+                }
+            }
+        }
+        return position;
+    }
+
+    // ---- 间隙缓冲区 ----
+
+    /**
+     * 把间隙移动到指定位置
+     */
+    private void moveGap(int position) {
+        if (position < gapStart) {
+            int count = gapStart - position;
+            System.arraycopy(chars, position, chars, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if (position > gapStart) {
+            int count = position - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    private void ensureGap(int size) {
+        if (gapEnd - gapStart >= size) {
+            return;
+        }
+        int length = length();
+        int capacity = Math.max(chars.length * 2, length + size + 16);
+        char[] grown = new char[capacity];
+        int tail = chars.length - gapEnd;
+        System.arraycopy(chars, 0, grown, 0, gapStart);
+        System.arraycopy(chars, gapEnd, grown, capacity - tail, tail);
+        chars = grown;
+        gapEnd = capacity - tail;
+    }
+
+    private void ensureTokenCapacity(int capacity) {
+        if (starts.length >= capacity) {
+            return;
+        }
+        int size = Math.max(capacity, starts.length * 2);
+        starts = Arrays.copyOf(starts, size);
+        ends = Arrays.copyOf(ends, size);
+        kinds = Arrays.copyOf(kinds, size);
+        match = Arrays.copyOf(match, size);
+        enclosing = Arrays.copyOf(enclosing, size);
+        depth = Arrays.copyOf(depth, size);
+    }
+}
@@ -0,0 +1,470 @@
+package com.dazycalc.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * 数字格式化器
+ * double按Schubfach算法（Giulietti）求出能唯一还原该值的最短十进制数字，再按设置的记数法、有效数字和千位分隔排版。
+ * 数字和排版结果都写入实例内复用的字符缓冲区，格式化double和long时只在最后构造结果字符串时分配对象。
+ *
+ * 默认设置下（自动记数法、最短数字、不分组）输出的文本可以被表达式解析器重新读入并得到同一个值：
+ * 十进制指数在 [-7, 21) 内时使用普通写法，否则使用 1.5E-8、1E+25 这样的科学计数法。
+ * 实例保存了缓冲区和设置，不是线程安全的，每个使用者持有自己的实例。
+ */
+public final class NumberFormatter {
+    /**
+     * 记数法
+     */
+    public enum Notation {
+        /** 数量级适中时使用普通写法，过大或过小时使用科学计数法 */
+        AUTO,
+        /** 科学计数法，整数部分只有一位 */
+        SCIENTIFIC,
+        /** 工程计数法，指数是3的倍数 */
+        ENGINEERING
+    }
+
+    // 自动记数法使用普通写法的十进制指数范围 [PLAIN_MIN, PLAIN_MAX)，与高精度结果的显示规则一致
+    private static final int PLAIN_MIN = -7;
+    private static final int PLAIN_MAX = 21;
+    private static final char GROUP_SEPARATOR = ',';
+
+    // double的参数：有效位数、最小/最大二进制指数、隐含的最高位
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << (P - 1);
+    private static final long T_MASK = C_MIN - 1;
+    private static final int BQ_MASK = 0x7FF;
+    // 系数小于此值的非规格化数先乘以10，保证最短数字的搜索范围足够
+    private static final int C_TINY = 3;
+
+    // 10的幂表覆盖的指数范围
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    /**
+     * 126位的 10^-k 近似值，分成高63位和低63位：g = floor(10^-k × 2^(125 - floor(log2(10^-k)))) + 1
+     */
+    private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+    private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+
+    static {
+        BigInteger mask = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int shift = 125 - flog2pow10(-k);
+            BigInteger g;
+            if (k <= 0) {
+                g = BigInteger.TEN.pow(-k);
+                g = shift >= 0 ? g.shiftLeft(shift) : g.shiftRight(-shift);
+            } else {
+                g = BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+            }
+            g = g.add(BigInteger.ONE);
+            G1[k - K_MIN] = g.shiftRight(63).longValue();
+            G0[k - K_MIN] = g.and(mask).longValue();
+        }
+    }
+
+    private Notation notation = Notation.AUTO;
+    private int significantDigits = 0;
+    private boolean grouping = false;
+
+    // 有效数字（'0'~'9'，不含末尾的0）及其个数，值为 0.d1d2...dn × 10^(exponent + 1)
+    private char[] digits = new char[32];
+    private int count;
+    // 第一位有效数字的十进制指数
+    private int exponent;
+    private boolean negative;
+
+    // 输出缓冲区
+    private char[] buffer = new char[64];
+    private int length;
+
+    /**
+     * 创建使用自动记数法、最短数字、不分组的格式化器
+     */
+    public NumberFormatter() {
+    }
+
+    /**
+     * 创建格式化器
+     * @param notation 记数法
+     * @param significantDigits 最多保留的有效数字位数，0表示保留全部
+     * @param grouping 普通写法的整数部分是否每三位加千位分隔符
+     */
+    public NumberFormatter(Notation notation, int significantDigits, boolean grouping) {
+        setNotation(notation);
+        setSignificantDigits(significantDigits);
+        setGrouping(grouping);
+    }
+
+    public Notation getNotation() {
+        return notation;
+    }
+
+    public void setNotation(Notation notation) {
+        if (notation == null) {
+            throw new IllegalArgumentException("记数法不能为空");
+        }
+        this.notation = notation;
+    }
+
+    public int getSignificantDigits() {
+        return significantDigits;
+    }
+
+    /**
+     * 设置最多保留的有效数字位数，多余的数字四舍五入，0表示保留全部
+     */
+    public void setSignificantDigits(int significantDigits) {
+        if (significantDigits < 0) {
+            throw new IllegalArgumentException("有效数字位数不能为负数: " + significantDigits);
+        }
+        this.significantDigits = significantDigits;
+    }
+
+    public boolean isGrouping() {
+        return grouping;
+    }
+
+    /**
+     * 设置是否加千位分隔符；分隔后的文本不能再被表达式解析器读入，只用于显示
+     */
+    public void setGrouping(boolean grouping) {
+        this.grouping = grouping;
+    }
+
+    /**
+     * 格式化数字：Long、Integer等整数按整数格式化，BigInteger和BigDecimal格式化全部数字，其他按double格式化
+     */
+    public String format(Number number) {
+        if (number instanceof Long || number instanceof Integer
+                || number instanceof Short || number instanceof Byte) {
+            return format(number.longValue());
+        }
+        if (number instanceof BigInteger) {
+            BigInteger value = (BigInteger) number;
+            if (value.bitLength() < Long.SIZE) {
+                return format(value.longValue());
+            }
+            setDigits(value.signum() < 0, value.abs().toString(), 0);
+            return layout();
+        }
+        if (number instanceof BigDecimal) {
+            BigDecimal value = (BigDecimal) number;
+            if (value.signum() == 0) {
+                return format(0L);
+            }
+            BigInteger unscaled = value.unscaledValue();
+            setDigits(value.signum() < 0, unscaled.abs().toString(), -value.scale());
+            return layout();
+        }
+        return format(number.doubleValue());
+    }
+
+    /**
+     * 格式化整数
+     */
+    public String format(long value) {
+        negative = value < 0;
+        // 在负数上做除法，Long.MIN_VALUE 也不会溢出
+        long n = negative ? value : -value;
+        int end = digits.length;
+        do {
+            digits[--end] = (char) ('0' - n % 10);
+            n /= 10;
+        } while (n != 0);
+        int total = digits.length - end;
+        System.arraycopy(digits, end, digits, 0, total);
+        setDigits(total, total - 1);
+        return layout();
+    }
+
+    /**
+     * 格式化double，输出能还原该值的最短数字；NaN和无穷大分别输出 NaN、Infinity、-Infinity，-0.0 输出 0
+     */
+    public String format(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+        long t = bits & T_MASK;
+        if (bq == BQ_MASK) {
+            return t != 0 ? "NaN" : bits < 0 ? "-Infinity" : "Infinity";
+        }
+        negative = bits < 0;
+        if (bq != 0) {
+            // 规格化数：value = c × 2^-mq
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if (0 < mq && mq < P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    // 53位以内的整数直接输出
+                    return negative ? format(-f) : format(f);
+                }
+            }
+            toDecimal(-mq, c, 0);
+        } else if (t != 0) {
+            // 非规格化数
+            if (t < C_TINY) {
+                toDecimal(Q_MIN, 10 * t, -1);
+            } else {
+                toDecimal(Q_MIN, t, 0);
+            }
+        } else {
+            return format(0L);
+        }
+        return layout();
+    }
+
+    /**
+     * 求 c × 2^q 的最短十进制表示，结果为 f × 10^(k + dk)
+     */
+    private void toDecimal(int q, long c, int dk) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // 2的整数次幂的舍入区间下半部分只有上半部分的一半宽
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+
+        long g1 = G1[k - K_MIN];
+        long g0 = G0[k - K_MIN];
+
+        // 舍入区间的中点和两端乘以 10^-k，保留两位小数
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // 先尝试少一位的候选 s' × 10 和 (s' + 1) × 10，s' = floor(s / 10)
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                setDecimal(upin ? sp10 : tp10, k);
+                return;
+            }
+        }
+
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            setDecimal(uin ? s : t, k + dk);
+            return;
+        }
+        // 两个候选都在区间内时取更接近的，距离相等时取偶数
+        long cmp = vb - (s + t << 1);
+        setDecimal(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk);
+    }
+
+    /**
+     * 把 f × 10^e 写入数字缓冲区
+     */
+    private void setDecimal(long f, int e) {
+        int end = digits.length;
+        do {
+            digits[--end] = (char) ('0' + f % 10);
+            f /= 10;
+        } while (f != 0);
+        int total = digits.length - end;
+        System.arraycopy(digits, end, digits, 0, total);
+        setDigits(total, e + total - 1);
+    }
+
+    /**
+     * 把十进制数字文本 × 10^scale 写入数字缓冲区
+     */
+    private void setDigits(boolean negative, String text, int scale) {
+        this.negative = negative;
+        int total = text.length();
+        if (digits.length < total) {
+            digits = new char[total];
+        }
+        text.getChars(0, total, digits, 0);
+        setDigits(total, scale + total - 1);
+    }
+
+    /**
+     * 去掉末尾的0并记录指数
+     */
+    private void setDigits(int total, int exponent) {
+        while (total > 1 && digits[total - 1] == '0') {
+            total--;
+        }
+        this.count = total;
+        this.exponent = digits[0] == '0' ? 0 : exponent;
+        if (digits[0] == '0') {
+            negative = false;
+        }
+    }
+
+    /**
+     * 按有效数字四舍五入，再按记数法排版
+     */
+    private String layout() {
+        if (significantDigits > 0 && count > significantDigits) {
+            roundDigits(significantDigits);
+        }
+        length = 0;
+        // 普通写法最多补28个0，指数最多10位，分隔符不超过数字的三分之一
+        ensureCapacity(count + count / 3 + 48);
+        if (negative) {
+            buffer[length++] = '-';
+        }
+        switch (notation) {
+            case SCIENTIFIC:
+                appendMantissa(1);
+                appendExponent(exponent);
+                break;
+            case ENGINEERING: {
+                int integerDigits = Math.floorMod(exponent, 3) + 1;
+                appendMantissa(integerDigits);
+                appendExponent(exponent - integerDigits + 1);
+                break;
+            }
+            default:
+                if (exponent >= PLAIN_MIN && exponent < PLAIN_MAX) {
+                    appendPlain();
+                } else {
+                    appendMantissa(1);
+                    appendExponent(exponent);
+                }
+                break;
+        }
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * 保留前n位有效数字，四舍五入
+     */
+    private void roundDigits(int n) {
+        boolean roundUp = digits[n] >= '5';
+        count = n;
+        if (roundUp) {
+            int i = n - 1;
+            while (i >= 0 && digits[i] == '9') {
+                i--;
+            }
+            if (i < 0) {
+                // 全是9，进位后变成1后面跟0
+                digits[0] = '1';
+                count = 1;
+                exponent++;
+                return;
+            }
+            digits[i]++;
+            count = i + 1;
+        }
+        while (count > 1 && digits[count - 1] == '0') {
+            count--;
+        }
+    }
+
+    /**
+     * 普通写法
+     */
+    private void appendPlain() {
+        if (exponent < 0) {
+            buffer[length++] = '0';
+            buffer[length++] = '.';
+            for (int i = exponent + 1; i < 0; i++) {
+                buffer[length++] = '0';
+            }
+            System.arraycopy(digits, 0, buffer, length, count);
+            length += count;
+            return;
+        }
+        int integerDigits = exponent + 1;
+        for (int i = 0; i < integerDigits; i++) {
+            if (grouping && i > 0 && (integerDigits - i) % 3 == 0) {
+                buffer[length++] = GROUP_SEPARATOR;
+            }
+            buffer[length++] = i < count ? digits[i] : '0';
+        }
+        if (count > integerDigits) {
+            buffer[length++] = '.';
+            System.arraycopy(digits, integerDigits, buffer, length, count - integerDigits);
+            length += count - integerDigits;
+        }
+    }
+
+    /**
+     * 尾数部分，整数部分有integerDigits位，不足时补0
+     */
+    private void appendMantissa(int integerDigits) {
+        for (int i = 0; i < integerDigits; i++) {
+            buffer[length++] = i < count ? digits[i] : '0';
+        }
+        if (count > integerDigits) {
+            buffer[length++] = '.';
+            System.arraycopy(digits, integerDigits, buffer, length, count - integerDigits);
+            length += count - integerDigits;
+        }
+    }
+
+    /**
+     * 指数部分，如 E+25、E-8
+     */
+    private void appendExponent(int e) {
+        buffer[length++] = 'E';
+        buffer[length++] = e < 0 ? '-' : '+';
+        int n = Math.abs(e);
+        int start = length;
+        do {
+            buffer[length++] = (char) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        // 反转写入的数字
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity) {
+            buffer = new char[Math.max(capacity, buffer.length * 2)];
+        }
+    }
+
+    /**
+     * 126位g乘以64位cp，取结果的高64位，舍去的部分不为0时把最低位置1（round to odd）
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+    }
+
+    /** floor(log10(2^q)) */
+    private static int flog10pow2(int q) {
+        return (int) (q * 661_971_961_083L >> 41);
+    }
+
+    /** floor(log10(3/4 × 2^q)) */
+    private static int flog10threeQuartersPow2(int q) {
+        return (int) (q * 661_971_961_083L - 274_743_187_321L >> 41);
+    }
+
+    /** floor(log2(10^e)) */
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+}
@@ -9,6 +9,8 @@ import java.awt.image.BufferedImage;
  * 自定义圆角按钮
  */
 public class RoundedButton extends JButton {
+    private static final long serialVersionUID = 1L;
+
     private Color backgroundColor;
     private boolean isPressed = false;
     private boolean isHovered = false;
@@ -8,6 +8,8 @@ import java.awt.geom.RoundRectangle2D;
  * 自定义圆角面板
  */
 public class RoundedPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
     private final int customCornerRadius;
     private boolean useCustomRadius = false;
     
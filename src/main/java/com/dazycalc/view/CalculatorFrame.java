@@ -1,6 +1,7 @@
 package com.dazycalc.view;
 
 import com.dazycalc.controller.CalculatorController;
+import com.dazycalc.engine.NumericMode;
 import com.dazycalc.model.CalculatorModel;
 import com.dazycalc.model.CalculatorOperation;
 import com.dazycalc.utils.ColorScheme;
@@ -23,6 +24,12 @@ import java.awt.event.KeyEvent;
  * 计算器主窗口
  */
 public class CalculatorFrame extends JFrame {
+    private static final long serialVersionUID = 1L;
+
+    // 粘贴成功提示中最多显示的表达式字符数
+    private static final int MAX_MESSAGE_LENGTH = 80;
+    // 表达式区最多显示的字符数，更长的表达式只显示末尾（正在编辑的部分）
+    private static final int MAX_EXPRESSION_DISPLAY_LENGTH = 256;
     
     private final CalculatorModel model;
     private final CalculatorController controller;
@@ -137,6 +144,15 @@ public class CalculatorFrame extends JFrame {
         uiStyleMenu.add(macStyleItem);
         uiStyleMenu.add(winStyleItem);
 
+        // 计算精度子菜单，单选项标出当前的数值模式
+        JMenu precisionMenu = new JMenu("计算精度");
+        ButtonGroup precisionGroup = new ButtonGroup();
+        addPrecisionItem(precisionMenu, precisionGroup, "双精度（快速）", NumericMode.DOUBLE);
+        addPrecisionItem(precisionMenu, precisionGroup, "高精度（34位）", NumericMode.DECIMAL);
+        addPrecisionItem(precisionMenu, precisionGroup, "扩展精度（31位）", NumericMode.DOUBLE_DOUBLE);
+        addPrecisionItem(precisionMenu, precisionGroup, "自动", NumericMode.HYBRID);
+        addPrecisionItem(precisionMenu, precisionGroup, "定点十进制（金额）", NumericMode.DEC64);
+
         // 根据当前主题设置复选标记
         if (ThemeManager.getCurrentTheme() == ThemeManager.Theme.XIAOMI) {
             xiaomiStyleItem.setSelected(true);
@@ -176,9 +192,20 @@ public class CalculatorFrame extends JFrame {
 
         // 设置菜单
         setMenu.add(uiStyleMenu);
+        setMenu.add(precisionMenu);
         
         setJMenuBar(menuBar);
     }
+
+    /**
+     * 添加一个数值模式的单选菜单项，模型当前的数值模式处于选中状态
+     */
+    private void addPrecisionItem(JMenu menu, ButtonGroup group, String text, NumericMode numericMode) {
+        JRadioButtonMenuItem item = new JRadioButtonMenuItem(text, model.getNumericMode() == numericMode);
+        item.addActionListener(e -> controller.setNumericMode(numericMode));
+        group.add(item);
+        menu.add(item);
+    }
     
     /**
      * 复制当前计算内容到剪贴板
@@ -186,7 +213,8 @@ public class CalculatorFrame extends JFrame {
      */
     private void copyToClipboard() {
         try {
-            String expression = expressionLabel.getText();
+            // 表达式区可能只显示了末尾，完整的表达式取自模型
+            String expression = model.isErrorState() ? expressionLabel.getText() : model.getExpression();
             String result = resultLabel.getText();
             
             // 检查是否有表达式和结果可复制
@@ -246,31 +274,40 @@ public class CalculatorFrame extends JFrame {
     
     /**
      * 处理粘贴的内容
+     * 空白由模型载入时作为分隔符处理，这里不再对整段文本做正则替换和分割
      * @param pastedText 粘贴的文本
      */
     private void processPastedText(String pastedText) {
-        // 去除所有空格
-        pastedText = pastedText.replaceAll("\\s+", "");
-        
-        // 检查内容是否包含"="
-        if (pastedText.contains("=")) {
-            // 如果包含等号，只取等号前的内容作为表达式
-            String[] parts = pastedText.split("=");
-            if (parts.length > 0) {
-                // 设置表达式
-                controller.setExpressionDirectly(parts[0]);
-                
-                // 显示提示消息
-                JOptionPane.showMessageDialog(this, "已粘贴表达式: " + parts[0], "粘贴成功", JOptionPane.INFORMATION_MESSAGE);
-            }
-        } else {
-            // 如果不包含等号，整个内容作为表达式
-            controller.setExpressionDirectly(pastedText);
-            
-            // 显示提示消息
-            JOptionPane.showMessageDialog(this, "已粘贴表达式: " + pastedText, "粘贴成功", JOptionPane.INFORMATION_MESSAGE);
+        // 如果包含等号，只取等号前的内容作为表达式
+        int equalsPos = pastedText.indexOf('=');
+        CharSequence expression = equalsPos == -1 ? pastedText : pastedText.subSequence(0, equalsPos);
+
+        // 设置表达式，不能识别时模型显示错误信息
+        if (controller.setExpressionDirectly(expression)) {
+            // 显示提示消息，过长的表达式只显示开头部分
+            JOptionPane.showMessageDialog(this, "已粘贴表达式: " + abbreviate(expression), "粘贴成功", JOptionPane.INFORMATION_MESSAGE);
         }
     }
+
+    /**
+     * 截取过长表达式的末尾用于显示
+     */
+    private static String tail(String expression) {
+        if (expression.length() <= MAX_EXPRESSION_DISPLAY_LENGTH) {
+            return expression;
+        }
+        return "…" + expression.substring(expression.length() - MAX_EXPRESSION_DISPLAY_LENGTH);
+    }
+
+    /**
+     * 截取过长文本的开头用于提示
+     */
+    private static String abbreviate(CharSequence text) {
+        if (text.length() <= MAX_MESSAGE_LENGTH) {
+            return text.toString();
+        }
+        return text.subSequence(0, MAX_MESSAGE_LENGTH) + "…（共 " + text.length() + " 个字符）";
+    }
     
     /**
      * 更新UI风格
@@ -1100,7 +1137,7 @@ public class CalculatorFrame extends JFrame {
             resultLabel.setText(input);
         } else {
             // 将表达式显示在上方标签
-            expressionLabel.setText(expression);
+            expressionLabel.setText(tail(expression));
             
             // 当前结果显示在下方标签
             resultLabel.setText(result);
@@ -0,0 +1,80 @@
+package com.dazycalc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * 批量计算模式：结果按输入顺序输出，出错的行和空行不影响其他行
+ */
+class BatchCommandTest {
+    @TempDir
+    Path directory;
+
+    private int run(Path input, Path output) {
+        return BatchCommand.run(new String[] {"--batch", input.toString(), "--out", output.toString()});
+    }
+
+    @Test
+    void keepsInputOrderAcrossChunks() throws IOException {
+        // 输入约9MB，分成多块并行计算
+        Path input = directory.resolve("input.txt");
+        List<String> expected = new ArrayList<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 600_000; i++) {
+                if (i % 1000 == 999) {
+                    writer.write("1÷0\n");
+                    expected.add("错误: 除数不能为零");
+                } else if (i % 1000 == 500) {
+                    writer.write("\r\n");
+                    expected.add("");
+                } else {
+                    writer.write(i + "×2+0.5-0.5\n");
+                    expected.add(String.valueOf(2L * i));
+                }
+            }
+        }
+        Path output = directory.resolve("output.txt");
+
+        assertEquals(1, run(input, output)); // 有出错的行
+        assertEquals(expected, Files.readAllLines(output, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void skipsByteOrderMarkAndHandlesLastLineWithoutNewline() throws IOException {
+        Path input = directory.resolve("input.txt");
+        Files.write(input, "\uFEFF0.1+0.2\r\nsqrt(16)\n2^100".getBytes(StandardCharsets.UTF_8));
+        Path output = directory.resolve("output.txt");
+
+        assertEquals(0, run(input, output));
+        assertEquals(List.of("0.30000000000000004", "4", "1.267650600228229401496703205376E+30"),
+                Files.readAllLines(output, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void reportsOverflowLikeTheCalculator() throws IOException {
+        Path input = directory.resolve("input.txt");
+        Files.write(input, "1e400\n2^5000\nsqrt(2)×1e308×10\n1e308".getBytes(StandardCharsets.UTF_8));
+        Path output = directory.resolve("output.txt");
+
+        assertEquals(1, run(input, output));
+        assertEquals(List.of("错误: 计算结果超出范围", "错误: 计算结果超出范围", "错误: 计算结果超出范围", "1E+308"),
+                Files.readAllLines(output, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void reportsUsageAndIoErrors() {
+        assertEquals(2, BatchCommand.run(new String[] {"--batch"}));
+        assertEquals(2, BatchCommand.run(new String[] {"--batch", "a", "b"}));
+        assertEquals(2, run(directory.resolve("missing.txt"), directory.resolve("output.txt")));
+    }
+}
@@ -0,0 +1,57 @@
+package com.dazycalc.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 定点十进制模式：能精确表示的结果直接在long上算出，不能精确表示时改用十进制高精度计算
+ */
+class Dec64Test {
+    private final ExpressionEvaluator evaluator = new ExpressionEvaluator(new ExpressionCache(64, 1L << 20));
+
+    private Number eval(String expression, NumericMode mode) {
+        return evaluator.evaluateNumber(expression, EvaluationContext.of(AngleMode.RADIAN).withNumericMode(mode));
+    }
+
+    private String decimal(String expression, NumericMode mode) {
+        return assertInstanceOf(BigDecimal.class, eval(expression, mode)).toString();
+    }
+
+    @Test
+    void arithmeticIsExactOrNan() {
+        long a = Dec64.of(new BigDecimal("0.1"));
+        long b = Dec64.of(new BigDecimal("0.2"));
+        assertEquals(new BigDecimal("0.3"), Dec64.toBigDecimal(Dec64.add(a, b)));
+        assertEquals(new BigDecimal("0.02"), Dec64.toBigDecimal(Dec64.multiply(a, b)));
+        assertEquals(new BigDecimal("0.5"), Dec64.toBigDecimal(Dec64.divide(a, b)));
+        assertEquals(Dec64.NAN, Dec64.divide(Dec64.of(1, 0), Dec64.of(3, 0)));
+        // 系数超过56位时不舍入
+        assertEquals(Dec64.NAN, Dec64.multiply(Dec64.of(1L << 40, 0), Dec64.of((1L << 40) + 1, 0)));
+        assertEquals(Dec64.NAN, Dec64.add(Dec64.NAN, a));
+    }
+
+    @Test
+    void fallsBackToDecimalWhenInexact() {
+        long product = Dec64Evaluator.compile(CompiledExpression.compile("9.995×2").getProgram()).execute();
+        assertEquals(new BigDecimal("19.99"), Dec64.toBigDecimal(product));
+        assertEquals(Dec64.NAN, Dec64Evaluator.compile(CompiledExpression.compile("1÷3").getProgram()).execute());
+
+        assertEquals("0.3", decimal("0.1+0.2", NumericMode.DEC64));
+        assertEquals("19.99", decimal("9.995×2", NumericMode.DEC64));
+        assertEquals(decimal("1÷3", NumericMode.DECIMAL), decimal("1÷3", NumericMode.DEC64));
+        assertEquals(decimal("sin(1)", NumericMode.DECIMAL), decimal("sin(1)", NumericMode.DEC64));
+    }
+
+    @Test
+    void reportsTheSameErrorsAsDecimal() {
+        assertEquals("除数不能为零",
+                assertThrows(ExpressionException.class, () -> eval("1÷0", NumericMode.DEC64)).getMessage());
+        assertEquals("对数函数参数必须为正数",
+                assertThrows(ExpressionException.class, () -> eval("ln(0-1)", NumericMode.DEC64)).getMessage());
+    }
+}
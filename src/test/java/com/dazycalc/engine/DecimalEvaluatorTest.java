@@ -0,0 +1,78 @@
+package com.dazycalc.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 双精度、十进制高精度和自动选择三种数值模式
+ */
+class DecimalEvaluatorTest {
+    private final ExpressionEvaluator evaluator = new ExpressionEvaluator(new ExpressionCache(64, 1L << 20));
+
+    private Number eval(String expression, NumericMode mode) {
+        return evaluator.evaluateNumber(expression, EvaluationContext.of(AngleMode.RADIAN).withNumericMode(mode));
+    }
+
+    private String decimal(String expression, NumericMode mode) {
+        return assertInstanceOf(BigDecimal.class, eval(expression, mode)).toString();
+    }
+
+    @Test
+    void doubleKeepsBinaryRounding() {
+        assertEquals(0.30000000000000004, eval("0.1+0.2", NumericMode.DOUBLE));
+        assertEquals(Math.sqrt(2), eval("sqrt(2)", NumericMode.DOUBLE));
+        assertEquals(Double.POSITIVE_INFINITY, eval("1e400", NumericMode.DOUBLE));
+    }
+
+    @Test
+    void decimalIsExactForDecimalFractions() {
+        assertEquals("0.3", decimal("0.1+0.2", NumericMode.DECIMAL));
+        assertEquals("0.3333333333333333333333333333333333", decimal("1÷3", NumericMode.DECIMAL));
+        assertEquals("1.414213562373095048801688724209698", decimal("sqrt(2)", NumericMode.DECIMAL));
+        assertEquals("3.141592653589793238462643383279503", decimal("π", NumericMode.DECIMAL));
+        assertEquals("0.6931471805599453094172321214581766", decimal("ln(2)", NumericMode.DECIMAL));
+        assertEquals("1E+400", decimal("1e400", NumericMode.DECIMAL));
+    }
+
+    @Test
+    void decimalFollowsTheContextPrecision() {
+        EvaluationContext context = EvaluationContext.of(AngleMode.RADIAN).withNumericMode(NumericMode.DECIMAL)
+                .withMathContext(new MathContext(50));
+        assertEquals("3.1415926535897932384626433832795028841971693993751",
+                evaluator.evaluateNumber("π", context).toString());
+        assertEquals("0.69314718055994530941723212145817656807550013436026",
+                evaluator.evaluateNumber("ln(2)", context).toString());
+    }
+
+    @Test
+    void logarithmNearOneKeepsItsSmallDigits() {
+        assertEquals("9.999999999999999999995000000000000E-22", decimal("ln(1+1e-21)", NumericMode.DECIMAL));
+    }
+
+    @Test
+    void hybridUsesDoubleOnlyWhenTheResultIsExact() {
+        assertTrue(CompiledExpression.compile("2.5×4-0.75").isExactInDouble());
+        assertFalse(CompiledExpression.compile("0.1+0.2").isExactInDouble());
+        assertEquals("9.25", decimal("2.5×4-0.75", NumericMode.HYBRID));
+        assertEquals("0.3", decimal("0.1+0.2", NumericMode.HYBRID));
+        assertEquals(decimal("sqrt(2)×π", NumericMode.DECIMAL), decimal("sqrt(2)×π", NumericMode.HYBRID));
+    }
+
+    @Test
+    void reportsTheSameErrorsInEachMode() {
+        for (NumericMode mode : new NumericMode[] {NumericMode.DOUBLE, NumericMode.DECIMAL, NumericMode.HYBRID}) {
+            assertEquals("除数不能为零",
+                    assertThrows(ExpressionException.class, () -> eval("1÷0", mode)).getMessage(), mode.name());
+            assertEquals("对数函数参数必须为正数",
+                    assertThrows(ExpressionException.class, () -> eval("ln(0-1)", mode)).getMessage(), mode.name());
+        }
+    }
+}
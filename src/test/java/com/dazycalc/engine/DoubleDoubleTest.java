@@ -0,0 +1,80 @@
+package com.dazycalc.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 双倍精度模式：结果约有31位有效数字，转成十进制时不经过double
+ */
+class DoubleDoubleTest {
+    private final ExpressionEvaluator evaluator = new ExpressionEvaluator(new ExpressionCache(64, 1L << 20));
+
+    private Number eval(String expression) {
+        return evaluator.evaluateNumber(expression,
+                EvaluationContext.of(AngleMode.RADIAN).withNumericMode(NumericMode.DOUBLE_DOUBLE));
+    }
+
+    private String decimal(String expression) {
+        return assertInstanceOf(BigDecimal.class, eval(expression)).toString();
+    }
+
+    @Test
+    void hasAboutThirtyOneDigits() {
+        assertEquals("0.3000000000000000000000000000000", decimal("0.1+0.2"));
+        assertEquals("0.3333333333333333333333333333333", decimal("1÷3"));
+        assertEquals("1.414213562373095048801688724210", decimal("sqrt(2)"));
+        assertEquals("0.6931471805599453094172321214582", decimal("ln(2)"));
+        assertEquals("计算结果超出范围", assertThrows(ExpressionException.class, () -> eval("1e400")).getMessage());
+    }
+
+    @Test
+    void convertsToDecimalExactly() {
+        // hi + lo 的精确和舍入到31位，而不是先转成double
+        DoubleDouble third = DoubleDouble.ONE.divide(DoubleDouble.valueOf(3));
+        BigDecimal exact = new BigDecimal(third.hi()).add(new BigDecimal(third.lo()));
+        assertEquals(exact.round(new MathContext(DoubleDouble.DIGITS)), third.toBigDecimal());
+    }
+
+    /**
+     * 大参数的三角函数与十进制高精度的参考值比较；参数取双倍精度数的精确值，
+     * 如 1e300 不能精确表示，参考值按实际参与计算的 hi + lo 计算
+     */
+    @Test
+    void reducesLargeArgumentsExactly() {
+        String[] arguments = {"1e20", "1e22", "-1e22", "1e30", "1e300", "1.5e308", "3141592653589793238.5", "1e15"};
+        for (AngleMode angleMode : AngleMode.values()) {
+            for (String argument : arguments) {
+                DoubleDouble x = DoubleDouble.valueOf(new BigDecimal(argument));
+                BigDecimal exact = new BigDecimal(x.hi()).add(new BigDecimal(x.lo()));
+                MathContext reference = new MathContext(40);
+                String message = angleMode + " " + argument;
+                assertClose(DecimalMath.sin(exact, angleMode, reference), DoubleDouble.sin(x, angleMode), message);
+                assertClose(DecimalMath.cos(exact, angleMode, reference), DoubleDouble.cos(x, angleMode), message);
+                assertClose(DecimalMath.tan(exact, angleMode, reference), DoubleDouble.tan(x, angleMode), message);
+            }
+        }
+        // 1e20 和 1e22 能被double精确表示
+        assertEquals("-0.6452512852657808442058117113125", decimal("sin(1e20)"));
+        assertEquals("-1.628778225606898878549375936940", decimal("tan(1e22)"));
+    }
+
+    private static void assertClose(BigDecimal expected, DoubleDouble actual, String message) {
+        // 允许末位相差1
+        BigDecimal tolerance = expected.abs().max(BigDecimal.ONE.scaleByPowerOfTen(-20)).scaleByPowerOfTen(-30);
+        BigDecimal error = expected.subtract(actual.toBigDecimal()).abs();
+        assertTrue(error.compareTo(tolerance) <= 0, message + ": " + actual + " != " + expected);
+    }
+
+    @Test
+    void reportsTheSameErrorsAsDecimal() {
+        assertEquals("除数不能为零", assertThrows(ExpressionException.class, () -> eval("1÷0")).getMessage());
+        assertEquals("对数函数参数必须为正数", assertThrows(ExpressionException.class, () -> eval("ln(0-1)")).getMessage());
+    }
+}
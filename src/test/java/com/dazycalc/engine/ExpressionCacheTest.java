@@ -0,0 +1,116 @@
+package com.dazycalc.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 表达式缓存：命中、规范化、条目数和估算内存的上限，以及按访问频率淘汰
+ */
+class ExpressionCacheTest {
+
+    @Test
+    void normalizedTextSharesOneEntryPerAngleMode() {
+        ExpressionCache cache = new ExpressionCache(16, 1L << 20);
+        ExpressionCache.Entry entry = cache.getOrCompile("1×2÷3", AngleMode.RADIAN);
+        assertSame(entry, cache.getOrCompile(" 1 * 2 / 3 ", AngleMode.RADIAN));
+        assertNotSame(entry, cache.getOrCompile("1×2÷3", AngleMode.DEGREE));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void keepsSpacesThatSeparateTokens() {
+        ExpressionCache cache = new ExpressionCache(16, 1L << 20);
+        assertEquals("1×2", ExpressionCache.normalize(" 1 * 2 "));
+        assertEquals("sin(2)+3", ExpressionCache.normalize("sin ( 2 ) + 3"));
+        assertEquals("1 2", ExpressionCache.normalize("1  2"));
+        assertEquals("1e -3", ExpressionCache.normalize("1e -3"));
+        assertEquals("1e+ 3", ExpressionCache.normalize("1e+ 3"));
+
+        // 先缓存连写的形式，带空格的形式不能命中它
+        assertEquals(12, cache.getOrCompile("12", AngleMode.RADIAN).getCompiled().evaluate(AngleMode.RADIAN));
+        assertEquals(2000, cache.getOrCompile("2e3", AngleMode.RADIAN).getCompiled().evaluate(AngleMode.RADIAN));
+        for (String text : new String[] {"1 2", "2 e 3"}) {
+            assertEquals("表达式错误", assertThrows(ExpressionException.class,
+                    () -> cache.getOrCompile(text, AngleMode.RADIAN)).getMessage(), text);
+            assertEquals("表达式错误", assertThrows(ExpressionException.class,
+                    () -> new ExpressionEvaluator(cache).evaluate(text, EvaluationContext.DEFAULT)).getMessage(), text);
+        }
+    }
+
+    @Test
+    void errorsAreNotCached() {
+        ExpressionCache cache = new ExpressionCache(16, 1L << 20);
+        assertThrows(ExpressionException.class, () -> cache.getOrCompile("1+", AngleMode.RADIAN));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightedSize());
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new ExpressionCache(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ExpressionCache(1, 0));
+    }
+
+    @Test
+    void evictsBeyondMaximumSize() {
+        ExpressionCache cache = new ExpressionCache(10, 1L << 20);
+        for (int i = 0; i < 100; i++) {
+            cache.getOrCompile(i + "+1", AngleMode.RADIAN);
+            assertTrue(cache.size() <= 10);
+        }
+        assertEquals(10, cache.size());
+        assertEquals(90, cache.getEvictionCount());
+    }
+
+    @Test
+    void evictsBeyondMaximumWeight() {
+        long maximumWeight = 64 << 10;
+        ExpressionCache cache = new ExpressionCache(1000, maximumWeight);
+        String terms = "+sqrt(2)×3".repeat(50);
+        for (int i = 0; i < 200; i++) {
+            cache.getOrCompile(i + terms, AngleMode.RADIAN);
+            assertTrue(cache.getWeightedSize() <= maximumWeight);
+        }
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.size() < 200);
+    }
+
+    @Test
+    void frequentlyUsedEntrySurvivesAScan() {
+        ExpressionCache cache = new ExpressionCache(100, 1L << 20);
+        ExpressionCache.Entry hot = cache.getOrCompile("sqrt(2)×π", AngleMode.RADIAN);
+        for (int i = 0; i < 20; i++) {
+            cache.getOrCompile("sqrt(2)×π", AngleMode.RADIAN);
+        }
+        // 大量只出现一次的表达式不应把经常使用的条目挤出缓存；
+        // 两次使用之间插入的条目比容量还多，按LRU淘汰时它早已被挤出
+        for (int i = 0; i < 5000; i++) {
+            cache.getOrCompile(i + "×7", AngleMode.RADIAN);
+            if (i % 150 == 149) {
+                assertSame(hot, cache.getOrCompile("sqrt(2)×π", AngleMode.RADIAN));
+            }
+        }
+        assertSame(hot, cache.getOrCompile("sqrt(2)×π", AngleMode.RADIAN));
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    void clearKeepsStatistics() {
+        ExpressionCache cache = new ExpressionCache(16, 1L << 20);
+        cache.getOrCompile("1+1", AngleMode.RADIAN);
+        cache.getOrCompile("1+1", AngleMode.RADIAN);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightedSize());
+        assertEquals(1, cache.getHitCount());
+        cache.getOrCompile("1+1", AngleMode.RADIAN);
+        assertEquals(2, cache.getMissCount());
+    }
+}
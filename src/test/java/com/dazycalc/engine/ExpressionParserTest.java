@@ -0,0 +1,177 @@
+package com.dazycalc.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 表达式解析器：优先级、错误信息、深层嵌套和输入长度的伸缩性
+ */
+class ExpressionParserTest {
+    // 在这么小的线程栈上，递归下降解析几千层嵌套就会栈溢出
+    private static final long SMALL_STACK = 256 * 1024;
+
+    private static double eval(String expression) {
+        return CompiledExpression.compile(expression).evaluate(AngleMode.RADIAN);
+    }
+
+    private static String error(String expression) {
+        return assertThrows(ExpressionException.class, () -> ExpressionParser.parse(expression)).getMessage();
+    }
+
+    @Test
+    void precedenceAndAssociativity() {
+        assertEquals(7, eval("1+2×3"));
+        assertEquals(9, eval("(1+2)×3"));
+        assertEquals(64, eval("2^3^2")); // ^ 按左结合处理
+        assertEquals(1, eval("10%3"));
+        assertEquals(-6, eval("2×-3"));
+        assertEquals(720, eval("3!!"));
+    }
+
+    @Test
+    void signsBindTighterThanBinaryOperators() {
+        // 负号紧跟数字时是负数字面量，后缀运算作用于整个字面量
+        assertEquals(9, eval("-3²"));
+        assertEquals(4, eval("-2^2"));
+        // 负号后面不是数字时是前缀运算，后缀运算先作用于操作数
+        assertEquals(-9, eval("-(3)²"));
+        assertEquals(5, eval("+5"));
+    }
+
+    @Test
+    void functionsAndAbsoluteValue() {
+        assertEquals(4, eval("sqrt(16)"));
+        assertEquals(4, eval("|-3|+1"));
+        assertEquals(6, eval("||-2|×3|"));
+        assertEquals(6, eval("npv(0,1,2,3)"));
+        assertEquals(7, CompiledExpression.compile("x×y+1", "x", "y").evaluate(AngleMode.RADIAN, new double[] {2, 3}));
+    }
+
+    @Test
+    void reportsErrors() {
+        assertEquals("括号不匹配", error("(1+2"));
+        assertEquals("括号不匹配", error("1+2)"));
+        assertEquals("绝对值符号不匹配", error("|1+2"));
+        assertEquals("表达式错误", error("1+"));
+        assertEquals("表达式错误", error(""));
+        assertEquals("表达式错误", error("1,2"));
+        assertEquals("函数 sqrt 缺少左括号", error("sqrt 4"));
+        assertEquals("函数 abs 需要 1 个参数，实际为 2 个", error("abs(1,2)"));
+        assertEquals("未定义的变量: x", error("x+1"));
+    }
+
+    @Test
+    void sharesRepeatedSubexpressions() {
+        Node root = ExpressionParser.parse("sqrt(2)×3+sqrt(2)×4");
+        assertSame(root.child(0).child(0), root.child(1).child(0));
+    }
+
+    @Test
+    void deepNestingDoesNotOverflowTheStack() {
+        int depth = 100_000;
+        String parens = "(".repeat(depth) + "1" + ")".repeat(depth);
+        String negations = "-(".repeat(depth) + "2" + ")".repeat(depth);
+        String functions = "abs(".repeat(depth) + "-3" + ")".repeat(depth);
+        String bars = "|".repeat(depth) + "-4" + "|".repeat(depth);
+
+        onSmallStack(() -> {
+            assertEquals(1, eval(parens));
+            assertEquals(2, eval(negations)); // 偶数个负号
+            assertEquals(3, eval(functions));
+            assertEquals(4, eval(bars));
+        });
+        assertEquals("括号不匹配", error("(".repeat(depth) + "1" + ")".repeat(depth - 1)));
+    }
+
+    /**
+     * 解析时间应与输入长度成正比：从100到100,000字符逐级增加，
+     * 长度增加100倍时耗时不超过150倍（平方复杂度会是10000倍）
+     */
+    @Test
+    void parseTimeScalesLinearly() {
+        long[] flat = new long[4];
+        long[] nested = new long[4];
+        int length = 100;
+        for (int i = 0; i < flat.length; i++, length *= 10) {
+            String chain = chain(length);
+            String parens = nested(length);
+            onSmallStack(() -> {
+                for (int k = 0; k < 3; k++) {
+                    ExpressionParser.parse(chain);
+                    ExpressionParser.parse(parens);
+                }
+            });
+            flat[i] = bestParseTime(chain);
+            nested[i] = bestParseTime(parens);
+        }
+        // 最短的输入耗时太少，计时误差大，从1,000字符起比较
+        assertTrue(flat[3] < 150 * flat[1], "长度增加100倍，耗时从 " + flat[1] + "ns 增加到 " + flat[3] + "ns");
+        assertTrue(nested[3] < 150 * nested[1], "长度增加100倍，耗时从 " + nested[1] + "ns 增加到 " + nested[3] + "ns");
+    }
+
+    /**
+     * 1+2×3-4÷5+... 形式、长度不小于 length 的表达式
+     */
+    private static String chain(int length) {
+        StringBuilder expression = new StringBuilder(length + 2).append('1');
+        for (int i = 0; expression.length() < length; i++) {
+            expression.append("+×-÷".charAt(i % 4)).append(i % 9 + 1);
+        }
+        return expression.toString();
+    }
+
+    /**
+     * ((...(1)...)) 形式、长度约为 length 的表达式
+     */
+    private static String nested(int length) {
+        int depth = (length - 1) / 2;
+        return "(".repeat(depth) + "1" + ")".repeat(depth);
+    }
+
+    /**
+     * 反复解析至少5次、至少300毫秒，取最短耗时；
+     * 单核机器上即时编译与测试线程抢占CPU，只测几次时结果可能全部受影响
+     */
+    private static long bestParseTime(String expression) {
+        long best = Long.MAX_VALUE;
+        long deadline = System.nanoTime() + 300_000_000L;
+        for (int i = 0; i < 5 || System.nanoTime() < deadline; i++) {
+            // 先回收上一次解析留下的对象，避免把垃圾回收的停顿算进解析时间
+            System.gc();
+            long start = System.nanoTime();
+            ExpressionParser.parse(expression);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static void onSmallStack(Runnable task) {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "small-stack", SMALL_STACK);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+        if (failure.get() instanceof Error) {
+            throw (Error) failure.get();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.dazycalc.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 增量求值器：输入、中间编辑和撤销之后的结果与从头计算一致
+ */
+class IncrementalEvaluatorTest {
+    private static final String[] ATOMS = {"1", "2", "7", "0", "10", "0.1", "2.5", "1e3", "123456789012", "π",
+            "(", ")", "+", "-", "×", "÷", "%", "^", "²", "!", "|", "sin(", "sqrt(", "ln("};
+
+    private final IncrementalEvaluator evaluator = new IncrementalEvaluator();
+
+    private double eval(String expression) {
+        return evaluator.evaluate(expression, AngleMode.RADIAN);
+    }
+
+    @Test
+    void previewCompletesTheExpression() {
+        assertEquals(1, eval("1+"));      // 以运算符结尾时补0
+        assertEquals(0, eval("1×"));
+        assertEquals(3, eval("(1+2"));    // 未闭合的括号自动闭合
+        assertEquals(4, eval("sqrt(16"));
+        assertEquals("绝对值符号不匹配", assertThrows(ExpressionException.class, () -> eval("|-3")).getMessage());
+    }
+
+    @Test
+    void typingAndUndoing() {
+        EvaluationContext context = EvaluationContext.DEFAULT;
+        Deque<String> history = new ArrayDeque<>();
+        Deque<String> results = new ArrayDeque<>();
+        String text = "";
+        for (char c : "12×(3+4)-5÷2".toCharArray()) {
+            text += c;
+            history.push(text);
+            results.push(outcome(new IncrementalEvaluator(), text, context));
+            assertEquals(results.peek(), outcome(evaluator, text, context), text);
+        }
+        assertEquals(81.5, eval(text));
+        // 逐步撤销，每一步都回到当时的结果
+        while (!history.isEmpty()) {
+            assertEquals(results.pop(), outcome(evaluator, history.peek(), context), history.pop());
+        }
+    }
+
+    @Test
+    void editingInTheMiddle() {
+        assertEquals(7, eval("1+2×3"));
+        assertEquals(69, eval("1+2×34"));
+        assertEquals(7, eval("1+2×3"));
+        assertEquals(16, eval("1+5×3"));
+        assertEquals(18, eval("(1+5)×3"));
+        assertEquals(4, eval("sqrt(16)"));
+    }
+
+    @Test
+    void switchingModeInvalidatesSnapshots() {
+        EvaluationContext doubles = EvaluationContext.DEFAULT;
+        EvaluationContext decimals = doubles.withNumericMode(NumericMode.DECIMAL);
+        assertEquals(0.30000000000000004, evaluator.evaluateNumber("0.1+0.2", doubles));
+        assertEquals(new BigDecimal("0.3"), evaluator.evaluateNumber("0.1+0.2", decimals));
+        assertEquals(new BigDecimal("0.33333333"),
+                evaluator.evaluateNumber("1÷3", decimals.withMathContext(new MathContext(8))));
+        assertEquals(BigInteger.TWO.pow(70), evaluator.evaluateNumber("2^70", doubles));
+    }
+
+    /**
+     * 随机输入并随机删除中间的字符，每一步的结果都与新建的求值器从头计算的结果相同
+     */
+    @Test
+    void randomEditsMatchEvaluatingFromScratch() {
+        Random random = new Random(7);
+        for (NumericMode mode : NumericMode.values()) {
+            EvaluationContext context = EvaluationContext.of(AngleMode.RADIAN).withNumericMode(mode)
+                    .withBudget(EvaluationBudget.of(200_000, 0));
+            IncrementalEvaluator incremental = new IncrementalEvaluator();
+            for (int i = 0; i < 300; i++) {
+                StringBuilder text = new StringBuilder();
+                int length = 1 + random.nextInt(12);
+                for (int k = 0; k < length; k++) {
+                    text.append(ATOMS[random.nextInt(ATOMS.length)]);
+                    check(incremental, text.toString(), context);
+                }
+                if (text.length() > 2) {
+                    text.deleteCharAt(random.nextInt(text.length() - 1));
+                    check(incremental, text.toString(), context);
+                }
+            }
+        }
+    }
+
+    private static void check(IncrementalEvaluator incremental, String text, EvaluationContext context) {
+        String expected = outcome(new IncrementalEvaluator(), text, context);
+        String actual = outcome(incremental, text, context);
+        // 计算量超出预算的结果与已保存的快照有关，不做比较
+        assertTrue(expected.equals(actual) || expected.startsWith("budget") || actual.startsWith("budget"),
+                context.getNumericMode() + " " + text + ": " + actual + " != " + expected);
+    }
+
+    private static String outcome(IncrementalEvaluator incremental, String text, EvaluationContext context) {
+        try {
+            Number value = incremental.evaluateNumber(text, context);
+            return value.getClass().getSimpleName() + ":" + value;
+        } catch (BudgetExceededException e) {
+            return "budget";
+        } catch (ExpressionException e) {
+            return "error:" + e.getMessage();
+        }
+    }
+}
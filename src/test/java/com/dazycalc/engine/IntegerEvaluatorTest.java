@@ -0,0 +1,47 @@
+package com.dazycalc.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 整数求值：long溢出时提升为BigInteger，落回long范围时降回long，结果在每种数值模式下都精确
+ */
+class IntegerEvaluatorTest {
+    private final ExpressionEvaluator evaluator = new ExpressionEvaluator(new ExpressionCache(64, 1L << 20));
+
+    private Number eval(String expression, NumericMode mode) {
+        return evaluator.evaluateNumber(expression, EvaluationContext.of(AngleMode.RADIAN).withNumericMode(mode));
+    }
+
+    @Test
+    void promotesOnOverflowAndDemotesBack() {
+        assertEquals(3628800L, eval("10!", NumericMode.DOUBLE));
+        assertEquals(BigInteger.TWO.pow(63), eval("9223372036854775807+1", NumericMode.DOUBLE));
+        assertEquals(BigInteger.TWO.pow(100), eval("2^100", NumericMode.DOUBLE));
+        assertEquals(new BigInteger("15511210043330985984000000"), eval("25!", NumericMode.DOUBLE));
+        assertEquals(5L, eval("2^100-2^100+5", NumericMode.DOUBLE));
+        assertEquals(-3L, eval("7÷(0-7)×3", NumericMode.DOUBLE));
+    }
+
+    @Test
+    void leavesInexactProgramsToTheOtherModes() {
+        assertEquals(3.5, eval("7÷2", NumericMode.DOUBLE));
+        assertNull(IntegerEvaluator.compile(CompiledExpression.compile("0.5×2").getProgram()));
+        assertNull(IntegerEvaluator.compile(CompiledExpression.compile("sqrt(4)").getProgram()));
+    }
+
+    @Test
+    void integerResultsAreExactInEveryMode() {
+        for (NumericMode mode : new NumericMode[] {NumericMode.DECIMAL, NumericMode.HYBRID, NumericMode.DEC64,
+                NumericMode.DOUBLE_DOUBLE}) {
+            assertEquals("1267650600228229401496703205376",
+                    assertInstanceOf(BigDecimal.class, eval("2^100", mode)).toString(), mode.name());
+        }
+    }
+}
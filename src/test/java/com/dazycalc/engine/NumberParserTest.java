@@ -0,0 +1,94 @@
+package com.dazycalc.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 十进制数字解析：结果与 {@link Double#parseDouble(String)} 逐位相同
+ */
+class NumberParserTest {
+
+    private static void assertParses(String text) {
+        assertEquals(Double.doubleToRawLongBits(Double.parseDouble(text)),
+                Double.doubleToRawLongBits(NumberParser.parse(text)), text);
+    }
+
+    @Test
+    void parsesTheSupportedForms() {
+        for (String text : new String[] {"0", "-0", "1", "+1", "-1.5", ".5", "2.", "0.1", "123456789", "1e3", "1E+21",
+                "2.5e-8", "0.000001", "9007199254740993", "1e22", "1e23", "123456789012345678901234567890"}) {
+            assertParses(text);
+        }
+    }
+
+    @Test
+    void parsesARange() {
+        assertEquals(3.25, NumberParser.parse("x=3.25;", 2, 6));
+    }
+
+    @Test
+    void roundsExtremesLikeTheJdk() {
+        for (String text : new String[] {"4.9e-324", "2.4703282292062328e-324", "2.4703282292062327e-324",
+                "2.2250738585072011e-308", "1.7976931348623157e308", "1.7976931348623158e308",
+                "1.7976931348623159e308", "1e-400", "1e400", "0e999999999"}) {
+            assertParses(text);
+        }
+    }
+
+    @Test
+    void roundsHalfwayCasesToEven() {
+        // 2^53 + 1 和 2^53 + 3 恰好位于两个double的中点
+        assertParses("9007199254740993");
+        assertParses("9007199254740995");
+        // 最短表示的中点，后面再多一位非零数字就应向上舍入
+        BigDecimal half = new BigDecimal(1.0).add(new BigDecimal(Math.ulp(1.0) / 2));
+        assertParses(half.toPlainString());
+        assertParses(half.toPlainString() + "0000000000001");
+    }
+
+    @Test
+    void matchesTheJdkOnRandomInput() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder text = new StringBuilder();
+            if (random.nextBoolean()) {
+                text.append('-');
+            }
+            int digits = 1 + random.nextInt(random.nextInt(4) == 0 ? 40 : 17);
+            int point = random.nextInt(digits + 1);
+            for (int d = 0; d < digits; d++) {
+                if (d == point) {
+                    text.append('.');
+                }
+                text.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextBoolean()) {
+                text.append('e').append(random.nextInt(700) - 350);
+            }
+            assertParses(text.toString());
+        }
+    }
+
+    @Test
+    void shortestDoubleTextsRoundTrip() {
+        Random random = new Random(43);
+        for (int i = 0; i < 100_000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isFinite(value)) {
+                assertEquals(value, NumberParser.parse(Double.toString(value)));
+            }
+        }
+    }
+
+    @Test
+    void rejectsMalformedNumbers() {
+        for (String text : new String[] {"", "-", ".", "e5", "1e", "1e+", "1.2.3", "1x", "NaN", "Infinity"}) {
+            assertThrows(ExpressionException.class, () -> NumberParser.parse(text), text);
+        }
+    }
+}
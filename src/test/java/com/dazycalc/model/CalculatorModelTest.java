@@ -0,0 +1,61 @@
+package com.dazycalc.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.dazycalc.engine.NumericMode;
+
+/**
+ * 计算器模型：n! 键只编辑表达式，阶乘由实时预览计算
+ */
+class CalculatorModelTest {
+
+    private static CalculatorModel enter(String digits, boolean deferred) {
+        CalculatorModel model = new CalculatorModel();
+        model.setPreviewDeferred(deferred);
+        for (char c : digits.toCharArray()) {
+            model.addDigit(String.valueOf(c));
+        }
+        return model;
+    }
+
+    @Test
+    void factorialKeyLeavesTheComputationToThePreview() {
+        CalculatorModel model = enter("9999999", true);
+        model.setNumericMode(NumericMode.DECIMAL);
+        long start = System.nanoTime();
+        model.calculateFactorial();
+        long elapsed = System.nanoTime() - start;
+
+        // 在十进制模式下计算 9999999! 需要一秒以上
+        assertTrue(elapsed < 100_000_000L, elapsed + "ns");
+        assertFalse(model.isErrorState());
+        assertEquals("9999999!", model.getExpression());
+        assertTrue(model.isPreviewPending());
+    }
+
+    @Test
+    void factorialKeyMatchesTypedFactorial() {
+        CalculatorModel model = enter("171", false);
+        model.calculateFactorial();
+        assertEquals("171!", model.getExpression());
+        assertEquals(factorial(171), model.getCurrentValue());
+
+        model = enter("5", false);
+        model.calculateFactorial();
+        assertEquals(120L, model.getCurrentValue());
+    }
+
+    private static BigInteger factorial(int n) {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 2; i <= n; i++) {
+            result = result.multiply(BigInteger.valueOf(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package com.dazycalc.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.dazycalc.engine.NumberParser;
+
+/**
+ * 数字格式化：默认设置下的输出能被 {@link NumberParser} 还原为同一个值，并且是最短的
+ */
+class NumberFormatterTest {
+    private final NumberFormatter formatter = new NumberFormatter();
+
+    @Test
+    void formatsPlainAndScientific() {
+        assertEquals("0", formatter.format(0.0));
+        assertEquals("-1.5", formatter.format(-1.5));
+        assertEquals("0.1", formatter.format(0.1));
+        assertEquals("0.0000001", formatter.format(1e-7));
+        assertEquals("1.5E-8", formatter.format(1.5e-8));
+        assertEquals("123456789012345680", formatter.format(123456789012345678.0));
+        assertEquals("1E+21", formatter.format(1e21));
+        assertEquals("1.7976931348623157E+308", formatter.format(Double.MAX_VALUE));
+        assertEquals("4.9E-324", formatter.format(Double.MIN_VALUE));
+        assertEquals("NaN", formatter.format(Double.NaN));
+        assertEquals("Infinity", formatter.format(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void formatsExactNumbers() {
+        assertEquals("12345678901234", formatter.format(12345678901234L));
+        assertEquals(String.valueOf(Long.MIN_VALUE), formatter.format(Long.MIN_VALUE));
+        assertEquals("0.3", formatter.format(new BigDecimal("0.3000")));
+        assertEquals("1E+30", formatter.format(BigInteger.TEN.pow(30)));
+    }
+
+    @Test
+    void doublesRoundTripThroughTheParser() {
+        Random random = new Random(17);
+        for (int i = 0; i < 200_000; i++) {
+            double value = i % 2 == 0 ? Double.longBitsToDouble(random.nextLong())
+                    : random.nextInt(1_000_000) / Math.pow(10, random.nextInt(12));
+            if (!Double.isFinite(value)) {
+                continue;
+            }
+            String text = formatter.format(value);
+            assertEquals(value, NumberParser.parse(text), text);
+            // 不比 Double.toString 的数字更长
+            assertTrue(significantDigits(text) <= significantDigits(Double.toString(value)),
+                    text + " / " + Double.toString(value));
+        }
+    }
+
+    @Test
+    void longsRoundTripThroughTheParser() {
+        Random random = new Random(18);
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong() >> random.nextInt(64);
+            assertEquals(new BigDecimal(value), new BigDecimal(formatter.format(value)));
+        }
+    }
+
+    private static int significantDigits(String text) {
+        int end = text.indexOf('E');
+        String mantissa = (end < 0 ? text : text.substring(0, end)).replace("-", "").replace(".", "");
+        String digits = mantissa.replaceFirst("^0+", "").replaceFirst("0+$", "");
+        return Math.max(1, digits.length());
+    }
+}